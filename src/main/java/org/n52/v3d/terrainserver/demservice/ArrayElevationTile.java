@@ -0,0 +1,89 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+/**
+ * Elevation tile held in a primitive <tt>float</tt> array.<br /><br />
+ * <i>German:</i> Im Java-Heap als <tt>float</tt>-Feld gehaltene H&ouml;henkachel (z. B. von
+ * <tt>AsciiGridReader</tt> gelesen).<br />
+ * Die Werte sind zeilenweise beginnend mit Zeile 0 (s&uuml;dlicher Rand) abgelegt; nicht belegte Gitterpunkte
+ * besitzen den Wert <tt>Float.NaN</tt>.
+ */
+public class ArrayElevationTile implements ElevationTile
+{
+    private float[] mValues;
+    private int mCols, mRows;
+    private double mXMin, mYMin, mDeltaX, mDeltaY;
+
+    /**
+     * Constructor.<br /><br />
+     * <i>German:</i> Konstruktor. Das angegebene Feld wird nicht kopiert.
+     * @param pCols Anzahl der Spalten
+     * @param pRows Anzahl der Zeilen
+     * @param pXMin x-Koordinate der Gitterpunkte in Spalte 0
+     * @param pYMin y-Koordinate der Gitterpunkte in Zeile 0
+     * @param pDeltaX Gitterweite in x-Richtung
+     * @param pDeltaY Gitterweite in y-Richtung
+     * @param pValues H&ouml;henwerte (L&auml;nge <tt>pCols * pRows</tt>)
+     */
+    public ArrayElevationTile(
+        int pCols, int pRows, double pXMin, double pYMin, double pDeltaX, double pDeltaY, float[] pValues)
+    {
+        mCols = pCols;
+        mRows = pRows;
+        mXMin = pXMin;
+        mYMin = pYMin;
+        mDeltaX = pDeltaX;
+        mDeltaY = pDeltaY;
+        mValues = pValues;
+    }
+
+    public int numberOfRows() {
+        return mRows;
+    }
+
+    public int numberOfColumns() {
+        return mCols;
+    }
+
+    public double getXMin() {
+        return mXMin;
+    }
+
+    public double getYMin() {
+        return mYMin;
+    }
+
+    public double getDeltaX() {
+        return mDeltaX;
+    }
+
+    public double getDeltaY() {
+        return mDeltaY;
+    }
+
+    public boolean isSet(int pRow, int pCol) {
+        return !Float.isNaN(mValues[pRow * mCols + pCol]);
+    }
+
+    public double getValue(int pRow, int pCol) {
+        return mValues[pRow * mCols + pCol];
+    }
+}
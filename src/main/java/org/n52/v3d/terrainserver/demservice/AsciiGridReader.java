@@ -0,0 +1,391 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Fast reader for ArcInfo ASCII grids ("ArcIGrd").<br /><br />
+ * <i>German:</i> Schneller Reader f&uuml;r ArcInfo-ASCII-Grids ("ArcIGrd").<br />
+ * Im Gegensatz zu <tt>IoElevationGridReader</tt> werden die H&ouml;henwerte direkt aus den gelesenen Bytes
+ * dekodiert, ohne f&uuml;r jeden Wert einen <tt>String</tt> zu erzeugen. Der Datenteil wird an Zeilengrenzen in
+ * Abschnitte zerlegt, die parallel im Thread-Pool von <tt>ParallelGridFiller</tt> verarbeitet werden: Zun&auml;chst
+ * wird die Anzahl der Werte je Abschnitt bestimmt, anschlie&szlig;end schreibt jeder Abschnitt seine Werte an die
+ * sich daraus ergebende Position in das Ergebnisfeld.<br />
+ * Die Lage des Gitters wird wie bei <tt>IoElevationGridReader</tt> aus den Angaben <tt>xllcorner</tt> bzw.
+ * <tt>xllcenter</tt> und <tt>yllcorner</tt> bzw. <tt>yllcenter</tt> &uuml;bernommen; neben <tt>cellsize</tt> werden
+ * auch getrennte Angaben <tt>dx</tt> und <tt>dy</tt> unterst&uuml;tzt.<br />
+ * Ist &uuml;ber <tt>setWindow()</tt> ein Ausschnitt gesetzt, werden nur dessen Werte dekodiert und abgelegt; Zeilen
+ * und Spalten au&szlig;erhalb werden lediglich &uuml;bersprungen.
+ */
+public class AsciiGridReader
+{
+    private static final int sMinChunkSize = 1 << 20; // Bytes je Abschnitt (mindestens)
+
+    private static final double[] sPow10 = {
+        1.e0, 1.e1, 1.e2, 1.e3, 1.e4, 1.e5, 1.e6, 1.e7, 1.e8, 1.e9, 1.e10, 1.e11,
+        1.e12, 1.e13, 1.e14, 1.e15, 1.e16, 1.e17, 1.e18, 1.e19, 1.e20, 1.e21, 1.e22};
+
+    private int mParallelism = 0;
+    private boolean mWindowed = false;
+    private double mWinXMin, mWinYMin, mWinXMax, mWinYMax, mWinHalo;
+    private int mWinHaloCells;
+
+    private int mCols, mRows;
+    private double mXMin, mYMin, mDeltaX, mDeltaY;
+    private double mNoData = Double.NaN;
+
+    /**
+     * sets the maximum number of chunks processed simultaneously.<br /><br />
+     * <i>German:</i> setzt die maximale Anzahl gleichzeitig verarbeiteter Abschnitte. Werte kleiner 1 stehen
+     * f&uuml;r die Anzahl der verf&uuml;gbaren Prozessoren (Voreinstellung); f&uuml;r 1 erfolgt das Einlesen
+     * ausschlie&szlig;lich im aufrufenden Thread.
+     * @param pParallelism Parallelit&auml;tsgrad
+     */
+    public void setParallelism(int pParallelism) {
+        mParallelism = pParallelism;
+    }
+
+    /**
+     * restricts reading to the section of the grid which intersects the given envelope extended by a halo (see
+     * <tt>TileWindow#clip()</tt>).<br /><br />
+     * <i>German:</i> beschr&auml;nkt das Einlesen auf den Ausschnitt des Gitters, der das um einen Randbereich
+     * erweiterte Rechteck schneidet (vgl. <tt>TileWindow#clip()</tt>). Da die Gitterweite erst beim Einlesen
+     * bekannt wird, l&auml;sst sich der Randbereich zus&auml;tzlich in Gitterpunkten angeben.
+     * @param pXMin minimale x-Koordinate des Rechtecks
+     * @param pYMin minimale y-Koordinate des Rechtecks
+     * @param pXMax maximale x-Koordinate des Rechtecks
+     * @param pYMax maximale y-Koordinate des Rechtecks
+     * @param pHalo Breite des Randbereichs (z. B. Suchradius)
+     * @param pHaloCells zus&auml;tzliche Breite des Randbereichs in Gitterpunkten
+     */
+    public void setWindow(double pXMin, double pYMin, double pXMax, double pYMax, double pHalo, int pHaloCells)
+    {
+        mWindowed = true;
+        mWinXMin = pXMin;
+        mWinYMin = pYMin;
+        mWinXMax = pXMax;
+        mWinYMax = pYMax;
+        mWinHalo = pHalo;
+        mWinHaloCells = pHaloCells;
+    }
+
+    /**
+     * reads an ArcInfo ASCII grid file.<br /><br />
+     * <i>German:</i> liest eine ArcInfo-ASCII-Grid-Datei bzw. den mit <tt>setWindow()</tt> gesetzten Ausschnitt.
+     * @param pFilename Dateiname (inkl. Pfad)
+     * @return Kachel bzw. Ausschnitt oder <i>null</i>, falls der Ausschnitt au&szlig;erhalb des Gitters liegt
+     * @throws T3dException falls die Datei nicht gelesen werden kann oder fehlerhaft ist
+     */
+    public ArrayElevationTile readFromFile(String pFilename)
+    {
+        byte[] lBuf = this.load(pFilename);
+        int lDataStart = this.parseHeader(lBuf);
+        int n = mCols * mRows;
+
+        // Zeilen- und Spaltenbereich {r0, c0, r1, c1} des Ergebnisses:
+        final int[] w;
+        if (mWindowed) {
+            w = TileWindow.indexRange(
+                mCols, mRows, mXMin, mYMin, mDeltaX, mDeltaY, mWinXMin, mWinYMin, mWinXMax, mWinYMax,
+                mWinHalo + mWinHaloCells * Math.max(mDeltaX, mDeltaY));
+            if (w == null)
+                return null;
+        }
+        else
+            w = new int[] {0, 0, mRows - 1, mCols - 1};
+        // Bereich der benoetigten Werte in Dateireihenfolge (Dateizeile 0 ist die noerdlichste Gitterzeile):
+        final int lFromValue = (mRows - 1 - w[2]) * mCols + w[1];
+        final int lToValue = (mRows - 1 - w[0]) * mCols + w[3] + 1;
+
+        int nChunks = Math.max(1, Math.min(
+            ParallelGridFiller.effectiveParallelism(mParallelism),
+            (lBuf.length - lDataStart) / sMinChunkSize));
+        final int[] lBegin = new int[nChunks + 1];
+        lBegin[0] = lDataStart;
+        lBegin[nChunks] = lBuf.length;
+        for (int c = 1; c < nChunks; c++) {
+            // Abschnittsgrenze hinter das naechste Zeilenende verschieben:
+            int p = Math.max(lBegin[c - 1], lDataStart + (int) (((long) (lBuf.length - lDataStart)) * c / nChunks));
+            while (p < lBuf.length && lBuf[p] != '\n')
+                p++;
+            lBegin[c] = Math.min(p + 1, lBuf.length);
+        }
+
+        // 1. Durchlauf: Anzahl der Werte je Abschnitt
+        final byte[] b = lBuf;
+        Object[] lCounts = this.runChunks(nChunks, new ChunkTask() {
+            public Object run(int c) {
+                return new Integer(countValues(b, lBegin[c], lBegin[c + 1]));
+            }
+        });
+        final int[] lFirst = new int[nChunks + 1];
+        for (int c = 0; c < nChunks; c++)
+            lFirst[c + 1] = lFirst[c] + ((Integer) lCounts[c]).intValue();
+        if (lFirst[nChunks] != n)
+            throw new T3dException("Invalid ArcInfo ASCII grid \"" + pFilename + "\": " + n
+                + " values expected, " + lFirst[nChunks] + " found.");
+
+        // 2. Durchlauf: Werte im Ausschnitt dekodieren und an Zielposition ablegen
+        final float[] lValues = new float[(w[2] - w[0] + 1) * (w[3] - w[1] + 1)];
+        this.runChunks(nChunks, new ChunkTask() {
+            public Object run(int c) {
+                if (lFirst[c + 1] > lFromValue && lFirst[c] < lToValue)
+                    parseValues(b, lBegin[c], lBegin[c + 1], lFirst[c], w, lToValue, lValues);
+                return null;
+            }
+        });
+
+        return new ArrayElevationTile(
+            w[3] - w[1] + 1, w[2] - w[0] + 1, mXMin + w[1] * mDeltaX, mYMin + w[0] * mDeltaY, mDeltaX, mDeltaY,
+            lValues);
+    }
+
+    private byte[] load(String pFilename)
+    {
+        RandomAccessFile lFile = null;
+        try {
+            lFile = new RandomAccessFile(pFilename, "r");
+            long lLen = lFile.length();
+            if (lLen > Integer.MAX_VALUE)
+                throw new T3dException("ArcInfo ASCII grid \"" + pFilename + "\" is too large.");
+            byte[] lBuf = new byte[(int) lLen];
+            lFile.readFully(lBuf);
+            return lBuf;
+        }
+        catch (FileNotFoundException e) {
+            throw new T3dException("Could not open file \"" + pFilename + "\".");
+        }
+        catch (IOException e) {
+            throw new T3dException("Could not read file \"" + pFilename + "\": " + e.getMessage());
+        }
+        finally {
+            if (lFile != null) {
+                try {
+                    lFile.close();
+                }
+                catch (IOException e) {}
+            }
+        }
+    }
+
+    private int parseHeader(byte[] pBuf)
+    {
+        mCols = mRows = -1;
+        mXMin = mYMin = mDeltaX = mDeltaY = Double.NaN;
+        mNoData = Double.NaN;
+
+        int p = 0;
+        while (p < pBuf.length) {
+            int lLineStart = p;
+            while (p < pBuf.length && isBlank(pBuf[p]))
+                p++;
+            if (p >= pBuf.length || !Character.isLetter((char) pBuf[p])) {
+                p = lLineStart;
+                break; // Beginn des Datenteils
+            }
+            int lLineEnd = p;
+            while (lLineEnd < pBuf.length && pBuf[lLineEnd] != '\n')
+                lLineEnd++;
+            String[] lTok = new String(pBuf, p, lLineEnd - p).trim().split("\\s+");
+            if (lTok.length != 2)
+                throw new T3dException("Invalid ArcInfo ASCII grid header line \"" + lTok[0] + "...\".");
+            String lKey = lTok[0].toLowerCase();
+            try {
+                if (lKey.equals("ncols")) mCols = Integer.parseInt(lTok[1]);
+                if (lKey.equals("nrows")) mRows = Integer.parseInt(lTok[1]);
+                if (lKey.startsWith("xll")) mXMin = Double.parseDouble(lTok[1]);
+                if (lKey.startsWith("yll")) mYMin = Double.parseDouble(lTok[1]);
+                if (lKey.equals("cellsize")) { mDeltaX = Double.parseDouble(lTok[1]); mDeltaY = mDeltaX; }
+                if (lKey.equals("dx")) mDeltaX = Double.parseDouble(lTok[1]);
+                if (lKey.equals("dy")) mDeltaY = Double.parseDouble(lTok[1]);
+                if (lKey.equals("nodata_value")) mNoData = Double.parseDouble(lTok[1]);
+            }
+            catch (NumberFormatException e) {
+                throw new T3dException("Invalid ArcInfo ASCII grid header: " + e.getMessage());
+            }
+            p = lLineEnd + 1;
+        }
+        if (mCols <= 0 || mRows <= 0 || Double.isNaN(mXMin) || Double.isNaN(mYMin)
+            || Double.isNaN(mDeltaX) || Double.isNaN(mDeltaY))
+            throw new T3dException("Incomplete ArcInfo ASCII grid header.");
+        if (((long) mCols) * mRows > Integer.MAX_VALUE)
+            throw new T3dException("ArcInfo ASCII grid is too large.");
+        return Math.min(p, pBuf.length);
+    }
+
+    private static boolean isBlank(byte c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == ',';
+    }
+
+    private static int countValues(byte[] pBuf, int pFrom, int pTo)
+    {
+        int ct = 0;
+        boolean lInToken = false;
+        for (int p = pFrom; p < pTo; p++) {
+            boolean lBlank = isBlank(pBuf[p]);
+            if (!lBlank && !lInToken)
+                ct++;
+            lInToken = !lBlank;
+        }
+        return ct;
+    }
+
+    private void parseValues(
+        byte[] pBuf, int pFrom, int pTo, int pFirst, int[] pWindow, int pToValue, float[] pValues)
+    {
+        int r0 = pWindow[0], c0 = pWindow[1], r1 = pWindow[2], c1 = pWindow[3];
+        int lCols = c1 - c0 + 1;
+        int k = pFirst;
+        int p = pFrom;
+        while (k < pToValue) {
+            while (p < pTo && isBlank(pBuf[p]))
+                p++;
+            if (p >= pTo)
+                break;
+            int lEnd = p;
+            while (lEnd < pTo && !isBlank(pBuf[lEnd]))
+                lEnd++;
+
+            // Dateizeile 0 ist die noerdlichste Gitterzeile; Werte ausserhalb des Ausschnitts nur ueberspringen:
+            int i = mRows - 1 - k / mCols, j = k % mCols;
+            if (i >= r0 && i <= r1 && j >= c0 && j <= c1) {
+                double z = parseDouble(pBuf, p, lEnd);
+                pValues[(i - r0) * lCols + (j - c0)] = (z == mNoData) ? Float.NaN : (float) z;
+            }
+            k++;
+            p = lEnd;
+        }
+    }
+
+    /**
+     * decodes a decimal number. Numbers with more than 18 significant digits or with large exponents are passed
+     * to <tt>Double.parseDouble</tt>.
+     */
+    private static double parseDouble(byte[] pBuf, int pFrom, int pTo)
+    {
+        int p = pFrom;
+        boolean lNeg = false;
+        if (pBuf[p] == '-' || pBuf[p] == '+') {
+            lNeg = pBuf[p] == '-';
+            p++;
+        }
+        long lMant = 0;
+        int lDigits = 0, lExp = 0;
+        boolean lAny = false;
+        while (p < pTo && pBuf[p] >= '0' && pBuf[p] <= '9') {
+            if (lMant != 0 || pBuf[p] != '0')
+                lDigits++;
+            lMant = lMant * 10 + (pBuf[p++] - '0');
+            lAny = true;
+        }
+        if (p < pTo && pBuf[p] == '.') {
+            p++;
+            while (p < pTo && pBuf[p] >= '0' && pBuf[p] <= '9') {
+                if (lMant != 0 || pBuf[p] != '0')
+                    lDigits++;
+                lMant = lMant * 10 + (pBuf[p++] - '0');
+                lExp--;
+                lAny = true;
+            }
+        }
+        if (lAny && p < pTo && (pBuf[p] == 'e' || pBuf[p] == 'E')) {
+            p++;
+            boolean lExpNeg = false;
+            if (p < pTo && (pBuf[p] == '-' || pBuf[p] == '+')) {
+                lExpNeg = pBuf[p] == '-';
+                p++;
+            }
+            int e = 0;
+            boolean lExpAny = false;
+            while (p < pTo && pBuf[p] >= '0' && pBuf[p] <= '9' && e < 10000) {
+                e = e * 10 + (pBuf[p++] - '0');
+                lExpAny = true;
+            }
+            if (!lExpAny)
+                lAny = false;
+            lExp += lExpNeg ? -e : e;
+        }
+        if (!lAny || p != pTo)
+            throw new T3dException("Invalid value \"" + new String(pBuf, pFrom, pTo - pFrom)
+                + "\" in ArcInfo ASCII grid.");
+
+        if (lDigits > 18 || lMant >= (1L << 53) || lExp < -22 || lExp > 22)
+            return Double.parseDouble(new String(pBuf, pFrom, pTo - pFrom));
+        // Mantisse und Zehnerpotenz sind exakt darstellbar, das Ergebnis ist daher korrekt gerundet:
+        double z = (lExp < 0) ? lMant / sPow10[-lExp] : lMant * sPow10[lExp];
+        return lNeg ? -z : z;
+    }
+
+    private interface ChunkTask
+    {
+        public Object run(int pChunk);
+    }
+
+    private Object[] runChunks(int pChunks, final ChunkTask pTask)
+    {
+        Object[] lRes = new Object[pChunks];
+        // Abschnitte 1 bis n-1 im Pool, Abschnitt 0 im aufrufenden Thread verarbeiten:
+        Future[] lFutures = new Future[pChunks];
+        for (int c = 1; c < pChunks; c++) {
+            final int lChunk = c;
+            lFutures[c] = ParallelGridFiller.getPool().submit(new Callable() {
+                public Object call() {
+                    return pTask.run(lChunk);
+                }
+            });
+        }
+        try {
+            lRes[0] = pTask.run(0);
+            for (int c = 1; c < pChunks; c++)
+                lRes[c] = result(lFutures[c]);
+        }
+        finally {
+            for (int c = 1; c < pChunks; c++)
+                lFutures[c].cancel(false);
+        }
+        return lRes;
+    }
+
+    private static Object result(Future pFuture)
+    {
+        try {
+            return pFuture.get();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new T3dException("Could not read ArcInfo ASCII grid: " + e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new T3dException("Interrupted while reading ArcInfo ASCII grid.");
+        }
+    }
+}
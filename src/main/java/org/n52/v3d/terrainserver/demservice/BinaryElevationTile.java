@@ -0,0 +1,226 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Elevation tile held in the terrainServer's binary tile format.<br /><br />
+ * <i>German:</i> Quellkachel im bin&auml;ren Kachelformat des terrainServers. Die Datei wird &uuml;ber
+ * <tt>FileChannel.map</tt> in den Speicher eingeblendet, so dass ein Kachelzugriff nur noch auf den Seiten-Cache des
+ * Betriebssystems zugreift, statt das ASCII-Grid vollst&auml;ndig zu parsen.<br />
+ * Aufbau einer Kacheldatei (Byte-Reihenfolge little-endian):
+ * <pre>
+ *  0  Kennung "DGMB"
+ *  4  int    Formatversion
+ *  8  int    Anzahl Spalten
+ * 12  int    Anzahl Zeilen
+ * 16  double x-Koordinate der Spalte 0
+ * 24  double y-Koordinate der Zeile 0
+ * 32  double Gitterweite in x-Richtung
+ * 40  double Gitterweite in y-Richtung
+ * 48  int    Datentyp (1 = float32, 2 = int16)
+ * 52  float  Skalierungsfaktor (nur int16)
+ * 56  float  Offset (nur int16)
+ * 60  int    reserviert
+ * 64  Werte zeilenweise, beginnend mit Zeile 0 (S&uuml;drand)
+ * </pre>
+ * Nicht belegte Gitterpunkte werden als <tt>NaN</tt> (float32) bzw. <tt>Short.MIN_VALUE</tt> (int16) abgelegt.
+ * @see BinaryTileWriter
+ */
+public class BinaryElevationTile implements ElevationTile
+{
+    /** Datentyp 32-Bit-Gleitkommazahl */
+    public static final short sFloat32 = 1;
+    /** Datentyp 16-Bit-Ganzzahl mit Skalierungsfaktor und Offset */
+    public static final short sInt16 = 2;
+
+    static final byte[] sMagic = {'D', 'G', 'M', 'B'};
+    static final int sVersion = 1;
+    static final int sHeaderSize = 64;
+    static final short sInt16NoData = Short.MIN_VALUE;
+
+    private ByteBuffer mBuf;
+    private int mCols, mRows;
+    private double mXMin, mYMin, mDeltaX, mDeltaY;
+    private short mDataType;
+    private int mBytesPerValue;
+    private float mScale, mOffset;
+
+    /**
+     * Constructor. The given buffer has to contain a complete tile (header and values).<br /><br />
+     * <i>German:</i> Konstruktor. Der angegebene Puffer muss eine vollst&auml;ndige Kachel (Kopf und Werte)
+     * enthalten.
+     * @param pBuf Puffer (z. B. <tt>MappedByteBuffer</tt> oder Direct-Buffer)
+     * @throws T3dException falls der Puffer keine g&uuml;ltige Kachel enth&auml;lt
+     */
+    public BinaryElevationTile(ByteBuffer pBuf)
+    {
+        mBuf = pBuf.duplicate();
+        mBuf.order(ByteOrder.LITTLE_ENDIAN);
+        if (mBuf.capacity() < sHeaderSize)
+            throw new T3dException("Invalid binary tile (missing header).");
+        for (int i = 0; i < sMagic.length; i++) {
+            if (mBuf.get(i) != sMagic[i])
+                throw new T3dException("Invalid binary tile (unknown file signature).");
+        }
+        if (mBuf.getInt(4) != sVersion)
+            throw new T3dException("Unsupported binary tile version " + mBuf.getInt(4) + ".");
+        mCols = mBuf.getInt(8);
+        mRows = mBuf.getInt(12);
+        mXMin = mBuf.getDouble(16);
+        mYMin = mBuf.getDouble(24);
+        mDeltaX = mBuf.getDouble(32);
+        mDeltaY = mBuf.getDouble(40);
+        mDataType = (short) mBuf.getInt(48);
+        mScale = mBuf.getFloat(52);
+        mOffset = mBuf.getFloat(56);
+        switch (mDataType) {
+            case sFloat32: mBytesPerValue = 4; break;
+            case sInt16: mBytesPerValue = 2; break;
+            default:
+                throw new T3dException("Unsupported binary tile data type " + mDataType + ".");
+        }
+        if (mBuf.capacity() < sHeaderSize + ((long) mCols) * mRows * mBytesPerValue)
+            throw new T3dException("Invalid binary tile (truncated data).");
+    }
+
+    /**
+     * maps the given binary tile file into memory.<br /><br />
+     * <i>German:</i> blendet die angegebene Kacheldatei in den Speicher ein.
+     * @param pFilename Dateiname (inkl. Pfad)
+     * @return Kachel
+     * @throws T3dException falls die Datei nicht gelesen werden kann
+     */
+    public static BinaryElevationTile map(String pFilename)
+    {
+        RandomAccessFile lFile = null;
+        try {
+            lFile = new RandomAccessFile(new File(pFilename), "r");
+            FileChannel lChannel = lFile.getChannel();
+            // Die Einblendung bleibt auch nach dem Schliessen des Kanals gueltig:
+            ByteBuffer lBuf = lChannel.map(FileChannel.MapMode.READ_ONLY, 0, lChannel.size());
+            return new BinaryElevationTile(lBuf);
+        }
+        catch (IOException e) {
+            throw new T3dException("Could not map binary tile \"" + pFilename + "\": " + e.getMessage());
+        }
+        finally {
+            if (lFile != null) {
+                try {
+                    lFile.close();
+                }
+                catch (IOException e) {}
+            }
+        }
+    }
+
+    /**
+     * returns the file name of the given overview level of a binary tile, e.g. "dgm3517_4.bin" for level 4 of
+     * "dgm3517.bin".<br /><br />
+     * <i>German:</i> liefert den Dateinamen der angegebenen &Uuml;bersichtsstufe einer bin&auml;ren Kachel, z. B.
+     * "dgm3517_4.bin" f&uuml;r die Stufe 4 (vierfache Gitterweite) der Kachel "dgm3517.bin".
+     * @param pFilename Dateiname der Kachel in voller Aufl&ouml;sung (inkl. Pfad)
+     * @param pLevel Stufe (2, 4, 8, ...; 1 f&uuml;r volle Aufl&ouml;sung)
+     * @return Dateiname der &Uuml;bersichtsstufe
+     */
+    public static String overviewFilename(String pFilename, int pLevel)
+    {
+        if (pLevel <= 1)
+            return pFilename;
+        int lDot = pFilename.lastIndexOf('.');
+        if (lDot < 0 || lDot < pFilename.lastIndexOf('/') || lDot < pFilename.lastIndexOf('\\'))
+            return pFilename + "_" + pLevel;
+        return pFilename.substring(0, lDot) + "_" + pLevel + pFilename.substring(lDot);
+    }
+
+    /**
+     * returns the data type of the stored values.<br /><br />
+     * <i>German:</i> liefert den Datentyp der abgelegten Werte.
+     * @return <tt>sFloat32</tt> oder <tt>sInt16</tt>
+     */
+    public short getDataType() {
+        return mDataType;
+    }
+
+    /**
+     * returns the number of bytes occupied by the tile.<br /><br />
+     * <i>German:</i> liefert die Gr&ouml;&szlig;e der Kachel in Bytes.
+     * @return Anzahl Bytes
+     */
+    public long byteSize() {
+        return sHeaderSize + ((long) mCols) * mRows * mBytesPerValue;
+    }
+
+    public int numberOfRows() {
+        return mRows;
+    }
+
+    public int numberOfColumns() {
+        return mCols;
+    }
+
+    public double getXMin() {
+        return mXMin;
+    }
+
+    public double getYMin() {
+        return mYMin;
+    }
+
+    public double getDeltaX() {
+        return mDeltaX;
+    }
+
+    public double getDeltaY() {
+        return mDeltaY;
+    }
+
+    public boolean isSet(int pRow, int pCol)
+    {
+        int lPos = this.position(pRow, pCol);
+        if (mDataType == sFloat32)
+            return !Float.isNaN(mBuf.getFloat(lPos));
+        return mBuf.getShort(lPos) != sInt16NoData;
+    }
+
+    public double getValue(int pRow, int pCol)
+    {
+        int lPos = this.position(pRow, pCol);
+        if (mDataType == sFloat32)
+            return mBuf.getFloat(lPos);
+        return mBuf.getShort(lPos) * mScale + mOffset;
+    }
+
+    private int position(int pRow, int pCol)
+    {
+        if (pRow < 0 || pRow >= mRows || pCol < 0 || pCol >= mCols)
+            throw new T3dException("Tile index (" + pRow + ", " + pCol + ") out of range.");
+        // Absolute Zugriffe veraendern die Pufferposition nicht und sind daher auch nebenlaeufig moeglich.
+        return sHeaderSize + (pRow * mCols + pCol) * mBytesPerValue;
+    }
+}
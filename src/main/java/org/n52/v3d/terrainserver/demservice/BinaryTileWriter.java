@@ -0,0 +1,403 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Writer for the terrainServer's binary tile format.<br /><br />
+ * <i>German:</i> Writer f&uuml;r das bin&auml;re Kachelformat des terrainServers (siehe
+ * <tt>BinaryElevationTile</tt>).<br />
+ * &Uuml;ber die Methode <tt>main</tt> l&auml;sst sich ein vorhandener Quelldatenbestand einmalig konvertieren. Dazu
+ * werden unterhalb des angegebenen Verzeichnisses (Servlet-Parameter "SourceGridPath") alle Dateien
+ * <tt>&lt;TileLocator&gt;/&lt;srs&gt;/dgm&lt;MM&gt;&lt;NN&gt;.asc</tt> gelesen und als
+ * <tt>dgm&lt;MM&gt;&lt;NN&gt;.bin</tt> im selben Verzeichnis abgelegt. Zus&auml;tzlich werden
+ * &Uuml;bersichtsstufen mit 2-, 4-, 8-facher (usw.) Gitterweite als <tt>dgm&lt;MM&gt;&lt;NN&gt;_2.bin</tt>,
+ * <tt>dgm&lt;MM&gt;&lt;NN&gt;_4.bin</tt>, ... erzeugt (Voreinstellung: 3 Stufen):
+ * <pre>
+ * java org.n52.v3d.terrainserver.demservice.BinaryTileWriter &lt;SourceGridPath&gt; [-int16] [-overviews &lt;n&gt;]
+ * </pre>
+ * Dies ist der vorgesehene Weg zum Aufbau des Kachelbestands. Die Servlet-Option "BuildBinaryTiles", die fehlende
+ * Kacheln beim ersten Zugriff im Anfrage-Thread erzeugt, ist standardm&auml;&szlig;ig deaktiviert, da sie
+ * Schreibzugriff auf das Quelldatenverzeichnis erfordert.
+ */
+public class BinaryTileWriter
+{
+    private short mDataType = BinaryElevationTile.sFloat32;
+    private int mOverviews = 3;
+
+    /**
+     * sets the data type used to store the elevation values.<br /><br />
+     * <i>German:</i> setzt den Datentyp f&uuml;r die Ablage der H&ouml;henwerte. Voreinstellung ist
+     * <tt>BinaryElevationTile.sFloat32</tt>.
+     * @param pDataType <tt>BinaryElevationTile.sFloat32</tt> oder <tt>BinaryElevationTile.sInt16</tt>
+     */
+    public void setDataType(short pDataType)
+    {
+        if (pDataType != BinaryElevationTile.sFloat32 && pDataType != BinaryElevationTile.sInt16)
+            throw new T3dException("Unsupported binary tile data type " + pDataType + ".");
+        mDataType = pDataType;
+    }
+
+    /**
+     * sets the number of overview levels written by <tt>this.writeOverviews()</tt>.<br /><br />
+     * <i>German:</i> setzt die Anzahl der von <tt>this.writeOverviews()</tt> erzeugten &Uuml;bersichtsstufen.
+     * @param pLevels Anzahl Stufen (Voreinstellung: 3, d. h. Stufen 2, 4 und 8; 0 f&uuml;r keine &Uuml;bersichten)
+     */
+    public void setOverviewLevels(int pLevels) {
+        mOverviews = Math.max(0, pLevels);
+    }
+
+    /**
+     * checks if the given binary tile (or overview) may be used instead of the corresponding ASCII grid.<br /><br />
+     * <i>German:</i> pr&uuml;ft, ob die angegebene bin&auml;re Kachel (bzw. &Uuml;bersichtsstufe) anstelle des
+     * zugeh&ouml;rigen ASCII-Grids verwendet werden darf. Dies ist der Fall, wenn die Datei existiert und nicht
+     * &auml;lter als das ASCII-Grid ist; fehlt das ASCII-Grid, ist die bin&auml;re Kachel ma&szlig;geblich.
+     * @param pBinFile Dateiname der bin&auml;ren Kachel bzw. &Uuml;bersichtsstufe
+     * @param pAscFile Dateiname des ASCII-Grids
+     * @return <i>true</i>, falls die bin&auml;re Datei aktuell ist
+     */
+    public static boolean isUpToDate(String pBinFile, String pAscFile)
+    {
+        File fBin = new File(pBinFile), fAsc = new File(pAscFile);
+        return fBin.exists() && (!fAsc.exists() || fBin.lastModified() >= fAsc.lastModified());
+    }
+
+    /**
+     * returns the number of bytes needed to store the given tile.<br /><br />
+     * <i>German:</i> liefert den Speicherbedarf der angegebenen Kachel in Bytes.
+     * @param pTile Kachel
+     * @return Anzahl Bytes
+     */
+    public long requiredBytes(ElevationTile pTile) {
+        return BinaryElevationTile.sHeaderSize + ((long) pTile.numberOfRows()) * pTile.numberOfColumns() * this.bytesPerValue();
+    }
+
+    /**
+     * writes the given tile into a buffer, starting at position 0.<br /><br />
+     * <i>German:</i> schreibt die angegebene Kachel ab Position 0 in einen Puffer.
+     * @param pTile Kachel
+     * @param pBuf Zielpuffer mit mindestens <tt>this.requiredBytes(pTile)</tt> Bytes Kapazit&auml;t
+     * @return Kachel mit <tt>pBuf</tt> als Datenbasis
+     */
+    public BinaryElevationTile writeToBuffer(ElevationTile pTile, ByteBuffer pBuf)
+    {
+        ByteBuffer lBuf = pBuf.duplicate();
+        lBuf.order(ByteOrder.LITTLE_ENDIAN);
+        lBuf.clear();
+        float[] lScaleOffset = this.scaleAndOffset(pTile);
+        this.putHeader(lBuf, pTile, lScaleOffset);
+        for (int i = 0; i < pTile.numberOfRows(); i++)
+            this.putRow(lBuf, pTile, i, lScaleOffset);
+        return new BinaryElevationTile(pBuf);
+    }
+
+    /**
+     * writes the given tile to a file. The file is written under a temporary name first and renamed afterwards, so
+     * that concurrent readers never see incomplete tiles.<br /><br />
+     * <i>German:</i> schreibt die angegebene Kachel in eine Datei. Die Datei wird zun&auml;chst unter einem
+     * tempor&auml;ren Namen geschrieben und anschlie&szlig;end umbenannt, so dass nebenl&auml;ufige Leser keine
+     * unvollst&auml;ndigen Kacheln sehen.
+     * @param pTile Kachel
+     * @param pFilename Zieldateiname (inkl. Pfad)
+     * @throws T3dException falls die Datei nicht geschrieben werden kann
+     */
+    public void writeToFile(ElevationTile pTile, String pFilename)
+    {
+        File lDest = new File(pFilename);
+        File lTmp = new File(pFilename + "." + Thread.currentThread().getId() + ".tmp");
+        FileOutputStream lOut = null;
+        try {
+            lOut = new FileOutputStream(lTmp);
+            this.writeTo(lOut.getChannel(), pTile);
+            lOut.close();
+            lOut = null;
+
+            if (!lTmp.renameTo(lDest)) {
+                // z. B. unter Windows, falls die Zieldatei bereits (durch eine nebenlaeufige Anfrage) erzeugt wurde
+                lDest.delete();
+                if (!lTmp.renameTo(lDest))
+                    throw new T3dException("Could not rename \"" + lTmp + "\" to \"" + lDest + "\".");
+            }
+        }
+        catch (IOException e) {
+            throw new T3dException("Could not write binary tile \"" + pFilename + "\": " + e.getMessage());
+        }
+        finally {
+            if (lOut != null) {
+                try {
+                    lOut.close();
+                }
+                catch (IOException e) {}
+            }
+            if (lTmp.exists())
+                lTmp.delete();
+        }
+    }
+
+    /**
+     * writes the given tile to an output stream (e.g. a servlet response). The stream will not be closed.<br /><br />
+     * <i>German:</i> schreibt die angegebene Kachel in einen Ausgabestrom (z. B. die Servlet-Antwort). Der Strom wird
+     * nicht geschlossen.
+     * @param pTile Kachel
+     * @param pOut Ausgabestrom
+     * @throws IOException bei Schreibfehlern
+     */
+    public void writeToStream(ElevationTile pTile, OutputStream pOut) throws IOException {
+        this.writeTo(Channels.newChannel(pOut), pTile);
+    }
+
+    /**
+     * writes the header of a float32 tile of the given geometry to an output stream. The rows have to be written
+     * afterwards by <tt>this.writeRowsToStream()</tt>, beginning with the southern row.<br /><br />
+     * <i>German:</i> schreibt den Kopf einer float32-Kachel der angegebenen Geometrie in einen Ausgabestrom. Die
+     * Zeilen sind anschlie&szlig;end &uuml;ber <tt>this.writeRowsToStream()</tt> beginnend mit der s&uuml;dlichsten
+     * Zeile zu schreiben (bandweise Ausgabe gro&szlig;er Modelle).
+     * @param pCols Anzahl Spalten
+     * @param pRows Anzahl Zeilen
+     * @param pXMin x-Koordinate der Spalte 0
+     * @param pYMin y-Koordinate der Zeile 0
+     * @param pDeltaX Gitterweite in x-Richtung
+     * @param pDeltaY Gitterweite in y-Richtung
+     * @param pOut Ausgabestrom
+     * @throws IOException bei Schreibfehlern
+     * @throws T3dException falls als Datentyp nicht float32 eingestellt ist
+     */
+    public void writeHeaderToStream(
+        int pCols, int pRows, double pXMin, double pYMin, double pDeltaX, double pDeltaY, OutputStream pOut)
+        throws IOException
+    {
+        if (mDataType != BinaryElevationTile.sFloat32)
+            throw new T3dException("Band-wise output requires data type float32.");
+        ByteBuffer lBuf = ByteBuffer.allocate(BinaryElevationTile.sHeaderSize);
+        lBuf.order(ByteOrder.LITTLE_ENDIAN);
+        this.putHeader(lBuf, pCols, pRows, pXMin, pYMin, pDeltaX, pDeltaY, new float[] {1.f, 0.f});
+        pOut.write(lBuf.array(), 0, lBuf.position());
+    }
+
+    /**
+     * writes all rows of the given tile (band) to an output stream, beginning with row 0.<br /><br />
+     * <i>German:</i> schreibt alle Zeilen der angegebenen Kachel (eines Bandes) beginnend mit Zeile 0 in einen
+     * Ausgabestrom (vgl. <tt>this.writeHeaderToStream()</tt>).
+     * @param pTile Kachel bzw. Band
+     * @param pOut Ausgabestrom
+     * @throws IOException bei Schreibfehlern
+     */
+    public void writeRowsToStream(ElevationTile pTile, OutputStream pOut) throws IOException
+    {
+        float[] lScaleOffset = {1.f, 0.f};
+        ByteBuffer lBuf = ByteBuffer.allocate(pTile.numberOfColumns() * this.bytesPerValue());
+        lBuf.order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < pTile.numberOfRows(); i++) {
+            lBuf.clear();
+            this.putRow(lBuf, pTile, i, lScaleOffset);
+            pOut.write(lBuf.array(), 0, lBuf.position());
+        }
+    }
+
+    private void writeTo(WritableByteChannel pChannel, ElevationTile pTile) throws IOException
+    {
+        float[] lScaleOffset = this.scaleAndOffset(pTile);
+
+        // Zeilenweise schreiben, damit fuer grosse Kacheln kein Puffer in voller Groesse noetig ist:
+        ByteBuffer lBuf = ByteBuffer.allocate(
+            Math.max(BinaryElevationTile.sHeaderSize, pTile.numberOfColumns() * this.bytesPerValue()));
+        lBuf.order(ByteOrder.LITTLE_ENDIAN);
+        this.putHeader(lBuf, pTile, lScaleOffset);
+        lBuf.flip();
+        while (lBuf.hasRemaining())
+            pChannel.write(lBuf);
+        for (int i = 0; i < pTile.numberOfRows(); i++) {
+            lBuf.clear();
+            this.putRow(lBuf, pTile, i, lScaleOffset);
+            lBuf.flip();
+            while (lBuf.hasRemaining())
+                pChannel.write(lBuf);
+        }
+    }
+
+    /**
+     * writes the overview levels 2, 4, 8, ... of the given tile. Each level is derived from the preceding one (see
+     * <tt>OverviewTile</tt>).<br /><br />
+     * <i>German:</i> schreibt die &Uuml;bersichtsstufen 2, 4, 8, ... der angegebenen Kachel. Jede Stufe wird aus der
+     * vorhergehenden abgeleitet (siehe <tt>OverviewTile</tt>); die Dateinamen ergeben sich &uuml;ber
+     * <tt>BinaryElevationTile.overviewFilename()</tt>. Die Erzeugung endet vorzeitig, sobald eine Stufe nur noch
+     * einen Gitterpunkt in einer Richtung besitzt.
+     * @param pTile Kachel in voller Aufl&ouml;sung
+     * @param pFilename Dateiname der Kachel in voller Aufl&ouml;sung (inkl. Pfad)
+     * @return Anzahl geschriebener Stufen
+     * @throws T3dException falls eine Datei nicht geschrieben werden kann
+     */
+    public int writeOverviews(ElevationTile pTile, String pFilename)
+    {
+        ElevationTile lTile = pTile;
+        int lLevel = 1, ct = 0;
+        for (int k = 0; k < mOverviews; k++) {
+            if (lTile.numberOfRows() < 3 || lTile.numberOfColumns() < 3)
+                break;
+            // Stufe zwischenspeichern, damit die naechste Stufe nicht erneut ueber alle Stufen filtert:
+            ElevationTile lOverview = new OverviewTile(lTile);
+            BinaryElevationTile lBuf = this.writeToBuffer(
+                lOverview, ByteBuffer.allocate((int) this.requiredBytes(lOverview)));
+            lLevel *= 2;
+            this.writeToFile(lBuf, BinaryElevationTile.overviewFilename(pFilename, lLevel));
+            lTile = lBuf;
+            ct++;
+        }
+        return ct;
+    }
+
+    private int bytesPerValue() {
+        return mDataType == BinaryElevationTile.sInt16 ? 2 : 4;
+    }
+
+    private float[] scaleAndOffset(ElevationTile pTile)
+    {
+        if (mDataType != BinaryElevationTile.sInt16)
+            return new float[] {1.f, 0.f};
+
+        double lMin = Double.MAX_VALUE, lMax = -Double.MAX_VALUE;
+        for (int i = 0; i < pTile.numberOfRows(); i++) {
+            for (int j = 0; j < pTile.numberOfColumns(); j++) {
+                if (pTile.isSet(i, j)) {
+                    double z = pTile.getValue(i, j);
+                    if (z < lMin) lMin = z;
+                    if (z > lMax) lMax = z;
+                }
+            }
+        }
+        if (lMin > lMax) // keine belegten Gitterpunkte
+            return new float[] {1.f, 0.f};
+        // Wertebereich auf [-32000, 32000] abbilden, Short.MIN_VALUE bleibt fuer NODATA reserviert:
+        float lScale = (float) ((lMax - lMin) / 64000.);
+        if (lScale <= 0.f)
+            lScale = 1.f;
+        return new float[] {lScale, (float) (0.5 * (lMin + lMax))};
+    }
+
+    private void putHeader(ByteBuffer pBuf, ElevationTile pTile, float[] pScaleOffset)
+    {
+        this.putHeader(pBuf, pTile.numberOfColumns(), pTile.numberOfRows(),
+            pTile.getXMin(), pTile.getYMin(), pTile.getDeltaX(), pTile.getDeltaY(), pScaleOffset);
+    }
+
+    private void putHeader(
+        ByteBuffer pBuf, int pCols, int pRows, double pXMin, double pYMin, double pDeltaX, double pDeltaY,
+        float[] pScaleOffset)
+    {
+        pBuf.put(BinaryElevationTile.sMagic);
+        pBuf.putInt(BinaryElevationTile.sVersion);
+        pBuf.putInt(pCols);
+        pBuf.putInt(pRows);
+        pBuf.putDouble(pXMin);
+        pBuf.putDouble(pYMin);
+        pBuf.putDouble(pDeltaX);
+        pBuf.putDouble(pDeltaY);
+        pBuf.putInt(mDataType);
+        pBuf.putFloat(pScaleOffset[0]);
+        pBuf.putFloat(pScaleOffset[1]);
+        pBuf.putInt(0);
+    }
+
+    private void putRow(ByteBuffer pBuf, ElevationTile pTile, int pRow, float[] pScaleOffset)
+    {
+        for (int j = 0; j < pTile.numberOfColumns(); j++) {
+            boolean lSet = pTile.isSet(pRow, j);
+            if (mDataType == BinaryElevationTile.sFloat32)
+                pBuf.putFloat(lSet ? (float) pTile.getValue(pRow, j) : Float.NaN);
+            else {
+                if (lSet)
+                    pBuf.putShort((short) Math.round((pTile.getValue(pRow, j) - pScaleOffset[1]) / pScaleOffset[0]));
+                else
+                    pBuf.putShort(BinaryElevationTile.sInt16NoData);
+            }
+        }
+    }
+
+    /**
+     * converts all ArcInfo ASCII source grids below the given directory into binary tiles.<br /><br />
+     * <i>German:</i> konvertiert alle ArcInfo-ASCII-Quellgitter unterhalb des angegebenen Verzeichnisses in
+     * bin&auml;re Kacheln und erzeugt die zugeh&ouml;rigen &Uuml;bersichtsstufen. Bereits vorhandene, aktuelle
+     * Kacheln werden nicht erneut geschrieben.
+     * @param args Quellverzeichnis ("SourceGridPath"), optional "-int16" und "-overviews &lt;Anzahl Stufen&gt;"
+     */
+    public static void main(String[] args)
+    {
+        if (args.length < 1) {
+            System.out.println("Usage: BinaryTileWriter <SourceGridPath> [-int16] [-overviews <n>]");
+            return;
+        }
+        BinaryTileWriter lWriter = new BinaryTileWriter();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("-int16"))
+                lWriter.setDataType(BinaryElevationTile.sInt16);
+            if (args[i].equalsIgnoreCase("-overviews") && i + 1 < args.length)
+                lWriter.setOverviewLevels(Integer.parseInt(args[++i]));
+        }
+        int ct = lWriter.convertDirectory(new File(args[0]));
+        System.out.println(ct + " tile(s) converted.");
+    }
+
+    private int convertDirectory(File pDir)
+    {
+        int ct = 0;
+        File[] lFiles = pDir.listFiles();
+        if (lFiles == null)
+            return 0;
+        for (int i = 0; i < lFiles.length; i++) {
+            File f = lFiles[i];
+            if (f.isDirectory()) {
+                ct += this.convertDirectory(f);
+                continue;
+            }
+            String lName = f.getName();
+            if (!(lName.startsWith("dgm") && lName.endsWith(".asc")))
+                continue;
+            String lAsc = f.getPath();
+            String lBin = lAsc.substring(0, lAsc.length() - 3) + "bin";
+            boolean lUpToDate = isUpToDate(lBin, lAsc);
+            int lLevel = 1;
+            for (int k = 0; k < mOverviews && lUpToDate; k++) {
+                lLevel *= 2;
+                String lOvr = BinaryElevationTile.overviewFilename(lBin, lLevel);
+                // Stufen, die wegen zu kleiner Kachel nicht erzeugt wurden, fehlen zulaessigerweise:
+                if (new File(lOvr).exists() || k == 0)
+                    lUpToDate = isUpToDate(lOvr, lAsc);
+            }
+            if (lUpToDate)
+                continue;
+            System.out.println("Converting \"" + lAsc + "\"...");
+            ElevationTile lTile = new AsciiGridReader().readFromFile(lAsc);
+            this.writeToFile(lTile, lBin);
+            this.writeOverviews(lTile, lBin);
+            ct++;
+        }
+        return ct;
+    }
+}
@@ -19,7 +19,12 @@
  **************************************************************************************/
 package org.n52.v3d.terrainserver.demservice;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
 
 import org.n52.v3d.triturus.vgis.VgPoint;
 import org.n52.v3d.triturus.vgis.VgElevationGrid;
@@ -29,8 +34,6 @@ import org.n52.v3d.triturus.gisimplm.GmPoint;
 import org.n52.v3d.triturus.gisimplm.GmEnvelope;
 import org.n52.v3d.triturus.gisimplm.GmSimple2dGridGeometry;
 import org.n52.v3d.triturus.gisimplm.GmSimpleElevationGrid;
-import org.n52.v3d.triturus.gisimplm.FltPointSet2ElevationGrid;
-import org.n52.v3d.triturus.gisimplm.IoElevationGridReader;
 import org.n52.v3d.triturus.gisimplm.IoElevationGridWriter;
 import org.n52.v3d.triturus.survey.TKBlattLocator;
 import org.n52.v3d.triturus.survey.GaussKrugerTransformator;
@@ -53,8 +56,34 @@ public class DEMServiceHelpers
 {
     private boolean mLocalDebug = false; // kann f�r Debug-Zwecke gesetzt werden
 
+    private static final int sBandCells = 1 << 20; // Gitterpunkte je Band bei bandweiser Berechnung
+    private static final int sHaloCells = 2; // zusaetzliche Gitterpunkte fuer die bikubische Interpolation
+
     private double mMaxArea = 1000000000.;
     private String[] mMissingGridCells = null; // im Fehlerfall Information �ber nicht belegte Gitterzellen
+    private boolean mBuildBinaryTiles = false;
+    private String mInterpolation = GridResampler.sInverseDistance;
+    private int mParallelism = 1;
+    private TileManifest mTileManifest = null;
+    private ArrayList mSourceFiles = new ArrayList(); // Quelldateien der zuletzt gelesenen Kacheln
+    private double mTinMaxError = -1.; // < 0: keine TIN-Vereinfachung
+    private int mTinMaxTriangles = 0;
+    private String[] mLodUrls = null;
+    private ProgressListener mProgress = null;
+
+    /**
+     * Receiver of progress reports for long-running calculations.<br /><br />
+     * <i>German:</i> Empf&auml;nger von Fortschrittsmeldungen bei lang laufenden Berechnungen.
+     */
+    public interface ProgressListener
+    {
+        /**
+         * reports the progress of the current calculation.<br /><br />
+         * <i>German:</i> meldet den Fortschritt der aktuellen Berechnung.
+         * @param pFraction Anteil der erledigten Arbeit (0 bis 1)
+         */
+        public void progress(double pFraction);
+    }
 
     /**
      * Constructor.<br /><br />
@@ -131,74 +160,32 @@ public class DEMServiceHelpers
         String pFormat, String pSrcGrdPath, String pDestFilePath, String pTmpName)
     {
         // Kachelnummern (Blattnummern) ermitteln:
-        GmPoint lPnt3 = new GmPoint(pPnt1.getX(), pPnt2.getY(), 0.);
-        GmPoint lPnt4 = new GmPoint(pPnt2.getX(), pPnt1.getY(), 0.);
-        lPnt3.setSRS(pPnt1.getSRS());
-        lPnt4.setSRS(pPnt1.getSRS());
-        int[] blatt1 = this.getTileNumber(pPnt1, pTileLocator);
-        int[] blatt2 = this.getTileNumber(pPnt2, pTileLocator);
-        int[] blatt3 = this.getTileNumber(lPnt3, pTileLocator);
-        int[] blatt4 = this.getTileNumber(lPnt4, pTileLocator);
-        int bHiFrom, bHiTo, bLoFrom, bLoTo;
-        bHiFrom = this.min(blatt1[0], blatt2[0], blatt3[0], blatt4[0]);
-        bHiTo = this.max(blatt1[0], blatt2[0], blatt3[0], blatt4[0]);
-        bLoFrom = this.min(blatt1[1], blatt2[1], blatt3[1], blatt4[1]);
-        bLoTo = this.max(blatt1[1], blatt2[1], blatt3[1], blatt4[1]);
-        if (mLocalDebug) {
-            System.out.println("bHi: " + bHiFrom + "..." + bHiTo);
-            System.out.println("bLo: " + bLoFrom + "..." + bLoTo);
-        }
+        ArrayList lTileNumbers;
+        if (mTileManifest != null && mTileManifest.hasTiles(pTileLocator, pPnt1.getSRS()))
+            lTileNumbers = this.tileNumbersFromManifest(pPnt1, pPnt2, pTileLocator);
+        else
+            lTileNumbers = this.tileNumbers(pPnt1, pPnt2, pTileLocator);
+        int lLevel = this.overviewLevel(lTileNumbers, pCellSize, pSearchRadius, pSrcGrdPath, pPnt1.getSRS(), pTileLocator);
 
         // Zielgitter aufbauen:
-        if (Math.abs((pPnt2.getX() - pPnt1.getX()) * (pPnt2.getY() - pPnt1.getY())) > mMaxArea) {
+        // Da auf Stufe n nur jeder n-te Gitterpunkt gelesen wird, waechst die zulaessige Flaeche mit n^2.
+        double lMaxArea = mMaxArea * lLevel * lLevel;
+        if (Math.abs((pPnt2.getX() - pPnt1.getX()) * (pPnt2.getY() - pPnt1.getY())) > lMaxArea) {
             throw new T3dException(
-                "Destination grid size exceeds Service-internal size-limit (" + ((long) (mMaxArea/1.e6)) + ")! "
+                "Destination grid size exceeds Service-internal size-limit (" + ((long) (lMaxArea/1.e6)) + ")! "
                 + "Please scale-down your BBOX.", 200);
             // Sonst g�be es auch schnell einen OutOfMemory-Fehler, falls keine weitere Ma�nahmen veranlasst werden...
         }
         GmSimple2dGridGeometry lGrdGeom = this.constructDestinationGrid(pPnt1, pPnt2, pCellSize);
         if (mLocalDebug) System.out.println("Ziel-Gitter: " + lGrdGeom.toString());
 
-        // Quellgitterpunkte einlesen:
-        ArrayList lPointList = new ArrayList();
-        for (int hi = bHiFrom; hi <= bHiTo; hi++) {
-            for (int lo = bLoFrom; lo <= bLoTo; lo++) {
-                String filename = this.constructDEMFilename(hi, lo, pSrcGrdPath, pPnt1.getSRS(), pTileLocator);
-                if (mLocalDebug)
-                    System.out.println("Einlesen von Gitter \"" + filename + "\"...");
-                IoElevationGridReader lReader = new IoElevationGridReader("ArcIGrd");
-                GmSimpleElevationGrid lGrid;
-                try {
-                     lGrid = lReader.readFromFile(filename);
-                }
-                catch (T3dException e) {
-                    throw new T3dException("Missing elevation information "
-                        + "(" + TKBlattLocator.blattnummer(hi, lo) + ", " + pPnt1.getSRS() + ", " + filename + ").", 201);
-                }
-                // Gitterwerte traversieren und an lPointList h�ngen:
-                if (mLocalDebug)
-                    System.out.println("Aufbau der Punktliste...");
-                VgPoint vertex ;
-                for (int ii = 0; ii < lGrid.numberOfRows(); ii++) {
-                    for (int jj = 0; jj < lGrid.numberOfColumns(); jj++) {
-                        vertex = ((GmSimple2dGridGeometry) lGrid.getGeometry()).getVertexCoordinate(ii, jj);
-                        if (lGrid.isSet(ii, jj)) {
-                            vertex.setZ(lGrid.getValue(ii, jj));
-                            lPointList.add(vertex);
-                        }
-                    }
-                }
-            }
-        }
-
-        // Zielgitter mit Werten belegen:
-        if (mLocalDebug) System.out.println("Starte Gridding...");
-        GmSimpleElevationGrid lResGrid = this.gridding(lPointList, lGrdGeom, pSearchRadius);
-        if (mLocalDebug) System.out.println("Gridding beendet... " + lGrdGeom);
-        if (lResGrid == null)
-            throw new T3dException("Destination grid is null.");
-        if (!lResGrid.isSet()) // Anweisung redundant, da diese Exception bereits in this#gridding geworfen wird
-            throw new T3dException("Did not assign values to all grid cells.");
+        // Quellkacheln (parallel) einlesen, ASCII-Grids dabei nur im Zielgebiet zzgl. Randbereich (vgl. clipTiles()):
+        ArrayList lTiles = this.fetchTiles(
+            lTileNumbers, pSrcGrdPath, pPnt1.getSRS(), pTileLocator, lLevel,
+            pPnt1, pPnt2, this.clipHalo(pCellSize, pSearchRadius));
+        this.reportProgress(0.3);
+        GmSimpleElevationGrid lResGrid = this.computeGrid(lTiles, lGrdGeom, pPnt1, pPnt2, pCellSize, pSearchRadius);
+        this.reportProgress(0.9);
 
         if (pReturnFilename) {
             // Schreiben der Ergebnisdatei:
@@ -209,18 +196,8 @@ public class DEMServiceHelpers
             IoElevationGridWriter lGridWriter = new IoElevationGridWriter(dest);
             lGridWriter.setPrecisionXY(0);
             lGridWriter.setPrecisionZ(1);
-
-            if (dest.equalsIgnoreCase("Vrml2")) {
-                MpHypsometricColor colMapper = new MpSimpleHypsometricColor();
-                double elev[] = {30., 100., 300., 900.};
-                T3dColor cols[] = {
-                    new T3dColor(0.0f, 0.8f, 0.0f), // Gr�n
-                    new T3dColor(1.0f, 1.0f, 0.5f), // Blassgelb
-                    new T3dColor(0.78f, 0.27f, 0.0f), // Braun
-                    new T3dColor(0.82f, 0.2f, 0.0f)}; // R�tlichbraun
-                ((MpSimpleHypsometricColor) colMapper).setPalette(elev, cols, true);
-                lGridWriter.setHypsometricColorMapper(colMapper);
-            }
+            if (dest.equalsIgnoreCase("Vrml2"))
+                lGridWriter.setHypsometricColorMapper(this.colorMapper());
 
             lGridWriter.writeToFile(lResGrid, pOutput);
             return pOutput;
@@ -230,6 +207,516 @@ public class DEMServiceHelpers
         }
     }
 
+    // berechnet die Gitterwerte fuer die gegebene Zielgeometrie aus den Quellkacheln (ggf. bereits Ausschnitte,
+    // Elemente null werden ignoriert).
+    private GmSimpleElevationGrid computeGrid(
+        ArrayList pTiles, GmSimple2dGridGeometry pGrdGeom, VgPoint pPnt1, VgPoint pPnt2,
+        double pCellSize, double pSearchRadius)
+    {
+        // Nur die Kachelausschnitte im Zielgebiet (zzgl. Suchradius bzw. Interpolationsumgebung) verwenden:
+        pTiles = this.clipTiles(pTiles, pPnt1, pPnt2, this.clipHalo(pCellSize, pSearchRadius));
+
+        // Zielgitter mit Werten belegen:
+        GmSimpleElevationGrid lResGrid;
+        GridResampler lResampler = null;
+        if (GridResampler.isDirectMethod(mInterpolation)) {
+            lResampler = new GridResampler(mInterpolation);
+            lResampler.setParallelism(mParallelism);
+            if (!lResampler.isApplicable(pTiles))
+                lResampler = null; // Kacheln liegen nicht auf gemeinsamem Raster, daher Gridding
+        }
+        if (lResampler != null) {
+            if (mLocalDebug) System.out.println("Starte Interpolation (" + mInterpolation + ")...");
+            lResGrid = lResampler.resample(pTiles, pGrdGeom);
+            mMissingGridCells = null;
+            this.checkAssignment(lResGrid);
+            if (mLocalDebug) System.out.println("Interpolation beendet... " + pGrdGeom);
+        }
+        else {
+            PointStore lPoints = this.pointStore(pTiles);
+            if (mLocalDebug) System.out.println("Starte Gridding...");
+            lResGrid = this.gridding(lPoints, pGrdGeom, pSearchRadius);
+            if (mLocalDebug) System.out.println("Gridding beendet... " + pGrdGeom);
+        }
+        if (lResGrid == null)
+            throw new T3dException("Destination grid is null.");
+        if (!lResGrid.isSet()) // Anweisung redundant, da diese Exception bereits in this#gridding geworfen wird
+            throw new T3dException("Did not assign values to all grid cells.");
+        return lResGrid;
+    }
+
+    /**
+     * checks if results in the given format can be written directly to an output stream using
+     * <tt>this.writeDEM()</tt>.<br /><br />
+     * <i>German:</i> pr&uuml;ft, ob Ergebnisse im angegebenen Format mittels <tt>this.writeDEM()</tt> direkt in
+     * einen Ausgabestrom geschrieben werden k&ouml;nnen. Andernfalls ist die Variante von <tt>this.setUpDEM()</tt>
+     * mit Ergebnisdatei zu verwenden.
+     * @param pFormat Zielformat gem&auml;&szlig; Service-Capabilities
+     * @return <i>true</i>, falls Ausgabe als Strom m&ouml;glich
+     */
+    public boolean isStreamable(String pFormat) {
+        String dest = this.formatInfo(pFormat, "dest");
+        return GridStreamWriter.isSupported(dest) || this.writesTin(dest);
+    }
+
+    /**
+     * writes an elevation model calculated by <tt>this.setUpDEM()</tt> directly to the given output stream
+     * (e.g. the servlet response), i.e. without creating a temporary file.<br /><br />
+     * <i>German:</i> schreibt ein mittels <tt>this.setUpDEM()</tt> berechnetes H&ouml;henmodell direkt in den
+     * angegebenen Ausgabestrom (z. B. die Servlet-Antwort), ohne eine tempor&auml;re Datei anzulegen. Der Strom wird
+     * nicht geschlossen.
+     * @param pGrid H&ouml;henmodell
+     * @param pFormat Zielformat gem&auml;&szlig; Service-Capabilities
+     * @param pOut Ausgabestrom
+     * @throws IOException bei Schreibfehlern
+     * @see DEMServiceHelpers#isStreamable
+     */
+    public void writeDEM(VgElevationGrid pGrid, String pFormat, OutputStream pOut) throws IOException
+    {
+        String dest = this.formatInfo(pFormat, "dest");
+        if (mLocalDebug) System.out.println("Schreiben des Ergebnisses (" + dest + ")...");
+        GridStreamWriter lGridWriter = new GridStreamWriter(dest);
+        lGridWriter.setPrecisionXY(0);
+        lGridWriter.setPrecisionZ(1);
+        if (dest.equalsIgnoreCase("Vrml2"))
+            lGridWriter.setHypsometricColorMapper(this.colorMapper());
+        lGridWriter.setLevelOfDetail(mLodUrls);
+
+        if (this.writesTin(dest)) {
+            // Vereinfachtes Dreiecksnetz statt regelmaessigem Gitter ausgeben (reine TIN-Formate ohne Vorgabe
+            // verlustfrei, d. h. nur exakt in der Dreiecksebene liegende Gitterpunkte entfallen):
+            TinSimplifier lSimplifier = new TinSimplifier();
+            lSimplifier.setMaxError(this.simplifies() ? mTinMaxError : 0.);
+            lSimplifier.setMaxTriangles(mTinMaxTriangles);
+            TinSimplifier.Tin lTin = lSimplifier.simplify((GmSimpleElevationGrid) pGrid);
+            if (mLocalDebug)
+                System.out.println("TIN: " + lTin.numberOfTriangles() + " Dreiecke, max. Abweichung " + lTin.getMaxError());
+            lGridWriter.write(lTin, pOut);
+        }
+        else
+            lGridWriter.write((GmSimpleElevationGrid) pGrid, pOut);
+    }
+
+    /**
+     * checks if elevation models in the given format can be calculated and written band-wise using
+     * <tt>this.writeDEMBanded()</tt>.<br /><br />
+     * <i>German:</i> pr&uuml;ft, ob H&ouml;henmodelle im angegebenen Format mittels <tt>this.writeDEMBanded()</tt>
+     * bandweise berechnet und geschrieben werden k&ouml;nnen.
+     * @param pFormat Zielformat gem&auml;&szlig; Service-Capabilities
+     * @return <i>true</i>, falls bandweise Ausgabe m&ouml;glich
+     */
+    public boolean isBandable(String pFormat) {
+        return GridStreamWriter.isSupportedForBands(this.formatInfo(pFormat, "dest"));
+    }
+
+    /**
+     * calculates an elevation model band by band and writes each band directly to the given output stream. In
+     * contrast to <tt>this.setUpDEM()</tt>, only the source tiles and grid rows of the current band are held in
+     * memory, so that the service-internal area limit does not apply.<br /><br />
+     * <i>German:</i> berechnet ein H&ouml;henmodell bandweise (jeweils einige Gitterzeilen) und schreibt jedes Band
+     * direkt in den angegebenen Ausgabestrom. Anders als bei <tt>this.setUpDEM()</tt> werden nur die Quellkacheln
+     * und Gitterzeilen des aktuellen Bandes im Speicher gehalten, so dass die Service-interne Gr&ouml;&szlig;enbegrenzung
+     * hier nicht greift. Der Strom wird nicht geschlossen. Da die Ausgabe bereits w&auml;hrend der Berechnung
+     * erfolgt, kann ein in einem sp&auml;teren Band auftretender Fehler nicht mehr sauber gemeldet werden.
+     * @param pPnt1 erster Eckpunkt des Zielmodells
+     * @param pPnt2 zweiter Eckpunkt des Zielmodells
+     * @param pCellSize Gitterabstand des Zielmodells
+     * @param pSearchRadius Suchradius
+     * @param pTileLocator Bezeichner f&uuml;r verwendete Kachelung
+     * @param pSrcGrdPath Verzeichnis der Quelldateien
+     * @param pFormat Zielformat gem&auml;&szlig; Service-Capabilities
+     * @param pOut Ausgabestrom
+     * @throws IOException bei Schreibfehlern
+     * @see DEMServiceHelpers#isBandable
+     */
+    public void writeDEMBanded(
+        VgPoint pPnt1, VgPoint pPnt2, double pCellSize, double pSearchRadius, String pTileLocator,
+        String pSrcGrdPath, String pFormat, OutputStream pOut) throws IOException
+    {
+        String lSRS = pPnt1.getSRS();
+        boolean lUseManifest = mTileManifest != null && mTileManifest.hasTiles(pTileLocator, lSRS);
+
+        // Kachelnummern fuer das Gesamtgebiet (prueft zugleich auf fehlende Kacheln, bevor geschrieben wird):
+        ArrayList lTileNumbers = lUseManifest ?
+            this.tileNumbersFromManifest(pPnt1, pPnt2, pTileLocator) :
+            this.tileNumbers(pPnt1, pPnt2, pTileLocator);
+        int lLevel = this.overviewLevel(lTileNumbers, pCellSize, pSearchRadius, pSrcGrdPath, lSRS, pTileLocator);
+
+        GmSimple2dGridGeometry lGrdGeom = this.constructDestinationGrid(pPnt1, pPnt2, pCellSize);
+        int nx = lGrdGeom.numberOfColumns(), ny = lGrdGeom.numberOfRows();
+        int lBandRows = Math.max(1, sBandCells / nx);
+        int lBands = (ny + lBandRows - 1) / lBandRows;
+        double lXMin = lGrdGeom.getVertexCoordinate(0, 0).getX();
+        double lYMin = lGrdGeom.getVertexCoordinate(0, 0).getY();
+        double lXMax = lXMin + (nx - 1) * pCellSize;
+        double lYMax = lYMin + (ny - 1) * pCellSize;
+        // Kachelauswahl je Band um die Interpolationsumgebung erweitern:
+        double lMargin = (GridResampler.isDirectMethod(mInterpolation) ? 0.5 * pCellSize : pSearchRadius) + 2. * pCellSize;
+        if (mLocalDebug) System.out.println("Bandweise Berechnung: " + lBands + " Baender zu " + lBandRows + " Zeilen");
+
+        String dest = this.formatInfo(pFormat, "dest");
+        GridStreamWriter lGridWriter = new GridStreamWriter(dest);
+        lGridWriter.setPrecisionXY(0);
+        lGridWriter.setPrecisionZ(1);
+        lGridWriter.beginBands(lGrdGeom, pOut);
+
+        HashMap lLoaded = new HashMap(); // Kacheln des vorigen Bandes, Schluessel "hi_lo"
+        ArrayList lSourceFiles = new ArrayList();
+        for (int b = 0; b < lBands; b++) {
+            // Zeilenbereich [r0, r1) des Bandes; Reihenfolge gemaess Ausgabeformat:
+            int r0, r1;
+            if (lGridWriter.isNorthFirst()) {
+                r1 = ny - b * lBandRows;
+                r0 = Math.max(0, r1 - lBandRows);
+            } else {
+                r0 = b * lBandRows;
+                r1 = Math.min(ny, r0 + lBandRows);
+            }
+            double y0 = lYMin + r0 * pCellSize, y1 = lYMin + (r1 - 1) * pCellSize;
+            GmPoint lBandPnt1 = new GmPoint(lXMin, y0, 0.), lBandPnt2 = new GmPoint(lXMax, y1, 0.);
+            lBandPnt1.setSRS(lSRS);
+            lBandPnt2.setSRS(lSRS);
+            GmSimple2dGridGeometry lBandGeom =
+                new GmSimple2dGridGeometry(nx, r1 - r0, new GmPoint(lXMin, y0, 0.), pCellSize, pCellSize);
+            lBandGeom.setSRS(lSRS);
+
+            GmPoint lSelPnt1 = new GmPoint(lXMin, Math.max(lYMin, y0 - lMargin), 0.);
+            GmPoint lSelPnt2 = new GmPoint(lXMax, Math.min(lYMax, y1 + lMargin), 0.);
+            lSelPnt1.setSRS(lSRS);
+            lSelPnt2.setSRS(lSRS);
+            ArrayList lBandNumbers = lUseManifest ?
+                this.tileNumbersFromManifest(lSelPnt1, lSelPnt2, pTileLocator) :
+                this.tileNumbers(lSelPnt1, lSelPnt2, pTileLocator);
+
+            // Nur die noch nicht geladenen Kacheln einlesen, nicht mehr benoetigte freigeben:
+            HashMap lCurrent = new HashMap();
+            ArrayList lMissing = new ArrayList();
+            for (int k = 0; k < lBandNumbers.size(); k++) {
+                int[] lNo = (int[]) lBandNumbers.get(k);
+                String lKey = lNo[0] + "_" + lNo[1];
+                if (lLoaded.containsKey(lKey))
+                    lCurrent.put(lKey, lLoaded.get(lKey));
+                else
+                    lMissing.add(lNo);
+            }
+            if (lMissing.size() > 0) {
+                // vollstaendige Kacheln, da diese fuer die folgenden Baender weiterverwendet werden:
+                ArrayList lNew = this.fetchTiles(lMissing, pSrcGrdPath, lSRS, pTileLocator, lLevel, null, null, 0.);
+                for (int k = 0; k < lMissing.size(); k++) {
+                    int[] lNo = (int[]) lMissing.get(k);
+                    lCurrent.put(lNo[0] + "_" + lNo[1], lNew.get(k));
+                }
+                for (int k = 0; k < mSourceFiles.size(); k++) {
+                    if (!lSourceFiles.contains(mSourceFiles.get(k)))
+                        lSourceFiles.add(mSourceFiles.get(k));
+                }
+            }
+            lLoaded = lCurrent;
+            ArrayList lTiles = new ArrayList();
+            for (int k = 0; k < lBandNumbers.size(); k++) {
+                int[] lNo = (int[]) lBandNumbers.get(k);
+                lTiles.add(lCurrent.get(lNo[0] + "_" + lNo[1]));
+            }
+
+            lGridWriter.writeBand(this.computeGrid(lTiles, lBandGeom, lBandPnt1, lBandPnt2, pCellSize, pSearchRadius));
+            this.reportProgress((b + 1.) / lBands);
+        }
+        lGridWriter.endBands();
+        mSourceFiles = lSourceFiles;
+    }
+
+    /**
+     * determines the elevation value at the given position directly from the source tiles, i.e. without setting up
+     * a destination grid. Once the affected tiles are held in the tile cache, no file access is required.<br /><br />
+     * <i>German:</i> ermittelt den H&ouml;henwert an der angegebenen Position direkt aus den Quellkacheln, ohne
+     * ein Zielgitter aufzubauen. Es wird bilinear (bzw. mit dem eingestellten direkten Interpolationsverfahren) aus
+     * den umgebenden Quellgitterpunkten interpoliert; gelesen werden nur die den Punkt enthaltende Kachel und, falls
+     * der Punkt am Kachelrand liegt, die Nachbarkacheln. Befinden sich die Kacheln bereits im Kachel-Cache, sind
+     * keine Dateizugriffe erforderlich.
+     * @param pPnt Position
+     * @param pTileLocator Bezeichner f&uuml;r verwendete Kachelung
+     * @param pSrcGrdPath Verzeichnis der Quelldateien
+     * @return H&ouml;henwert
+     * @throws T3dException falls f&uuml;r die Position keine H&ouml;heninformation vorliegt
+     */
+    public double elevationAt(VgPoint pPnt, String pTileLocator, String pSrcGrdPath)
+    {
+        // Kachel(n) am Punkt:
+        ArrayList lTileNumbers;
+        if (mTileManifest != null && mTileManifest.hasTiles(pTileLocator, pPnt.getSRS()))
+            lTileNumbers = this.tileNumbersFromManifest(pPnt, pPnt, pTileLocator);
+        else
+            lTileNumbers = this.tileNumbers(pPnt, pPnt, pTileLocator);
+
+        double z = this.sampleAt(
+            pPnt.getX(), pPnt.getY(), lTileNumbers, pPnt.getSRS(), pTileLocator, pSrcGrdPath, new HashMap());
+        if (Double.isNaN(z))
+            throw new T3dException("No elevation information available.");
+        return z;
+    }
+
+    /**
+     * determines the elevation values at the given positions directly from the source tiles. The positions are
+     * grouped by source tile, so that each tile is requested only once.<br /><br />
+     * <i>German:</i> ermittelt die H&ouml;henwerte an den angegebenen Positionen direkt aus den Quellkacheln (vgl.
+     * <tt>this.elevationAt()</tt>). Die Positionen werden nach Quellkacheln gruppiert, so dass jede Kachel nur
+     * einmal angefordert wird. F&uuml;r Positionen, an denen keine H&ouml;heninformation vorliegt, wird
+     * <i>NaN</i> geliefert.
+     * @param pX x-Koordinaten
+     * @param pY y-Koordinaten
+     * @param pSRS r&auml;umliches Bezugssystem der Positionen
+     * @param pTileLocator Bezeichner f&uuml;r verwendete Kachelung
+     * @param pSrcGrdPath Verzeichnis der Quelldateien
+     * @return H&ouml;henwerte in der Reihenfolge der Positionen
+     */
+    public double[] elevationsAt(double[] pX, double[] pY, String pSRS, String pTileLocator, String pSrcGrdPath)
+    {
+        boolean lUseManifest = mTileManifest != null && mTileManifest.hasTiles(pTileLocator, pSRS);
+        double[] lRes = new double[pX.length];
+
+        // Positionen nach Kacheln gruppieren:
+        HashMap lGroups = new HashMap(); // Schluessel "hi_lo[ hi_lo...]", Wert: Liste der Positionsindizes
+        HashMap lGroupTiles = new HashMap(); // Schluessel wie oben, Wert: Liste der Kachelnummern
+        ArrayList lKeys = new ArrayList(); // Gruppen in der Reihenfolge ihres ersten Auftretens
+        for (int i = 0; i < pX.length; i++) {
+            lRes[i] = Double.NaN;
+            GmPoint lPnt = new GmPoint(pX[i], pY[i], 0.);
+            lPnt.setSRS(pSRS);
+            ArrayList lTileNumbers;
+            try {
+                if (lUseManifest)
+                    lTileNumbers = this.tileNumbersFromManifest(lPnt, lPnt, pTileLocator);
+                else {
+                    lTileNumbers = new ArrayList();
+                    lTileNumbers.add(this.getTileNumber(lPnt, pTileLocator));
+                }
+            }
+            catch (T3dException e) {
+                continue; // Position ausserhalb der Datenabdeckung
+            }
+            String lKey = "";
+            for (int k = 0; k < lTileNumbers.size(); k++) {
+                int[] lNo = (int[]) lTileNumbers.get(k);
+                lKey += (k > 0 ? " " : "") + lNo[0] + "_" + lNo[1];
+            }
+            ArrayList lGroup = (ArrayList) lGroups.get(lKey);
+            if (lGroup == null) {
+                lGroup = new ArrayList();
+                lGroups.put(lKey, lGroup);
+                lGroupTiles.put(lKey, lTileNumbers);
+                lKeys.add(lKey);
+            }
+            lGroup.add(new Integer(i));
+        }
+        if (mLocalDebug)
+            System.out.println(pX.length + " Positionen in " + lKeys.size() + " Kachelgruppen");
+
+        // Gruppenweise interpolieren; Kacheln werden nur fuer die Dauer der Gruppe gehalten:
+        for (int g = 0; g < lKeys.size(); g++) {
+            ArrayList lGroup = (ArrayList) lGroups.get(lKeys.get(g));
+            ArrayList lTileNumbers = (ArrayList) lGroupTiles.get(lKeys.get(g));
+            HashMap lLoaded = new HashMap();
+            for (int k = 0; k < lGroup.size(); k++) {
+                int i = ((Integer) lGroup.get(k)).intValue();
+                try {
+                    lRes[i] = this.sampleAt(pX[i], pY[i], lTileNumbers, pSRS, pTileLocator, pSrcGrdPath, lLoaded);
+                }
+                catch (T3dException e) {
+                    if (mLocalDebug)
+                        System.out.println(e.getMessage());
+                }
+            }
+            this.reportProgress((g + 1.) / lKeys.size());
+        }
+        return lRes;
+    }
+
+    // interpoliert den Hoehenwert am Punkt (x, y) aus den angegebenen Kacheln; liegt die Interpolationsumgebung
+    // nicht vollstaendig in der Kachel, werden die Nachbarkacheln hinzugenommen. pLoaded haelt die bereits
+    // angeforderten Kacheln (Schluessel "hi_lo", Wert null fuer nicht lesbare Kacheln).
+    private double sampleAt(
+        double x, double y, ArrayList pTileNumbers, String pSRS, String pTileLocator, String pSrcGrdPath,
+        HashMap pLoaded)
+    {
+        ArrayList lTiles = new ArrayList();
+        for (int k = 0; k < pTileNumbers.size(); k++) {
+            ElevationTile lTile = this.loadedTile((int[]) pTileNumbers.get(k), pSRS, pTileLocator, pSrcGrdPath, pLoaded);
+            if (lTile != null)
+                lTiles.add(lTile);
+        }
+        if (lTiles.size() <= 0) {
+            int[] lNo = (int[]) pTileNumbers.get(0);
+            throw new T3dException("Missing elevation information "
+                + "(" + TKBlattLocator.blattnummer(lNo[0], lNo[1]) + ", " + pSRS + ").", 201);
+        }
+
+        ElevationTile lTile = (ElevationTile) lTiles.get(0);
+        double lMarginX = 2. * lTile.getDeltaX(), lMarginY = 2. * lTile.getDeltaY();
+        if (x - lMarginX < lTile.getXMin()
+            || x + lMarginX > lTile.getXMin() + (lTile.numberOfColumns() - 1) * lTile.getDeltaX()
+            || y - lMarginY < lTile.getYMin()
+            || y + lMarginY > lTile.getYMin() + (lTile.numberOfRows() - 1) * lTile.getDeltaY())
+        {
+            ArrayList lNeighbours = new ArrayList();
+            if (mTileManifest != null && mTileManifest.hasTiles(pTileLocator, pSRS)) {
+                ArrayList lEntries = mTileManifest.query(
+                    pTileLocator, pSRS, x - lMarginX, y - lMarginY, x + lMarginX, y + lMarginY);
+                for (int k = 0; k < lEntries.size(); k++) {
+                    TileManifest.Entry e = (TileManifest.Entry) lEntries.get(k);
+                    lNeighbours.add(new int[] {e.getHi(), e.getLo()});
+                }
+            }
+            else {
+                GmPoint lPnt1 = new GmPoint(x - lMarginX, y - lMarginY, 0.);
+                GmPoint lPnt2 = new GmPoint(x + lMarginX, y + lMarginY, 0.);
+                lPnt1.setSRS(pSRS);
+                lPnt2.setSRS(pSRS);
+                lNeighbours = this.tileNumbers(lPnt1, lPnt2, pTileLocator);
+            }
+            for (int k = 0; k < lNeighbours.size(); k++) {
+                ElevationTile lNeighbour =
+                    this.loadedTile((int[]) lNeighbours.get(k), pSRS, pTileLocator, pSrcGrdPath, pLoaded);
+                if (lNeighbour != null && !lTiles.contains(lNeighbour))
+                    lTiles.add(lNeighbour);
+            }
+        }
+
+        String lMethod = mInterpolation;
+        if (!GridResampler.isDirectMethod(lMethod))
+            lMethod = GridResampler.sBilinear;
+        GridResampler lResampler = new GridResampler(lMethod);
+        if (!lResampler.isApplicable(lTiles)) {
+            // Nachbarkacheln auf abweichendem Raster verwerfen
+            ArrayList lFirst = new ArrayList();
+            lFirst.add(lTile);
+            lTiles = lFirst;
+        }
+        return lResampler.sample(lTiles, x, y);
+    }
+
+    private ElevationTile loadedTile(
+        int[] pTileNumber, String pSRS, String pTileLocator, String pSrcGrdPath, HashMap pLoaded)
+    {
+        String lKey = pTileNumber[0] + "_" + pTileNumber[1];
+        if (pLoaded.containsKey(lKey))
+            return (ElevationTile) pLoaded.get(lKey);
+        ElevationTile lTile = null;
+        try {
+            lTile = this.fetchTile(pTileNumber[0], pTileNumber[1], pSrcGrdPath, pSRS, pTileLocator, 1);
+        }
+        catch (T3dException e) {
+            // z. B. Rand der Datenabdeckung
+            if (mLocalDebug)
+                System.out.println(e.getMessage());
+        }
+        pLoaded.put(lKey, lTile);
+        return lTile;
+    }
+
+    private MpHypsometricColor colorMapper()
+    {
+        MpHypsometricColor colMapper = new MpSimpleHypsometricColor();
+        double elev[] = {30., 100., 300., 900.};
+        T3dColor cols[] = {
+            new T3dColor(0.0f, 0.8f, 0.0f), // Gr�n
+            new T3dColor(1.0f, 1.0f, 0.5f), // Blassgelb
+            new T3dColor(0.78f, 0.27f, 0.0f), // Braun
+            new T3dColor(0.82f, 0.2f, 0.0f)}; // R�tlichbraun
+        ((MpSimpleHypsometricColor) colMapper).setPalette(elev, cols, true);
+        return colMapper;
+    }
+
+    // liefert die Breite des Randbereichs um das Zielgebiet, dessen Quellwerte in die Berechnung eingehen
+    // (Suchradius bzw. Interpolationsumgebung; zzgl. sHaloCells Gitterpunkten der jeweiligen Kachel)
+    double clipHalo(double pCellSize, double pSearchRadius) {
+        return GridResampler.isDirectMethod(mInterpolation) ? 0.5 * pCellSize : pSearchRadius;
+    }
+
+    ArrayList clipTiles(ArrayList pTiles, VgPoint pPnt1, VgPoint pPnt2, double pHalo)
+    {
+        double lXMin = Math.min(pPnt1.getX(), pPnt2.getX()), lXMax = Math.max(pPnt1.getX(), pPnt2.getX());
+        double lYMin = Math.min(pPnt1.getY(), pPnt2.getY()), lYMax = Math.max(pPnt1.getY(), pPnt2.getY());
+        ArrayList lRes = new ArrayList();
+        for (int k = 0; k < pTiles.size(); k++) {
+            ElevationTile lTile = (ElevationTile) pTiles.get(k);
+            if (lTile == null)
+                continue; // ausschnittsweise gelesenes ASCII-Grid ausserhalb des Zielgebiets
+            double lHalo = pHalo + sHaloCells * Math.max(lTile.getDeltaX(), lTile.getDeltaY());
+            ElevationTile lWindow = TileWindow.clip(lTile, lXMin, lYMin, lXMax, lYMax, lHalo);
+            if (lWindow != null)
+                lRes.add(lWindow);
+        }
+        if (mLocalDebug)
+            System.out.println("Kachelausschnitte: " + lRes.size() + " von " + pTiles.size());
+        return lRes;
+    }
+
+    private PointStore pointStore(ArrayList pTiles)
+    {
+        // Gitterwerte aller Kacheln ohne Erzeugung von Punkt-Objekten uebernehmen:
+        if (mLocalDebug)
+            System.out.println("Aufbau der Punktliste...");
+        int lCapacity = 0;
+        for (int k = 0; k < pTiles.size(); k++) {
+            ElevationTile lTile = (ElevationTile) pTiles.get(k);
+            lCapacity += lTile.numberOfRows() * lTile.numberOfColumns();
+        }
+        PointStore lPoints = new PointStore(lCapacity);
+        for (int k = 0; k < pTiles.size(); k++)
+            lPoints.addAll((ElevationTile) pTiles.get(k));
+        return lPoints;
+    }
+
+    private ArrayList tileNumbers(VgPoint pPnt1, VgPoint pPnt2, String pTileLocator)
+    {
+        GmPoint lPnt3 = new GmPoint(pPnt1.getX(), pPnt2.getY(), 0.);
+        GmPoint lPnt4 = new GmPoint(pPnt2.getX(), pPnt1.getY(), 0.);
+        lPnt3.setSRS(pPnt1.getSRS());
+        lPnt4.setSRS(pPnt1.getSRS());
+        int[] blatt1 = this.getTileNumber(pPnt1, pTileLocator);
+        int[] blatt2 = this.getTileNumber(pPnt2, pTileLocator);
+        int[] blatt3 = this.getTileNumber(lPnt3, pTileLocator);
+        int[] blatt4 = this.getTileNumber(lPnt4, pTileLocator);
+        int bHiFrom, bHiTo, bLoFrom, bLoTo;
+        bHiFrom = this.min(blatt1[0], blatt2[0], blatt3[0], blatt4[0]);
+        bHiTo = this.max(blatt1[0], blatt2[0], blatt3[0], blatt4[0]);
+        bLoFrom = this.min(blatt1[1], blatt2[1], blatt3[1], blatt4[1]);
+        bLoTo = this.max(blatt1[1], blatt2[1], blatt3[1], blatt4[1]);
+        if (mLocalDebug) {
+            System.out.println("bHi: " + bHiFrom + "..." + bHiTo);
+            System.out.println("bLo: " + bLoFrom + "..." + bLoTo);
+        }
+
+        ArrayList lRes = new ArrayList();
+        for (int hi = bHiFrom; hi <= bHiTo; hi++) {
+            for (int lo = bLoFrom; lo <= bLoTo; lo++)
+                lRes.add(new int[] {hi, lo});
+        }
+        return lRes;
+    }
+
+    private ArrayList tileNumbersFromManifest(VgPoint pPnt1, VgPoint pPnt2, String pTileLocator)
+    {
+        double lXMin = Math.min(pPnt1.getX(), pPnt2.getX()), lXMax = Math.max(pPnt1.getX(), pPnt2.getX());
+        double lYMin = Math.min(pPnt1.getY(), pPnt2.getY()), lYMax = Math.max(pPnt1.getY(), pPnt2.getY());
+        ArrayList lEntries = mTileManifest.query(pTileLocator, pPnt1.getSRS(), lXMin, lYMin, lXMax, lYMax);
+
+        // Luecken im Datenbestand vor dem Einlesen der Kacheln erkennen:
+        if (lEntries.size() == 0 || !TileManifest.covers(lEntries, lXMin, lYMin, lXMax, lYMax)) {
+            throw new T3dException("Missing elevation information "
+                + "(" + pTileLocator + ", " + pPnt1.getSRS() + ", no source tiles for parts of the BBOX).", 201);
+        }
+
+        ArrayList lRes = new ArrayList();
+        for (int k = 0; k < lEntries.size(); k++) {
+            TileManifest.Entry e = (TileManifest.Entry) lEntries.get(k);
+            lRes.add(new int[] {e.getHi(), e.getLo()});
+            if (mLocalDebug)
+                System.out.println("Kachel aus Verzeichnis: " + e);
+        }
+        return lRes;
+    }
+
     private int[] getTileNumber(VgPoint pt, String pTileLocator) // Ermittlung der Blattnummer-Indizes als zweielementiges Feld
     {
         GmPoint ptLatLon = new GmPoint();
@@ -268,7 +755,186 @@ public class DEMServiceHelpers
         return ret;
     }
 
-    private String constructDEMFilename(int i, int j, String pSrcGrdPath, String pSRS, String pTileLocatorName)
+    // waehlt die Uebersichtsstufe (Gitterweite darf Zielgitterweite bzw. Suchradius nicht ueberschreiten). Die
+    // Stufe muss fuer alle Kacheln vorliegen, da sonst Kacheln unterschiedlicher Aufloesung gemischt wuerden (bei
+    // schrittweiser Konvertierung ueber "BuildBinaryTiles" der Normalfall).
+    int overviewLevel(
+        ArrayList pTileNumbers, double pCellSize, double pSearchRadius, String pSrcGrdPath, String pSRS,
+        String pTileLocator)
+    {
+        double lMaxSpacing = pCellSize;
+        if (!GridResampler.isDirectMethod(mInterpolation))
+            lMaxSpacing = Math.min(pCellSize, pSearchRadius);
+        int lLevel = pTileNumbers.size() > 0 ? Integer.MAX_VALUE : 1;
+        for (int k = 0; k < pTileNumbers.size() && lLevel > 1; k++) {
+            int[] lTileNo = (int[]) pTileNumbers.get(k);
+            lLevel = Math.min(lLevel,
+                this.overviewLevel(lTileNo[0], lTileNo[1], pSrcGrdPath, pSRS, pTileLocator, lMaxSpacing));
+        }
+        if (mLocalDebug)
+            System.out.println("Uebersichtsstufe: " + lLevel);
+        return lLevel;
+    }
+
+    private int overviewLevel(
+        int pHi, int pLo, String pSrcGrdPath, String pSRS, String pTileLocator, double pMaxSpacing)
+    {
+        String lBinFile = this.constructDEMFilename(pHi, pLo, pSrcGrdPath, pSRS, pTileLocator, "bin");
+        String lAscFile = this.constructDEMFilename(pHi, pLo, pSrcGrdPath, pSRS, pTileLocator, "asc");
+        if (!BinaryTileWriter.isUpToDate(BinaryElevationTile.overviewFilename(lBinFile, 2), lAscFile))
+            return 1; // keine (aktuellen) Uebersichtsstufen vorhanden
+
+        // Gitterweite der vollen Aufloesung aus Stufe 2 ableiten, damit die Vollkachel nicht gelesen werden muss:
+        ElevationTile lTile = this.fetchTile(pHi, pLo, pSrcGrdPath, pSRS, pTileLocator, 2);
+        double lSpacing = 0.5 * Math.max(lTile.getDeltaX(), lTile.getDeltaY());
+        int lLevel = 1;
+        while (lSpacing * lLevel * 2 <= pMaxSpacing * (1. + 1.e-9))
+            lLevel *= 2;
+        while (lLevel > 1 && !BinaryTileWriter.isUpToDate(BinaryElevationTile.overviewFilename(lBinFile, lLevel), lAscFile))
+            lLevel /= 2;
+        return lLevel;
+    }
+
+    // liest die angegebenen Kacheln; ist pPnt1 gesetzt, werden ASCII-Grids nach Moeglichkeit nur im Zielgebiet
+    // zzgl. Randbereich gelesen (Listenelement null, falls ausserhalb).
+    private ArrayList fetchTiles(
+        ArrayList pTileNumbers, final String pSrcGrdPath, final String pSRS, final String pTileLocator,
+        final int pLevel, final VgPoint pPnt1, final VgPoint pPnt2, final double pHalo)
+    {
+        ArrayList lLoaders = new ArrayList();
+        mSourceFiles = new ArrayList();
+        for (int k = 0; k < pTileNumbers.size(); k++) {
+            final int[] lTileNo = (int[]) pTileNumbers.get(k);
+            // Massgeblich sind das ASCII-Grid, sofern vorhanden, und die tatsaechlich gelesene Datei:
+            String lAsc = this.constructDEMFilename(lTileNo[0], lTileNo[1], pSrcGrdPath, pSRS, pTileLocator, "asc");
+            if (new File(lAsc).exists())
+                mSourceFiles.add(lAsc);
+            String lRead = this.tileSourceFile(lTileNo[0], lTileNo[1], pSrcGrdPath, pSRS, pTileLocator, pLevel);
+            if (!lRead.equals(lAsc))
+                mSourceFiles.add(lRead);
+            lLoaders.add(new Callable() {
+                public Object call() {
+                    return fetchTile(
+                        lTileNo[0], lTileNo[1], pSrcGrdPath, pSRS, pTileLocator, pLevel, pPnt1, pPnt2, pHalo);
+                }
+            });
+        }
+        Object[] lRes = ParallelTileLoader.loadAll((Callable[]) lLoaders.toArray(new Callable[lLoaders.size()]));
+
+        ArrayList lTiles = new ArrayList();
+        for (int i = 0; i < lRes.length; i++)
+            lTiles.add(lRes[i]);
+        return lTiles;
+    }
+
+    private ElevationTile fetchTile(
+        int pHi, int pLo, String pSrcGrdPath, String pSRS, String pTileLocator, int pLevel)
+    {
+        return this.fetchTile(pHi, pLo, pSrcGrdPath, pSRS, pTileLocator, pLevel, null, null, 0.);
+    }
+
+    private ElevationTile fetchTile(
+        final int pHi, final int pLo, final String pSrcGrdPath, final String pSRS, final String pTileLocator,
+        final int pLevel, VgPoint pPnt1, VgPoint pPnt2, double pHalo)
+    {
+        TileCache lCache = TileCache.getInstance();
+        if (!lCache.isEnabled())
+            return this.readTile(pHi, pLo, pSrcGrdPath, pSRS, pTileLocator, pLevel, pPnt1, pPnt2, pHalo);
+
+        // Kachel aus prozessweitem Cache holen, ggf. einmalig laden (der Schluessel beruecksichtigt den Stand der
+        // tatsaechlich gelesenen Datei):
+        String lSrcFile = this.tileSourceFile(pHi, pLo, pSrcGrdPath, pSRS, pTileLocator, pLevel);
+        return lCache.get(
+            new TileCache.Key(pTileLocator, pSRS, pHi, pLo, pLevel, lSrcFile),
+            new Callable() {
+                public Object call() {
+                    return readTile(pHi, pLo, pSrcGrdPath, pSRS, pTileLocator, pLevel, null, null, 0.); // vollstaendig
+                }
+            });
+    }
+
+    // liefert den Namen der Datei, aus der readTile() die Kachel liest (aktuelle Uebersicht, aktuelle binaere
+    // Kachel oder ASCII-Grid).
+    private String tileSourceFile(
+        int pHi, int pLo, String pSrcGrdPath, String pSRS, String pTileLocator, int pLevel)
+    {
+        String lBinFile = this.constructDEMFilename(pHi, pLo, pSrcGrdPath, pSRS, pTileLocator, "bin");
+        String lAscFile = this.constructDEMFilename(pHi, pLo, pSrcGrdPath, pSRS, pTileLocator, "asc");
+        String lOvrFile = BinaryElevationTile.overviewFilename(lBinFile, pLevel);
+        if (pLevel > 1 && BinaryTileWriter.isUpToDate(lOvrFile, lAscFile))
+            return lOvrFile;
+        if (BinaryTileWriter.isUpToDate(lBinFile, lAscFile))
+            return lBinFile;
+        return lAscFile;
+    }
+
+    private ElevationTile readTile(
+        int pHi, int pLo, String pSrcGrdPath, String pSRS, String pTileLocator, int pLevel,
+        VgPoint pPnt1, VgPoint pPnt2, double pHalo)
+    {
+        // Binaere Kachel bevorzugen, da diese nur eingeblendet und nicht geparst werden muss; sie ist aber nur
+        // verwendbar, wenn sie nicht aelter als das ASCII-Grid ist (sonst wird sie ggf. neu erzeugt):
+        String lBinFile = this.constructDEMFilename(pHi, pLo, pSrcGrdPath, pSRS, pTileLocator, "bin");
+        String filename = this.constructDEMFilename(pHi, pLo, pSrcGrdPath, pSRS, pTileLocator, "asc");
+        String lOvrFile = BinaryElevationTile.overviewFilename(lBinFile, pLevel);
+        if (pLevel > 1 && BinaryTileWriter.isUpToDate(lOvrFile, filename)) {
+            if (mLocalDebug)
+                System.out.println("Einblenden von Uebersicht \"" + lOvrFile + "\"...");
+            try {
+                return BinaryElevationTile.map(lOvrFile);
+            }
+            catch (T3dException e) {
+                // Uebersicht fehlt fuer diese Kachel, daher volle Aufloesung
+                if (mLocalDebug)
+                    System.out.println(e.getMessage());
+            }
+        }
+        if (BinaryTileWriter.isUpToDate(lBinFile, filename)) {
+            if (mLocalDebug)
+                System.out.println("Einblenden von Kachel \"" + lBinFile + "\"...");
+            try {
+                return BinaryElevationTile.map(lBinFile);
+            }
+            catch (T3dException e) {
+                if (mLocalDebug)
+                    System.out.println(e.getMessage() + " Falling back to ASCII grid...");
+            }
+        }
+
+        if (mLocalDebug)
+            System.out.println("Einlesen von Gitter \"" + filename + "\"...");
+        AsciiGridReader lReader = new AsciiGridReader();
+        lReader.setParallelism(mParallelism);
+        if (pPnt1 != null && !mBuildBinaryTiles) { // Konvertierung benoetigt vollstaendige Kachel
+            lReader.setWindow(
+                Math.min(pPnt1.getX(), pPnt2.getX()), Math.min(pPnt1.getY(), pPnt2.getY()),
+                Math.max(pPnt1.getX(), pPnt2.getX()), Math.max(pPnt1.getY(), pPnt2.getY()), pHalo, sHaloCells);
+        }
+        ElevationTile lTile;
+        try {
+             lTile = lReader.readFromFile(filename);
+        }
+        catch (T3dException e) {
+            throw new T3dException("Missing elevation information "
+                + "(" + TKBlattLocator.blattnummer(pHi, pLo) + ", " + pSRS + ", " + filename + ").", 201);
+        }
+
+        if (mBuildBinaryTiles) {
+            try {
+                BinaryTileWriter lWriter = new BinaryTileWriter();
+                lWriter.writeToFile(lTile, lBinFile);
+                lWriter.writeOverviews(lTile, lBinFile);
+            }
+            catch (T3dException e) {
+                // Konvertierung wird beim naechsten Zugriff erneut versucht
+                if (mLocalDebug)
+                    System.out.println(e.getMessage());
+            }
+        }
+        return lTile;
+    }
+
+    private String constructDEMFilename(int i, int j, String pSrcGrdPath, String pSRS, String pTileLocatorName, String pExt)
     {
         String subdir = pSRS.toLowerCase();
         subdir = subdir.replaceAll(":", "_");
@@ -276,22 +942,25 @@ public class DEMServiceHelpers
         if (i < 10) filename += "0";
         filename += "" + i;
         if (j < 10) filename += "0";
-        filename += "" + j + ".asc";
+        filename += "" + j + "." + pExt;
         return filename;
     }
 
     private GmSimple2dGridGeometry constructDestinationGrid(VgPoint pPnt1, VgPoint pPnt2, double pCellSize)
     {
         GmEnvelope lEnv = new GmEnvelope(pPnt1, pPnt2);
-        int nx = ((int) Math.floor(lEnv.getExtentX() / pCellSize)) + 1;
-        int ny = ((int) Math.floor(lEnv.getExtentY() / pCellSize)) + 1;
+        // Toleranz, damit exakt passende Ausdehnungen (z. B. GetTile-Kacheln) keine Randspalte verlieren
+        int nx = ((int) Math.floor(lEnv.getExtentX() / pCellSize + 1.e-6)) + 1;
+        int ny = ((int) Math.floor(lEnv.getExtentY() / pCellSize + 1.e-6)) + 1;
         if (mLocalDebug)
             System.out.println("" + nx + " x " + ny + " Elemente gro�es Lattice wird aufgebaut...");
 
-        return new GmSimple2dGridGeometry(
+        GmSimple2dGridGeometry lGeom = new GmSimple2dGridGeometry(
             nx, ny,
             new GmPoint(lEnv.getXMin(), lEnv.getYMin(), 0.), // untere linke Ecke
             pCellSize, pCellSize); // Gitterweiten in x- und y-Richtung
+        lGeom.setSRS(pPnt1.getSRS()); // z. B. fuer GeoTIFF-Ausgabe
+        return lGeom;
     }
 
     /**
@@ -309,13 +978,36 @@ public class DEMServiceHelpers
      * @see DEMServiceHelpers#missingGridCells
      */
     public GmSimpleElevationGrid gridding(ArrayList pPointList, GmSimple2dGridGeometry pGrdGeom, double pSearchRadius)
+    {
+        PointStore lPoints = new PointStore(pPointList.size());
+        for (int i = 0; i < pPointList.size(); i++)
+            lPoints.add((VgPoint) pPointList.get(i));
+        return this.gridding(lPoints, pGrdGeom, pSearchRadius);
+    }
+
+    /**
+     * performs the gridding-process for the given grid geometry. The points are held in a compact
+     * <tt>PointStore</tt>.<br /><br />
+     * <i>German:</i> f&uuml;hrt das "Gridding" f&uuml;r die angegebene Gitter-Geometrie aus. Die Eingabepunkte
+     * werden in einem <tt>PointStore</tt> &uuml;bergeben, dessen Bucket-Index die Suche auf die Umgebung des
+     * jeweiligen Gitterpunkts beschr&auml;nkt.<br />
+     * K&ouml;nnen nicht alle Gitterpunkte belegt werden, wird eine <tt>T3dException</tt> geworfen (vgl.
+     * <tt>this.missingGridCells()</tt>).
+     * @param pPoints Quell-Punkte
+     * @param pGrdGeom Gitter-Geometrie (2D)
+     * @param pSearchRadius Suchradius
+     * @return Gitter mit belegten H&ouml;henwerten
+     * @see DEMServiceHelpers#missingGridCells
+     * @see InverseDistanceGridder
+     */
+    public GmSimpleElevationGrid gridding(PointStore pPoints, GmSimple2dGridGeometry pGrdGeom, double pSearchRadius)
     {
         GmSimpleElevationGrid lResGrid = null;
 
         mMissingGridCells = null;
 
         try {
-            int N = pPointList.size();
+            int N = pPoints.size();
             if (mLocalDebug)
                 System.out.println("Anzahl zu verarbeitender Punkte: " + N);
 
@@ -323,32 +1015,19 @@ public class DEMServiceHelpers
                 if (mLocalDebug)
                     System.out.println("Suchradius: " + pSearchRadius);
 
-                FltPointSet2ElevationGrid lGridder =
-                    new FltPointSet2ElevationGrid(pGrdGeom, FltPointSet2ElevationGrid.cInverseDist, pSearchRadius);
+                InverseDistanceGridder lGridder = new InverseDistanceGridder(pGrdGeom, pSearchRadius);
+                lGridder.setParallelism(mParallelism);
 
                 if (mLocalDebug) {
                     System.out.println("ben�tigter Heap-Speicher f�r Ziel-Gitter: " +
                         (lGridder.estimateMemoryConsumption() / 1000) + " KBytes");
-                    System.out.println("Starte Gridding f�r " + pPointList.size() + " Eingabepunkte...");
+                    System.out.println("Starte Gridding f�r " + N + " Eingabepunkte...");
                 }
 
-                lResGrid = lGridder.transform(pPointList);
+                lResGrid = lGridder.transform(pPoints);
                 if (mLocalDebug)
                     System.out.println("Methode transform() lieferte " + lResGrid.toString());
-                if (! lResGrid.isSet()) {
-                    if (mLocalDebug) {
-                        mMissingGridCells = new String[lResGrid.numberOfRows()];
-                        for (int ii = 0; ii < lResGrid.numberOfRows(); ii++) {
-                            for (int jj = 0; jj < lResGrid.numberOfColumns(); jj++) {
-                                if (! lResGrid.isSet(ii,jj))
-                                    mMissingGridCells[ii] = mMissingGridCells[ii] + "?";
-                                else
-                                    mMissingGridCells[ii] = mMissingGridCells[ii] + "X";
-                            }
-                        }
-                    }
-                    throw new T3dException("Did not assign values to all grid cells.", 202);
-                }
+                this.checkAssignment(lResGrid);
             } // abfangen: n = 0 (z. B. alle Werte = NODATA -> sprechende Meldung todo
         }
         catch (T3dException e) {
@@ -361,6 +1040,35 @@ public class DEMServiceHelpers
         return lResGrid;
     }
 
+    private void checkAssignment(GmSimpleElevationGrid pResGrid)
+    {
+        if (! pResGrid.isSet()) {
+            if (mLocalDebug) {
+                mMissingGridCells = new String[pResGrid.numberOfRows()];
+                for (int ii = 0; ii < pResGrid.numberOfRows(); ii++) {
+                    for (int jj = 0; jj < pResGrid.numberOfColumns(); jj++) {
+                        if (! pResGrid.isSet(ii,jj))
+                            mMissingGridCells[ii] = mMissingGridCells[ii] + "?";
+                        else
+                            mMissingGridCells[ii] = mMissingGridCells[ii] + "X";
+                    }
+                }
+            }
+            throw new T3dException("Did not assign values to all grid cells.", 202);
+        }
+    }
+
+    /**
+     * returns the names of the source files the last elevation model was calculated from.<br /><br />
+     * <i>German:</i> liefert die Namen der Quelldateien, aus denen das zuletzt berechnete H&ouml;henmodell
+     * abgeleitet wurde (je Kachel das ArcInfo-ASCII-Grid, sofern vorhanden, sowie ggf. die tats&auml;chlich
+     * gelesene bin&auml;re Kachel bzw. &Uuml;bersichtsstufe).
+     * @return Liste von Dateinamen (inkl. Pfad)
+     */
+    public ArrayList sourceFiles() {
+        return mSourceFiles;
+    }
+
     /**
      * gives information about the grid cells to that no elevation-value could be assigned.<br /><br />
      * <i>German:</i> liefert die Information &uuml;ber die nicht belegbaren Gitterzellen. Diese Information ist nur
@@ -398,8 +1106,13 @@ public class DEMServiceHelpers
             if (pFormat.equalsIgnoreCase("AcGeoGrd")) return "grd";
             if (pFormat.equalsIgnoreCase("ArcIGrd")) return "asc";
             if (pFormat.equalsIgnoreCase("AcGeoTIN")) return "tin";
+            if (pFormat.equalsIgnoreCase("IndexedTIN")) return "tin";
             if (pFormat.equalsIgnoreCase("model/x3d")) return "x3d";
             if (pFormat.equalsIgnoreCase("x3d")) return "x3d";
+            if (pFormat.equalsIgnoreCase("BinFloat32")) return "bin";
+            if (pFormat.equalsIgnoreCase("BinInt16")) return "bin";
+            if (pFormat.equalsIgnoreCase("GeoTIFF")) return "tif";
+            if (pFormat.equalsIgnoreCase("image/tiff")) return "tif";
             return ext;
         }
 
@@ -414,8 +1127,13 @@ public class DEMServiceHelpers
             if (pFormat.equalsIgnoreCase("AcGeoGrd")) return "AcGeo";
             if (pFormat.equalsIgnoreCase("ArcIGrd")) return "ArcIGrd";
             if (pFormat.equalsIgnoreCase("AcGeoTIN")) return "AcGeoTIN";
+            if (pFormat.equalsIgnoreCase("IndexedTIN")) return "IndexedTIN";
             if (pFormat.equalsIgnoreCase("model/x3d")) return "X3d";
             if (pFormat.equalsIgnoreCase("x3d")) return "X3d";
+            if (pFormat.equalsIgnoreCase("BinFloat32")) return "BinFloat32";
+            if (pFormat.equalsIgnoreCase("BinInt16")) return "BinInt16";
+            if (pFormat.equalsIgnoreCase("GeoTIFF")) return "GeoTIFF";
+            if (pFormat.equalsIgnoreCase("image/tiff")) return "GeoTIFF";
             return dest;
         }
 
@@ -430,8 +1148,13 @@ public class DEMServiceHelpers
             if (pFormat.equalsIgnoreCase("AcGeoGrd")) return "text/plain";
             if (pFormat.equalsIgnoreCase("ArcIGrd")) return "text/plain";
             if (pFormat.equalsIgnoreCase("AcGeoTIN")) return "text/plain";
+            if (pFormat.equalsIgnoreCase("IndexedTIN")) return "text/plain";
             if (pFormat.equalsIgnoreCase("model/x3d")) return "model/x3d";
             if (pFormat.equalsIgnoreCase("x3d")) return "model/x3d";
+            if (pFormat.equalsIgnoreCase("BinFloat32")) return "application/octet-stream";
+            if (pFormat.equalsIgnoreCase("BinInt16")) return "application/octet-stream";
+            if (pFormat.equalsIgnoreCase("GeoTIFF")) return "image/tiff";
+            if (pFormat.equalsIgnoreCase("image/tiff")) return "image/tiff";
             return mime;
         }
 
@@ -454,6 +1177,111 @@ public class DEMServiceHelpers
         return res;
     }
 
+    /**
+     * enables the conversion of ArcInfo ASCII source grids into binary tiles on first access.<br /><br />
+     * <i>German:</i> aktiviert die Konvertierung von ArcInfo-ASCII-Quellgittern in bin&auml;re Kacheln (siehe
+     * <tt>BinaryElevationTile</tt>) beim ersten Zugriff. Folgende Zugriffe auf diese Kachel lesen dann nur noch die
+     * eingeblendete Bin&auml;rdatei.
+     * @param pVal <i>true</i>, falls Konvertierung erfolgen soll, sonst <i>false</i> (Voreinstellung)
+     */
+    public void setBuildBinaryTiles(boolean pVal) {
+        mBuildBinaryTiles = pVal;
+    }
+
+    /**
+     * sets the interpolation method used to calculate the destination grid. Supported values are "InverseDistance"
+     * (default), "Nearest", "Bilinear", "Bicubic" and "AreaAverage".<br /><br />
+     * <i>German:</i> setzt das Verfahren zur Berechnung des Zielgitters. Unterst&uuml;tzt werden "InverseDistance"
+     * (Voreinstellung, Gridding &uuml;ber den Suchradius) sowie die direkten Verfahren "Nearest", "Bilinear",
+     * "Bicubic" und "AreaAverage" (vgl. <tt>GridResampler</tt>). Bei direkter Interpolation wird der Suchradius
+     * nicht ausgewertet.
+     * @param pMethod Interpolationsverfahren
+     * @see GridResampler
+     */
+    public void setInterpolation(String pMethod) {
+        mInterpolation = pMethod;
+    }
+
+    /**
+     * sets the number of destination grid row bands to be computed concurrently.<br /><br />
+     * <i>German:</i> setzt die Anzahl der gleichzeitig berechneten Zeilenstreifen des Zielgitters. Die Streifen
+     * werden in einem prozessweit gemeinsamen Thread-Pool berechnet (vgl. <tt>ParallelGridFiller</tt>); das Ergebnis
+     * ist unabh&auml;ngig vom Parallelit&auml;tsgrad.
+     * @param pParallelism Parallelit&auml;tsgrad (1 f&uuml;r sequentielle Berechnung (Voreinstellung), Werte &lt; 1
+     * f&uuml;r Anzahl Prozessoren)
+     */
+    public void setParallelism(int pParallelism) {
+        mParallelism = pParallelism;
+    }
+
+    /**
+     * sets the manifest of the available source tiles. If set, the tiles needed for a request will be determined
+     * by an index query instead of coordinate transformations, and gaps will be rejected before any tile is read.
+     * <br /><br />
+     * <i>German:</i> setzt das Verzeichnis der verf&uuml;gbaren Quellkacheln. Ist ein Verzeichnis gesetzt, werden die
+     * f&uuml;r eine Anfrage ben&ouml;tigten Kacheln &uuml;ber eine Indexabfrage statt &uuml;ber
+     * Koordinatentransformationen ermittelt; L&uuml;cken im Datenbestand f&uuml;hren bereits vor dem Einlesen der
+     * Kacheln zum Fehler 201. Enth&auml;lt das Verzeichnis f&uuml;r die Kachelung und das Raumbezugssystem einer
+     * Anfrage keine Kacheln, wird wie bisher verfahren.
+     * @param pManifest Kachelverzeichnis oder <i>null</i> (Voreinstellung)
+     */
+    public void setTileManifest(TileManifest pManifest) {
+        mTileManifest = pManifest;
+    }
+
+    /**
+     * enables the error-bounded TIN simplification for the output formats "IndexedTIN", "Vrml1", "Vrml2" and
+     * "X3d".<br /><br />
+     * <i>German:</i> aktiviert die fehlerbegrenzte TIN-Vereinfachung f&uuml;r die Ausgabeformate "IndexedTIN",
+     * "Vrml1", "Vrml2" und "X3d" (vgl. <tt>TinSimplifier</tt>). Statt des regelm&auml;&szlig;igen Gitters wird dann
+     * ein Dreiecksnetz ausgegeben, dessen Gr&ouml;&szlig;e von der Gel&auml;ndeform abh&auml;ngt. Ist keiner der
+     * beiden Werte gesetzt, wird nicht vereinfacht (Voreinstellung); das Format "IndexedTIN" wird dann verlustfrei
+     * vereinfacht. Das triturus-Format "AcGeoTIN" wird stets unvereinfacht geschrieben.
+     * @param pMaxError maximale vertikale Abweichung (Werte &lt; 0 f&uuml;r &quot;nicht gesetzt&quot;)
+     * @param pMaxTriangles maximale Dreiecksanzahl (Werte &lt;= 0 f&uuml;r &quot;nicht gesetzt&quot;)
+     */
+    public void setSimplification(double pMaxError, int pMaxTriangles) {
+        mTinMaxTriangles = Math.max(0, pMaxTriangles);
+        mTinMaxError = (pMaxError < 0. && mTinMaxTriangles > 0) ? 0. : pMaxError;
+    }
+
+    private boolean simplifies() {
+        return mTinMaxError >= 0.;
+    }
+
+    // prueft, ob fuer das Zielformat ein Dreiecksnetz mittels TinSimplifier erzeugt wird.
+    private boolean writesTin(String pDest) {
+        return GridStreamWriter.isSupportedForTin(pDest) && (this.simplifies() || !GridStreamWriter.isSupported(pDest));
+    }
+
+    /**
+     * sets the URLs of detail scenes for level-of-detail output. Only relevant for the formats "Vrml2" and "X3d"
+     * written by <tt>this.writeDEM()</tt>.<br /><br />
+     * <i>German:</i> setzt die URLs der Detailszenen f&uuml;r die Ausgabe mit Detailstufen (vgl.
+     * <tt>GridStreamWriter#setLevelOfDetail</tt>). Nur f&uuml;r die &uuml;ber <tt>this.writeDEM()</tt>
+     * geschriebenen Formate "Vrml2" und "X3d" relevant.
+     * @param pChildUrls URLs der Detailszenen oder <i>null</i> (Voreinstellung)
+     */
+    public void setLevelOfDetail(String[] pChildUrls) {
+        mLodUrls = pChildUrls;
+    }
+
+    /**
+     * sets a receiver for progress reports of <tt>this.setUpDEM()</tt> and <tt>this.writeDEMBanded()</tt>.
+     * <br /><br />
+     * <i>German:</i> setzt einen Empf&auml;nger f&uuml;r Fortschrittsmeldungen von <tt>this.setUpDEM()</tt> und
+     * <tt>this.writeDEMBanded()</tt>.
+     * @param pListener Empf&auml;nger oder <i>null</i> (Voreinstellung)
+     */
+    public void setProgressListener(ProgressListener pListener) {
+        mProgress = pListener;
+    }
+
+    private void reportProgress(double pFraction) {
+        if (mProgress != null)
+            mProgress.progress(pFraction);
+    }
+
     /**
      * sets the console-output mode for control outputs.<br /><br />
      * <i>German:</i> setzt des Modus f&uuml;r die Konsolen-Ausgabe von Kontrollausgaben.
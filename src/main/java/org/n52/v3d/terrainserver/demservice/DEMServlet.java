@@ -20,9 +20,17 @@
 package org.n52.v3d.terrainserver.demservice;
 
 import java.io.*;
-
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Properties;
+import java.util.StringTokenizer;
+import java.util.TimeZone;
+
+import org.n52.v3d.terrainserver.web.AsyncRequestExecutor;
+import org.n52.v3d.terrainserver.web.CompressionFilter;
 import org.n52.v3d.triturus.core.T3dException;
 import org.n52.v3d.triturus.vgis.VgEnvelope;
+import org.n52.v3d.triturus.vgis.VgElevationGrid;
 import org.n52.v3d.triturus.gisimplm.GmEnvelope;
 import org.n52.v3d.triturus.web.HttpRequestParams;
 import org.n52.v3d.triturus.web.HttpStandardResponse;
@@ -44,6 +52,24 @@ import org.apache.commons.logging.LogFactory;
  * Beispielaufruf:
  * <tt>http://<hostname>/DEMServlet?REQUEST=GetDEM&SRS=EPSG:31466&BBOX=2590000,5740000,2600000,5750000&CELLSIZE=100&FORMAT=ArcIGrd</tt>
  * <br />
+ * F&uuml;r die Formate "IndexedTIN", "Vrml1", "Vrml2" und "X3d" l&auml;sst sich &uuml;ber die Parameter MAXERROR
+ * (maximale vertikale Abweichung) und/oder MAXTRIANGLES ein vereinfachtes Dreiecksnetz anfordern (vgl.
+ * <tt>TinSimplifier</tt>).<br />
+ * Mit LODLEVELS=n (n &gt; 0) liefert eine GetScene-Anfrage ("Vrml2" bzw. "X3d") nur ein grobes Modell mit der
+ * Gitterweite CELLSIZE * 2^n, das in einen <tt>LOD</tt>-Knoten eingebettet ist. Dieser verweist per
+ * <tt>Inline</tt> auf die vier Quadranten der BBOX (LODLEVELS=n-1), die erst bei Ann&auml;herung vom Servlet
+ * angefordert werden.<br />
+ * Kachelweiser Zugriff auf eine feste Pyramide (vgl. <tt>TilePyramid</tt>):
+ * <tt>http://<hostname>/DEMServlet?REQUEST=GetTile&SCHEME=europe-0.5deg&LEVEL=2&ROW=85&COL=130&FORMAT=model/vrml</tt>
+ * <br />
+ * Ist der Parameter "OutOfCoreMaxArea" im Deployment-Deskriptor gesetzt, werden Gitter-Anfragen ("ArcIGrd",
+ * "AcGeo", "BinFloat32", "GeoTIFF"), deren Fl&auml;che "MaxArea" &uuml;berschreitet, bandweise berechnet und
+ * geschrieben (vgl. <tt>DEMServiceHelpers#writeDEMBanded</tt>).<br />
+ * Sehr gro&szlig;e Exporte lassen sich asynchron bearbeiten (Parameter "JobWorkers" &gt; 0): REQUEST=SubmitJob mit den
+ * Parametern einer GetDEM-Anfrage liefert eine Auftragskennung, deren Zustand und Fortschritt &uuml;ber
+ * REQUEST=GetJobStatus&JOBID=... abgefragt werden kann. Das Ergebnis wird &uuml;ber REQUEST=GetJobResult&JOBID=...
+ * (mit Unterst&uuml;tzung von HTTP-Range-Anfragen) abgerufen und bis zum Ablauf von "JobRetention" aufbewahrt
+ * (vgl. <tt>JobQueue</tt>).<br />
  * Bem.: Der Dienst ist konform zur W3DS-Spezifikation des "3D-Piloten" der GDI-NRW.<br />
  * Voraussetzung f&uuml;r die Lauff&auml;higkeit des Servlets ist eine entsprechende Organisation der
  * H&ouml;henmodelldaten. Die Modelle m&uuml;ssen TK 25-Blattschnitt-weise als ArcInfo-ASCII-Grids unter
@@ -59,6 +85,10 @@ public class DEMServlet extends HttpServlet
 
     private static int mCounter = 0;
 
+    private AsyncRequestExecutor mExecutor = null; // Bearbeitung der Anfragen im eigenen Thread-Pool
+
+    private static final int sMaxLodLevels = 8;
+
     // Einstellungen aus Deployment-Deskriptor:
     private String mDestFilePath;
     private String mSourceGridPath;
@@ -69,6 +99,16 @@ public class DEMServlet extends HttpServlet
     private double mSearchRadiusMin = 49.99; // todo: doku inst-hbu
     private String mCapabilitiesFile;
     private String mWorkingDirectory;
+    private boolean mBuildBinaryTiles = false;
+    private int mGriddingParallelism = 1;
+    private boolean mUseTileManifest = false;
+    private String mInterpolation = GridResampler.sInverseDistance;
+    private ResponseCache mResponseCache = null;
+    private int mTileSize = 257; // Gitterpunkte je Kachelkante (GetTile)
+    private int mTileMaxAge = 2592000; // 30 Tage
+    private double mOutOfCoreMaxArea = 0.; // 0: keine bandweise Berechnung grosser Gebiete
+    private JobQueue mJobQueue = null; // asynchrone Export-Auftraege (SubmitJob)
+    private double mJobMaxArea = 0.;
 
     /**
      * liest die Ablaufparameter aus dem Deployment-Deskriptor und �bertr�gt die Werte in entsprechende
@@ -85,6 +125,50 @@ public class DEMServlet extends HttpServlet
         mSearchRadiusMin = Double.parseDouble(this.getInitParameter("SearchRadiusMin"));
         mDestFilePath = this.getInitParameter("DestFilePath");
         mWorkingDirectory = this.getInitParameter("WorkingDirectory");
+        mBuildBinaryTiles = Boolean.valueOf(this.getInitParameter("BuildBinaryTiles")).booleanValue();
+        if (this.getInitParameter("GriddingParallelism") != null)
+            mGriddingParallelism = Integer.parseInt(this.getInitParameter("GriddingParallelism").trim());
+        mUseTileManifest = Boolean.valueOf(this.getInitParameter("UseTileManifest")).booleanValue();
+        if (mUseTileManifest)
+            TileManifest.getInstance(mSourceGridPath); // Quellkacheln einmalig erfassen
+        if (this.getInitParameter("Interpolation") != null)
+            mInterpolation = new ParameterPreparer().prepareINTERPOLATION(this.getInitParameter("Interpolation"));
+        String lRespCacheMaxBytes = this.getInitParameter("ResponseCacheMaxBytes");
+        if (lRespCacheMaxBytes != null && Long.parseLong(lRespCacheMaxBytes.trim()) > 0) {
+            String lRespCacheDir = this.getInitParameter("ResponseCacheDir");
+            if (lRespCacheDir == null)
+                lRespCacheDir = mDestFilePath + "/responsecache";
+            mResponseCache = new ResponseCache(lRespCacheDir, Long.parseLong(lRespCacheMaxBytes.trim()));
+        }
+        if (this.getInitParameter("TileSize") != null)
+            mTileSize = Integer.parseInt(this.getInitParameter("TileSize").trim());
+        if (mTileSize < 2)
+            throw new T3dException("TileSize must be at least 2.");
+        if (this.getInitParameter("TileMaxAge") != null)
+            mTileMaxAge = Integer.parseInt(this.getInitParameter("TileMaxAge").trim());
+        if (this.getInitParameter("OutOfCoreMaxArea") != null)
+            mOutOfCoreMaxArea = Double.parseDouble(this.getInitParameter("OutOfCoreMaxArea").trim());
+        String lJobWorkers = this.getInitParameter("JobWorkers");
+        if (lJobWorkers != null && Integer.parseInt(lJobWorkers.trim()) > 0) {
+            String lJobDir = this.getInitParameter("JobDirectory");
+            if (lJobDir == null)
+                lJobDir = mDestFilePath + "/jobs";
+            long lRetention = 86400; // 1 Tag
+            if (this.getInitParameter("JobRetention") != null)
+                lRetention = Long.parseLong(this.getInitParameter("JobRetention").trim());
+            mJobMaxArea = Math.max(mMaxArea, mOutOfCoreMaxArea);
+            if (this.getInitParameter("JobMaxArea") != null)
+                mJobMaxArea = Double.parseDouble(this.getInitParameter("JobMaxArea").trim());
+            mJobQueue = new JobQueue(lJobDir, Integer.parseInt(lJobWorkers.trim()), lRetention, new JobQueue.Processor() {
+                public void process(JobQueue.Job pJob, File pResult) throws Exception {
+                    processJob(pJob, pResult);
+                }
+            });
+            if (this.getInitParameter("MaxQueuedJobs") != null)
+                mJobQueue.setMaxQueuedJobs(Integer.parseInt(this.getInitParameter("MaxQueuedJobs").trim()));
+            if (this.getInitParameter("MaxJobResultBytes") != null)
+                mJobQueue.setMaxResultBytes(Long.parseLong(this.getInitParameter("MaxJobResultBytes").trim()));
+        }
 
         if (mLocalDebug) {
             System.out.println("SourceGridPath = " + mSourceGridPath);
@@ -100,6 +184,19 @@ public class DEMServlet extends HttpServlet
 
         // Initialisierungsparameter aus "web.xml" lesen:
         this.fetchInitParameters();
+
+        mExecutor = AsyncRequestExecutor.fromConfig(pConf, 4, 50);
+    }
+
+    /**
+     * beendet das Servlet. Laufende Export-Auftr&auml;ge werden beim n&auml;chsten Start erneut bearbeitet.<p>
+     */
+    public void destroy() {
+        if (mExecutor != null)
+            mExecutor.shutdown();
+        if (mJobQueue != null)
+            mJobQueue.shutdown();
+        super.destroy();
     }
 
     private HttpRequestParams fetchRequestParameters(HttpServletRequest pReq)
@@ -116,6 +213,15 @@ public class DEMServlet extends HttpServlet
         lReqParams.addParameter("FORMAT", "String", "model/vrml");
         lReqParams.addParameter("SEARCHRADIUS", "Double", "49.99"); // vgl. Initialisierungsparam. SearchRadiusDefault!
         lReqParams.addParameter("DRAPE", "String", "");
+        lReqParams.addParameter("INTERPOLATION", "String", mInterpolation);
+        lReqParams.addParameter("MAXERROR", "Double", "-1"); // TIN-Vereinfachung, < 0: nicht gesetzt
+        lReqParams.addParameter("MAXTRIANGLES", "Integer", "0");
+        lReqParams.addParameter("LODLEVELS", "Integer", "0"); // Anzahl Detailstufen (GetScene)
+        lReqParams.addParameter("SCHEME", "String", "");
+        lReqParams.addParameter("LEVEL", "String", "");
+        lReqParams.addParameter("ROW", "String", "");
+        lReqParams.addParameter("COL", "String", "");
+        lReqParams.addParameter("JOBID", "String", "");
 
         lReqParams.fetchRequestParameters(pReq);
 
@@ -124,7 +230,8 @@ public class DEMServlet extends HttpServlet
     }
 
     /**
-     * bearbeitet HTTP-Get-Anfragen an das Servlet.<p>
+     * bearbeitet HTTP-Get-Anfragen an das Servlet. Die Bearbeitung erfolgt asynchron im Thread-Pool des Dienstes
+     * (vgl. <tt>AsyncRequestExecutor</tt>), so dass wartende Anfragen keine Container-Threads belegen.<p>
      * @param pRequest HTTP-Anfrage-Objekt
      * @param pResponse HTTP-Antwort-Objekt
      * @throws ServletException
@@ -132,6 +239,17 @@ public class DEMServlet extends HttpServlet
      */
     public void doGet(HttpServletRequest pRequest, HttpServletResponse pResponse)
         throws ServletException, IOException
+    {
+        mExecutor.execute(pRequest, pResponse, new AsyncRequestExecutor.Handler() {
+            public void handle(HttpServletRequest pReq, HttpServletResponse pResp) throws ServletException, IOException {
+                processRequest(pReq, pResp);
+            }
+        });
+    }
+
+    // bearbeitet eine Anfrage im Worker-Thread
+    private void processRequest(HttpServletRequest pRequest, HttpServletResponse pResponse)
+        throws ServletException, IOException
     {
         T3dTimeList lTimeProt = new T3dTimeList(); // zur Protokollierung der Rechenzeiten
         lTimeProt.addTimeStamp("init");
@@ -149,30 +267,93 @@ public class DEMServlet extends HttpServlet
             String lFormat = (String) lReqParams.getParameterValue("FORMAT");
             double lSearchRadius = ((Double) lReqParams.getParameterValue("SEARCHRADIUS")).doubleValue();
             String lDrape = (String) lReqParams.getParameterValue("DRAPE");
+            String lInterpolation = (String) lReqParams.getParameterValue("INTERPOLATION");
+            double lMaxError = ((Double) lReqParams.getParameterValue("MAXERROR")).doubleValue();
+            int lMaxTriangles = ((Integer) lReqParams.getParameterValue("MAXTRIANGLES")).intValue();
+            int lLodLevels = ((Integer) lReqParams.getParameterValue("LODLEVELS")).intValue();
 
             if (mLocalDebug) {
                 System.out.println("CELLSIZE = " + lCellSize);
                 System.out.println("SEARCHRADIUS = " + lSearchRadius);
                 System.out.println("FORMAT = " + lFormat);
                 System.out.println("DRAPE = " + lDrape);
+                System.out.println("INTERPOLATION = " + lInterpolation);
             }
 
             // Bearbeitung GetCapabilities-Anfrage:
             if (lRequest.equalsIgnoreCase("GetCapabilities")) {
-                HttpStandardResponse response = new HttpStandardResponse();
-                response.sendXMLFile(mCapabilitiesFile, pResponse);
+                if (!CompressionFilter.sendPrecompressed(mCapabilitiesFile, "text/xml", pRequest, pResponse)) {
+                    HttpStandardResponse response = new HttpStandardResponse();
+                    response.sendXMLFile(mCapabilitiesFile, pResponse);
+                }
                 logGetCapabilitiesInfo(lTmpName, pRequest);
                 return;
             }
 
-            // Bearbeitung GetDEM- und GetScene-Anfrage:
-            if (lRequest.equalsIgnoreCase("GetDEM") || lRequest.equalsIgnoreCase("GetScene"))
+            // Bearbeitung GetJobStatus- und GetJobResult-Anfrage:
+            if (lRequest.equalsIgnoreCase("GetJobStatus") || lRequest.equalsIgnoreCase("GetJobResult")) {
+                if (mJobQueue == null)
+                    throw new T3dException("Asynchronous jobs are not enabled for this service.");
+                String lJobId = (String) lReqParams.getParameterValue("JOBID");
+                JobQueue.Job lJob = mJobQueue.lookup(lJobId);
+                if (lJob == null)
+                    throw new T3dException("Unknown or expired JOBID \"" + lJobId + "\".");
+                if (lRequest.equalsIgnoreCase("GetJobStatus"))
+                    this.sendJobStatus(pRequest, pResponse, lJob);
+                else
+                    this.sendJobResult(pRequest, pResponse, lJob);
+                return;
+            }
+
+            // Bearbeitung GetTile-Anfrage: Kachelausdehnung und Gitterweite ergeben sich allein aus der
+            // Kachel-Adresse, so dass die Antwort wie eine GetDEM- bzw. GetScene-Anfrage erzeugt werden kann:
+            String lETag = null;
+            if (lRequest.equalsIgnoreCase("GetTile")) {
+                ParameterPreparer pp = new ParameterPreparer();
+                TilePyramid lPyramid = TilePyramid.getInstance();
+                String lScheme = lPyramid.schemeId((String) lReqParams.getParameterValue("SCHEME"));
+                int lLevel = pp.prepareTileIndex("LEVEL", (String) lReqParams.getParameterValue("LEVEL"));
+                int lRow = pp.prepareTileIndex("ROW", (String) lReqParams.getParameterValue("ROW"));
+                int lCol = pp.prepareTileIndex("COL", (String) lReqParams.getParameterValue("COL"));
+                lFormat = pp.prepareFORMAT(lFormat, lRequest);
+
+                lSRS = "EPSG:4326";
+                lBBox = lPyramid.tileEnvelope(lScheme, lLevel, lRow, lCol);
+                lCellSize = Math.min(lBBox.getExtentX(), lBBox.getExtentY()) / (mTileSize - 1);
+                if (lCellSize < mMinCellSizeLatLon)
+                    throw new T3dException("Tile level " + lLevel + " exceeds the resolution of the source data.");
+                lSearchRadius = mSearchRadiusMin;
+                lInterpolation = mInterpolation; // keine anfragespezifischen Einstellungen, Antwort ist unveraenderlich
+
+                lETag = "\"" + ResponseCache.digest("GetTile|" + lScheme + "|" + lLevel + "|" + lRow + "|" + lCol + "|"
+                    + lFormat + "|" + mTileSize + "|" + lInterpolation + "|" + mSearchRadiusMin + "|"
+                    + lMaxError + "|" + lMaxTriangles) + "\"";
+                this.setTileHeaders(pResponse, lETag);
+                String lIfNoneMatch = pRequest.getHeader("If-None-Match");
+                if (lIfNoneMatch != null && (lIfNoneMatch.indexOf(lETag) >= 0 || lIfNoneMatch.trim().equals("*"))) {
+                    pResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return;
+                }
+            }
+
+            // Bearbeitung GetDEM-, GetScene-, GetTile- und SubmitJob-Anfrage:
+            if (lRequest.equalsIgnoreCase("GetDEM") || lRequest.equalsIgnoreCase("GetScene") || lETag != null
+                || lRequest.equalsIgnoreCase("SubmitJob"))
             {
                 // Request-Parameter aufbereiten und Wertebereiche pr�fen:
                 ParameterPreparer pp = new ParameterPreparer();
                 lSRS = pp.prepareSRS(lSRS);
                 lBBox = pp.prepareBBOX(lBBox, lSRS);
                 lFormat = pp.prepareFORMAT(lFormat, lRequest);
+                lInterpolation = pp.prepareINTERPOLATION(lInterpolation);
+                if (lMaxTriangles < 0)
+                    throw new T3dException("Invalid MAXTRIANGLES parameter.");
+                if (lLodLevels != 0) {
+                    if (!lRequest.equalsIgnoreCase("GetScene"))
+                        throw new T3dException("LODLEVELS is supported for GetScene requests only.");
+                    if (lLodLevels < 0 || lLodLevels > sMaxLodLevels)
+                        throw new T3dException("LODLEVELS must be in the range 0 ... " + sMaxLodLevels + ".");
+                }
                 if (mLocalDebug)
                     System.out.println("env = " + lBBox);
 
@@ -188,9 +369,6 @@ public class DEMServlet extends HttpServlet
                 if (lSearchRadius < mSearchRadiusMin)
                     lSearchRadius = mSearchRadiusMin;
 
-                DEMServiceHelpers lHlp = new DEMServiceHelpers(mMaxArea);
-                //lHlp.setLocalDebug(mLocalDebug);
-
                 if (! lBBox.hasGeographicSRS()) {
                     if (lCellSize < mMinCellSize)
                         throw new T3dException("Cell-size may not be less than " + mMinCellSize + " meters.");
@@ -203,14 +381,86 @@ public class DEMServlet extends HttpServlet
                 sLogger.debug("DEMServlet (" + lTmpName + "): Received " + lRequest + " request.");
                 lTimeProt.setFinished("init");
 
+                // Export-Auftrag lediglich einplanen, die Berechnung erfolgt asynchron:
+                if (lRequest.equalsIgnoreCase("SubmitJob")) {
+                    this.submitJob(
+                        pRequest, pResponse, lSRS, lBBox, lCellSize, lFormat, lSearchRadius, lInterpolation,
+                        lMaxError, lMaxTriangles);
+                    return;
+                }
+
+                // Bereits berechnete Antwort aus dem Cache senden:
+                String lCacheKey = null;
+                if (mResponseCache != null) {
+                    String lVariant = lFormat;
+                    if (lMaxError >= 0. || lMaxTriangles > 0)
+                        lVariant += "|tin:" + lMaxError + "/" + lMaxTriangles;
+                    if (lLodLevels > 0)
+                        lVariant += "|lod:" + lLodLevels;
+                    lCacheKey = ResponseCache.key(lSRS, lBBox, lCellSize, lVariant, lSearchRadius, lInterpolation);
+                    ResponseCache.Entry lCached = mResponseCache.lookup(lCacheKey);
+                    if (lCached != null) {
+                        lTimeProt.addTimeStamp("generate_response");
+                        pResponse.setContentType(lCached.getMimeType());
+                        pResponse.setContentLength((int) lCached.getSize());
+                        OutputStream lOut = pResponse.getOutputStream();
+                        if (mResponseCache.send(lCached, lOut)) {
+                            lOut.close();
+                            lTimeProt.setFinished("generate_response");
+                            this.logCacheStatistics(lTmpName);
+                            return;
+                        }
+                        pResponse.reset(); // Eintrag wurde zwischenzeitlich verdraengt
+                        if (lETag != null)
+                            this.setTileHeaders(pResponse, lETag);
+                    }
+                }
+
+                DEMServiceHelpers lHlp = this.createHelpers(lInterpolation, lMaxError, lMaxTriangles);
+
+                // Detailstufen: eigenes Modell in vergroeberter Gitterweite, Quadranten als Inline-Verweise
+                double lGridCellSize = lCellSize;
+                if (lLodLevels > 0) {
+                    String lDest = lHlp.formatInfo(lFormat, "dest");
+                    if (!(lDest.equalsIgnoreCase("Vrml2") || lDest.equalsIgnoreCase("X3d")))
+                        throw new T3dException("LODLEVELS requires a VRML 2 or X3D output format.");
+                    lGridCellSize = lCellSize * (1 << lLodLevels);
+                    lHlp.setLevelOfDetail(this.lodChildUrls(
+                        pRequest, lReqParams, lSRS, lBBox, lCellSize, lFormat, lInterpolation, lLodLevels - 1));
+                }
+                //lHlp.setLocalDebug(mLocalDebug);
+
+                // Gebiete oberhalb MaxArea bandweise berechnen, sofern freigeschaltet (nur Gitterformate):
+                double lArea = lBBox.getExtentX() * lBBox.getExtentY();
+                boolean lBanded = mOutOfCoreMaxArea > 0. && lArea > mMaxArea
+                    && lHlp.isBandable(lFormat) && lMaxError < 0. && lMaxTriangles == 0 && lLodLevels == 0;
+                if (lBanded && lArea > mOutOfCoreMaxArea) {
+                    throw new T3dException(
+                        "Destination grid size exceeds Service-internal size-limit (" + ((long) (mOutOfCoreMaxArea/1.e6)) + ")! "
+                        + "Please scale-down your BBOX.", 200);
+                }
+
                 // H�henmodell berechnen (Gridding):
                 lTimeProt.addTimeStamp("dem_access");
-                String lResFile;
+                boolean lStreamable = lBanded || lHlp.isStreamable(lFormat);
+                VgElevationGrid lResGrid = null;
+                String lResFile = null;
                 try {
-                    lResFile = lHlp.setUpDEM(     // TODO arbeitet f�r lat/lon noch nicht sauber! -> QS!
-                        lBBox.getLowerLeftFrontCorner(), lBBox.getUpperRightBackCorner(), lCellSize,
-                        lSearchRadius, mTileLocator,
-                        lFormat, mSourceGridPath, mDestFilePath, lTmpName);
+                    if (lBanded) {
+                        // Berechnung erfolgt erst beim Schreiben der Antwort
+                    }
+                    else if (lStreamable) {
+                        // Ergebnis wird ohne Temporaerdatei direkt in die Antwort kodiert
+                        lResGrid = lHlp.setUpDEM(     // TODO arbeitet f�r lat/lon noch nicht sauber! -> QS!
+                            lBBox.getLowerLeftFrontCorner(), lBBox.getUpperRightBackCorner(), lGridCellSize,
+                            lSearchRadius, mTileLocator, mSourceGridPath);
+                    }
+                    else {
+                        lResFile = lHlp.setUpDEM(     // TODO arbeitet f�r lat/lon noch nicht sauber! -> QS!
+                            lBBox.getLowerLeftFrontCorner(), lBBox.getUpperRightBackCorner(), lGridCellSize,
+                            lSearchRadius, mTileLocator,
+                            lFormat, mSourceGridPath, mDestFilePath, lTmpName);
+                    }
                 }
                 catch (T3dException e) {
                     final boolean lDebug = false;
@@ -229,6 +479,37 @@ public class DEMServlet extends HttpServlet
                 lTimeProt.addTimeStamp("generate_response");
                 String mime = lHlp.formatInfo(lFormat, "mime");
                 pResponse.setContentType(mime); // MIME-Typ f�r Antwort setzen
+                if (lStreamable) {
+                    OutputStream lOut = pResponse.getOutputStream();
+                    if (mResponseCache == null) {
+                        this.writeResult(lHlp, lResGrid, lBanded, lBBox, lCellSize, lSearchRadius, lFormat, lOut);
+                        lOut.close();
+                    }
+                    else {
+                        // Antwort gleichzeitig in den Cache schreiben:
+                        File lBody = mResponseCache.createTempFile();
+                        OutputStream lCopy = new BufferedOutputStream(new FileOutputStream(lBody), 65536);
+                        boolean lComplete = false;
+                        try {
+                            this.writeResult(lHlp, lResGrid, lBanded, lBBox, lCellSize, lSearchRadius, lFormat,
+                                new TeeOutputStream(lOut, lCopy));
+                            lOut.close();
+                            lCopy.close();
+                            lComplete = true;
+                        }
+                        finally {
+                            if (lComplete)
+                                mResponseCache.put(lCacheKey, lBody, mime, lHlp.sourceFiles());
+                            else {
+                                lCopy.close();
+                                lBody.delete();
+                            }
+                        }
+                    }
+                    lTimeProt.setFinished("generate_response");
+                    this.logCacheStatistics(lTmpName);
+                    return;
+                }
                 BufferedReader lDatRead;
                 try {
                     lDatRead = new BufferedReader(new FileReader(lResFile));
@@ -248,11 +529,12 @@ public class DEMServlet extends HttpServlet
                 File f = new File(lResFile);
                 f.delete();
                 lTimeProt.setFinished("generate_response");
+                this.logCacheStatistics(lTmpName);
                 return;
             }
 
             // Bearbeitung sonstiger Anfragen:
-            if (!(lRequest.equalsIgnoreCase("GetDEM") || lRequest.equalsIgnoreCase("GetScene"))) {
+            if (!(lRequest.equalsIgnoreCase("GetDEM") || lRequest.equalsIgnoreCase("GetScene") || lETag != null)) {
                 HttpStandardResponse response = new HttpStandardResponse();
                 response.sendException("Illegal REQUEST parameter value.", pResponse);
                 return;
@@ -270,6 +552,8 @@ public class DEMServlet extends HttpServlet
 
             HttpStandardResponse response = new HttpStandardResponse();
             try {
+                if (!pResponse.isCommitted() && pResponse.containsHeader("ETag"))
+                    pResponse.reset(); // Fehlermeldungen nicht als unveraenderliche Kachel ausliefern
                 response.sendException(e.getMessage(), pResponse);
             }
             catch (Throwable e2) {
@@ -284,6 +568,279 @@ public class DEMServlet extends HttpServlet
         }
     }
 
+    private String[] lodChildUrls(
+        HttpServletRequest pRequest, HttpRequestParams pReqParams, String pSRS, GmEnvelope pBBox, double pCellSize,
+        String pFormat, String pInterpolation, int pLodLevels)
+    {
+        // Relative URLs, damit (zwischengespeicherte) Antworten unabhaengig vom verwendeten Host-Namen sind
+        String lBase = pRequest.getRequestURI();
+        lBase = lBase.substring(lBase.lastIndexOf('/') + 1);
+        StringBuffer lParams = new StringBuffer();
+        lParams.append("&SRS=").append(urlEncode(pSRS));
+        lParams.append("&CELLSIZE=").append(pCellSize);
+        lParams.append("&FORMAT=").append(urlEncode(pFormat));
+        lParams.append("&SEARCHRADIUS=").append(pReqParams.getParameterValue("SEARCHRADIUS"));
+        lParams.append("&INTERPOLATION=").append(urlEncode(pInterpolation));
+        if (((Double) pReqParams.getParameterValue("MAXERROR")).doubleValue() >= 0.)
+            lParams.append("&MAXERROR=").append(pReqParams.getParameterValue("MAXERROR"));
+        if (((Integer) pReqParams.getParameterValue("MAXTRIANGLES")).intValue() > 0)
+            lParams.append("&MAXTRIANGLES=").append(pReqParams.getParameterValue("MAXTRIANGLES"));
+        lParams.append("&LODLEVELS=").append(pLodLevels);
+
+        double x0 = pBBox.getXMin(), x2 = pBBox.getXMax(), x1 = 0.5 * (x0 + x2);
+        double y0 = pBBox.getYMin(), y2 = pBBox.getYMax(), y1 = 0.5 * (y0 + y2);
+        double[][] lQuads = {{x0, y0, x1, y1}, {x1, y0, x2, y1}, {x0, y1, x1, y2}, {x1, y1, x2, y2}};
+        String[] lUrls = new String[lQuads.length];
+        for (int k = 0; k < lQuads.length; k++) {
+            lUrls[k] = lBase + "?REQUEST=GetScene&BBOX="
+                + lQuads[k][0] + "," + lQuads[k][1] + "," + lQuads[k][2] + "," + lQuads[k][3] + lParams;
+        }
+        return lUrls;
+    }
+
+    private static String urlEncode(String pVal) {
+        try {
+            return java.net.URLEncoder.encode(pVal, "UTF-8");
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new T3dException(e.getMessage());
+        }
+    }
+
+    private void writeResult(
+        DEMServiceHelpers pHlp, VgElevationGrid pResGrid, boolean pBanded, GmEnvelope pBBox, double pCellSize,
+        double pSearchRadius, String pFormat, OutputStream pOut) throws IOException
+    {
+        if (pBanded) {
+            // Gitter bandweise berechnen und schreiben, nur die Kacheln des aktuellen Bandes im Speicher:
+            pHlp.writeDEMBanded(
+                pBBox.getLowerLeftFrontCorner(), pBBox.getUpperRightBackCorner(), pCellSize,
+                pSearchRadius, mTileLocator, mSourceGridPath, pFormat, pOut);
+        }
+        else
+            pHlp.writeDEM(pResGrid, pFormat, pOut);
+    }
+
+    private DEMServiceHelpers createHelpers(String pInterpolation, double pMaxError, int pMaxTriangles)
+    {
+        DEMServiceHelpers lHlp = new DEMServiceHelpers(mMaxArea);
+        lHlp.setBuildBinaryTiles(mBuildBinaryTiles);
+        lHlp.setParallelism(mGriddingParallelism);
+        if (mUseTileManifest)
+            lHlp.setTileManifest(TileManifest.getInstance(mSourceGridPath));
+        lHlp.setInterpolation(pInterpolation);
+        lHlp.setSimplification(pMaxError, pMaxTriangles);
+        return lHlp;
+    }
+
+    private void submitJob(
+        HttpServletRequest pRequest, HttpServletResponse pResponse, String pSRS, GmEnvelope pBBox, double pCellSize,
+        String pFormat, double pSearchRadius, String pInterpolation, double pMaxError, int pMaxTriangles)
+        throws IOException
+    {
+        if (mJobQueue == null)
+            throw new T3dException("Asynchronous jobs are not enabled for this service.");
+        DEMServiceHelpers lHlp = this.createHelpers(pInterpolation, pMaxError, pMaxTriangles);
+        double lArea = pBBox.getExtentX() * pBBox.getExtentY();
+        boolean lBandable = lHlp.isBandable(pFormat) && pMaxError < 0. && pMaxTriangles == 0;
+        if (lArea > mJobMaxArea || (lArea > mMaxArea && !lBandable)) {
+            double lLimit = lBandable ? mJobMaxArea : mMaxArea;
+            throw new T3dException(
+                "Destination grid size exceeds Service-internal size-limit (" + ((long) (lLimit/1.e6)) + ")! "
+                + "Please scale-down your BBOX.", 200);
+        }
+
+        // Anfrageparameter bereits geprueft und aufbereitet ablegen:
+        Properties lParams = new Properties();
+        lParams.setProperty("SRS", pSRS);
+        lParams.setProperty("BBOX", pBBox.getXMin() + "," + pBBox.getYMin() + "," + pBBox.getXMax() + "," + pBBox.getYMax());
+        lParams.setProperty("CELLSIZE", "" + pCellSize);
+        lParams.setProperty("FORMAT", pFormat);
+        lParams.setProperty("SEARCHRADIUS", "" + pSearchRadius);
+        lParams.setProperty("INTERPOLATION", pInterpolation);
+        lParams.setProperty("MAXERROR", "" + pMaxError);
+        lParams.setProperty("MAXTRIANGLES", "" + pMaxTriangles);
+        JobQueue.Job lJob = mJobQueue.submit(lParams, lHlp.formatInfo(pFormat, "mime"), lHlp.formatInfo(pFormat, "ext"));
+        sLogger.debug("DEMServlet: Submitted job " + lJob.getId() + ".");
+        this.sendJobStatus(pRequest, pResponse, lJob);
+    }
+
+    private void processJob(JobQueue.Job pJob, File pResult) throws IOException
+    {
+        String lSRS = pJob.getParameter("SRS");
+        StringTokenizer st = new StringTokenizer(pJob.getParameter("BBOX"), ",");
+        double lXMin = Double.parseDouble(st.nextToken()), lYMin = Double.parseDouble(st.nextToken());
+        double lXMax = Double.parseDouble(st.nextToken()), lYMax = Double.parseDouble(st.nextToken());
+        GmEnvelope lBBox = new GmEnvelope(lXMin, lXMax, lYMin, lYMax, 0., 0.);
+        lBBox.setSRS(lSRS);
+        double lCellSize = Double.parseDouble(pJob.getParameter("CELLSIZE"));
+        double lSearchRadius = Double.parseDouble(pJob.getParameter("SEARCHRADIUS"));
+        double lMaxError = Double.parseDouble(pJob.getParameter("MAXERROR"));
+        int lMaxTriangles = Integer.parseInt(pJob.getParameter("MAXTRIANGLES"));
+        String lFormat = pJob.getParameter("FORMAT");
+
+        DEMServiceHelpers lHlp = this.createHelpers(pJob.getParameter("INTERPOLATION"), lMaxError, lMaxTriangles);
+        lHlp.setProgressListener(pJob);
+        boolean lBanded = lBBox.getExtentX() * lBBox.getExtentY() > mMaxArea
+            && lHlp.isBandable(lFormat) && lMaxError < 0. && lMaxTriangles == 0;
+        if (lBanded || lHlp.isStreamable(lFormat)) {
+            VgElevationGrid lResGrid = null;
+            if (!lBanded) {
+                lResGrid = lHlp.setUpDEM(
+                    lBBox.getLowerLeftFrontCorner(), lBBox.getUpperRightBackCorner(), lCellSize,
+                    lSearchRadius, mTileLocator, mSourceGridPath);
+            }
+            OutputStream lOut = new BufferedOutputStream(new FileOutputStream(pResult), 65536);
+            try {
+                this.writeResult(lHlp, lResGrid, lBanded, lBBox, lCellSize, lSearchRadius, lFormat, lOut);
+            }
+            finally {
+                lOut.close();
+            }
+        }
+        else {
+            // Ergebnisdatei im Auftragsverzeichnis erzeugen und anschliessend umbenennen:
+            String lResFile = lHlp.setUpDEM(
+                lBBox.getLowerLeftFrontCorner(), lBBox.getUpperRightBackCorner(), lCellSize,
+                lSearchRadius, mTileLocator,
+                lFormat, mSourceGridPath, pResult.getParent(), "~" + pJob.getId());
+            if (!new File(lResFile).renameTo(pResult))
+                throw new T3dException("Internal error while moving \"" + lResFile + "\".");
+        }
+    }
+
+    private void sendJobStatus(HttpServletRequest pRequest, HttpServletResponse pResponse, JobQueue.Job pJob)
+        throws IOException
+    {
+        SimpleDateFormat lTime = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        lTime.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String lStatus = pJob.getStatus();
+
+        pResponse.setContentType("text/xml");
+        pResponse.setHeader("Cache-Control", "no-cache"); // Zustand aendert sich laufend
+        PrintWriter out = pResponse.getWriter();
+        out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        out.print("<JobStatus jobId=\"" + pJob.getId() + "\" status=\"" + lStatus + "\"");
+        out.print(" progress=\"" + Math.round(100. * pJob.getProgress()) + "\"");
+        out.print(" submitted=\"" + lTime.format(new Date(pJob.getSubmitted())) + "\"");
+        int lPosition = mJobQueue.position(pJob);
+        if (lPosition >= 0)
+            out.print(" position=\"" + lPosition + "\"");
+        if (pJob.getFinished() > 0) {
+            out.print(" finished=\"" + lTime.format(new Date(pJob.getFinished())) + "\"");
+            out.print(" expires=\"" + lTime.format(new Date(mJobQueue.expires(pJob))) + "\"");
+        }
+        out.println(">");
+        if (pJob.getMessage() != null)
+            out.println("  <Message>" + GridStreamWriter.xmlEscape(pJob.getMessage()) + "</Message>");
+        if (lStatus.equals(JobQueue.sFinished)) {
+            // Relative URL wie bei den Detailszenen (vgl. this.lodChildUrls())
+            String lBase = pRequest.getRequestURI();
+            lBase = lBase.substring(lBase.lastIndexOf('/') + 1);
+            out.println("  <Result href=\"" + GridStreamWriter.xmlEscape(lBase + "?REQUEST=GetJobResult&JOBID=" + pJob.getId())
+                + "\" format=\"" + GridStreamWriter.xmlEscape(pJob.getMimeType()) + "\" size=\"" + pJob.getResult().length() + "\"/>");
+        }
+        out.println("</JobStatus>");
+        out.close();
+    }
+
+    private void sendJobResult(HttpServletRequest pRequest, HttpServletResponse pResponse, JobQueue.Job pJob)
+        throws IOException
+    {
+        if (!pJob.getStatus().equals(JobQueue.sFinished))
+            throw new T3dException("Job \"" + pJob.getId() + "\" has not been finished (status: " + pJob.getStatus() + ").");
+        File lFile = pJob.getResult();
+        long lSize = lFile.length();
+        long lFirst = 0, lLast = lSize - 1;
+        String lETag = "\"" + pJob.getId() + "\""; // Ergebnis eines Auftrags ist unveraenderlich
+
+        // Accept-Ranges vor Content-Length setzen, damit die Antwort nicht komprimiert wird (vgl. CompressionFilter):
+        pResponse.setContentType(pJob.getMimeType());
+        pResponse.setHeader("Accept-Ranges", "bytes");
+        pResponse.setHeader("ETag", lETag);
+        pResponse.setDateHeader("Last-Modified", pJob.getFinished());
+        pResponse.setHeader("Content-Disposition", "attachment; filename=\"" + pJob.getId() + "." + pJob.getExtension() + "\"");
+        String lRange = pRequest.getHeader("Range");
+        String lIfRange = pRequest.getHeader("If-Range");
+        if (lRange != null && (lIfRange == null || lIfRange.trim().equals(lETag))) {
+            long[] lBytes = byteRange(lRange, lSize);
+            if (lBytes != null && lBytes.length == 0) {
+                pResponse.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                pResponse.setHeader("Content-Range", "bytes */" + lSize);
+                return;
+            }
+            if (lBytes != null) { // sonst (z. B. bei mehreren Bereichen) vollstaendige Antwort
+                lFirst = lBytes[0];
+                lLast = lBytes[1];
+                pResponse.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                pResponse.setHeader("Content-Range", "bytes " + lFirst + "-" + lLast + "/" + lSize);
+            }
+        }
+        pResponse.setHeader("Content-Length", "" + (lLast - lFirst + 1));
+
+        RandomAccessFile lIn = new RandomAccessFile(lFile, "r");
+        try {
+            OutputStream lOut = pResponse.getOutputStream();
+            lIn.seek(lFirst);
+            byte[] lBuf = new byte[65536];
+            long lRemaining = lLast - lFirst + 1;
+            while (lRemaining > 0) {
+                int n = lIn.read(lBuf, 0, (int) Math.min(lBuf.length, lRemaining));
+                if (n < 0)
+                    break;
+                lOut.write(lBuf, 0, n);
+                lRemaining -= n;
+            }
+            lOut.close();
+        }
+        finally {
+            lIn.close();
+        }
+    }
+
+    // wertet eine Range-Angabe aus ("bytes=a-b", "bytes=a-" oder "bytes=-n"); liefert {a, b}, ein leeres Feld
+    // fuer nicht erfuellbare Bereiche oder null, falls die Angabe ignoriert werden soll
+    static long[] byteRange(String pRange, long pSize)
+    {
+        String lSpec = pRange.trim();
+        if (!lSpec.toLowerCase().startsWith("bytes=") || lSpec.indexOf(',') >= 0)
+            return null;
+        lSpec = lSpec.substring(6).trim();
+        int k = lSpec.indexOf('-');
+        if (k < 0)
+            return null;
+        try {
+            long lFirst, lLast;
+            if (k == 0) {
+                long lSuffix = Long.parseLong(lSpec.substring(1).trim());
+                if (lSuffix <= 0)
+                    return new long[0];
+                lFirst = Math.max(0, pSize - lSuffix);
+                lLast = pSize - 1;
+            }
+            else {
+                lFirst = Long.parseLong(lSpec.substring(0, k).trim());
+                String lEnd = lSpec.substring(k + 1).trim();
+                lLast = (lEnd.length() > 0) ? Math.min(Long.parseLong(lEnd), pSize - 1) : pSize - 1;
+                if (lLast < lFirst && lFirst < pSize)
+                    return null; // syntaktisch ungueltig
+            }
+            if (lFirst >= pSize || lFirst < 0)
+                return new long[0];
+            return new long[] {lFirst, lLast};
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void setTileHeaders(HttpServletResponse pResponse, String pETag)
+    {
+        // GetTile-Antworten sind deterministisch und duerfen auch von Proxies zwischengespeichert werden
+        pResponse.setHeader("ETag", pETag);
+        pResponse.setHeader("Cache-Control", "public, max-age=" + mTileMaxAge);
+    }
+
     private void logGetCapabilitiesInfo(String pTmpName, HttpServletRequest pRequest)
     {
         try {
@@ -328,6 +885,15 @@ public class DEMServlet extends HttpServlet
         }
     }
 
+    // protokolliert die Cache-Statistik nach erfolgreich gesendeter Antwort.
+    private void logCacheStatistics(String pTmpName)
+    {
+        if (TileCache.getInstance().isEnabled())
+            sLogger.debug("DEMServlet (" + pTmpName + "): Tile cache: " + TileCache.getInstance().statistics());
+        if (mResponseCache != null)
+            sLogger.debug("DEMServlet (" + pTmpName + "): Response cache: " + mResponseCache.statistics());
+    }
+
     private void logErrorInfo(String pTmpName, HttpServletRequest pRequest, Throwable pExc)
     {
         try {
@@ -348,4 +914,32 @@ public class DEMServlet extends HttpServlet
             throw new T3dException(e.getMessage());
         }
     }
+
+    /**
+     * Output stream writing to two streams at once (response and cache file).
+     */
+    private static class TeeOutputStream extends OutputStream
+    {
+        private OutputStream mOut1, mOut2;
+
+        TeeOutputStream(OutputStream pOut1, OutputStream pOut2) {
+            mOut1 = pOut1;
+            mOut2 = pOut2;
+        }
+
+        public void write(int b) throws IOException {
+            mOut1.write(b);
+            mOut2.write(b);
+        }
+
+        public void write(byte[] b, int pOff, int pLen) throws IOException {
+            mOut1.write(b, pOff, pLen);
+            mOut2.write(b, pOff, pLen);
+        }
+
+        public void flush() throws IOException {
+            mOut1.flush();
+            mOut2.flush();
+        }
+    }
 }
@@ -0,0 +1,91 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+/**
+ * Read-only access to a single source elevation tile (e.g. one TK 25 sheet).<br /><br />
+ * <i>German:</i> Lesezugriff auf eine einzelne Quellkachel (z. B. ein TK 25-Blatt).<br />
+ * Die Indizierung entspricht der von <tt>GmSimpleElevationGrid</tt>: Die Zeile 0 liegt am s&uuml;dlichen Rand, die
+ * Spalte 0 am westlichen Rand der Kachel; der Gitterpunkt (i, j) besitzt die Koordinaten
+ * (<tt>getXMin() + j * getDeltaX()</tt>, <tt>getYMin() + i * getDeltaY()</tt>).
+ */
+public interface ElevationTile
+{
+    /**
+     * returns the number of grid rows.<br /><br />
+     * <i>German:</i> liefert die Anzahl der Gitterzeilen.
+     * @return Anzahl der Zeilen
+     */
+    public int numberOfRows();
+
+    /**
+     * returns the number of grid columns.<br /><br />
+     * <i>German:</i> liefert die Anzahl der Gitterspalten.
+     * @return Anzahl der Spalten
+     */
+    public int numberOfColumns();
+
+    /**
+     * returns the x-coordinate of the grid points in column 0.<br /><br />
+     * <i>German:</i> liefert die x-Koordinate der Gitterpunkte in Spalte 0.
+     * @return x-Koordinate
+     */
+    public double getXMin();
+
+    /**
+     * returns the y-coordinate of the grid points in row 0.<br /><br />
+     * <i>German:</i> liefert die y-Koordinate der Gitterpunkte in Zeile 0.
+     * @return y-Koordinate
+     */
+    public double getYMin();
+
+    /**
+     * returns the grid spacing in x-direction.<br /><br />
+     * <i>German:</i> liefert die Gitterweite in x-Richtung.
+     * @return Gitterweite
+     */
+    public double getDeltaX();
+
+    /**
+     * returns the grid spacing in y-direction.<br /><br />
+     * <i>German:</i> liefert die Gitterweite in y-Richtung.
+     * @return Gitterweite
+     */
+    public double getDeltaY();
+
+    /**
+     * checks if an elevation value is assigned to the given grid point.<br /><br />
+     * <i>German:</i> pr&uuml;ft, ob dem angegebenen Gitterpunkt ein H&ouml;henwert zugewiesen ist.
+     * @param pRow Zeilenindex
+     * @param pCol Spaltenindex
+     * @return <i>true</i>, falls Wert belegt
+     */
+    public boolean isSet(int pRow, int pCol);
+
+    /**
+     * returns the elevation value of the given grid point.<br /><br />
+     * <i>German:</i> liefert den H&ouml;henwert des angegebenen Gitterpunkts. F&uuml;r nicht belegte Gitterpunkte ist
+     * das Ergebnis undefiniert.
+     * @param pRow Zeilenindex
+     * @param pCol Spaltenindex
+     * @return H&ouml;henwert
+     */
+    public double getValue(int pRow, int pCol);
+}
@@ -0,0 +1,215 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Writer for single-band 32-bit floating point GeoTIFF files.<br /><br />
+ * <i>German:</i> Writer f&uuml;r einkanalige GeoTIFF-Dateien mit 32-Bit-Gleitkommawerten.<br />
+ * Die Datei wird in einem Durchgang in den Ausgabestrom geschrieben: Auf den TIFF-Kopf folgen das (einzige)
+ * Image File Directory, die darin referenzierten Tag-Werte und anschlie&szlig;end die unkomprimierten Bilddaten
+ * (Little-Endian, Zeilen von Nord nach S&uuml;d). Da die Gitterwerte Punktwerte darstellen, wird der Rastertyp
+ * "PixelIsPoint" vermerkt; der Verkn&uuml;pfungspunkt bezieht sich auf den nordwestlichen Gitterpunkt. Das
+ * Koordinatenreferenzsystem wird als EPSG-Code in das GeoKey-Verzeichnis &uuml;bernommen; ob es geographisch oder
+ * projiziert ist, gibt der Aufrufer an (vgl. <tt>VgGeomObject#hasGeographicSRS()</tt>), da es sich nicht am
+ * Zahlenbereich des EPSG-Codes ablesen l&auml;sst (z. B. ist EPSG:4647 projiziert). Nicht belegte
+ * Gitterpunkte erhalten den Wert -9999, der zus&auml;tzlich im Tag <tt>GDAL_NODATA</tt> angegeben wird.
+ */
+public class GeoTiffWriter
+{
+    private static final float sNoData = -9999.f;
+    private static final int sStripSize = 8192; // angestrebte Groesse eines Bildstreifens in Bytes
+
+    // TIFF-Datentypen:
+    private static final short sAscii = 2, sShort = 3, sLong = 4, sDouble = 12;
+
+    /**
+     * writes the given tile as GeoTIFF to an output stream. The stream will not be closed.<br /><br />
+     * <i>German:</i> schreibt die angegebene Kachel als GeoTIFF in einen Ausgabestrom. Der Strom wird nicht
+     * geschlossen.
+     * @param pTile Kachel bzw. H&ouml;henmodell
+     * @param pSRS Koordinatenreferenzsystem (z. B. "EPSG:31467") oder <i>null</i>
+     * @param pGeographic <i>true</i>, falls <tt>pSRS</tt> ein geographisches Koordinatenreferenzsystem ist
+     * @param pOut Ausgabestrom
+     * @throws IOException bei Schreibfehlern
+     */
+    public void write(ElevationTile pTile, String pSRS, boolean pGeographic, OutputStream pOut) throws IOException
+    {
+        int nCols = pTile.numberOfColumns(), nRows = pTile.numberOfRows();
+        this.writeHeader(
+            nCols, nRows, pTile.getXMin(), pTile.getYMin(), pTile.getDeltaX(), pTile.getDeltaY(), pSRS, pGeographic,
+            pOut);
+        this.writeRows(pTile, pOut);
+    }
+
+    /**
+     * writes the TIFF header and tags for a grid of the given geometry. The image data have to be written
+     * afterwards by <tt>this.writeRows()</tt>, beginning with the northern row.<br /><br />
+     * <i>German:</i> schreibt TIFF-Kopf und Tags f&uuml;r ein Gitter der angegebenen Geometrie. Die Bilddaten sind
+     * anschlie&szlig;end &uuml;ber <tt>this.writeRows()</tt> beginnend mit der n&ouml;rdlichsten Zeile zu schreiben
+     * (bandweise Ausgabe gro&szlig;er Modelle). Da die Streifen l&uuml;ckenlos aufeinander folgen, ist die Aufteilung
+     * in B&auml;nder beliebig.
+     * @param pCols Anzahl Spalten
+     * @param pRows Anzahl Zeilen
+     * @param pXMin x-Koordinate der westlichen Spalte
+     * @param pYMin y-Koordinate der s&uuml;dlichen Zeile
+     * @param pDeltaX Gitterweite in x-Richtung
+     * @param pDeltaY Gitterweite in y-Richtung
+     * @param pSRS Koordinatenreferenzsystem (z. B. "EPSG:31467") oder <i>null</i>
+     * @param pGeographic <i>true</i>, falls <tt>pSRS</tt> ein geographisches Koordinatenreferenzsystem ist
+     * @param pOut Ausgabestrom
+     * @throws IOException bei Schreibfehlern
+     * @throws T3dException falls die Bilddaten die 4-GByte-Grenze des TIFF-Formats &uuml;berschreiten
+     */
+    public void writeHeader(
+        int pCols, int pRows, double pXMin, double pYMin, double pDeltaX, double pDeltaY, String pSRS,
+        boolean pGeographic, OutputStream pOut) throws IOException
+    {
+        int nCols = pCols, nRows = pRows;
+        int lRowBytes = 4 * nCols;
+        int lRowsPerStrip = Math.max(1, sStripSize / lRowBytes);
+        int nStrips = (nRows + lRowsPerStrip - 1) / lRowsPerStrip;
+        if (4L * nCols * nRows + 8L * nStrips + 1024L > 0xffffffffL)
+            throw new T3dException("GeoTIFF output is limited to 4 GB. Please use the format BinFloat32.");
+
+        double[] lPixelScale = {pDeltaX, pDeltaY, 0.};
+        double[] lTiepoint = {
+            0., 0., 0., pXMin, pYMin + (nRows - 1) * pDeltaY, 0.};
+        short[] lGeoKeys = this.geoKeys(pSRS, pGeographic);
+        byte[] lNoData = "-9999\0".getBytes("US-ASCII");
+
+        // Layout: Kopf (8), IFD (2 + 12 * n + 4), Tag-Werte, Bilddaten
+        int nTags = 15;
+        int lOffs = 8 + 2 + 12 * nTags + 4;
+        int lStripOffsOffs = lOffs; lOffs += 4 * nStrips;
+        int lStripCountsOffs = lOffs; lOffs += 4 * nStrips;
+        int lPixelScaleOffs = lOffs; lOffs += 8 * lPixelScale.length;
+        int lTiepointOffs = lOffs; lOffs += 8 * lTiepoint.length;
+        int lGeoKeysOffs = lOffs; lOffs += 2 * lGeoKeys.length;
+        int lNoDataOffs = lOffs; lOffs += lNoData.length;
+        lOffs += lOffs % 2; // Bilddaten an Wortgrenze ausrichten
+        int lDataOffs = lOffs;
+
+        ByteBuffer lBuf = ByteBuffer.allocate(lDataOffs);
+        lBuf.order(ByteOrder.LITTLE_ENDIAN);
+        lBuf.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(8);
+
+        lBuf.putShort((short) nTags);
+        this.tag(lBuf, 256, sLong, 1, nCols); // ImageWidth
+        this.tag(lBuf, 257, sLong, 1, nRows); // ImageLength
+        this.tag(lBuf, 258, sShort, 1, 32); // BitsPerSample
+        this.tag(lBuf, 259, sShort, 1, 1); // Compression: keine
+        this.tag(lBuf, 262, sShort, 1, 1); // PhotometricInterpretation: BlackIsZero
+        this.tag(lBuf, 273, sLong, nStrips, (nStrips == 1) ? lDataOffs : lStripOffsOffs); // StripOffsets
+        this.tag(lBuf, 277, sShort, 1, 1); // SamplesPerPixel
+        this.tag(lBuf, 278, sLong, 1, lRowsPerStrip); // RowsPerStrip
+        this.tag(lBuf, 279, sLong, nStrips, (nStrips == 1) ? nRows * lRowBytes : lStripCountsOffs); // StripByteCounts
+        this.tag(lBuf, 284, sShort, 1, 1); // PlanarConfiguration
+        this.tag(lBuf, 339, sShort, 1, 3); // SampleFormat: IEEE-Gleitkomma
+        this.tag(lBuf, 33550, sDouble, lPixelScale.length, lPixelScaleOffs); // ModelPixelScaleTag
+        this.tag(lBuf, 33922, sDouble, lTiepoint.length, lTiepointOffs); // ModelTiepointTag
+        this.tag(lBuf, 34735, sShort, lGeoKeys.length, lGeoKeysOffs); // GeoKeyDirectoryTag
+        this.tag(lBuf, 42113, sAscii, lNoData.length, lNoDataOffs); // GDAL_NODATA
+        lBuf.putInt(0); // kein weiteres IFD
+
+        for (int s = 0; s < nStrips; s++)
+            lBuf.putInt(lDataOffs + s * lRowsPerStrip * lRowBytes);
+        for (int s = 0; s < nStrips; s++)
+            lBuf.putInt(Math.min(lRowsPerStrip, nRows - s * lRowsPerStrip) * lRowBytes);
+        for (int k = 0; k < lPixelScale.length; k++)
+            lBuf.putDouble(lPixelScale[k]);
+        for (int k = 0; k < lTiepoint.length; k++)
+            lBuf.putDouble(lTiepoint[k]);
+        for (int k = 0; k < lGeoKeys.length; k++)
+            lBuf.putShort(lGeoKeys[k]);
+        lBuf.put(lNoData);
+        pOut.write(lBuf.array(), 0, lDataOffs);
+    }
+
+    /**
+     * writes the values of the given tile (band) as image data, beginning with the northern row.<br /><br />
+     * <i>German:</i> schreibt die Werte der angegebenen Kachel (eines Bandes) als Bilddaten, beginnend mit der
+     * n&ouml;rdlichsten Zeile (vgl. <tt>this.writeHeader()</tt>).
+     * @param pTile Kachel bzw. Band
+     * @param pOut Ausgabestrom
+     * @throws IOException bei Schreibfehlern
+     */
+    public void writeRows(ElevationTile pTile, OutputStream pOut) throws IOException
+    {
+        int nCols = pTile.numberOfColumns(), nRows = pTile.numberOfRows();
+        int lRowBytes = 4 * nCols;
+        int lRowsPerStrip = Math.max(1, sStripSize / lRowBytes);
+
+        // Bilddaten blockweise, beginnend mit der noerdlichsten Zeile:
+        ByteBuffer lStrip = ByteBuffer.allocate(lRowsPerStrip * lRowBytes);
+        lStrip.order(ByteOrder.LITTLE_ENDIAN);
+        for (int r0 = 0; r0 < nRows; r0 += lRowsPerStrip) {
+            lStrip.clear();
+            for (int r = r0; r < Math.min(nRows, r0 + lRowsPerStrip); r++) {
+                int i = nRows - 1 - r;
+                for (int j = 0; j < nCols; j++)
+                    lStrip.putFloat(pTile.isSet(i, j) ? (float) pTile.getValue(i, j) : sNoData);
+            }
+            pOut.write(lStrip.array(), 0, lStrip.position());
+        }
+    }
+
+    private void tag(ByteBuffer pBuf, int pTag, short pType, int pCount, int pValueOrOffset)
+    {
+        pBuf.putShort((short) pTag);
+        pBuf.putShort(pType);
+        pBuf.putInt(pCount);
+        if (pType == sShort && pCount == 1) {
+            pBuf.putShort((short) pValueOrOffset);
+            pBuf.putShort((short) 0);
+        }
+        else
+            pBuf.putInt(pValueOrOffset);
+    }
+
+    private short[] geoKeys(String pSRS, boolean pGeographic)
+    {
+        int lEpsg = -1;
+        if (pSRS != null && pSRS.toUpperCase().startsWith("EPSG:")) {
+            try {
+                lEpsg = Integer.parseInt(pSRS.substring(5).trim());
+            }
+            catch (NumberFormatException e) {
+                lEpsg = -1; // GeoKeys dann ohne Koordinatenreferenzsystem
+            }
+        }
+        if (lEpsg <= 0 || lEpsg > Short.MAX_VALUE * 2 + 1) {
+            return new short[] {
+                1, 1, 0, 1,
+                1025, 0, 1, 2}; // GTRasterTypeGeoKey: PixelIsPoint
+        }
+        return new short[] {
+            1, 1, 0, 3,
+            1024, 0, 1, (short) (pGeographic ? 2 : 1), // GTModelTypeGeoKey: geographisch bzw. projiziert
+            1025, 0, 1, 2, // GTRasterTypeGeoKey: PixelIsPoint
+            (short) (pGeographic ? 2048 : 3072), 0, 1, (short) lEpsg}; // GeographicType- bzw. ProjectedCSTypeGeoKey
+    }
+}
@@ -0,0 +1,92 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import org.n52.v3d.triturus.vgis.VgPoint;
+import org.n52.v3d.triturus.gisimplm.GmSimple2dGridGeometry;
+import org.n52.v3d.triturus.gisimplm.GmSimpleElevationGrid;
+
+/**
+ * <tt>ElevationTile</tt> view of a <tt>GmSimpleElevationGrid</tt> (e.g. an ArcInfo ASCII grid read by
+ * <tt>IoElevationGridReader</tt>).<br /><br />
+ * <i>German:</i> <tt>ElevationTile</tt>-Sicht auf ein <tt>GmSimpleElevationGrid</tt>.
+ */
+public class GridElevationTile implements ElevationTile
+{
+    private GmSimpleElevationGrid mGrid;
+    private double mXMin, mYMin, mDeltaX, mDeltaY;
+
+    /**
+     * Constructor.<br /><br />
+     * <i>German:</i> Konstruktor.
+     * @param pGrid H&ouml;henmodell
+     */
+    public GridElevationTile(GmSimpleElevationGrid pGrid)
+    {
+        mGrid = pGrid;
+        GmSimple2dGridGeometry lGeom = (GmSimple2dGridGeometry) pGrid.getGeometry();
+        VgPoint lOrigin = lGeom.getVertexCoordinate(0, 0);
+        mXMin = lOrigin.getX();
+        mYMin = lOrigin.getY();
+        mDeltaX = lGeom.getDeltaX();
+        mDeltaY = lGeom.getDeltaY();
+    }
+
+    /**
+     * returns the wrapped grid.<br /><br />
+     * <i>German:</i> liefert das zugrunde liegende H&ouml;henmodell.
+     * @return H&ouml;henmodell
+     */
+    public GmSimpleElevationGrid getGrid() {
+        return mGrid;
+    }
+
+    public int numberOfRows() {
+        return mGrid.numberOfRows();
+    }
+
+    public int numberOfColumns() {
+        return mGrid.numberOfColumns();
+    }
+
+    public double getXMin() {
+        return mXMin;
+    }
+
+    public double getYMin() {
+        return mYMin;
+    }
+
+    public double getDeltaX() {
+        return mDeltaX;
+    }
+
+    public double getDeltaY() {
+        return mDeltaY;
+    }
+
+    public boolean isSet(int pRow, int pCol) {
+        return mGrid.isSet(pRow, pCol);
+    }
+
+    public double getValue(int pRow, int pCol) {
+        return mGrid.getValue(pRow, pCol);
+    }
+}
@@ -0,0 +1,332 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.util.ArrayList;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.gisimplm.GmPoint;
+import org.n52.v3d.triturus.gisimplm.GmSimple2dGridGeometry;
+import org.n52.v3d.triturus.gisimplm.GmSimpleElevationGrid;
+import org.n52.v3d.triturus.vgis.VgPoint;
+
+/**
+ * Resamples regular source tiles directly into a destination grid.<br /><br />
+ * <i>German:</i> Interpoliert die Werte regelm&auml;&szlig;iger Quellkacheln direkt auf ein Zielgitter.<br />
+ * Im Gegensatz zum Gridding &uuml;ber <tt>FltPointSet2ElevationGrid</tt> wird keine Punktliste aufgebaut; f&uuml;r
+ * jeden Zielgitterpunkt werden lediglich die benachbarten Quellgitterpunkte ausgewertet, so dass der Aufwand nur von
+ * der Gr&ouml;&szlig;e des Zielgitters abh&auml;ngt. Unterst&uuml;tzt werden die Verfahren "Nearest" (n&auml;chster
+ * Nachbar), "Bilinear", "Bicubic" (kubische Faltung) und "AreaAverage" (Mittelwert &uuml;ber die Zielzelle, zur
+ * Ausd&uuml;nnung bei gro&szlig;en Zielgitterweiten).<br />
+ * Voraussetzung ist, dass alle Quellkacheln dieselben Gitterweiten besitzen und auf ein gemeinsames Raster
+ * ausgerichtet sind (vgl. <tt>this.isApplicable()</tt>). Optional kann das Zielgitter zeilenstreifenweise parallel
+ * berechnet werden (vgl. <tt>ParallelGridFiller</tt>).
+ */
+public class GridResampler implements ParallelGridFiller.RowFunction
+{
+    /** Inverse-distance gridding of the source grid points (default). */
+    public static final String sInverseDistance = "InverseDistance";
+    /** Nearest-neighbour resampling. */
+    public static final String sNearest = "Nearest";
+    /** Bilinear interpolation. */
+    public static final String sBilinear = "Bilinear";
+    /** Bicubic interpolation (cubic convolution). */
+    public static final String sBicubic = "Bicubic";
+    /** Average over the destination cell area. */
+    public static final String sAreaAverage = "AreaAverage";
+
+    private static final double sEps = 1.e-6;
+
+    private String mMethod;
+    private int mParallelism = 1;
+
+    // gemeinsames Quellraster:
+    private ElevationTile[] mTiles;
+    private int[] mOffRow, mOffCol;
+    private double mX0, mY0, mDx, mDy;
+    private int mLastTile = 0; // nur Suchhinweis, daher unkritisch bei paralleler Berechnung
+
+    // Zielgitter:
+    private GmSimple2dGridGeometry mGrdGeom = null;
+
+    /**
+     * Constructor.<br /><br />
+     * <i>German:</i> Konstruktor.
+     * @param pMethod Interpolationsverfahren ("Nearest", "Bilinear", "Bicubic" oder "AreaAverage")
+     */
+    public GridResampler(String pMethod)
+    {
+        if (!isDirectMethod(pMethod))
+            throw new T3dException("Unsupported interpolation method \"" + pMethod + "\".");
+        mMethod = pMethod;
+    }
+
+    /**
+     * sets the number of row bands to be computed concurrently.<br /><br />
+     * <i>German:</i> setzt die Anzahl gleichzeitig zu berechnender Zeilenstreifen.
+     * @param pParallelism Parallelit&auml;tsgrad (1 f&uuml;r sequentielle Berechnung, &lt; 1 f&uuml;r Anzahl
+     * Prozessoren)
+     */
+    public void setParallelism(int pParallelism) {
+        mParallelism = pParallelism;
+    }
+
+    /**
+     * checks if the given interpolation method is supported by this class.<br /><br />
+     * <i>German:</i> pr&uuml;ft, ob das angegebene Interpolationsverfahren von dieser Klasse unterst&uuml;tzt wird.
+     * F&uuml;r "InverseDistance" wird <i>false</i> geliefert.
+     * @param pMethod Interpolationsverfahren
+     * @return <i>true</i>, falls direkte Interpolation m&ouml;glich
+     */
+    public static boolean isDirectMethod(String pMethod)
+    {
+        return sNearest.equals(pMethod) || sBilinear.equals(pMethod)
+            || sBicubic.equals(pMethod) || sAreaAverage.equals(pMethod);
+    }
+
+    /**
+     * checks if the given tiles share a common lattice. Otherwise, inverse-distance gridding has to be used.<br /><br />
+     * <i>German:</i> pr&uuml;ft, ob die angegebenen Kacheln auf einem gemeinsamen Raster liegen. Ist dies nicht der
+     * Fall, muss auf das Gridding &uuml;ber den Suchradius zur&uuml;ckgegriffen werden.
+     * @param pTiles Liste von <tt>ElevationTile</tt>-Objekten
+     * @return <i>true</i>, falls Kacheln gleiche Gitterweiten besitzen und zueinander ausgerichtet sind
+     */
+    public boolean isApplicable(ArrayList pTiles)
+    {
+        if (pTiles.size() <= 0)
+            return false;
+        ElevationTile t0 = (ElevationTile) pTiles.get(0);
+        for (int k = 1; k < pTiles.size(); k++) {
+            ElevationTile t = (ElevationTile) pTiles.get(k);
+            if (Math.abs(t.getDeltaX() - t0.getDeltaX()) > sEps * t0.getDeltaX()
+                || Math.abs(t.getDeltaY() - t0.getDeltaY()) > sEps * t0.getDeltaY())
+                return false;
+            double u = (t.getXMin() - t0.getXMin()) / t0.getDeltaX();
+            double v = (t.getYMin() - t0.getYMin()) / t0.getDeltaY();
+            if (Math.abs(u - Math.round(u)) > 1.e-3 || Math.abs(v - Math.round(v)) > 1.e-3)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * calculates the destination grid. Grid points which could not be determined remain unset.<br /><br />
+     * <i>German:</i> berechnet das Zielgitter. Gitterpunkte, f&uuml;r die sich kein Wert ermitteln l&auml;sst (z. B.
+     * au&szlig;erhalb der Quellkacheln), bleiben unbelegt.
+     * @param pTiles Liste von <tt>ElevationTile</tt>-Objekten
+     * @param pGrdGeom Gitter-Geometrie (2D)
+     * @return Gitter mit belegten H&ouml;henwerten
+     */
+    public GmSimpleElevationGrid resample(ArrayList pTiles, GmSimple2dGridGeometry pGrdGeom)
+    {
+        if (!this.isApplicable(pTiles))
+            throw new T3dException("Source tiles do not share a common lattice.");
+        this.setUpLattice(pTiles);
+
+        VgPoint lOrigin = pGrdGeom.getVertexCoordinate(0, 0);
+        GmSimpleElevationGrid lResGrid = new GmSimpleElevationGrid(
+            pGrdGeom.numberOfColumns(), pGrdGeom.numberOfRows(),
+            new GmPoint(lOrigin.getX(), lOrigin.getY(), 0.), pGrdGeom.getDeltaX(), pGrdGeom.getDeltaY());
+
+        mGrdGeom = pGrdGeom;
+        try {
+            ParallelGridFiller.fill(lResGrid, this, mParallelism);
+        }
+        finally {
+            mGrdGeom = null;
+        }
+        return lResGrid;
+    }
+
+    /**
+     * interpolates the elevation value at the given position.<br /><br />
+     * <i>German:</i> interpoliert den H&ouml;henwert an der angegebenen Position. F&uuml;r das Verfahren
+     * "AreaAverage" wird bilinear interpoliert.
+     * @param pTiles Liste von <tt>ElevationTile</tt>-Objekten
+     * @param pX x-Koordinate
+     * @param pY y-Koordinate
+     * @return H&ouml;henwert oder <i>NaN</i>, falls sich kein Wert ermitteln l&auml;sst
+     */
+    public double sample(ArrayList pTiles, double pX, double pY)
+    {
+        if (!this.isApplicable(pTiles))
+            throw new T3dException("Source tiles do not share a common lattice.");
+        this.setUpLattice(pTiles);
+
+        double u = this.snap((pX - mX0) / mDx), v = this.snap((pY - mY0) / mDy);
+        if (sNearest.equals(mMethod))
+            return this.nearest(u, v);
+        if (sBicubic.equals(mMethod))
+            return this.bicubic(u, v);
+        return this.bilinear(u, v);
+    }
+
+    /**
+     * computes the values of the given grid rows. This method is called by <tt>ParallelGridFiller</tt>.<br /><br />
+     * <i>German:</i> berechnet die Werte der angegebenen Gitterzeilen. Die Methode wird von
+     * <tt>ParallelGridFiller</tt> aufgerufen.
+     * @param pRowFrom erste Zeile
+     * @param pRowTo auf letzte Zeile folgende Zeile
+     * @param pValues Ergebnisfeld
+     */
+    public void computeRows(int pRowFrom, int pRowTo, double[] pValues)
+    {
+        int nCols = mGrdGeom.numberOfColumns();
+        VgPoint lOrigin = mGrdGeom.getVertexCoordinate(0, 0);
+        double lDx = mGrdGeom.getDeltaX(), lDy = mGrdGeom.getDeltaY();
+
+        // Bei Zielgitterweiten unterhalb der Quellgitterweite waere Mittelung wirkungslos:
+        boolean lAverage = sAreaAverage.equals(mMethod) && (lDx > mDx || lDy > mDy);
+        double lHalfU = 0.5 * lDx / mDx, lHalfV = 0.5 * lDy / mDy;
+
+        int lIdx = 0;
+        for (int i = pRowFrom; i < pRowTo; i++) {
+            double v = this.snap((lOrigin.getY() + i * lDy - mY0) / mDy);
+            for (int j = 0; j < nCols; j++) {
+                double u = this.snap((lOrigin.getX() + j * lDx - mX0) / mDx);
+                double z;
+                if (sNearest.equals(mMethod))
+                    z = this.nearest(u, v);
+                else if (sBicubic.equals(mMethod))
+                    z = this.bicubic(u, v);
+                else if (lAverage)
+                    z = this.average(u, v, lHalfU, lHalfV);
+                else
+                    z = this.bilinear(u, v);
+                pValues[lIdx++] = z;
+            }
+        }
+    }
+
+    private void setUpLattice(ArrayList pTiles)
+    {
+        int n = pTiles.size();
+        mTiles = new ElevationTile[n];
+        mOffRow = new int[n];
+        mOffCol = new int[n];
+        mX0 = ((ElevationTile) pTiles.get(0)).getXMin();
+        mY0 = ((ElevationTile) pTiles.get(0)).getYMin();
+        mDx = ((ElevationTile) pTiles.get(0)).getDeltaX();
+        mDy = ((ElevationTile) pTiles.get(0)).getDeltaY();
+        for (int k = 0; k < n; k++) {
+            mTiles[k] = (ElevationTile) pTiles.get(k);
+            mOffCol[k] = (int) Math.round((mTiles[k].getXMin() - mX0) / mDx);
+            mOffRow[k] = (int) Math.round((mTiles[k].getYMin() - mY0) / mDy);
+        }
+        mLastTile = 0;
+    }
+
+    private double snap(double pVal)
+    {
+        // Rundungsfehler an Quellgitterpunkten vermeiden:
+        double r = Math.rint(pVal);
+        return (Math.abs(pVal - r) < sEps) ? r : pVal;
+    }
+
+    // liefert den Wert am Punkt (pRow, pCol) des gemeinsamen Quellrasters oder NaN, falls nicht belegt
+    private double node(int pRow, int pCol)
+    {
+        int n = mTiles.length;
+        for (int k = 0; k < n; k++) {
+            int t = (mLastTile + k) % n;
+            int r = pRow - mOffRow[t], c = pCol - mOffCol[t];
+            if (r >= 0 && c >= 0 && r < mTiles[t].numberOfRows() && c < mTiles[t].numberOfColumns()
+                && mTiles[t].isSet(r, c))
+            {
+                mLastTile = t;
+                return mTiles[t].getValue(r, c);
+            }
+        }
+        return Double.NaN;
+    }
+
+    private double nearest(double u, double v) {
+        return this.node((int) Math.floor(v + 0.5), (int) Math.floor(u + 0.5));
+    }
+
+    private double bilinear(double u, double v)
+    {
+        int c = (int) Math.floor(u), r = (int) Math.floor(v);
+        double fu = u - c, fv = v - r;
+        double[] w = {(1. - fu) * (1. - fv), fu * (1. - fv), (1. - fu) * fv, fu * fv};
+        double[] z = {this.node(r, c), this.node(r, c + 1), this.node(r + 1, c), this.node(r + 1, c + 1)};
+
+        // Fehlende Nachbarn (z. B. am Rand der Datenabdeckung) werden durch Umgewichtung ausgeglichen:
+        double lSum = 0., lWSum = 0.;
+        for (int k = 0; k < 4; k++) {
+            if (w[k] > 0. && !Double.isNaN(z[k])) {
+                lSum += w[k] * z[k];
+                lWSum += w[k];
+            }
+        }
+        return (lWSum > 0.) ? lSum / lWSum : Double.NaN;
+    }
+
+    private double bicubic(double u, double v)
+    {
+        int c = (int) Math.floor(u), r = (int) Math.floor(v);
+        double fu = u - c, fv = v - r;
+        double lRes = 0.;
+        for (int m = -1; m <= 2; m++) {
+            double wv = this.cubicWeight(m - fv);
+            if (wv == 0.)
+                continue;
+            for (int n = -1; n <= 2; n++) {
+                double wu = this.cubicWeight(n - fu);
+                if (wu == 0.)
+                    continue;
+                double z = this.node(r + m, c + n);
+                if (Double.isNaN(z))
+                    return this.bilinear(u, v); // unvollstaendige 4x4-Nachbarschaft
+                lRes += wu * wv * z;
+            }
+        }
+        return lRes;
+    }
+
+    private double cubicWeight(double t)
+    {
+        // Faltungskern nach Keys (a = -0.5):
+        t = Math.abs(t);
+        if (t <= 1.)
+            return (1.5 * t - 2.5) * t * t + 1.;
+        if (t < 2.)
+            return ((-0.5 * t + 2.5) * t - 4.) * t + 2.;
+        return 0.;
+    }
+
+    private double average(double u, double v, double pHalfU, double pHalfV)
+    {
+        int c0 = (int) Math.ceil(u - pHalfU), c1 = (int) Math.floor(u + pHalfU);
+        int r0 = (int) Math.ceil(v - pHalfV), r1 = (int) Math.floor(v + pHalfV);
+        double lSum = 0.;
+        int ct = 0;
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                double z = this.node(r, c);
+                if (!Double.isNaN(z)) {
+                    lSum += z;
+                    ct++;
+                }
+            }
+        }
+        return (ct > 0) ? lSum / ct : this.bilinear(u, v);
+    }
+}
@@ -0,0 +1,828 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.gisimplm.GmSimple2dGridGeometry;
+import org.n52.v3d.triturus.gisimplm.GmSimpleElevationGrid;
+import org.n52.v3d.triturus.t3dutil.MpHypsometricColor;
+import org.n52.v3d.triturus.t3dutil.T3dColor;
+import org.n52.v3d.triturus.vgis.VgPoint;
+
+/**
+ * Writer that encodes elevation grids directly into an output stream (e.g. a servlet response).<br /><br />
+ * <i>German:</i> Writer, der H&ouml;henmodelle direkt in einen Ausgabestrom (z. B. die Servlet-Antwort) kodiert.
+ * <br />
+ * Im Gegensatz zu <tt>IoElevationGridWriter</tt> wird keine Datei erzeugt. Die Zahlenwerte werden ohne
+ * Zwischenschritt &uuml;ber <tt>String</tt>-Objekte und Zeichenkonvertierung als ASCII-Bytes in einen Puffer
+ * geschrieben, der blockweise an den Ausgabestrom &uuml;bergeben wird. Unterst&uuml;tzte Textformate sind
+ * "ArcIGrd", "AcGeo", "Vrml1", "Vrml2" und "X3d". In den 3D-Formaten liegt die x-Achse in Ost-, die y-Achse in
+ * H&ouml;hen- und die negative z-Achse in Nordrichtung.<br />
+ * Zus&auml;tzlich werden die Bin&auml;rformate "BinFloat32" und "BinInt16" (Kachelformat des terrainServers mit
+ * 64 Byte gro&szlig;em Kopf, vgl. <tt>BinaryElevationTile</tt>; bei "BinInt16" mit Skalierungsfaktor und Offset
+ * quantisiert) sowie "GeoTIFF" (32-Bit-Gleitkomma, vgl. <tt>GeoTiffWriter</tt>) unterst&uuml;tzt.<br />
+ * Vereinfachte Dreiecksnetze (vgl. <tt>TinSimplifier</tt>) lassen sich als "Vrml1", "Vrml2", "X3d"
+ * (jeweils <tt>IndexedFaceSet</tt>) und "IndexedTIN" ausgeben. Das terrainServer-eigene Format "IndexedTIN"
+ * besteht aus der Kennung "INDEXED-TIN", einer Zeile mit Punkt- und Dreiecksanzahl, den Punktkoordinaten (x y z)
+ * und den Dreiecken als nullbasierte Punktindizes (gegen den Uhrzeigersinn). Es ist nicht mit dem
+ * triturus-Format "AcGeoTIN" (vgl. <tt>IoElevationGridWriter</tt>) identisch.<br />
+ * Die Formate "ArcIGrd", "AcGeo", "BinFloat32" und "GeoTIFF" lassen sich zudem bandweise schreiben
+ * (<tt>beginBands()</tt>, <tt>writeBand()</tt>, <tt>endBands()</tt>), so dass das Gesamtmodell nie vollst&auml;ndig
+ * im Speicher liegen muss.<br />
+ * F&uuml;r "Vrml2" und "X3d" kann die Geometrie in einen <tt>LOD</tt>-Knoten eingebettet werden, der in der
+ * N&auml;he auf nachzuladende Detailkacheln (<tt>Inline</tt>) umschaltet (vgl. <tt>setLevelOfDetail()</tt>).
+ */
+public class GridStreamWriter
+{
+    private static final int sBufferSize = 1 << 16;
+    private static final long[] sPow10 = {
+        1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L, 10000000000L,
+        100000000000L, 1000000000000L};
+    private static final double sNoData = -9999.;
+
+    private String mFormat;
+    private int mPrecisionXY = 2;
+    private int mPrecisionZ = 2;
+    private MpHypsometricColor mColorMapper = null;
+    private String[] mLodUrls = null;
+    private GridInfo mBandInfo = null; // Geometrie des Gesamtmodells bei bandweiser Ausgabe
+    private String mBandSRS = null;
+    private boolean mBandGeographic = false;
+
+    private OutputStream mOut;
+    private byte[] mBuf = new byte[sBufferSize];
+    private int mPos = 0;
+
+    /**
+     * Constructor.<br /><br />
+     * <i>German:</i> Konstruktor.
+     * @param pFormat Zielformat ("ArcIGrd", "AcGeo", "Vrml1", "Vrml2", "X3d", "BinFloat32", "BinInt16" oder
+     * "GeoTIFF")
+     * @throws T3dException falls das Format nicht unterst&uuml;tzt wird
+     */
+    public GridStreamWriter(String pFormat)
+    {
+        if (!isSupported(pFormat) && !isSupportedForTin(pFormat))
+            throw new T3dException("Unsupported stream format \"" + pFormat + "\".");
+        mFormat = pFormat;
+    }
+
+    /**
+     * checks if the given format can be written by this class.<br /><br />
+     * <i>German:</i> pr&uuml;ft, ob das angegebene Format durch diese Klasse geschrieben werden kann.
+     * @param pFormat Formatbezeichner (vgl. <tt>DEMServiceHelpers#formatInfo</tt>, Info-Typ "dest")
+     * @return <i>true</i>, falls das Format unterst&uuml;tzt wird
+     */
+    public static boolean isSupported(String pFormat)
+    {
+        return pFormat.equalsIgnoreCase("ArcIGrd") || pFormat.equalsIgnoreCase("AcGeo")
+            || pFormat.equalsIgnoreCase("Vrml1") || pFormat.equalsIgnoreCase("Vrml2") || pFormat.equalsIgnoreCase("X3d")
+            || pFormat.equalsIgnoreCase("BinFloat32") || pFormat.equalsIgnoreCase("BinInt16")
+            || pFormat.equalsIgnoreCase("GeoTIFF");
+    }
+
+    /**
+     * checks if the given format can be used to write TINs generated by <tt>TinSimplifier</tt>.<br /><br />
+     * <i>German:</i> pr&uuml;ft, ob das angegebene Format zur Ausgabe von Dreiecksnetzen (vgl.
+     * <tt>TinSimplifier</tt>) verwendet werden kann.
+     * @param pFormat Formatbezeichner (vgl. <tt>DEMServiceHelpers#formatInfo</tt>, Info-Typ "dest")
+     * @return <i>true</i>, falls das Format unterst&uuml;tzt wird
+     */
+    public static boolean isSupportedForTin(String pFormat)
+    {
+        return pFormat.equalsIgnoreCase("IndexedTIN")
+            || pFormat.equalsIgnoreCase("Vrml1") || pFormat.equalsIgnoreCase("Vrml2") || pFormat.equalsIgnoreCase("X3d");
+    }
+
+    /**
+     * checks if the given format can be written band by band.<br /><br />
+     * <i>German:</i> pr&uuml;ft, ob das angegebene Format bandweise geschrieben werden kann.
+     * @param pFormat Formatbezeichner (vgl. <tt>DEMServiceHelpers#formatInfo</tt>, Info-Typ "dest")
+     * @return <i>true</i>, falls bandweise Ausgabe m&ouml;glich ist
+     * @see GridStreamWriter#beginBands
+     */
+    public static boolean isSupportedForBands(String pFormat)
+    {
+        return pFormat.equalsIgnoreCase("ArcIGrd") || pFormat.equalsIgnoreCase("AcGeo")
+            || pFormat.equalsIgnoreCase("BinFloat32") || pFormat.equalsIgnoreCase("GeoTIFF");
+    }
+
+    /**
+     * sets the number of decimal places for planimetric coordinates and grid spacings.<br /><br />
+     * <i>German:</i> setzt die Anzahl der Nachkommastellen f&uuml;r Lagekoordinaten und Gitterweiten. Ist die
+     * Gitterweite mit der angegebenen Stellenzahl nicht darstellbar (z. B. f&uuml;r geographische Koordinaten),
+     * werden automatisch weitere Stellen ausgegeben.
+     * @param pPrecision Anzahl Nachkommastellen (0 bis 8)
+     */
+    public void setPrecisionXY(int pPrecision) {
+        mPrecisionXY = Math.max(0, Math.min(8, pPrecision));
+    }
+
+    /**
+     * sets the number of decimal places for elevation values.<br /><br />
+     * <i>German:</i> setzt die Anzahl der Nachkommastellen f&uuml;r H&ouml;henwerte.
+     * @param pPrecision Anzahl Nachkommastellen (0 bis 8)
+     */
+    public void setPrecisionZ(int pPrecision) {
+        mPrecisionZ = Math.max(0, Math.min(8, pPrecision));
+    }
+
+    /**
+     * sets a color mapper used to assign colors to the grid points. Only relevant for VRML 2 and X3D output.
+     * <br /><br />
+     * <i>German:</i> setzt die Farbzuordnung f&uuml;r die Gitterpunkte. Nur f&uuml;r die Ausgabe in VRML 2 und X3D
+     * relevant.
+     * @param pColorMapper Farbzuordnung oder <i>null</i>
+     */
+    public void setHypsometricColorMapper(MpHypsometricColor pColorMapper) {
+        mColorMapper = pColorMapper;
+    }
+
+    /**
+     * embeds the output into a level-of-detail node that switches to the given child scenes when the viewer
+     * comes close. Only relevant for VRML 2 and X3D output.<br /><br />
+     * <i>German:</i> bettet die Ausgabe in einen <tt>LOD</tt>-Knoten ein, der bei Ann&auml;herung des Betrachters
+     * auf die angegebenen Detailszenen umschaltet. Diese werden als <tt>Inline</tt>-Knoten referenziert und erst
+     * bei Bedarf geladen. Die Umschaltdistanz betr&auml;gt das Doppelte der Diagonale des Modells. Nur f&uuml;r die
+     * Ausgabe in VRML 2 und X3D relevant.
+     * @param pChildUrls URLs der Detailszenen oder <i>null</i> (Voreinstellung, kein <tt>LOD</tt>-Knoten)
+     */
+    public void setLevelOfDetail(String[] pChildUrls) {
+        mLodUrls = pChildUrls;
+    }
+
+    /**
+     * writes the given grid to the output stream. The stream will be flushed, but not closed.<br /><br />
+     * <i>German:</i> schreibt das angegebene H&ouml;henmodell in den Ausgabestrom. Der Strom wird geleert, aber
+     * nicht geschlossen.
+     * @param pGrid H&ouml;henmodell
+     * @param pOut Ausgabestrom
+     * @throws IOException bei Schreibfehlern
+     */
+    public void write(GmSimpleElevationGrid pGrid, OutputStream pOut) throws IOException
+    {
+        mOut = pOut;
+        mPos = 0;
+        if (mFormat.equalsIgnoreCase("ArcIGrd"))
+            this.writeArcIGrd(pGrid);
+        if (mFormat.equalsIgnoreCase("AcGeo"))
+            this.writeAcGeo(pGrid);
+        if (mFormat.equalsIgnoreCase("Vrml1"))
+            this.writeVrml1(pGrid);
+        if (mFormat.equalsIgnoreCase("Vrml2"))
+            this.writeVrml2(pGrid);
+        if (mFormat.equalsIgnoreCase("X3d"))
+            this.writeX3d(pGrid);
+        if (mFormat.equalsIgnoreCase("BinFloat32") || mFormat.equalsIgnoreCase("BinInt16")) {
+            BinaryTileWriter lWriter = new BinaryTileWriter();
+            if (mFormat.equalsIgnoreCase("BinInt16"))
+                lWriter.setDataType(BinaryElevationTile.sInt16);
+            lWriter.writeToStream(new GridElevationTile(pGrid), pOut);
+        }
+        if (mFormat.equalsIgnoreCase("GeoTIFF"))
+            new GeoTiffWriter().write(
+                new GridElevationTile(pGrid), pGrid.getGeometry().getSRS(), pGrid.getGeometry().hasGeographicSRS(), pOut);
+        this.flush();
+        mOut.flush();
+        mOut = null;
+    }
+
+    /**
+     * writes the given TIN to the output stream. The stream will be flushed, but not closed.<br /><br />
+     * <i>German:</i> schreibt das angegebene Dreiecksnetz in den Ausgabestrom. Der Strom wird geleert, aber
+     * nicht geschlossen.
+     * @param pTin Dreiecksnetz
+     * @param pOut Ausgabestrom
+     * @throws IOException bei Schreibfehlern
+     * @throws T3dException falls das Format keine Dreiecksnetze unterst&uuml;tzt
+     * @see GridStreamWriter#isSupportedForTin
+     */
+    public void write(TinSimplifier.Tin pTin, OutputStream pOut) throws IOException
+    {
+        if (!isSupportedForTin(mFormat))
+            throw new T3dException("Format \"" + mFormat + "\" does not support TIN output.");
+        mOut = pOut;
+        mPos = 0;
+        GridInfo g = new GridInfo(pTin.getGrid());
+        if (mFormat.equalsIgnoreCase("IndexedTIN")) {
+            this.ascii("INDEXED-TIN"); this.newLine();
+            this.integer(pTin.numberOfPoints()); this.ascii(" "); this.integer(pTin.numberOfTriangles()); this.newLine();
+            for (int k = 0; k < pTin.numberOfPoints(); k++) {
+                int i = pTin.getRow(k), j = pTin.getColumn(k);
+                this.number(g.mXMin + j * g.mDeltaX, g.mDecXY); this.ascii(" ");
+                this.number(g.mYMin + i * g.mDeltaY, g.mDecXY); this.ascii(" ");
+                this.number(pTin.getGrid().getValue(i, j), mPrecisionZ); this.newLine();
+            }
+            for (int t = 0; t < pTin.numberOfTriangles(); t++) {
+                this.integer(pTin.getCorner(t, 0)); this.ascii(" ");
+                this.integer(pTin.getCorner(t, 1)); this.ascii(" ");
+                this.integer(pTin.getCorner(t, 2)); this.newLine();
+            }
+        }
+        if (mFormat.equalsIgnoreCase("Vrml1")) {
+            this.ascii("#VRML V1.0 ascii"); this.newLine();
+            this.newLine();
+            this.ascii("Separator {"); this.newLine();
+            this.ascii("  ShapeHints {"); this.newLine();
+            this.ascii("    vertexOrdering COUNTERCLOCKWISE"); this.newLine();
+            this.ascii("    creaseAngle 1.57"); this.newLine();
+            this.ascii("  }"); this.newLine();
+            this.ascii("  Coordinate3 {"); this.newLine();
+            this.ascii("    point ["); this.newLine();
+            this.tinPoints(pTin, g, "      ", ",");
+            this.ascii("    ]"); this.newLine();
+            this.ascii("  }"); this.newLine();
+            this.ascii("  IndexedFaceSet {"); this.newLine();
+            this.ascii("    coordIndex ["); this.newLine();
+            this.tinTriangles(pTin, "      ", ",");
+            this.ascii("    ]"); this.newLine();
+            this.ascii("  }"); this.newLine();
+            this.ascii("}"); this.newLine();
+        }
+        if (mFormat.equalsIgnoreCase("Vrml2")) {
+            this.ascii("#VRML V2.0 utf8"); this.newLine();
+            this.newLine();
+            this.lodBegin(g, pTin.getGrid(), false);
+            this.ascii("Shape {"); this.newLine();
+            this.ascii("  appearance Appearance { material Material { diffuseColor 0.8 0.8 0.8 } }"); this.newLine();
+            this.ascii("  geometry IndexedFaceSet {"); this.newLine();
+            this.ascii("    solid FALSE"); this.newLine();
+            this.ascii("    creaseAngle 1.57"); this.newLine();
+            this.ascii("    coord Coordinate {"); this.newLine();
+            this.ascii("      point ["); this.newLine();
+            this.tinPoints(pTin, g, "        ", ",");
+            this.ascii("      ]"); this.newLine();
+            this.ascii("    }"); this.newLine();
+            this.ascii("    coordIndex ["); this.newLine();
+            this.tinTriangles(pTin, "      ", ",");
+            this.ascii("    ]"); this.newLine();
+            if (mColorMapper != null) {
+                this.ascii("    colorPerVertex TRUE"); this.newLine();
+                this.ascii("    color Color {"); this.newLine();
+                this.ascii("      color ["); this.newLine();
+                this.tinColors(pTin, "        ", ",");
+                this.ascii("      ]"); this.newLine();
+                this.ascii("    }"); this.newLine();
+            }
+            this.ascii("  }"); this.newLine();
+            this.ascii("}"); this.newLine();
+            this.lodEnd(false);
+        }
+        if (mFormat.equalsIgnoreCase("X3d")) {
+            this.ascii("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"); this.newLine();
+            this.ascii("<!DOCTYPE X3D PUBLIC \"ISO//Web3D//DTD X3D 3.0//EN\" "
+                + "\"http://www.web3d.org/specifications/x3d-3.0.dtd\">"); this.newLine();
+            this.ascii("<X3D profile=\"" + this.x3dProfile() + "\" version=\"3.0\">"); this.newLine();
+            this.ascii("  <Scene>"); this.newLine();
+            this.lodBegin(g, pTin.getGrid(), true);
+            this.ascii("    <Shape>"); this.newLine();
+            this.ascii("      <Appearance><Material diffuseColor=\"0.8 0.8 0.8\"/></Appearance>"); this.newLine();
+            this.ascii("      <IndexedFaceSet solid=\"false\" creaseAngle=\"1.57\"");
+            if (mColorMapper != null)
+                this.ascii(" colorPerVertex=\"true\"");
+            this.newLine();
+            this.ascii("        coordIndex=\""); this.newLine();
+            this.tinTriangles(pTin, "          ", "");
+            this.ascii("        \">"); this.newLine();
+            this.ascii("        <Coordinate point=\""); this.newLine();
+            this.tinPoints(pTin, g, "          ", "");
+            this.ascii("        \"/>"); this.newLine();
+            if (mColorMapper != null) {
+                this.ascii("        <Color color=\""); this.newLine();
+                this.tinColors(pTin, "          ", "");
+                this.ascii("        \"/>"); this.newLine();
+            }
+            this.ascii("      </IndexedFaceSet>"); this.newLine();
+            this.ascii("    </Shape>"); this.newLine();
+            this.lodEnd(true);
+            this.ascii("  </Scene>"); this.newLine();
+            this.ascii("</X3D>"); this.newLine();
+        }
+        this.flush();
+        mOut.flush();
+        mOut = null;
+    }
+
+    /**
+     * starts the band-wise output of a grid with the given geometry and writes the file header. The bands have to
+     * be passed to <tt>this.writeBand()</tt> in the order given by <tt>this.isNorthFirst()</tt>.<br /><br />
+     * <i>German:</i> beginnt die bandweise Ausgabe eines H&ouml;henmodells der angegebenen Geometrie und schreibt
+     * den Dateikopf. Die B&auml;nder sind in der durch <tt>this.isNorthFirst()</tt> gegebenen Reihenfolge an
+     * <tt>this.writeBand()</tt> zu &uuml;bergeben; abschlie&szlig;end ist <tt>this.endBands()</tt> aufzurufen.
+     * @param pGeom Geometrie des Gesamtmodells
+     * @param pOut Ausgabestrom
+     * @throws IOException bei Schreibfehlern
+     * @throws T3dException falls das Format nicht bandweise geschrieben werden kann
+     */
+    public void beginBands(GmSimple2dGridGeometry pGeom, OutputStream pOut) throws IOException
+    {
+        if (!isSupportedForBands(mFormat))
+            throw new T3dException("Format \"" + mFormat + "\" does not support band-wise output.");
+        mOut = pOut;
+        mPos = 0;
+        mBandInfo = new GridInfo(pGeom);
+        mBandSRS = pGeom.getSRS();
+        mBandGeographic = pGeom.hasGeographicSRS();
+        GridInfo g = mBandInfo;
+        if (mFormat.equalsIgnoreCase("ArcIGrd"))
+            this.arcIGrdHeader(g);
+        if (mFormat.equalsIgnoreCase("AcGeo"))
+            this.acGeoHeader(g);
+        if (mFormat.equalsIgnoreCase("BinFloat32")) {
+            new BinaryTileWriter().writeHeaderToStream(
+                g.mCols, g.mRows, g.mXMin, g.mYMin, g.mDeltaX, g.mDeltaY, pOut);
+        }
+        if (mFormat.equalsIgnoreCase("GeoTIFF")) {
+            new GeoTiffWriter().writeHeader(
+                g.mCols, g.mRows, g.mXMin, g.mYMin, g.mDeltaX, g.mDeltaY, mBandSRS, mBandGeographic, pOut);
+        }
+    }
+
+    /**
+     * returns the order in which bands have to be passed to <tt>this.writeBand()</tt>.<br /><br />
+     * <i>German:</i> liefert die Reihenfolge, in der die B&auml;nder an <tt>this.writeBand()</tt> zu
+     * &uuml;bergeben sind.
+     * @return <i>true</i>, falls von Nord nach S&uuml;d ("ArcIGrd", "GeoTIFF"), <i>false</i> falls von S&uuml;d
+     * nach Nord ("AcGeo", "BinFloat32")
+     */
+    public boolean isNorthFirst() {
+        return mFormat.equalsIgnoreCase("ArcIGrd") || mFormat.equalsIgnoreCase("GeoTIFF");
+    }
+
+    /**
+     * writes a band of the grid started by <tt>this.beginBands()</tt>. The band has to cover all columns.<br /><br />
+     * <i>German:</i> schreibt ein Band des mit <tt>this.beginBands()</tt> begonnenen H&ouml;henmodells. Das Band
+     * muss alle Spalten umfassen.
+     * @param pBand Band (Gitter mit Zeilen des Gesamtmodells)
+     * @throws IOException bei Schreibfehlern
+     */
+    public void writeBand(GmSimpleElevationGrid pBand) throws IOException
+    {
+        if (mFormat.equalsIgnoreCase("ArcIGrd"))
+            this.arcIGrdRows(pBand);
+        if (mFormat.equalsIgnoreCase("AcGeo"))
+            this.acGeoRows(pBand);
+        if (mFormat.equalsIgnoreCase("BinFloat32")) {
+            this.flush();
+            new BinaryTileWriter().writeRowsToStream(new GridElevationTile(pBand), mOut);
+        }
+        if (mFormat.equalsIgnoreCase("GeoTIFF")) {
+            this.flush();
+            new GeoTiffWriter().writeRows(new GridElevationTile(pBand), mOut);
+        }
+    }
+
+    /**
+     * finishes the band-wise output. The stream will be flushed, but not closed.<br /><br />
+     * <i>German:</i> schlie&szlig;t die bandweise Ausgabe ab. Der Strom wird geleert, aber nicht geschlossen.
+     * @throws IOException bei Schreibfehlern
+     */
+    public void endBands() throws IOException
+    {
+        this.flush();
+        mOut.flush();
+        mOut = null;
+        mBandInfo = null;
+    }
+
+    private void writeArcIGrd(GmSimpleElevationGrid pGrid) throws IOException
+    {
+        GridInfo g = new GridInfo(pGrid);
+        this.arcIGrdHeader(g);
+        this.arcIGrdRows(pGrid);
+    }
+
+    private void arcIGrdHeader(GridInfo g) throws IOException
+    {
+        this.ascii("ncols "); this.integer(g.mCols); this.newLine();
+        this.ascii("nrows "); this.integer(g.mRows); this.newLine();
+        this.ascii("xllcorner "); this.number(g.mXMin, g.mDecXY); this.newLine();
+        this.ascii("yllcorner "); this.number(g.mYMin, g.mDecXY); this.newLine();
+        this.ascii("cellsize "); this.number(g.mDeltaX, g.mDecXY); this.newLine();
+        this.ascii("NODATA_value "); this.number(sNoData, 0); this.newLine();
+    }
+
+    private void arcIGrdRows(GmSimpleElevationGrid pGrid) throws IOException
+    {
+        int nRows = pGrid.numberOfRows(), nCols = pGrid.numberOfColumns();
+        // Zeilen von Nord nach Sued:
+        for (int i = nRows - 1; i >= 0; i--) {
+            for (int j = 0; j < nCols; j++) {
+                if (j > 0)
+                    this.ascii(" ");
+                if (pGrid.isSet(i, j))
+                    this.number(pGrid.getValue(i, j), mPrecisionZ);
+                else
+                    this.number(sNoData, 0);
+            }
+            this.newLine();
+        }
+    }
+
+    private void writeAcGeo(GmSimpleElevationGrid pGrid) throws IOException
+    {
+        GridInfo g = new GridInfo(pGrid);
+        this.acGeoHeader(g);
+        this.acGeoRows(pGrid);
+    }
+
+    private void acGeoHeader(GridInfo g) throws IOException
+    {
+        // Kopf: Formatkennung, Spalten-/Zeilenanzahl, Ursprung (SW-Ecke), Gitterweiten, Fehlwert
+        this.ascii("ACADGEO-GRID"); this.newLine();
+        this.integer(g.mCols); this.ascii(" "); this.integer(g.mRows); this.newLine();
+        this.number(g.mXMin, g.mDecXY); this.ascii(" "); this.number(g.mYMin, g.mDecXY); this.newLine();
+        this.number(g.mDeltaX, g.mDecXY); this.ascii(" "); this.number(g.mDeltaY, g.mDecXY); this.newLine();
+        this.number(sNoData, 0); this.newLine();
+    }
+
+    private void acGeoRows(GmSimpleElevationGrid pGrid) throws IOException
+    {
+        int nRows = pGrid.numberOfRows(), nCols = pGrid.numberOfColumns();
+        // Zeilen von Sued nach Nord:
+        for (int i = 0; i < nRows; i++) {
+            for (int j = 0; j < nCols; j++) {
+                if (j > 0)
+                    this.ascii(" ");
+                if (pGrid.isSet(i, j))
+                    this.number(pGrid.getValue(i, j), mPrecisionZ);
+                else
+                    this.number(sNoData, 0);
+            }
+            this.newLine();
+        }
+    }
+
+    private void writeVrml1(GmSimpleElevationGrid pGrid) throws IOException
+    {
+        GridInfo g = new GridInfo(pGrid);
+        this.ascii("#VRML V1.0 ascii"); this.newLine();
+        this.newLine();
+        this.ascii("Separator {"); this.newLine();
+        this.ascii("  ShapeHints {"); this.newLine();
+        this.ascii("    vertexOrdering COUNTERCLOCKWISE"); this.newLine();
+        this.ascii("    creaseAngle 1.57"); this.newLine();
+        this.ascii("  }"); this.newLine();
+        this.ascii("  Coordinate3 {"); this.newLine();
+        this.ascii("    point ["); this.newLine();
+        for (int i = g.mRows - 1; i >= 0; i--) {
+            for (int j = 0; j < g.mCols; j++) {
+                this.ascii("      ");
+                this.number(g.mXMin + j * g.mDeltaX, g.mDecXY); this.ascii(" ");
+                this.number(value(pGrid, i, j), mPrecisionZ); this.ascii(" ");
+                this.number(-(g.mYMin + i * g.mDeltaY), g.mDecXY); this.ascii(",");
+                this.newLine();
+            }
+        }
+        this.ascii("    ]"); this.newLine();
+        this.ascii("  }"); this.newLine();
+        this.ascii("  IndexedFaceSet {"); this.newLine();
+        this.ascii("    coordIndex ["); this.newLine();
+        // Punkt k = r * nCols + j, r = 0 fuer die noerdlichste Zeile
+        for (int r = 0; r < g.mRows - 1; r++) {
+            for (int j = 0; j < g.mCols - 1; j++) {
+                int k = r * g.mCols + j;
+                this.ascii("      ");
+                this.integer(k); this.ascii(", ");
+                this.integer(k + g.mCols); this.ascii(", ");
+                this.integer(k + g.mCols + 1); this.ascii(", ");
+                this.integer(k + 1); this.ascii(", -1,");
+                this.newLine();
+            }
+        }
+        this.ascii("    ]"); this.newLine();
+        this.ascii("  }"); this.newLine();
+        this.ascii("}"); this.newLine();
+    }
+
+    private void writeVrml2(GmSimpleElevationGrid pGrid) throws IOException
+    {
+        GridInfo g = new GridInfo(pGrid);
+        this.ascii("#VRML V2.0 utf8"); this.newLine();
+        this.newLine();
+        this.lodBegin(g, pGrid, false);
+        this.ascii("Transform {"); this.newLine();
+        this.ascii("  translation ");
+        this.number(g.mXMin, g.mDecXY); this.ascii(" 0 "); this.number(-g.mYMax, g.mDecXY); this.newLine();
+        this.ascii("  children Shape {"); this.newLine();
+        this.ascii("    appearance Appearance { material Material { diffuseColor 0.8 0.8 0.8 } }"); this.newLine();
+        this.ascii("    geometry ElevationGrid {"); this.newLine();
+        this.ascii("      xDimension "); this.integer(g.mCols); this.newLine();
+        this.ascii("      zDimension "); this.integer(g.mRows); this.newLine();
+        this.ascii("      xSpacing "); this.number(g.mDeltaX, g.mDecXY); this.newLine();
+        this.ascii("      zSpacing "); this.number(g.mDeltaY, g.mDecXY); this.newLine();
+        this.ascii("      solid FALSE"); this.newLine();
+        this.ascii("      creaseAngle 1.57"); this.newLine();
+        this.ascii("      height ["); this.newLine();
+        this.heights(pGrid, g, "        ", ",");
+        this.ascii("      ]"); this.newLine();
+        if (mColorMapper != null) {
+            this.ascii("      colorPerVertex TRUE"); this.newLine();
+            this.ascii("      color Color {"); this.newLine();
+            this.ascii("        color ["); this.newLine();
+            this.colors(pGrid, g, "          ", ",");
+            this.ascii("        ]"); this.newLine();
+            this.ascii("      }"); this.newLine();
+        }
+        this.ascii("    }"); this.newLine();
+        this.ascii("  }"); this.newLine();
+        this.ascii("}"); this.newLine();
+        this.lodEnd(false);
+    }
+
+    private void writeX3d(GmSimpleElevationGrid pGrid) throws IOException
+    {
+        GridInfo g = new GridInfo(pGrid);
+        this.ascii("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"); this.newLine();
+        this.ascii("<!DOCTYPE X3D PUBLIC \"ISO//Web3D//DTD X3D 3.0//EN\" "
+            + "\"http://www.web3d.org/specifications/x3d-3.0.dtd\">"); this.newLine();
+        this.ascii("<X3D profile=\"" + this.x3dProfile() + "\" version=\"3.0\">"); this.newLine();
+        this.ascii("  <Scene>"); this.newLine();
+        this.lodBegin(g, pGrid, true);
+        this.ascii("    <Transform translation=\"");
+        this.number(g.mXMin, g.mDecXY); this.ascii(" 0 "); this.number(-g.mYMax, g.mDecXY); this.ascii("\">");
+        this.newLine();
+        this.ascii("      <Shape>"); this.newLine();
+        this.ascii("        <Appearance><Material diffuseColor=\"0.8 0.8 0.8\"/></Appearance>"); this.newLine();
+        this.ascii("        <ElevationGrid xDimension=\""); this.integer(g.mCols);
+        this.ascii("\" zDimension=\""); this.integer(g.mRows);
+        this.ascii("\" xSpacing=\""); this.number(g.mDeltaX, g.mDecXY);
+        this.ascii("\" zSpacing=\""); this.number(g.mDeltaY, g.mDecXY);
+        this.ascii("\" solid=\"false\" creaseAngle=\"1.57\"");
+        if (mColorMapper != null)
+            this.ascii(" colorPerVertex=\"true\"");
+        this.newLine();
+        this.ascii("          height=\""); this.newLine();
+        this.heights(pGrid, g, "            ", "");
+        this.ascii("          \">"); this.newLine();
+        if (mColorMapper != null) {
+            this.ascii("          <Color color=\""); this.newLine();
+            this.colors(pGrid, g, "            ", "");
+            this.ascii("          \"/>"); this.newLine();
+        }
+        this.ascii("        </ElevationGrid>"); this.newLine();
+        this.ascii("      </Shape>"); this.newLine();
+        this.ascii("    </Transform>"); this.newLine();
+        this.lodEnd(true);
+        this.ascii("  </Scene>"); this.newLine();
+        this.ascii("</X3D>"); this.newLine();
+    }
+
+    private String x3dProfile() {
+        // LOD- und Inline-Knoten sind erst im Profil "Immersive" enthalten
+        return mLodUrls == null ? "Interchange" : "Immersive";
+    }
+
+    private void lodBegin(GridInfo g, GmSimpleElevationGrid pGrid, boolean pX3d) throws IOException
+    {
+        if (mLodUrls == null)
+            return;
+        // Detailstufe 0: Detailszenen, Stufe 1: eigene (grobe) Geometrie
+        double lWidth = (g.mCols - 1) * g.mDeltaX, lHeight = (g.mRows - 1) * g.mDeltaY;
+        double lRange = 2. * Math.sqrt(lWidth * lWidth + lHeight * lHeight);
+        double lZ = 0.5 * (pGrid.minimalElevation() + pGrid.maximalElevation());
+        if (pX3d) {
+            this.ascii("    <LOD center=\"");
+            this.number(g.mXMin + 0.5 * lWidth, g.mDecXY); this.ascii(" ");
+            this.number(lZ, mPrecisionZ); this.ascii(" ");
+            this.number(-(g.mYMin + 0.5 * lHeight), g.mDecXY);
+            this.ascii("\" range=\""); this.number(lRange, g.mDecXY); this.ascii("\">"); this.newLine();
+            this.ascii("      <Group>"); this.newLine();
+            for (int k = 0; k < mLodUrls.length; k++) {
+                this.ascii("        <Inline url='\""); this.ascii(xmlEscape(mLodUrls[k])); this.ascii("\"'/>");
+                this.newLine();
+            }
+            this.ascii("      </Group>"); this.newLine();
+        }
+        else {
+            this.ascii("LOD {"); this.newLine();
+            this.ascii("  center ");
+            this.number(g.mXMin + 0.5 * lWidth, g.mDecXY); this.ascii(" ");
+            this.number(lZ, mPrecisionZ); this.ascii(" ");
+            this.number(-(g.mYMin + 0.5 * lHeight), g.mDecXY); this.newLine();
+            this.ascii("  range [ "); this.number(lRange, g.mDecXY); this.ascii(" ]"); this.newLine();
+            this.ascii("  level ["); this.newLine();
+            this.ascii("    Group {"); this.newLine();
+            this.ascii("      children ["); this.newLine();
+            for (int k = 0; k < mLodUrls.length; k++) {
+                this.ascii("        Inline { url \""); this.ascii(mLodUrls[k]); this.ascii("\" }"); this.newLine();
+            }
+            this.ascii("      ]"); this.newLine();
+            this.ascii("    }"); this.newLine();
+        }
+    }
+
+    private void lodEnd(boolean pX3d) throws IOException
+    {
+        if (mLodUrls == null)
+            return;
+        if (pX3d) {
+            this.ascii("    </LOD>"); this.newLine();
+        }
+        else {
+            this.ascii("  ]"); this.newLine();
+            this.ascii("}"); this.newLine();
+        }
+    }
+
+    static String xmlEscape(String pStr)
+    {
+        StringBuffer lRes = new StringBuffer();
+        for (int k = 0; k < pStr.length(); k++) {
+            char c = pStr.charAt(k);
+            if (c == '&') lRes.append("&amp;");
+            else if (c == '<') lRes.append("&lt;");
+            else if (c == '\'') lRes.append("&apos;");
+            else lRes.append(c);
+        }
+        return lRes.toString();
+    }
+
+    private void heights(GmSimpleElevationGrid pGrid, GridInfo g, String pIndent, String pSep) throws IOException
+    {
+        // ElevationGrid-Zeile 0 liegt bei z = 0, d. h. am noerdlichen Rand:
+        for (int i = g.mRows - 1; i >= 0; i--) {
+            this.ascii(pIndent);
+            for (int j = 0; j < g.mCols; j++) {
+                if (j > 0)
+                    this.ascii(" ");
+                this.number(value(pGrid, i, j), mPrecisionZ);
+            }
+            this.ascii(pSep);
+            this.newLine();
+        }
+    }
+
+    // liefert den Hoehenwert fuer die 3D-Formate; nicht belegte Gitterpunkte erhalten wie in den Gitterformaten den
+    // Fehlwert (sonst entstuende ungueltiges "NaN")
+    private static double value(GmSimpleElevationGrid pGrid, int i, int j) {
+        return pGrid.isSet(i, j) ? pGrid.getValue(i, j) : sNoData;
+    }
+
+    private void colors(GmSimpleElevationGrid pGrid, GridInfo g, String pIndent, String pSep) throws IOException
+    {
+        for (int i = g.mRows - 1; i >= 0; i--) {
+            for (int j = 0; j < g.mCols; j++) {
+                T3dColor c = mColorMapper.transform(value(pGrid, i, j));
+                this.ascii(pIndent);
+                this.number(c.getRed(), 3); this.ascii(" ");
+                this.number(c.getGreen(), 3); this.ascii(" ");
+                this.number(c.getBlue(), 3); this.ascii(pSep);
+                this.newLine();
+            }
+        }
+    }
+
+    private void tinPoints(TinSimplifier.Tin pTin, GridInfo g, String pIndent, String pSep) throws IOException
+    {
+        // x-Achse nach Osten, y-Achse nach oben, negative z-Achse nach Norden (wie ElevationGrid-Ausgabe)
+        for (int k = 0; k < pTin.numberOfPoints(); k++) {
+            int i = pTin.getRow(k), j = pTin.getColumn(k);
+            this.ascii(pIndent);
+            this.number(g.mXMin + j * g.mDeltaX, g.mDecXY); this.ascii(" ");
+            this.number(pTin.getGrid().getValue(i, j), mPrecisionZ); this.ascii(" ");
+            this.number(-(g.mYMin + i * g.mDeltaY), g.mDecXY); this.ascii(pSep);
+            this.newLine();
+        }
+    }
+
+    private void tinTriangles(TinSimplifier.Tin pTin, String pIndent, String pSep) throws IOException
+    {
+        for (int t = 0; t < pTin.numberOfTriangles(); t++) {
+            this.ascii(pIndent);
+            this.integer(pTin.getCorner(t, 0)); this.ascii(pSep); this.ascii(" ");
+            this.integer(pTin.getCorner(t, 1)); this.ascii(pSep); this.ascii(" ");
+            this.integer(pTin.getCorner(t, 2)); this.ascii(pSep); this.ascii(" -1"); this.ascii(pSep);
+            this.newLine();
+        }
+    }
+
+    private void tinColors(TinSimplifier.Tin pTin, String pIndent, String pSep) throws IOException
+    {
+        for (int k = 0; k < pTin.numberOfPoints(); k++) {
+            T3dColor c = mColorMapper.transform(pTin.getGrid().getValue(pTin.getRow(k), pTin.getColumn(k)));
+            this.ascii(pIndent);
+            this.number(c.getRed(), 3); this.ascii(" ");
+            this.number(c.getGreen(), 3); this.ascii(" ");
+            this.number(c.getBlue(), 3); this.ascii(pSep);
+            this.newLine();
+        }
+    }
+
+    private class GridInfo
+    {
+        int mCols, mRows;
+        double mXMin, mYMin, mYMax, mDeltaX, mDeltaY;
+        int mDecXY;
+
+        GridInfo(GmSimpleElevationGrid pGrid) {
+            this((GmSimple2dGridGeometry) pGrid.getGeometry());
+        }
+
+        GridInfo(GmSimple2dGridGeometry pGeom)
+        {
+            GmSimple2dGridGeometry lGeom = pGeom;
+            VgPoint lOrigin = lGeom.getVertexCoordinate(0, 0);
+            mCols = lGeom.numberOfColumns();
+            mRows = lGeom.numberOfRows();
+            mXMin = lOrigin.getX();
+            mYMin = lOrigin.getY();
+            mDeltaX = lGeom.getDeltaX();
+            mDeltaY = lGeom.getDeltaY();
+            mYMax = mYMin + (mRows - 1) * mDeltaY;
+            // Nachkommastellen so erhoehen, dass die Gitterweiten darstellbar sind (z. B. fuer Grad-Angaben):
+            mDecXY = mPrecisionXY;
+            while (mDecXY < 12 && !(exact(mDeltaX, mDecXY) && exact(mDeltaY, mDecXY)))
+                mDecXY++;
+        }
+
+        private boolean exact(double pVal, int pDecimals) {
+            double lScaled = pVal * sPow10[pDecimals];
+            return Math.abs(lScaled - Math.rint(lScaled)) < 1.e-6;
+        }
+    }
+
+    private void number(double pVal, int pDecimals) throws IOException
+    {
+        long lScale = sPow10[pDecimals];
+        if (Double.isNaN(pVal) || Double.isInfinite(pVal) || Math.abs(pVal) * lScale >= 1.e18) {
+            this.ascii(String.valueOf(pVal));
+            return;
+        }
+        long r = Math.round(Math.abs(pVal) * lScale);
+        if (pVal < 0. && r != 0)
+            this.put('-');
+        this.integer(r / lScale);
+        if (pDecimals > 0) {
+            this.put('.');
+            long lFrac = r % lScale;
+            for (int d = pDecimals - 1; d >= 0; d--)
+                this.put((char) ('0' + (lFrac / sPow10[d]) % 10));
+        }
+    }
+
+    private void integer(long pVal) throws IOException
+    {
+        if (mPos + 20 > mBuf.length)
+            this.flush();
+        if (pVal < 0) {
+            mBuf[mPos++] = '-';
+            pVal = -pVal;
+        }
+        int lStart = mPos;
+        do {
+            mBuf[mPos++] = (byte) ('0' + (pVal % 10));
+            pVal /= 10;
+        } while (pVal > 0);
+        // Ziffern wurden in umgekehrter Reihenfolge geschrieben:
+        for (int a = lStart, b = mPos - 1; a < b; a++, b--) {
+            byte t = mBuf[a];
+            mBuf[a] = mBuf[b];
+            mBuf[b] = t;
+        }
+    }
+
+    private void ascii(String pStr) throws IOException
+    {
+        for (int k = 0; k < pStr.length(); k++)
+            this.put(pStr.charAt(k));
+    }
+
+    private void newLine() throws IOException {
+        this.put('\n');
+    }
+
+    private void put(char c) throws IOException
+    {
+        if (mPos >= mBuf.length)
+            this.flush();
+        mBuf[mPos++] = (byte) c;
+    }
+
+    private void flush() throws IOException
+    {
+        if (mPos > 0)
+            mOut.write(mBuf, 0, mPos);
+        mPos = 0;
+    }
+}
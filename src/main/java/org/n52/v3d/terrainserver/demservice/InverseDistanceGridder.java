@@ -0,0 +1,156 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import org.n52.v3d.triturus.gisimplm.GmPoint;
+import org.n52.v3d.triturus.gisimplm.GmSimple2dGridGeometry;
+import org.n52.v3d.triturus.gisimplm.GmSimpleElevationGrid;
+import org.n52.v3d.triturus.vgis.VgPoint;
+
+/**
+ * Inverse-distance gridding of scattered points held in a <tt>PointStore</tt>.<br /><br />
+ * <i>German:</i> Gridding nach dem Verfahren der inversen Distanzgewichtung f&uuml;r die in einem
+ * <tt>PointStore</tt> gehaltenen Punkte.<br />
+ * F&uuml;r jeden Zielgitterpunkt werden alle Punkte innerhalb des Suchradius mit dem Gewicht 1/d&sup2;
+ * ber&uuml;cksichtigt; f&auml;llt ein Punkt mit einem Zielgitterpunkt zusammen, wird dessen Wert &uuml;bernommen.
+ * Gitterpunkte ohne Punkte im Suchradius bleiben unbelegt. &Uuml;ber den Bucket-Index des <tt>PointStore</tt>
+ * werden nur die Buckets in der Umgebung des Zielgitterpunkts durchsucht.<br />
+ * Optional kann das Zielgitter zeilenstreifenweise parallel berechnet werden (vgl. <tt>ParallelGridFiller</tt>).
+ */
+public class InverseDistanceGridder implements ParallelGridFiller.RowFunction
+{
+    private GmSimple2dGridGeometry mGrdGeom;
+    private double mSearchRadius;
+    private int mParallelism = 1;
+    private PointStore mPoints = null;
+
+    /**
+     * Constructor.<br /><br />
+     * <i>German:</i> Konstruktor.
+     * @param pGrdGeom Gitter-Geometrie (2D)
+     * @param pSearchRadius Suchradius
+     */
+    public InverseDistanceGridder(GmSimple2dGridGeometry pGrdGeom, double pSearchRadius)
+    {
+        mGrdGeom = pGrdGeom;
+        mSearchRadius = pSearchRadius;
+    }
+
+    /**
+     * sets the number of row bands to be computed concurrently.<br /><br />
+     * <i>German:</i> setzt die Anzahl gleichzeitig zu berechnender Zeilenstreifen.
+     * @param pParallelism Parallelit&auml;tsgrad (1 f&uuml;r sequentielle Berechnung, &lt; 1 f&uuml;r Anzahl
+     * Prozessoren)
+     */
+    public void setParallelism(int pParallelism) {
+        mParallelism = pParallelism;
+    }
+
+    /**
+     * estimates the heap memory consumed by the destination grid.<br /><br />
+     * <i>German:</i> sch&auml;tzt den f&uuml;r das Zielgitter ben&ouml;tigten Heap-Speicher ab.
+     * @return Speicherbedarf in Bytes
+     */
+    public long estimateMemoryConsumption() {
+        return ((long) mGrdGeom.numberOfRows()) * mGrdGeom.numberOfColumns() * 9; // double-Wert + Belegungs-Flag
+    }
+
+    /**
+     * performs the gridding.<br /><br />
+     * <i>German:</i> f&uuml;hrt das Gridding aus. Ist f&uuml;r den <tt>PointStore</tt> noch kein Bucket-Index
+     * aufgebaut, wird dieser mit dem Suchradius als Bucket-Gr&ouml;&szlig;e erzeugt.
+     * @param pPoints Eingabepunkte
+     * @return Gitter mit belegten H&ouml;henwerten
+     */
+    public GmSimpleElevationGrid transform(PointStore pPoints)
+    {
+        if (!pPoints.hasIndex())
+            pPoints.buildIndex(mSearchRadius);
+
+        VgPoint lOrigin = mGrdGeom.getVertexCoordinate(0, 0);
+        GmSimpleElevationGrid lResGrid = new GmSimpleElevationGrid(
+            mGrdGeom.numberOfColumns(), mGrdGeom.numberOfRows(),
+            new GmPoint(lOrigin.getX(), lOrigin.getY(), 0.), mGrdGeom.getDeltaX(), mGrdGeom.getDeltaY());
+
+        mPoints = pPoints;
+        try {
+            ParallelGridFiller.fill(lResGrid, this, mParallelism);
+        }
+        finally {
+            mPoints = null;
+        }
+        return lResGrid;
+    }
+
+    /**
+     * computes the values of the given grid rows. This method is called by <tt>ParallelGridFiller</tt>.<br /><br />
+     * <i>German:</i> berechnet die Werte der angegebenen Gitterzeilen. Die Methode wird von
+     * <tt>ParallelGridFiller</tt> aufgerufen.
+     * @param pRowFrom erste Zeile
+     * @param pRowTo auf letzte Zeile folgende Zeile
+     * @param pValues Ergebnisfeld
+     */
+    public void computeRows(int pRowFrom, int pRowTo, double[] pValues)
+    {
+        PointStore lPoints = mPoints;
+        int nCols = mGrdGeom.numberOfColumns();
+        VgPoint lOrigin = mGrdGeom.getVertexCoordinate(0, 0);
+        double lDx = mGrdGeom.getDeltaX(), lDy = mGrdGeom.getDeltaY();
+
+        double r2 = mSearchRadius * mSearchRadius;
+        int nbx = lPoints.numberOfBucketsX(), nby = lPoints.numberOfBucketsY();
+
+        int lIdx = 0;
+        for (int i = pRowFrom; i < pRowTo; i++) {
+            double y = lOrigin.getY() + i * lDy;
+            int by0 = Math.max(0, lPoints.bucketY(y - mSearchRadius));
+            int by1 = Math.min(nby - 1, lPoints.bucketY(y + mSearchRadius));
+            for (int j = 0; j < nCols; j++) {
+                double x = lOrigin.getX() + j * lDx;
+                int bx0 = Math.max(0, lPoints.bucketX(x - mSearchRadius));
+                int bx1 = Math.min(nbx - 1, lPoints.bucketX(x + mSearchRadius));
+
+                double lSum = 0., lWSum = 0.;
+                boolean lHit = false;
+                for (int by = by0; by <= by1 && !lHit; by++) {
+                    for (int bx = bx0; bx <= bx1 && !lHit; bx++) {
+                        int k1 = lPoints.bucketEnd(bx, by);
+                        for (int k = lPoints.bucketBegin(bx, by); k < k1; k++) {
+                            double ddx = lPoints.getX(k) - x, ddy = lPoints.getY(k) - y;
+                            double d2 = ddx * ddx + ddy * ddy;
+                            if (d2 > r2)
+                                continue;
+                            if (d2 <= 0.) {
+                                // Punkt liegt auf dem Gitterpunkt:
+                                lSum = lPoints.getZ(k);
+                                lWSum = 1.;
+                                lHit = true;
+                                break;
+                            }
+                            lSum += lPoints.getZ(k) / d2;
+                            lWSum += 1. / d2;
+                        }
+                    }
+                }
+                pValues[lIdx++] = (lWSum > 0.) ? lSum / lWSum : Double.NaN;
+            }
+        }
+    }
+}
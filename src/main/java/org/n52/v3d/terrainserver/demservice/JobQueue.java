@@ -0,0 +1,476 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Persistent queue for asynchronously processed export jobs (SubmitJob, GetJobStatus, GetJobResult).<br /><br />
+ * <i>German:</i> Persistente Warteschlange f&uuml;r asynchron bearbeitete Export-Auftr&auml;ge (SubmitJob,
+ * GetJobStatus, GetJobResult).<br />
+ * Jeder Auftrag wird mit seinen (bereits gepr&uuml;ften) Anfrageparametern und seinem Zustand als
+ * Properties-Datei im Auftragsverzeichnis abgelegt, so dass nach einem Neustart des Servers wartende und
+ * abgebrochene Auftr&auml;ge erneut eingeplant werden. Die Auftr&auml;ge werden von einer festen Anzahl von
+ * Worker-Threads in der Reihenfolge ihres Eingangs abgearbeitet; die eigentliche Berechnung &uuml;bernimmt ein
+ * <tt>JobQueue.Processor</tt>. Ergebnisdateien werden nach Ablauf der Aufbewahrungsdauer samt Auftrag
+ * gel&ouml;scht.<br />
+ * Die Anzahl wartender Auftr&auml;ge sowie die Gesamtgr&ouml;&szlig;e der aufbewahrten Ergebnisdateien lassen
+ * sich begrenzen (vgl. <tt>setMaxQueuedJobs()</tt>, <tt>setMaxResultBytes()</tt>); dar&uuml;ber hinaus
+ * eingehende Auftr&auml;ge werden abgewiesen.
+ */
+public class JobQueue
+{
+    public static final String sQueued = "Queued";
+    public static final String sRunning = "Running";
+    public static final String sFinished = "Finished";
+    public static final String sFailed = "Failed";
+
+    private static final String sSuffix = ".job";
+    private static final long sPurgeInterval = 60000; // msec
+    private static final long sShutdownTimeout = 30000; // msec
+
+    private File mDir;
+    private long mRetention;
+    private Processor mProcessor;
+    private HashMap mJobs = new HashMap();
+    private LinkedList mQueue = new LinkedList();
+    private Thread[] mWorkers;
+    private boolean mShutdown = false;
+    private int mMaxQueuedJobs = 0; // 0: unbegrenzt
+    private long mMaxResultBytes = 0; // 0: unbegrenzt
+
+    /**
+     * Calculation of a job's result.<br /><br />
+     * <i>German:</i> Berechnung des Ergebnisses eines Auftrags.
+     */
+    public interface Processor
+    {
+        /**
+         * calculates the result of the given job and writes it to the given file.<br /><br />
+         * <i>German:</i> berechnet das Ergebnis des angegebenen Auftrags und schreibt es in die angegebene
+         * Datei. Der Fortschritt ist &uuml;ber <tt>Job#progress()</tt> zu melden.
+         * @param pJob Auftrag
+         * @param pResult Zieldatei
+         * @throws Exception im Fehlerfall (der Auftrag erh&auml;lt dann den Zustand "Failed")
+         */
+        public void process(Job pJob, File pResult) throws Exception;
+    }
+
+    /**
+     * Export job.<br /><br />
+     * <i>German:</i> Export-Auftrag.
+     */
+    public static class Job implements DEMServiceHelpers.ProgressListener
+    {
+        private String mId;
+        private Properties mParams = new Properties();
+        private String mMimeType;
+        private String mExtension;
+        private String mStatus = sQueued;
+        private volatile double mProgress = 0.;
+        private String mMessage = null;
+        private long mSubmitted;
+        private long mFinished = 0;
+        private File mResult;
+
+        /** liefert die Auftragskennung. */
+        public String getId() { return mId; }
+        /** liefert den Wert eines Anfrageparameters. */
+        public String getParameter(String pName) { return mParams.getProperty(pName); }
+        /** liefert den MIME-Typ des Ergebnisses. */
+        public String getMimeType() { return mMimeType; }
+        /** liefert die Datei-Extension des Ergebnisses (ohne .). */
+        public String getExtension() { return mExtension; }
+        /** liefert den Zustand ("Queued", "Running", "Finished" oder "Failed"). */
+        public synchronized String getStatus() { return mStatus; }
+        /** liefert den Fortschritt (0 bis 1). */
+        public double getProgress() { return mProgress; }
+        /** liefert die Fehlermeldung eines gescheiterten Auftrags oder <i>null</i>. */
+        public synchronized String getMessage() { return mMessage; }
+        /** liefert den Eingangszeitpunkt (msec). */
+        public long getSubmitted() { return mSubmitted; }
+        /** liefert den Zeitpunkt der Fertigstellung (msec) oder 0. */
+        public synchronized long getFinished() { return mFinished; }
+        /** liefert die Ergebnisdatei; diese existiert nur im Zustand "Finished". */
+        public File getResult() { return mResult; }
+
+        /**
+         * reports the progress of the running job.<br /><br />
+         * <i>German:</i> meldet den Fortschritt des laufenden Auftrags.
+         * @param pFraction Anteil der erledigten Arbeit (0 bis 1)
+         */
+        public void progress(double pFraction) {
+            mProgress = Math.max(mProgress, Math.min(1., pFraction));
+        }
+    }
+
+    /**
+     * Constructor. Jobs persisted by a previous run are restored; queued and interrupted jobs are re-scheduled.
+     * <br /><br />
+     * <i>German:</i> Konstruktor. Die bei einem fr&uuml;heren Lauf abgelegten Auftr&auml;ge werden
+     * wiederhergestellt; wartende und unterbrochene Auftr&auml;ge werden erneut eingeplant.
+     * @param pDir Auftragsverzeichnis (wird bei Bedarf angelegt)
+     * @param pWorkers Anzahl der Worker-Threads
+     * @param pRetention Aufbewahrungsdauer abgeschlossener Auftr&auml;ge in Sekunden
+     * @param pProcessor Berechnung der Ergebnisse
+     * @throws T3dException falls das Verzeichnis nicht angelegt werden kann
+     */
+    public JobQueue(String pDir, int pWorkers, long pRetention, Processor pProcessor)
+    {
+        mDir = new File(pDir);
+        mRetention = pRetention * 1000;
+        mProcessor = pProcessor;
+        if (!mDir.isDirectory() && !mDir.mkdirs())
+            throw new T3dException("Could not create job directory \"" + pDir + "\".");
+
+        ArrayList lPending = new ArrayList();
+        File[] lFiles = mDir.listFiles();
+        for (int i = 0; lFiles != null && i < lFiles.length; i++) {
+            String lName = lFiles[i].getName();
+            if (lName.endsWith(".tmp") || lName.endsWith(sSuffix + ".new")) {
+                lFiles[i].delete(); // unvollstaendiges Ergebnis bzw. Auftragsdatei eines abgebrochenen Laufs
+                continue;
+            }
+            if (!lName.endsWith(sSuffix))
+                continue;
+            Job lJob = this.load(lFiles[i]);
+            if (lJob == null) {
+                lFiles[i].delete(); // unlesbarer Auftrag oder Ergebnis nicht mehr vorhanden
+                continue;
+            }
+            mJobs.put(lJob.mId, lJob);
+            if (lJob.mStatus.equals(sQueued) || lJob.mStatus.equals(sRunning)) {
+                lJob.mStatus = sQueued;
+                lJob.mProgress = 0.;
+                lPending.add(lJob);
+            }
+        }
+        Collections.sort(lPending, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                long t1 = ((Job) o1).mSubmitted, t2 = ((Job) o2).mSubmitted;
+                return (t1 < t2) ? -1 : ((t1 > t2) ? 1 : 0);
+            }
+        });
+        mQueue.addAll(lPending);
+        this.purge();
+
+        mWorkers = new Thread[Math.max(1, pWorkers)];
+        for (int i = 0; i < mWorkers.length; i++) {
+            mWorkers[i] = new Thread("JobQueue-Worker-" + i) {
+                public void run() {
+                    work();
+                }
+            };
+            mWorkers[i].setDaemon(true);
+            mWorkers[i].start();
+        }
+    }
+
+    /**
+     * sets the maximum number of waiting jobs. For 0 (default), the number is not limited.<br /><br />
+     * <i>German:</i> setzt die maximale Anzahl wartender Auftr&auml;ge. F&uuml;r den Wert 0 (Voreinstellung) ist
+     * die Anzahl unbegrenzt.
+     * @param pMaxQueuedJobs maximale Anzahl
+     */
+    public synchronized void setMaxQueuedJobs(int pMaxQueuedJobs) {
+        mMaxQueuedJobs = Math.max(0, pMaxQueuedJobs);
+    }
+
+    /**
+     * sets the maximum total size of the retained result files. New jobs will be rejected as long as this budget is
+     * exhausted. For 0 (default), the size is not limited.<br /><br />
+     * <i>German:</i> setzt die maximale Gesamtgr&ouml;&szlig;e der aufbewahrten Ergebnisdateien. Solange dieses
+     * Budget ersch&ouml;pft ist, werden neue Auftr&auml;ge abgewiesen. F&uuml;r den Wert 0 (Voreinstellung) ist die
+     * Gr&ouml;&szlig;e unbegrenzt.
+     * @param pMaxResultBytes maximale Gesamtgr&ouml;&szlig;e in Bytes
+     */
+    public synchronized void setMaxResultBytes(long pMaxResultBytes) {
+        mMaxResultBytes = Math.max(0, pMaxResultBytes);
+    }
+
+    /**
+     * adds a job to the queue.<br /><br />
+     * <i>German:</i> nimmt einen Auftrag in die Warteschlange auf.
+     * @param pParams gepr&uuml;fte Anfrageparameter
+     * @param pMimeType MIME-Typ des Ergebnisses
+     * @param pExtension Datei-Extension des Ergebnisses (ohne .)
+     * @return Auftrag
+     * @throws T3dException falls die Warteschlange voll oder das Speicherbudget f&uuml;r Ergebnisse
+     * ersch&ouml;pft ist
+     */
+    public synchronized Job submit(Properties pParams, String pMimeType, String pExtension)
+    {
+        if (mShutdown)
+            throw new T3dException("The job queue has been shut down.");
+        if (mMaxQueuedJobs > 0 && mQueue.size() >= mMaxQueuedJobs)
+            throw new T3dException("Too many queued jobs (" + mQueue.size() + "). Please try again later.");
+        if (mMaxResultBytes > 0) {
+            this.purge();
+            if (this.resultBytes() >= mMaxResultBytes)
+                throw new T3dException("Storage for job results is exhausted. Please try again later.");
+        }
+        Job lJob = new Job();
+        lJob.mId = UUID.randomUUID().toString().replaceAll("-", ""); // nicht erratbar, da Ergebnis ohne Anmeldung abrufbar
+        lJob.mParams.putAll(pParams);
+        lJob.mMimeType = pMimeType;
+        lJob.mExtension = pExtension;
+        lJob.mSubmitted = System.currentTimeMillis();
+        lJob.mResult = new File(mDir, lJob.mId + "." + pExtension);
+        this.save(lJob);
+        mJobs.put(lJob.mId, lJob);
+        mQueue.addLast(lJob);
+        this.notifyAll();
+        return lJob;
+    }
+
+    /**
+     * looks up the job with the given ID.<br /><br />
+     * <i>German:</i> sucht den Auftrag mit der angegebenen Kennung.
+     * @param pId Auftragskennung
+     * @return Auftrag oder <i>null</i>, falls unbekannt oder bereits gel&ouml;scht
+     */
+    public synchronized Job lookup(String pId)
+    {
+        this.purge();
+        return (pId == null) ? null : (Job) mJobs.get(pId);
+    }
+
+    /**
+     * returns the number of jobs that will be started before the given job.<br /><br />
+     * <i>German:</i> liefert die Anzahl der Auftr&auml;ge, die vor dem angegebenen Auftrag gestartet werden.
+     * @param pJob Auftrag
+     * @return Position in der Warteschlange oder -1, falls der Auftrag nicht mehr wartet
+     */
+    public synchronized int position(Job pJob) {
+        return mQueue.indexOf(pJob);
+    }
+
+    /**
+     * returns the point in time when the given (finished or failed) job will be deleted.<br /><br />
+     * <i>German:</i> liefert den Zeitpunkt, zu dem der angegebene (abgeschlossene) Auftrag gel&ouml;scht wird.
+     * @param pJob Auftrag
+     * @return Zeitpunkt (msec) oder 0, falls der Auftrag noch nicht abgeschlossen ist
+     */
+    public long expires(Job pJob) {
+        long lFinished = pJob.getFinished();
+        return (lFinished > 0) ? lFinished + mRetention : 0;
+    }
+
+    /**
+     * stops the worker threads and waits for their termination. Running jobs stay persisted and will be restarted
+     * by the next instance.<br /><br />
+     * <i>German:</i> beendet die Worker-Threads und wartet (h&ouml;chstens 30 Sekunden) auf deren Ende. Laufende
+     * Auftr&auml;ge bleiben gespeichert und werden beim n&auml;chsten Start erneut bearbeitet.
+     */
+    public void shutdown()
+    {
+        synchronized (this) {
+            mShutdown = true;
+            this.notifyAll();
+        }
+        for (int i = 0; i < mWorkers.length; i++)
+            mWorkers[i].interrupt();
+        long lDeadline = System.currentTimeMillis() + sShutdownTimeout;
+        try {
+            for (int i = 0; i < mWorkers.length; i++) {
+                long lRemaining = lDeadline - System.currentTimeMillis();
+                if (lRemaining <= 0)
+                    break;
+                mWorkers[i].join(lRemaining);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void work()
+    {
+        while (true) {
+            Job lJob;
+            synchronized (this) {
+                while (mQueue.isEmpty() && !mShutdown) {
+                    try {
+                        this.wait(sPurgeInterval);
+                    }
+                    catch (InterruptedException e) {
+                    }
+                    this.purge();
+                }
+                if (mShutdown)
+                    return;
+                lJob = (Job) mQueue.removeFirst();
+                synchronized (lJob) {
+                    lJob.mStatus = sRunning;
+                }
+                this.save(lJob);
+            }
+
+            File lTmp = new File(mDir, lJob.mId + ".tmp");
+            String lStatus = sFailed, lMessage = null;
+            try {
+                mProcessor.process(lJob, lTmp);
+                lJob.mResult.delete();
+                if (!lTmp.renameTo(lJob.mResult))
+                    throw new T3dException("Could not move job result to \"" + lJob.mResult + "\".");
+                lStatus = sFinished;
+            }
+            catch (Throwable e) {
+                lTmp.delete();
+                lMessage = (e.getMessage() != null) ? e.getMessage() : e.toString();
+            }
+            synchronized (this) {
+                if (mShutdown && !lStatus.equals(sFinished))
+                    return; // vermutlich durch Abbruch gescheitert, Auftrag bleibt fuer Neustart eingeplant
+                synchronized (lJob) {
+                    lJob.mStatus = lStatus;
+                    lJob.mMessage = lMessage;
+                    lJob.mFinished = System.currentTimeMillis();
+                    if (lStatus.equals(sFinished))
+                        lJob.mProgress = 1.;
+                }
+                this.save(lJob);
+            }
+        }
+    }
+
+    private void purge()
+    {
+        // Abgeschlossene Auftraege nach Ablauf der Aufbewahrungsdauer loeschen:
+        long lNow = System.currentTimeMillis();
+        Iterator it = mJobs.values().iterator();
+        while (it.hasNext()) {
+            Job lJob = (Job) it.next();
+            long lExpires = this.expires(lJob);
+            if (lExpires > 0 && lExpires < lNow) {
+                it.remove();
+                lJob.mResult.delete();
+                new File(mDir, lJob.mId + sSuffix).delete();
+            }
+        }
+    }
+
+    // liefert die Gesamtgroesse der vorhandenen Ergebnisdateien
+    private long resultBytes()
+    {
+        long lBytes = 0;
+        Iterator it = mJobs.values().iterator();
+        while (it.hasNext()) {
+            Job lJob = (Job) it.next();
+            if (sFinished.equals(lJob.getStatus()))
+                lBytes += lJob.mResult.length();
+        }
+        return lBytes;
+    }
+
+    private void save(Job pJob)
+    {
+        Properties lProps = new Properties();
+        Iterator it = pJob.mParams.keySet().iterator();
+        while (it.hasNext()) {
+            String lKey = (String) it.next();
+            lProps.setProperty("param." + lKey, pJob.mParams.getProperty(lKey));
+        }
+        synchronized (pJob) {
+            lProps.setProperty("id", pJob.mId);
+            lProps.setProperty("mime", pJob.mMimeType);
+            lProps.setProperty("ext", pJob.mExtension);
+            lProps.setProperty("status", pJob.mStatus);
+            lProps.setProperty("submitted", "" + pJob.mSubmitted);
+            lProps.setProperty("finished", "" + pJob.mFinished);
+            if (pJob.mMessage != null)
+                lProps.setProperty("message", pJob.mMessage);
+        }
+
+        // Erst vollstaendig schreiben, dann umbenennen, damit keine halben Auftragsdateien entstehen:
+        File lFile = new File(mDir, pJob.mId + sSuffix);
+        File lNew = new File(mDir, pJob.mId + sSuffix + ".new");
+        try {
+            OutputStream lOut = new FileOutputStream(lNew);
+            try {
+                lProps.store(lOut, "DEMServlet job");
+            }
+            finally {
+                lOut.close();
+            }
+            lFile.delete();
+            if (!lNew.renameTo(lFile))
+                throw new IOException("Could not rename \"" + lNew + "\".");
+        }
+        catch (IOException e) {
+            throw new T3dException("Could not save job \"" + pJob.mId + "\": " + e.getMessage());
+        }
+    }
+
+    private Job load(File pFile)
+    {
+        Properties lProps = new Properties();
+        try {
+            InputStream lIn = new FileInputStream(pFile);
+            try {
+                lProps.load(lIn);
+            }
+            finally {
+                lIn.close();
+            }
+            Job lJob = new Job();
+            lJob.mId = lProps.getProperty("id");
+            lJob.mMimeType = lProps.getProperty("mime");
+            lJob.mExtension = lProps.getProperty("ext");
+            lJob.mStatus = lProps.getProperty("status");
+            lJob.mMessage = lProps.getProperty("message");
+            lJob.mSubmitted = Long.parseLong(lProps.getProperty("submitted"));
+            lJob.mFinished = Long.parseLong(lProps.getProperty("finished"));
+            Iterator it = lProps.keySet().iterator();
+            while (it.hasNext()) {
+                String lKey = (String) it.next();
+                if (lKey.startsWith("param."))
+                    lJob.mParams.setProperty(lKey.substring(6), lProps.getProperty(lKey));
+            }
+            if (lJob.mId == null || lJob.mExtension == null || lJob.mStatus == null)
+                return null;
+            lJob.mResult = new File(mDir, lJob.mId + "." + lJob.mExtension);
+            if (lJob.mStatus.equals(sFinished)) {
+                if (!lJob.mResult.exists())
+                    return null;
+                lJob.mProgress = 1.;
+            }
+            return lJob;
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+/**
+ * Overview of an elevation tile with twice the grid spacing.<br /><br />
+ * <i>German:</i> &Uuml;bersichtsstufe einer Kachel mit doppelter Gitterweite.<br />
+ * Der Gitterpunkt (i, j) der &Uuml;bersicht f&auml;llt mit dem Gitterpunkt (2i, 2j) der Ausgangskachel zusammen; sein
+ * Wert ergibt sich als gewichtetes Mittel der 3x3-Nachbarschaft (Gewichte 1-2-1 in jeder Richtung), wobei nicht
+ * belegte Nachbarn unber&uuml;cksichtigt bleiben. Ein Gitterpunkt der &Uuml;bersicht ist genau dann belegt, wenn
+ * der zugeh&ouml;rige Gitterpunkt der Ausgangskachel belegt ist. Durch wiederholte Anwendung entstehen die Stufen
+ * 4, 8, ... einer Kachelpyramide.
+ * @see BinaryTileWriter#writeOverviews
+ */
+public class OverviewTile implements ElevationTile
+{
+    private static final double[] sWeights = {1., 2., 1.};
+
+    private ElevationTile mSrc;
+    private int mRows, mCols;
+
+    /**
+     * Constructor.<br /><br />
+     * <i>German:</i> Konstruktor.
+     * @param pSrc Ausgangskachel
+     */
+    public OverviewTile(ElevationTile pSrc)
+    {
+        mSrc = pSrc;
+        mRows = (pSrc.numberOfRows() - 1) / 2 + 1;
+        mCols = (pSrc.numberOfColumns() - 1) / 2 + 1;
+    }
+
+    public int numberOfRows() {
+        return mRows;
+    }
+
+    public int numberOfColumns() {
+        return mCols;
+    }
+
+    public double getXMin() {
+        return mSrc.getXMin();
+    }
+
+    public double getYMin() {
+        return mSrc.getYMin();
+    }
+
+    public double getDeltaX() {
+        return 2. * mSrc.getDeltaX();
+    }
+
+    public double getDeltaY() {
+        return 2. * mSrc.getDeltaY();
+    }
+
+    public boolean isSet(int pRow, int pCol) {
+        return mSrc.isSet(2 * pRow, 2 * pCol);
+    }
+
+    public double getValue(int pRow, int pCol)
+    {
+        int r0 = 2 * pRow, c0 = 2 * pCol;
+        double lSum = 0., lWSum = 0.;
+        for (int m = -1; m <= 1; m++) {
+            int r = r0 + m;
+            if (r < 0 || r >= mSrc.numberOfRows())
+                continue;
+            for (int n = -1; n <= 1; n++) {
+                int c = c0 + n;
+                if (c < 0 || c >= mSrc.numberOfColumns() || !mSrc.isSet(r, c))
+                    continue;
+                double w = sWeights[m + 1] * sWeights[n + 1];
+                lSum += w * mSrc.getValue(r, c);
+                lWSum += w;
+            }
+        }
+        return lSum / lWSum;
+    }
+}
@@ -0,0 +1,164 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.gisimplm.GmSimpleElevationGrid;
+
+/**
+ * Fills a destination grid in row bands, which are processed in parallel on a shared thread pool.<br /><br />
+ * <i>German:</i> Belegt ein Zielgitter zeilenstreifenweise, wobei die Streifen parallel in einem gemeinsamen
+ * Thread-Pool berechnet werden.<br />
+ * Der Pool ist prozessweit und besitzt so viele Threads wie Prozessoren verf&uuml;gbar sind; &uuml;ber den
+ * Parallelit&auml;tsgrad l&auml;sst sich begrenzen, wie viele Streifen eine einzelne Anfrage gleichzeitig belegt.
+ * Die Streifen werden zun&auml;chst in Feldern berechnet und anschlie&szlig;end im aufrufenden Thread in das Gitter
+ * &uuml;bertragen; das Ergebnis ist daher identisch mit dem der sequentiellen Berechnung.
+ */
+public class ParallelGridFiller
+{
+    private static ExecutorService sPool = null;
+
+    /**
+     * Computation of grid rows.<br /><br />
+     * <i>German:</i> Berechnung von Gitterzeilen.
+     */
+    public interface RowFunction
+    {
+        /**
+         * computes the values of the grid rows <tt>pRowFrom</tt> to <tt>pRowTo - 1</tt>.<br /><br />
+         * <i>German:</i> berechnet die Werte der Gitterzeilen <tt>pRowFrom</tt> bis <tt>pRowTo - 1</tt>. Die Werte
+         * sind zeilenweise in <tt>pValues</tt> abzulegen, nicht belegbare Gitterpunkte als <tt>Double.NaN</tt>.
+         * Die Methode wird gleichzeitig von mehreren Threads aufgerufen.
+         * @param pRowFrom erste Zeile
+         * @param pRowTo auf letzte Zeile folgende Zeile
+         * @param pValues Ergebnisfeld der L&auml;nge (<tt>pRowTo - pRowFrom</tt>) * Spaltenanzahl
+         */
+        public void computeRows(int pRowFrom, int pRowTo, double[] pValues);
+    }
+
+    /**
+     * returns the shared thread pool.<br /><br />
+     * <i>German:</i> liefert den gemeinsamen Thread-Pool.
+     * @return Thread-Pool
+     */
+    public static synchronized ExecutorService getPool()
+    {
+        if (sPool == null) {
+            sPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                private int mCount = 0;
+                public synchronized Thread newThread(Runnable pRunnable) {
+                    Thread t = new Thread(pRunnable, "dem-gridding-" + (++mCount));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return sPool;
+    }
+
+    /**
+     * returns the effective parallelism level. Values less than 1 are mapped to the number of processors.
+     * <br /><br />
+     * <i>German:</i> liefert den effektiven Parallelit&auml;tsgrad. Werte kleiner 1 stehen f&uuml;r die Anzahl der
+     * verf&uuml;gbaren Prozessoren.
+     * @param pParallelism konfigurierter Parallelit&auml;tsgrad
+     * @return Anzahl gleichzeitig zu berechnender Streifen
+     */
+    public static int effectiveParallelism(int pParallelism) {
+        return (pParallelism < 1) ? Runtime.getRuntime().availableProcessors() : pParallelism;
+    }
+
+    /**
+     * fills the given grid.<br /><br />
+     * <i>German:</i> belegt das angegebene Gitter. F&uuml;r einen Parallelit&auml;tsgrad von 1 erfolgt die Berechnung
+     * ausschlie&szlig;lich im aufrufenden Thread.
+     * @param pGrid Zielgitter
+     * @param pFunc Berechnungsvorschrift
+     * @param pParallelism Parallelit&auml;tsgrad (&lt; 1 f&uuml;r Anzahl Prozessoren)
+     */
+    public static void fill(GmSimpleElevationGrid pGrid, final RowFunction pFunc, int pParallelism)
+    {
+        final int nRows = pGrid.numberOfRows(), nCols = pGrid.numberOfColumns();
+        int nBands = Math.max(1, Math.min(effectiveParallelism(pParallelism), nRows));
+
+        int[] lFrom = new int[nBands + 1];
+        for (int b = 0; b <= nBands; b++)
+            lFrom[b] = (int) (((long) nRows) * b / nBands);
+        double[][] lValues = new double[nBands][];
+
+        // Streifen 1 bis n-1 im Pool, Streifen 0 im aufrufenden Thread berechnen:
+        Future[] lFutures = new Future[nBands];
+        for (int b = 1; b < nBands; b++) {
+            final int lRow0 = lFrom[b], lRow1 = lFrom[b + 1];
+            lFutures[b] = getPool().submit(new Callable() {
+                public Object call() {
+                    double[] lBand = new double[(lRow1 - lRow0) * nCols];
+                    pFunc.computeRows(lRow0, lRow1, lBand);
+                    return lBand;
+                }
+            });
+        }
+        try {
+            lValues[0] = new double[(lFrom[1] - lFrom[0]) * nCols];
+            pFunc.computeRows(lFrom[0], lFrom[1], lValues[0]);
+            for (int b = 1; b < nBands; b++)
+                lValues[b] = (double[]) result(lFutures[b]);
+        }
+        finally {
+            for (int b = 1; b < nBands; b++)
+                lFutures[b].cancel(false);
+        }
+
+        for (int b = 0; b < nBands; b++) {
+            int k = 0;
+            for (int i = lFrom[b]; i < lFrom[b + 1]; i++) {
+                for (int j = 0; j < nCols; j++, k++) {
+                    if (!Double.isNaN(lValues[b][k]))
+                        pGrid.setValue(i, j, lValues[b][k]);
+                }
+            }
+        }
+    }
+
+    private static Object result(Future pFuture)
+    {
+        try {
+            return pFuture.get();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new T3dException("Gridding failed: " + e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new T3dException("Interrupted while gridding.");
+        }
+    }
+}
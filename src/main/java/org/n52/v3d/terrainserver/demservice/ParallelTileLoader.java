@@ -0,0 +1,132 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Loads several source tiles concurrently on a bounded, process-wide I/O thread pool.<br /><br />
+ * <i>German:</i> L&auml;dt mehrere Quellkacheln gleichzeitig &uuml;ber einen in der Gr&ouml;&szlig;e begrenzten,
+ * prozessweit gemeinsamen I/O-Thread-Pool.<br />
+ * Schl&auml;gt das Laden einer Kachel fehl (z. B. fehlende Kachel, Fehlercode 201), wird die zugeh&ouml;rige
+ * <tt>T3dException</tt> sofort weitergereicht; noch nicht begonnene Ladevorg&auml;nge werden abgebrochen.
+ */
+public class ParallelTileLoader
+{
+    private static ExecutorService sPool = null;
+    private static int sPoolSize = 4;
+
+    /**
+     * sets the number of I/O threads. The value will be considered only before the first use of the pool.
+     * <br /><br />
+     * <i>German:</i> setzt die Anzahl der I/O-Threads. Der Wert wird nur vor der ersten Verwendung des Pools
+     * ber&uuml;cksichtigt.
+     * @param pSize Anzahl Threads (Voreinstellung: 4)
+     */
+    public static synchronized void setPoolSize(int pSize)
+    {
+        if (pSize > 0)
+            sPoolSize = pSize;
+    }
+
+    private static synchronized ExecutorService getPool()
+    {
+        if (sPool == null) {
+            sPool = Executors.newFixedThreadPool(sPoolSize, new ThreadFactory() {
+                private int mCount = 0;
+                public synchronized Thread newThread(Runnable pRunnable) {
+                    Thread t = new Thread(pRunnable, "dem-tile-loader-" + (++mCount));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return sPool;
+    }
+
+    /**
+     * executes the given loaders and returns their results in the same order.<br /><br />
+     * <i>German:</i> f&uuml;hrt die angegebenen Loader aus und liefert deren Ergebnisse in gleicher Reihenfolge.
+     * Ein einzelner Loader wird direkt im aufrufenden Thread ausgef&uuml;hrt.
+     * @param pLoaders Loader (jeweils eine Kachel)
+     * @return Ergebnisse der Loader
+     */
+    public static Object[] loadAll(Callable[] pLoaders)
+    {
+        Object[] lRes = new Object[pLoaders.length];
+        if (pLoaders.length == 1) {
+            try {
+                lRes[0] = pLoaders[0].call();
+                return lRes;
+            }
+            catch (RuntimeException e) {
+                throw e;
+            }
+            catch (Exception e) {
+                throw new T3dException("Could not load tile: " + e.getMessage());
+            }
+        }
+
+        ExecutorCompletionService lService = new ExecutorCompletionService(getPool());
+        Future[] lFutures = new Future[pLoaders.length];
+        try {
+            for (int i = 0; i < pLoaders.length; i++) {
+                final int lIdx = i;
+                final Callable lLoader = pLoaders[i];
+                lFutures[i] = lService.submit(new Callable() {
+                    public Object call() throws Exception {
+                        return new Object[] {new Integer(lIdx), lLoader.call()};
+                    }
+                });
+            }
+            // Ergebnisse in Reihenfolge der Fertigstellung abholen, damit Fehler sofort erkannt werden:
+            for (int n = 0; n < pLoaders.length; n++) {
+                Object[] lPair = (Object[]) lService.take().get();
+                lRes[((Integer) lPair[0]).intValue()] = lPair[1];
+            }
+            return lRes;
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new T3dException("Could not load tile: " + e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new T3dException("Interrupted while loading tiles.");
+        }
+        finally {
+            for (int i = 0; i < lFutures.length; i++) {
+                if (lFutures[i] != null)
+                    lFutures[i].cancel(false);
+            }
+        }
+    }
+}
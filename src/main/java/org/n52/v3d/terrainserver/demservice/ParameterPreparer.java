@@ -88,4 +88,43 @@ public class ParameterPreparer
         }
         return str;
     }
+
+    /**
+     * Aufbereitung/Pr&uuml;fung der INTERPOLATION-Angabe.<p>
+     * @param pVal getypter Request-Parameter aus <tt>HttpRequestParams</tt>
+     * @return aufbereiteter Wert ("InverseDistance", "Nearest", "Bilinear", "Bicubic" oder "AreaAverage")
+     */
+    public String prepareINTERPOLATION(String pVal) {
+        if (pVal == null || pVal.length() <= 0)
+            return GridResampler.sInverseDistance;
+        String[] lMethods = {
+            GridResampler.sInverseDistance, GridResampler.sNearest, GridResampler.sBilinear,
+            GridResampler.sBicubic, GridResampler.sAreaAverage};
+        for (int i = 0; i < lMethods.length; i++) {
+            if (lMethods[i].equalsIgnoreCase(pVal))
+                return lMethods[i];
+        }
+        throw new T3dException("The specified INTERPOLATION \"" + pVal + "\" is not supported by this service.");
+    }
+
+    /**
+     * Aufbereitung/Pr&uuml;fung der Kachel-Adressierung (LEVEL-, ROW- oder COL-Angabe einer GetTile-Anfrage).<p>
+     * @param pName Parametername (f&uuml;r Fehlermeldung)
+     * @param pVal Request-Parameter aus <tt>HttpRequestParams</tt>
+     * @return aufbereiteter Wert (nicht-negative Ganzzahl)
+     */
+    public int prepareTileIndex(String pName, String pVal) {
+        if (pVal == null || pVal.trim().length() <= 0)
+            throw new T3dException("Missing " + pName + " parameter.");
+        int lRes;
+        try {
+            lRes = Integer.parseInt(pVal.trim());
+        }
+        catch (NumberFormatException e) {
+            throw new T3dException("Invalid " + pName + " parameter: \"" + pVal + "\".");
+        }
+        if (lRes < 0)
+            throw new T3dException("Invalid " + pName + " parameter: \"" + pVal + "\".");
+        return lRes;
+    }
 }
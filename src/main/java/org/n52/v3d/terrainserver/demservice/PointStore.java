@@ -0,0 +1,300 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.vgis.VgPoint;
+
+/**
+ * Compact container for scattered elevation points with a uniform-grid bucket index.<br /><br />
+ * <i>German:</i> Kompakter Beh&auml;lter f&uuml;r unregelm&auml;&szlig;ig verteilte H&ouml;henpunkte mit
+ * Bucket-Index.<br />
+ * Die Koordinaten werden nicht als <tt>VgPoint</tt>-Objekte, sondern in primitiven Feldern abgelegt (x und y als
+ * <tt>double</tt>, z als <tt>float</tt>), so dass auch f&uuml;r mehrere Millionen Punkte nur wenige Objekte erzeugt
+ * werden. Nach Aufruf von <tt>this.buildIndex()</tt> sind die Punkte nach Buckets eines regelm&auml;&szlig;igen
+ * Rasters sortiert; die Punkte eines Buckets belegen dann den Indexbereich <tt>bucketBegin()</tt> bis
+ * <tt>bucketEnd() - 1</tt>.
+ */
+public class PointStore
+{
+    private double[] mX, mY;
+    private float[] mZ;
+    private int mSize = 0;
+
+    // Bucket-Index:
+    private double mBucketSize = 0.;
+    private double mXMin, mYMin;
+    private int mNumBucketsX = 0, mNumBucketsY = 0;
+    private int[] mBucketStart = null;
+
+    /**
+     * Constructor.<br /><br />
+     * <i>German:</i> Konstruktor.
+     * @param pCapacity anf&auml;ngliche Kapazit&auml;t (Anzahl Punkte)
+     */
+    public PointStore(int pCapacity)
+    {
+        int n = Math.max(16, pCapacity);
+        mX = new double[n];
+        mY = new double[n];
+        mZ = new float[n];
+    }
+
+    /**
+     * adds a point to the store. The bucket index will be invalidated.<br /><br />
+     * <i>German:</i> f&uuml;gt einen Punkt hinzu. Ein bereits aufgebauter Bucket-Index wird dabei verworfen.
+     * @param pX x-Koordinate
+     * @param pY y-Koordinate
+     * @param pZ H&ouml;henwert
+     */
+    public void add(double pX, double pY, double pZ)
+    {
+        if (mSize >= mX.length)
+            this.grow(2 * mX.length);
+        mX[mSize] = pX;
+        mY[mSize] = pY;
+        mZ[mSize] = (float) pZ;
+        mSize++;
+        mBucketStart = null;
+    }
+
+    /**
+     * adds a point to the store.<br /><br />
+     * <i>German:</i> f&uuml;gt einen Punkt hinzu.
+     * @param pPnt Punkt (mit x-, y- und z-Koordinate)
+     */
+    public void add(VgPoint pPnt) {
+        this.add(pPnt.getX(), pPnt.getY(), pPnt.getZ());
+    }
+
+    /**
+     * adds all grid points of an elevation tile that hold a value.<br /><br />
+     * <i>German:</i> f&uuml;gt alle belegten Gitterpunkte einer Kachel hinzu.
+     * @param pTile Kachel
+     */
+    public void addAll(ElevationTile pTile)
+    {
+        int nRows = pTile.numberOfRows(), nCols = pTile.numberOfColumns();
+        if (mSize + nRows * nCols > mX.length)
+            this.grow(mSize + nRows * nCols);
+        double x0 = pTile.getXMin(), y0 = pTile.getYMin(), dx = pTile.getDeltaX(), dy = pTile.getDeltaY();
+        for (int ii = 0; ii < nRows; ii++) {
+            for (int jj = 0; jj < nCols; jj++) {
+                if (pTile.isSet(ii, jj)) {
+                    mX[mSize] = x0 + jj * dx;
+                    mY[mSize] = y0 + ii * dy;
+                    mZ[mSize] = (float) pTile.getValue(ii, jj);
+                    mSize++;
+                }
+            }
+        }
+        mBucketStart = null;
+    }
+
+    /**
+     * returns the number of points.<br /><br />
+     * <i>German:</i> liefert die Anzahl der Punkte.
+     * @return Anzahl Punkte
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * returns the x-coordinate of the i-th point.<br /><br />
+     * <i>German:</i> liefert die x-Koordinate des i-ten Punkts.
+     * @param i Punktindex
+     * @return x-Koordinate
+     */
+    public double getX(int i) {
+        return mX[i];
+    }
+
+    /**
+     * returns the y-coordinate of the i-th point.<br /><br />
+     * <i>German:</i> liefert die y-Koordinate des i-ten Punkts.
+     * @param i Punktindex
+     * @return y-Koordinate
+     */
+    public double getY(int i) {
+        return mY[i];
+    }
+
+    /**
+     * returns the elevation value of the i-th point.<br /><br />
+     * <i>German:</i> liefert den H&ouml;henwert des i-ten Punkts.
+     * @param i Punktindex
+     * @return H&ouml;henwert
+     */
+    public double getZ(int i) {
+        return mZ[i];
+    }
+
+    /**
+     * sorts the points into the buckets of a regular grid of the given size. Afterwards, the points of each bucket
+     * occupy a contiguous index range.<br /><br />
+     * <i>German:</i> sortiert die Punkte in die Buckets eines regelm&auml;&szlig;igen Rasters der angegebenen
+     * Bucket-Gr&ouml;&szlig;e ein. Anschlie&szlig;end belegen die Punkte jedes Buckets einen zusammenh&auml;ngenden
+     * Indexbereich. Bei Umsortierung &auml;ndern sich die Punktindizes.
+     * @param pBucketSize Kantenl&auml;nge eines Buckets (sinnvollerweise der Suchradius)
+     */
+    public void buildIndex(double pBucketSize)
+    {
+        if (pBucketSize <= 0.)
+            throw new T3dException("Illegal bucket size: " + pBucketSize);
+
+        mXMin = Double.MAX_VALUE; mYMin = Double.MAX_VALUE;
+        double lXMax = -Double.MAX_VALUE, lYMax = -Double.MAX_VALUE;
+        for (int i = 0; i < mSize; i++) {
+            if (mX[i] < mXMin) mXMin = mX[i];
+            if (mX[i] > lXMax) lXMax = mX[i];
+            if (mY[i] < mYMin) mYMin = mY[i];
+            if (mY[i] > lYMax) lYMax = mY[i];
+        }
+        if (mSize == 0) {
+            mXMin = 0.; mYMin = 0.; lXMax = 0.; lYMax = 0.;
+        }
+
+        // Bucket-Anzahl begrenzen, damit der Index nicht groesser als die Punktmenge wird:
+        double lSize = pBucketSize;
+        while (((lXMax - mXMin) / lSize + 1.) * ((lYMax - mYMin) / lSize + 1.) > Math.max(mSize, 1) + 1024.)
+            lSize *= 2.;
+        mBucketSize = lSize;
+        mNumBucketsX = ((int) Math.floor((lXMax - mXMin) / mBucketSize)) + 1;
+        mNumBucketsY = ((int) Math.floor((lYMax - mYMin) / mBucketSize)) + 1;
+
+        // Counting-Sort nach Bucket-Nummer:
+        int nb = mNumBucketsX * mNumBucketsY;
+        int[] lBucket = new int[mSize];
+        mBucketStart = new int[nb + 1];
+        for (int i = 0; i < mSize; i++) {
+            lBucket[i] = this.bucketY(mY[i]) * mNumBucketsX + this.bucketX(mX[i]);
+            mBucketStart[lBucket[i] + 1]++;
+        }
+        for (int b = 0; b < nb; b++)
+            mBucketStart[b + 1] += mBucketStart[b];
+
+        int[] lPos = new int[nb];
+        System.arraycopy(mBucketStart, 0, lPos, 0, nb);
+        double[] lX = new double[mSize], lY = new double[mSize];
+        float[] lZ = new float[mSize];
+        for (int i = 0; i < mSize; i++) {
+            int k = lPos[lBucket[i]]++;
+            lX[k] = mX[i];
+            lY[k] = mY[i];
+            lZ[k] = mZ[i];
+        }
+        mX = lX;
+        mY = lY;
+        mZ = lZ;
+    }
+
+    /**
+     * checks if the bucket index is available.<br /><br />
+     * <i>German:</i> pr&uuml;ft, ob der Bucket-Index aufgebaut ist.
+     * @return <i>true</i>, falls Index verf&uuml;gbar
+     */
+    public boolean hasIndex() {
+        return mBucketStart != null;
+    }
+
+    /**
+     * returns the effective bucket size.<br /><br />
+     * <i>German:</i> liefert die tats&auml;chlich verwendete Bucket-Gr&ouml;&szlig;e.
+     * @return Kantenl&auml;nge eines Buckets
+     */
+    public double getBucketSize() {
+        return mBucketSize;
+    }
+
+    /**
+     * returns the number of buckets in x-direction.<br /><br />
+     * <i>German:</i> liefert die Anzahl der Buckets in x-Richtung.
+     * @return Anzahl Buckets
+     */
+    public int numberOfBucketsX() {
+        return mNumBucketsX;
+    }
+
+    /**
+     * returns the number of buckets in y-direction.<br /><br />
+     * <i>German:</i> liefert die Anzahl der Buckets in y-Richtung.
+     * @return Anzahl Buckets
+     */
+    public int numberOfBucketsY() {
+        return mNumBucketsY;
+    }
+
+    /**
+     * returns the bucket column for the given x-coordinate. The result may lie outside the index range.<br /><br />
+     * <i>German:</i> liefert die Bucket-Spalte f&uuml;r die angegebene x-Koordinate. Das Ergebnis kann
+     * au&szlig;erhalb des Bucket-Rasters liegen.
+     * @param pX x-Koordinate
+     * @return Bucket-Spalte
+     */
+    public int bucketX(double pX) {
+        return (int) Math.floor((pX - mXMin) / mBucketSize);
+    }
+
+    /**
+     * returns the bucket row for the given y-coordinate. The result may lie outside the index range.<br /><br />
+     * <i>German:</i> liefert die Bucket-Zeile f&uuml;r die angegebene y-Koordinate. Das Ergebnis kann
+     * au&szlig;erhalb des Bucket-Rasters liegen.
+     * @param pY y-Koordinate
+     * @return Bucket-Zeile
+     */
+    public int bucketY(double pY) {
+        return (int) Math.floor((pY - mYMin) / mBucketSize);
+    }
+
+    /**
+     * returns the index of the first point in the given bucket.<br /><br />
+     * <i>German:</i> liefert den Index des ersten Punkts im angegebenen Bucket.
+     * @param pBx Bucket-Spalte
+     * @param pBy Bucket-Zeile
+     * @return Punktindex
+     */
+    public int bucketBegin(int pBx, int pBy) {
+        return mBucketStart[pBy * mNumBucketsX + pBx];
+    }
+
+    /**
+     * returns the index following the last point in the given bucket.<br /><br />
+     * <i>German:</i> liefert den auf den letzten Punkt des angegebenen Buckets folgenden Index.
+     * @param pBx Bucket-Spalte
+     * @param pBy Bucket-Zeile
+     * @return Punktindex
+     */
+    public int bucketEnd(int pBx, int pBy) {
+        return mBucketStart[pBy * mNumBucketsX + pBx + 1];
+    }
+
+    private void grow(int pCapacity)
+    {
+        double[] lX = new double[pCapacity], lY = new double[pCapacity];
+        float[] lZ = new float[pCapacity];
+        System.arraycopy(mX, 0, lX, 0, mSize);
+        System.arraycopy(mY, 0, lY, 0, mSize);
+        System.arraycopy(mZ, 0, lZ, 0, mSize);
+        mX = lX;
+        mY = lY;
+        mZ = lZ;
+    }
+}
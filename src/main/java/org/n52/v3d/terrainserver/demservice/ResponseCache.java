@@ -0,0 +1,303 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.vgis.VgEnvelope;
+
+/**
+ * Disk-backed cache for GetDEM/GetScene responses.<br /><br />
+ * <i>German:</i> Festplattenbasierter Cache f&uuml;r die Antworten auf GetDEM- und GetScene-Anfragen.<br />
+ * Die Antworten werden &uuml;ber die normalisierten Anfrageparameter (SRS, BBOX, CELLSIZE, FORMAT, SEARCHRADIUS,
+ * INTERPOLATION) identifiziert; die BBOX-Koordinaten werden dazu auf ein Tausendstel der Gitterweite gerundet.
+ * Der Index wird im Hauptspeicher gehalten, die Antwortdaten liegen als Dateien im Cache-Verzeichnis.
+ * &Uuml;berschreitet die Gesamtgr&ouml;&szlig;e der Dateien das eingestellte Budget, werden die am l&auml;ngsten
+ * nicht abgerufenen Antworten verdr&auml;ngt (LRU).<br />
+ * Zu jeder Antwort werden die verwendeten Quelldateien mit &Auml;nderungszeitpunkt und Gr&ouml;&szlig;e vermerkt.
+ * Hat sich eine dieser Dateien ge&auml;ndert, wird der Eintrag beim n&auml;chsten Zugriff verworfen.
+ */
+public class ResponseCache
+{
+    private static final String sSuffix = ".rsp";
+
+    private File mDir;
+    private long mMaxBytes;
+    private long mCurrBytes = 0;
+    private LinkedHashMap mEntries = new LinkedHashMap(64, 0.75f, true); // Zugriffsreihenfolge fuer LRU
+    private long mCounter = 0;
+
+    private long mHits = 0, mMisses = 0, mInvalidations = 0, mEvictions = 0;
+
+    /**
+     * Cache entry.<br /><br />
+     * <i>German:</i> Cache-Eintrag.
+     */
+    public static class Entry
+    {
+        private String mKey;
+        private File mBody;
+        private long mSize;
+        private String mMimeType;
+        private String[] mSourceFiles;
+        private long[] mSourceStamps;
+
+        /** liefert die Datei mit den Antwortdaten. */
+        public File getBody() { return mBody; }
+        /** liefert die Gr&ouml;&szlig;e der Antwort in Bytes. */
+        public long getSize() { return mSize; }
+        /** liefert den MIME-Typ der Antwort. */
+        public String getMimeType() { return mMimeType; }
+    }
+
+    /**
+     * Constructor. Response files left over from previous runs are deleted.<br /><br />
+     * <i>German:</i> Konstruktor. Im Cache-Verzeichnis verbliebene Antwortdateien fr&uuml;herer L&auml;ufe werden
+     * gel&ouml;scht, da der Index nur im Hauptspeicher gehalten wird.
+     * @param pDir Cache-Verzeichnis (wird bei Bedarf angelegt)
+     * @param pMaxBytes Speicherbudget in Bytes
+     * @throws T3dException falls das Verzeichnis nicht angelegt werden kann
+     */
+    public ResponseCache(String pDir, long pMaxBytes)
+    {
+        mDir = new File(pDir);
+        mMaxBytes = pMaxBytes;
+        if (!mDir.isDirectory() && !mDir.mkdirs())
+            throw new T3dException("Could not create response cache directory \"" + pDir + "\".");
+        File[] lFiles = mDir.listFiles();
+        for (int i = 0; lFiles != null && i < lFiles.length; i++) {
+            if (lFiles[i].getName().endsWith(sSuffix) || lFiles[i].getName().endsWith(".tmp"))
+                lFiles[i].delete();
+        }
+    }
+
+    /**
+     * builds the normalized cache key for a request.<br /><br />
+     * <i>German:</i> bildet den normalisierten Schl&uuml;ssel f&uuml;r eine Anfrage.
+     * @param pSRS Koordinatenreferenzsystem
+     * @param pBBox Bounding-Box
+     * @param pCellSize Gitterweite
+     * @param pFormat Ausgabeformat
+     * @param pSearchRadius Suchradius
+     * @param pInterpolation Interpolationsverfahren
+     * @return Schl&uuml;ssel
+     */
+    public static String key(
+        String pSRS, VgEnvelope pBBox, double pCellSize, String pFormat, double pSearchRadius, String pInterpolation)
+    {
+        double lSnap = pCellSize / 1000.;
+        StringBuffer lKey = new StringBuffer();
+        lKey.append(pSRS.toUpperCase()).append('|');
+        lKey.append(Math.round(pBBox.getXMin() / lSnap)).append(',');
+        lKey.append(Math.round(pBBox.getYMin() / lSnap)).append(',');
+        lKey.append(Math.round(pBBox.getXMax() / lSnap)).append(',');
+        lKey.append(Math.round(pBBox.getYMax() / lSnap)).append('|');
+        lKey.append(pCellSize).append('|');
+        lKey.append(pFormat.toLowerCase()).append('|');
+        lKey.append(pSearchRadius).append('|');
+        lKey.append(pInterpolation);
+        return lKey.toString();
+    }
+
+    /**
+     * looks up the response for the given key. Entries whose source files have changed are removed.<br /><br />
+     * <i>German:</i> sucht die Antwort zum angegebenen Schl&uuml;ssel. Eintr&auml;ge, deren Quelldateien sich
+     * ge&auml;ndert haben, werden entfernt.
+     * @param pKey Schl&uuml;ssel
+     * @return Cache-Eintrag oder <i>null</i>
+     */
+    public synchronized Entry lookup(String pKey)
+    {
+        Entry e = (Entry) mEntries.get(pKey);
+        if (e == null) {
+            mMisses++;
+            return null;
+        }
+        for (int i = 0; i < e.mSourceFiles.length; i++) {
+            if (stamp(new File(e.mSourceFiles[i])) != e.mSourceStamps[i]) {
+                this.remove(e);
+                mInvalidations++;
+                mMisses++;
+                return null;
+            }
+        }
+        if (!e.mBody.exists()) {
+            this.remove(e);
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        return e;
+    }
+
+    /**
+     * creates a temporary file inside the cache directory, which may be passed to <tt>this.put()</tt> later.
+     * <br /><br />
+     * <i>German:</i> erzeugt eine tempor&auml;re Datei im Cache-Verzeichnis, die anschlie&szlig;end an
+     * <tt>this.put()</tt> &uuml;bergeben werden kann.
+     * @return Datei
+     */
+    public synchronized File createTempFile() {
+        return new File(mDir, "~" + (mCounter++) + "_" + System.currentTimeMillis() + ".tmp");
+    }
+
+    /**
+     * adds a response to the cache. The given file is moved into the cache directory.<br /><br />
+     * <i>German:</i> nimmt eine Antwort in den Cache auf. Die angegebene Datei wird dazu in das Cache-Verzeichnis
+     * verschoben; ist die Antwort gr&ouml;&szlig;er als das gesamte Budget, wird die Datei gel&ouml;scht.
+     * @param pKey Schl&uuml;ssel
+     * @param pBody Datei mit den Antwortdaten
+     * @param pMimeType MIME-Typ der Antwort
+     * @param pSourceFiles Liste der verwendeten Quelldateien (Dateinamen)
+     */
+    public synchronized void put(String pKey, File pBody, String pMimeType, ArrayList pSourceFiles)
+    {
+        long lSize = pBody.length();
+        if (lSize > mMaxBytes) {
+            pBody.delete();
+            return;
+        }
+        Entry lOld = (Entry) mEntries.get(pKey);
+        if (lOld != null)
+            this.remove(lOld);
+
+        File lBody = new File(mDir, digest(pKey) + sSuffix);
+        lBody.delete();
+        if (!pBody.renameTo(lBody)) {
+            pBody.delete();
+            return;
+        }
+        Entry e = new Entry();
+        e.mKey = pKey;
+        e.mBody = lBody;
+        e.mSize = lSize;
+        e.mMimeType = pMimeType;
+        e.mSourceFiles = new String[pSourceFiles.size()];
+        e.mSourceStamps = new long[pSourceFiles.size()];
+        for (int i = 0; i < e.mSourceFiles.length; i++) {
+            e.mSourceFiles[i] = (String) pSourceFiles.get(i);
+            e.mSourceStamps[i] = stamp(new File(e.mSourceFiles[i]));
+        }
+        mEntries.put(pKey, e);
+        mCurrBytes += lSize;
+
+        // Am laengsten nicht abgerufene Antworten verdraengen:
+        Iterator it = mEntries.entrySet().iterator();
+        while (mCurrBytes > mMaxBytes && it.hasNext()) {
+            Entry lVictim = (Entry) ((Map.Entry) it.next()).getValue();
+            if (lVictim == e)
+                continue;
+            it.remove();
+            mCurrBytes -= lVictim.mSize;
+            lVictim.mBody.delete();
+            mEvictions++;
+        }
+    }
+
+    /**
+     * copies the response data of the given entry to an output stream.<br /><br />
+     * <i>German:</i> kopiert die Antwortdaten des angegebenen Eintrags in einen Ausgabestrom.
+     * @param pEntry Cache-Eintrag
+     * @param pOut Ausgabestrom
+     * @return <i>false</i>, falls die Datei zwischenzeitlich verdr&auml;ngt wurde (dann wurde nichts geschrieben)
+     * @throws IOException bei Schreibfehlern
+     */
+    public boolean send(Entry pEntry, OutputStream pOut) throws IOException
+    {
+        InputStream lIn;
+        try {
+            lIn = new FileInputStream(pEntry.mBody);
+        }
+        catch (FileNotFoundException e) {
+            return false;
+        }
+        try {
+            byte[] lBuf = new byte[65536];
+            int n;
+            while ((n = lIn.read(lBuf)) > 0)
+                pOut.write(lBuf, 0, n);
+        }
+        finally {
+            lIn.close();
+        }
+        return true;
+    }
+
+    /**
+     * returns a short description of the cache state.<br /><br />
+     * <i>German:</i> liefert eine kurze Beschreibung des Cache-Zustands (Eintr&auml;ge, Belegung, Treffer).
+     * @return Beschreibung
+     */
+    public synchronized String statistics()
+    {
+        long lTotal = mHits + mMisses;
+        return mEntries.size() + " entries, " + (mCurrBytes / 1024) + " of " + (mMaxBytes / 1024) + " KB, "
+            + mHits + " hits, " + mMisses + " misses ("
+            + ((lTotal > 0) ? Math.round(100. * mHits / lTotal) : 0) + "% hit rate), "
+            + mInvalidations + " invalidations, " + mEvictions + " evictions";
+    }
+
+    synchronized long currentBytes() {
+        return mCurrBytes;
+    }
+
+    private void remove(Entry e)
+    {
+        mEntries.remove(e.mKey);
+        mCurrBytes -= e.mSize;
+        e.mBody.delete();
+    }
+
+    private static long stamp(File f) {
+        // Aenderungszeitpunkt und Groesse zusammenfassen; fehlende Dateien ergeben 0
+        return f.exists() ? f.lastModified() * 31 + f.length() : 0;
+    }
+
+    static String digest(String pKey)
+    {
+        try {
+            byte[] lHash = MessageDigest.getInstance("MD5").digest(pKey.getBytes("UTF-8"));
+            StringBuffer lRes = new StringBuffer();
+            for (int i = 0; i < lHash.length; i++) {
+                lRes.append(Character.forDigit((lHash[i] >> 4) & 0xf, 16));
+                lRes.append(Character.forDigit(lHash[i] & 0xf, 16));
+            }
+            return lRes.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new T3dException(e.getMessage());
+        }
+        catch (IOException e) {
+            throw new T3dException(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,392 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Process-wide cache for decoded source tiles, shared by all servlets of the web application.<br /><br />
+ * <i>German:</i> Prozessweiter Cache f&uuml;r dekodierte Quellkacheln, den sich alle Servlets der Web-Anwendung
+ * teilen.<br />
+ * Die Kacheln werden &uuml;ber (Kachelung, SRS, Kachelnummer, &Uuml;bersichtsstufe) sowie &Auml;nderungszeitpunkt
+ * und Gr&ouml;&szlig;e der gelesenen Quelldatei identifiziert, so dass ge&auml;nderte Quelldateien nicht aus dem
+ * Cache bedient werden. Aus ASCII-Grids gelesene Kacheln werden
+ * im bin&auml;ren Kachelformat au&szlig;erhalb des Java-Heaps (Direct-Buffer) abgelegt; eingeblendete
+ * Bin&auml;rkacheln werden unver&auml;ndert &uuml;bernommen. &Uuml;berschreitet die Gesamtgr&ouml;&szlig;e der
+ * Kacheln das eingestellte Speicherbudget, werden die am l&auml;ngsten nicht genutzten Kacheln verdr&auml;ngt
+ * (LRU). Kacheln, die allein bereits gr&ouml;&szlig;er als das Speicherbudget sind, werden nicht gecacht.<br />
+ * Wird dieselbe Kachel von mehreren Anfragen gleichzeitig angefordert, wird sie nur einmal geladen; die
+ * &uuml;brigen Anfragen warten auf das Ergebnis dieses Ladevorgangs.
+ */
+public class TileCache
+{
+    private static TileCache sInstance = null;
+
+    private long mMaxBytes = 0;
+    private long mCurrBytes = 0;
+    private LinkedHashMap mEntries = new LinkedHashMap(64, 0.75f, true); // Zugriffsreihenfolge fuer LRU
+    private ConcurrentHashMap mLoading = new ConcurrentHashMap();
+
+    private AtomicLong mHits = new AtomicLong(0);
+    private AtomicLong mMisses = new AtomicLong(0);
+    private AtomicLong mEvictions = new AtomicLong(0);
+
+    /**
+     * Key identifying a source tile.<br /><br />
+     * <i>German:</i> Schl&uuml;ssel zur Identifikation einer Quellkachel.
+     */
+    public static class Key
+    {
+        private String mTileLocator;
+        private String mSRS;
+        private int mHi, mLo;
+        private int mLevel;
+        private long mStamp = 0;
+
+        /**
+         * Constructor.<br /><br />
+         * <i>German:</i> Konstruktor.
+         * @param pTileLocator Bezeichner f&uuml;r verwendete Kachelung
+         * @param pSRS Raumbezugssystem der Quelldaten
+         * @param pHi erster Index der Kachelnummer
+         * @param pLo zweiter Index der Kachelnummer
+         */
+        public Key(String pTileLocator, String pSRS, int pHi, int pLo) {
+            this(pTileLocator, pSRS, pHi, pLo, 1);
+        }
+
+        /**
+         * Constructor for overview tiles.<br /><br />
+         * <i>German:</i> Konstruktor f&uuml;r Kacheln einer &Uuml;bersichtsstufe.
+         * @param pTileLocator Bezeichner f&uuml;r verwendete Kachelung
+         * @param pSRS Raumbezugssystem der Quelldaten
+         * @param pHi erster Index der Kachelnummer
+         * @param pLo zweiter Index der Kachelnummer
+         * @param pLevel &Uuml;bersichtsstufe (1 f&uuml;r volle Aufl&ouml;sung)
+         */
+        public Key(String pTileLocator, String pSRS, int pHi, int pLo, int pLevel) {
+            mTileLocator = pTileLocator;
+            mSRS = pSRS.toUpperCase();
+            mHi = pHi;
+            mLo = pLo;
+            mLevel = pLevel;
+        }
+
+        /**
+         * Constructor for tiles read from the given source file. The file's modification time and length are part of
+         * the key, so that cached tiles become invalid when the source file changes.<br /><br />
+         * <i>German:</i> Konstruktor f&uuml;r Kacheln, die aus der angegebenen Quelldatei gelesen werden.
+         * &Auml;nderungszeitpunkt und L&auml;nge der Datei sind Teil des Schl&uuml;ssels, so dass gecachte Kacheln
+         * nach &Auml;nderung der Quelldatei nicht mehr verwendet werden.
+         * @param pTileLocator Bezeichner f&uuml;r verwendete Kachelung
+         * @param pSRS Raumbezugssystem der Quelldaten
+         * @param pHi erster Index der Kachelnummer
+         * @param pLo zweiter Index der Kachelnummer
+         * @param pLevel &Uuml;bersichtsstufe (1 f&uuml;r volle Aufl&ouml;sung)
+         * @param pSourceFile Name der Datei, aus der die Kachel gelesen wird
+         */
+        public Key(String pTileLocator, String pSRS, int pHi, int pLo, int pLevel, String pSourceFile) {
+            this(pTileLocator, pSRS, pHi, pLo, pLevel);
+            File f = new File(pSourceFile);
+            mStamp = f.exists() ? f.lastModified() * 31 + f.length() : 0;
+        }
+
+        /**
+         * checks if both keys refer to the same tile, regardless of the source file version.<br /><br />
+         * <i>German:</i> pr&uuml;ft, ob beide Schl&uuml;ssel dieselbe Kachel bezeichnen (unabh&auml;ngig vom Stand
+         * der Quelldatei).
+         * @param k Vergleichsschl&uuml;ssel
+         * @return <i>true</i>, falls dieselbe Kachel bezeichnet wird
+         */
+        public boolean sameTile(Key k) {
+            return mHi == k.mHi && mLo == k.mLo && mLevel == k.mLevel
+                && mSRS.equals(k.mSRS) && mTileLocator.equals(k.mTileLocator);
+        }
+
+        public boolean equals(Object pObj)
+        {
+            if (!(pObj instanceof Key))
+                return false;
+            Key k = (Key) pObj;
+            return this.sameTile(k) && mStamp == k.mStamp;
+        }
+
+        public int hashCode() {
+            return (((mTileLocator.hashCode() * 31 + mSRS.hashCode()) * 31 + mHi) * 31 + mLo) * 31 + mLevel;
+        }
+
+        public String toString() {
+            return mTileLocator + "/" + mSRS + "/" + mHi + "_" + mLo + (mLevel > 1 ? "_" + mLevel : "");
+        }
+    }
+
+    private static class Entry
+    {
+        ElevationTile mTile;
+        long mBytes;
+
+        Entry(ElevationTile pTile, long pBytes) {
+            mTile = pTile;
+            mBytes = pBytes;
+        }
+    }
+
+    TileCache() {
+    }
+
+    /**
+     * returns the cache instance (Singleton).<br /><br />
+     * <i>German:</i> liefert die Cache-Instanz (Singleton).
+     * @return Cache
+     */
+    public static synchronized TileCache getInstance()
+    {
+        if (sInstance == null)
+            sInstance = new TileCache();
+        return sInstance;
+    }
+
+    /**
+     * sets the memory budget of the cache. For 0, caching is disabled.<br /><br />
+     * <i>German:</i> setzt das Speicherbudget des Caches. F&uuml;r den Wert 0 (Voreinstellung) ist der Cache
+     * deaktiviert.
+     * @param pMaxBytes maximale Gesamtgr&ouml;&szlig;e der gehaltenen Kacheln in Bytes
+     */
+    public synchronized void setMaxBytes(long pMaxBytes)
+    {
+        mMaxBytes = Math.max(0, pMaxBytes);
+        this.evict(null);
+    }
+
+    /**
+     * returns the memory budget of the cache.<br /><br />
+     * <i>German:</i> liefert das Speicherbudget des Caches.
+     * @return maximale Gesamtgr&ouml;&szlig;e in Bytes
+     */
+    public synchronized long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /**
+     * checks if the cache is enabled.<br /><br />
+     * <i>German:</i> pr&uuml;ft, ob der Cache aktiviert ist.
+     * @return <i>true</i>, falls ein Speicherbudget gesetzt ist
+     */
+    public synchronized boolean isEnabled() {
+        return mMaxBytes > 0;
+    }
+
+    /**
+     * returns the requested tile. If the tile is not held in the cache, it will be loaded by the given loader. For
+     * concurrent requests of the same tile, the loader will be called only once.<br /><br />
+     * <i>German:</i> liefert die angeforderte Kachel. Ist die Kachel nicht im Cache enthalten, wird sie &uuml;ber den
+     * angegebenen Loader geladen. Bei gleichzeitigen Anforderungen derselben Kachel wird der Loader nur einmal
+     * aufgerufen. Vom Loader geworfene <tt>T3dException</tt>s werden unver&auml;ndert weitergereicht.
+     * @param pKey Kachelschl&uuml;ssel
+     * @param pLoader Loader, der die Kachel liefert
+     * @return Kachel
+     */
+    public ElevationTile get(Key pKey, Callable pLoader)
+    {
+        ElevationTile lCached = this.cached(pKey);
+        if (lCached != null)
+            return lCached;
+        mMisses.incrementAndGet();
+
+        FutureTask lTask = new FutureTask(new DecodingLoader(pLoader, this.getMaxBytes()));
+        FutureTask lRunning = (FutureTask) mLoading.putIfAbsent(pKey, lTask);
+        if (lRunning == null) {
+            // Diese Anfrage laedt die Kachel, alle weiteren warten auf lTask:
+            lRunning = lTask;
+            try {
+                // Ein zwischenzeitlich abgeschlossener Ladevorgang koennte die Kachel bereits abgelegt haben:
+                lCached = this.cached(pKey);
+                if (lCached != null) {
+                    mMisses.decrementAndGet();
+                    return lCached;
+                }
+                lTask.run();
+                Entry lEntry = (Entry) this.result(lTask);
+                this.put(pKey, lEntry);
+                return lEntry.mTile;
+            }
+            finally {
+                mLoading.remove(pKey);
+            }
+        }
+        return ((Entry) this.result(lRunning)).mTile;
+    }
+
+    /**
+     * removes all tiles from the cache.<br /><br />
+     * <i>German:</i> entfernt alle Kacheln aus dem Cache.
+     */
+    public synchronized void clear()
+    {
+        mEntries.clear();
+        mCurrBytes = 0;
+    }
+
+    /**
+     * returns the number of cache hits.<br /><br />
+     * <i>German:</i> liefert die Anzahl der Cache-Treffer.
+     * @return Anzahl Treffer
+     */
+    public long getHitCount() {
+        return mHits.get();
+    }
+
+    /**
+     * returns the number of cache misses.<br /><br />
+     * <i>German:</i> liefert die Anzahl der Cache-Fehlzugriffe.
+     * @return Anzahl Fehlzugriffe
+     */
+    public long getMissCount() {
+        return mMisses.get();
+    }
+
+    /**
+     * returns the ratio of cache hits to all cache requests.<br /><br />
+     * <i>German:</i> liefert den Anteil der Cache-Treffer an allen Anfragen.
+     * @return Trefferquote (0 bis 1)
+     */
+    public double hitRate()
+    {
+        long lHits = mHits.get(), lTotal = lHits + mMisses.get();
+        return lTotal > 0 ? ((double) lHits) / lTotal : 0.;
+    }
+
+    /**
+     * returns a short statistics summary, e.g. for log files.<br /><br />
+     * <i>German:</i> liefert eine kurze Zusammenfassung der Cache-Statistik, z. B. f&uuml;r Protokolldateien.
+     * @return Statistik-Text
+     */
+    public synchronized String statistics()
+    {
+        return "tiles=" + mEntries.size()
+            + ", bytes=" + mCurrBytes + "/" + mMaxBytes
+            + ", hits=" + mHits.get()
+            + ", misses=" + mMisses.get()
+            + ", hit-rate=" + Math.round(this.hitRate() * 1000.) / 10. + "%"
+            + ", evictions=" + mEvictions.get();
+    }
+
+    synchronized long currentBytes() {
+        return mCurrBytes;
+    }
+
+    private synchronized ElevationTile cached(Key pKey)
+    {
+        Entry lEntry = (Entry) mEntries.get(pKey);
+        if (lEntry == null)
+            return null;
+        mHits.incrementAndGet();
+        return lEntry.mTile;
+    }
+
+    private synchronized void put(Key pKey, Entry pEntry)
+    {
+        if (mMaxBytes <= 0 || pEntry.mBytes > mMaxBytes)
+            return; // Kachel wird nur fuer die aktuelle Anfrage genutzt
+
+        // Kacheln mit veraltetem Stand der Quelldatei entfernen:
+        Iterator it = mEntries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry lMapEntry = (Map.Entry) it.next();
+            if (pKey.sameTile((Key) lMapEntry.getKey())) {
+                mCurrBytes -= ((Entry) lMapEntry.getValue()).mBytes;
+                it.remove();
+            }
+        }
+        mEntries.put(pKey, pEntry);
+        mCurrBytes += pEntry.mBytes;
+        this.evict(pKey);
+    }
+
+    private void evict(Key pKeep)
+    {
+        Iterator it = mEntries.entrySet().iterator();
+        while (mCurrBytes > mMaxBytes && it.hasNext()) {
+            Map.Entry lMapEntry = (Map.Entry) it.next();
+            if (pKeep != null && pKeep.equals(lMapEntry.getKey()))
+                continue;
+            mCurrBytes -= ((Entry) lMapEntry.getValue()).mBytes;
+            it.remove();
+            mEvictions.incrementAndGet();
+        }
+    }
+
+    private Object result(FutureTask pTask)
+    {
+        try {
+            return pTask.get();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new T3dException("Could not load tile: " + e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new T3dException("Interrupted while waiting for tile.");
+        }
+    }
+
+    /**
+     * Loader decorator, which moves heap-based tiles into off-heap memory. Tiles exceeding the cache budget are
+     * returned unchanged, since they will not be cached anyway.
+     */
+    private static class DecodingLoader implements Callable
+    {
+        private Callable mLoader;
+        private long mMaxBytes;
+
+        DecodingLoader(Callable pLoader, long pMaxBytes) {
+            mLoader = pLoader;
+            mMaxBytes = pMaxBytes;
+        }
+
+        public Object call() throws Exception
+        {
+            ElevationTile lTile = (ElevationTile) mLoader.call();
+            if (lTile instanceof BinaryElevationTile)
+                return new Entry(lTile, ((BinaryElevationTile) lTile).byteSize());
+
+            BinaryTileWriter lWriter = new BinaryTileWriter();
+            long lBytes = lWriter.requiredBytes(lTile);
+            if (lBytes > mMaxBytes)
+                return new Entry(lTile, lBytes);
+            ByteBuffer lBuf = ByteBuffer.allocateDirect((int) lBytes);
+            BinaryElevationTile lOffHeap = lWriter.writeToBuffer(lTile, lBuf);
+            return new Entry(lOffHeap, lOffHeap.byteSize());
+        }
+    }
+}
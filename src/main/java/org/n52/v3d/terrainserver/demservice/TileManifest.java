@@ -0,0 +1,446 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.StringTokenizer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * In-memory manifest of the source tiles held below a source grid directory.<br /><br />
+ * <i>German:</i> Verzeichnis der unterhalb eines Quelldatenverzeichnisses ("SourceGridPath") abgelegten
+ * Quellkacheln.<br />
+ * Das Verzeichnis wird einmalig (bei der Servlet-Initialisierung) aufgebaut, indem alle Dateien
+ * <tt>&lt;TileLocator&gt;/&lt;srs&gt;/dgm&lt;MM&gt;&lt;NN&gt;.bin</tt> bzw. <tt>.asc</tt> gesucht und deren Kopfdaten
+ * gelesen werden. F&uuml;r jede Kachel werden Ausdehnung, Raumbezugssystem, Gitterweite und Dateiversion
+ * (&Auml;nderungszeitpunkt und Gr&ouml;&szlig;e) festgehalten. Je Kachelung und Raumbezugssystem werden die Kacheln
+ * &uuml;ber einen regelm&auml;&szlig;igen Gitterindex erschlossen, so dass sich die f&uuml;r eine Anfrage
+ * ben&ouml;tigten Kacheln ohne Koordinatentransformation und ohne Dateisystemzugriffe ermitteln lassen. L&uuml;cken
+ * im Datenbestand lassen sich so bereits vor dem Einlesen der Kacheln erkennen (vgl. <tt>this.covers()</tt>).
+ */
+public class TileManifest
+{
+    private static Log sLogger = LogFactory.getLog(TileManifest.class);
+
+    private static HashMap sInstances = new HashMap();
+
+    private String mSourceGridPath;
+    private HashMap mLayers = new HashMap(); // Schluessel: "<TileLocator>|<srs-Verzeichnis>"
+    private int mNumberOfTiles = 0;
+
+    /**
+     * Description of a single source tile.<br /><br />
+     * <i>German:</i> Beschreibung einer einzelnen Quellkachel.
+     */
+    public static class Entry
+    {
+        private int mHi, mLo;
+        private double mXMin, mYMin, mXMax, mYMax;
+        private double mDeltaX, mDeltaY;
+        private String mFilename;
+        private long mLastModified, mLength;
+
+        /** @return erster Index der Kachelnummer */
+        public int getHi() { return mHi; }
+        /** @return zweiter Index der Kachelnummer */
+        public int getLo() { return mLo; }
+        /** @return minimale x-Koordinate der Gitterpunkte */
+        public double getXMin() { return mXMin; }
+        /** @return minimale y-Koordinate der Gitterpunkte */
+        public double getYMin() { return mYMin; }
+        /** @return maximale x-Koordinate der Gitterpunkte */
+        public double getXMax() { return mXMax; }
+        /** @return maximale y-Koordinate der Gitterpunkte */
+        public double getYMax() { return mYMax; }
+        /** @return Gitterweite in x-Richtung */
+        public double getDeltaX() { return mDeltaX; }
+        /** @return Gitterweite in y-Richtung */
+        public double getDeltaY() { return mDeltaY; }
+        /** @return Dateiname (inkl. Pfad) */
+        public String getFilename() { return mFilename; }
+        /** @return &Auml;nderungszeitpunkt der Datei beim Aufbau des Verzeichnisses */
+        public long getLastModified() { return mLastModified; }
+        /** @return Gr&ouml;&szlig;e der Datei beim Aufbau des Verzeichnisses */
+        public long getLength() { return mLength; }
+
+        boolean intersects(double pXMin, double pYMin, double pXMax, double pYMax, double pTol) {
+            return mXMin - pTol <= pXMax && mXMax + pTol >= pXMin && mYMin - pTol <= pYMax && mYMax + pTol >= pYMin;
+        }
+
+        public String toString() {
+            return mFilename + " [" + mXMin + ", " + mYMin + ", " + mXMax + ", " + mYMax + "]";
+        }
+    }
+
+    // Kacheln einer Kachelung in einem Raumbezugssystem mit Gitterindex
+    private static class Layer
+    {
+        ArrayList mEntries = new ArrayList();
+        double mX0, mY0, mCellSize;
+        int mNx, mNy;
+        ArrayList[] mCells;
+
+        void buildIndex()
+        {
+            double lXMin = Double.MAX_VALUE, lYMin = Double.MAX_VALUE;
+            double lXMax = -Double.MAX_VALUE, lYMax = -Double.MAX_VALUE, lSize = 0.;
+            for (int k = 0; k < mEntries.size(); k++) {
+                Entry e = (Entry) mEntries.get(k);
+                lXMin = Math.min(lXMin, e.mXMin); lXMax = Math.max(lXMax, e.mXMax);
+                lYMin = Math.min(lYMin, e.mYMin); lYMax = Math.max(lYMax, e.mYMax);
+                lSize += Math.max(e.mXMax - e.mXMin, e.mYMax - e.mYMin);
+            }
+            // Indexzelle etwa so gross wie eine mittlere Kachel:
+            mCellSize = Math.max(lSize / mEntries.size(), 1.e-9);
+            mX0 = lXMin;
+            mY0 = lYMin;
+            mNx = (int) Math.floor((lXMax - lXMin) / mCellSize) + 1;
+            mNy = (int) Math.floor((lYMax - lYMin) / mCellSize) + 1;
+            mCells = new ArrayList[mNx * mNy];
+            for (int k = 0; k < mEntries.size(); k++) {
+                Entry e = (Entry) mEntries.get(k);
+                for (int iy = this.cellY(e.mYMin); iy <= this.cellY(e.mYMax); iy++) {
+                    for (int ix = this.cellX(e.mXMin); ix <= this.cellX(e.mXMax); ix++) {
+                        if (mCells[iy * mNx + ix] == null)
+                            mCells[iy * mNx + ix] = new ArrayList();
+                        mCells[iy * mNx + ix].add(e);
+                    }
+                }
+            }
+        }
+
+        int cellX(double x) {
+            return Math.max(0, Math.min(mNx - 1, (int) Math.floor((x - mX0) / mCellSize)));
+        }
+
+        int cellY(double y) {
+            return Math.max(0, Math.min(mNy - 1, (int) Math.floor((y - mY0) / mCellSize)));
+        }
+    }
+
+    private TileManifest(String pSourceGridPath) {
+        mSourceGridPath = pSourceGridPath;
+    }
+
+    /**
+     * returns the manifest for the given source grid directory. On first call, the directory will be
+     * scanned.<br /><br />
+     * <i>German:</i> liefert das Verzeichnis der Quellkacheln f&uuml;r das angegebene Quelldatenverzeichnis. Beim
+     * ersten Aufruf wird das Verzeichnis durchsucht; alle Servlets mit demselben "SourceGridPath" teilen sich eine
+     * Instanz.
+     * @param pSourceGridPath Quelldatenverzeichnis
+     * @return Kachelverzeichnis
+     */
+    public static synchronized TileManifest getInstance(String pSourceGridPath)
+    {
+        String lKey = new File(pSourceGridPath).getAbsolutePath();
+        TileManifest lManifest = (TileManifest) sInstances.get(lKey);
+        if (lManifest == null) {
+            lManifest = new TileManifest(pSourceGridPath);
+            lManifest.scan();
+            sInstances.put(lKey, lManifest);
+        }
+        return lManifest;
+    }
+
+    /**
+     * (re-)scans the source grid directory.<br /><br />
+     * <i>German:</i> durchsucht das Quelldatenverzeichnis (erneut).
+     */
+    public synchronized void scan()
+    {
+        long lStart = System.currentTimeMillis();
+        HashMap lLayers = new HashMap();
+        int ct = 0;
+
+        File[] lLocatorDirs = new File(mSourceGridPath).listFiles();
+        for (int i = 0; lLocatorDirs != null && i < lLocatorDirs.length; i++) {
+            if (!lLocatorDirs[i].isDirectory())
+                continue;
+            File[] lSRSDirs = lLocatorDirs[i].listFiles();
+            for (int j = 0; lSRSDirs != null && j < lSRSDirs.length; j++) {
+                if (!lSRSDirs[j].isDirectory())
+                    continue;
+                Layer lLayer = this.scanLayer(lSRSDirs[j]);
+                if (lLayer.mEntries.size() > 0) {
+                    lLayer.buildIndex();
+                    lLayers.put(lLocatorDirs[i].getName() + "|" + lSRSDirs[j].getName(), lLayer);
+                    ct += lLayer.mEntries.size();
+                }
+            }
+        }
+        mLayers = lLayers;
+        mNumberOfTiles = ct;
+        sLogger.info("TileManifest: " + ct + " tile(s) found below \"" + mSourceGridPath + "\" ("
+            + (System.currentTimeMillis() - lStart) + " msec).");
+    }
+
+    /**
+     * returns the number of tiles held in the manifest.<br /><br />
+     * <i>German:</i> liefert die Anzahl der erfassten Kacheln.
+     * @return Anzahl Kacheln
+     */
+    public int numberOfTiles() {
+        return mNumberOfTiles;
+    }
+
+    /**
+     * checks if tiles are available for the given tile locator and SRS.<br /><br />
+     * <i>German:</i> pr&uuml;ft, ob f&uuml;r die angegebene Kachelung und das angegebene Raumbezugssystem Kacheln
+     * erfasst sind.
+     * @param pTileLocator Bezeichner f&uuml;r verwendete Kachelung
+     * @param pSRS Raumbezugssystem
+     * @return <i>true</i>, falls Kacheln vorhanden
+     */
+    public boolean hasTiles(String pTileLocator, String pSRS) {
+        return this.layer(pTileLocator, pSRS) != null;
+    }
+
+    /**
+     * returns the tiles intersecting the given envelope.<br /><br />
+     * <i>German:</i> liefert die Kacheln, die das angegebene Rechteck schneiden. Die Ausdehnung der Kacheln wird
+     * dabei um eine Gitterweite erweitert, so dass auch Kacheln unmittelbar am Rand ber&uuml;cksichtigt werden.
+     * @param pTileLocator Bezeichner f&uuml;r verwendete Kachelung
+     * @param pSRS Raumbezugssystem
+     * @param pXMin minimale x-Koordinate
+     * @param pYMin minimale y-Koordinate
+     * @param pXMax maximale x-Koordinate
+     * @param pYMax maximale y-Koordinate
+     * @return Liste von <tt>TileManifest.Entry</tt>-Objekten
+     */
+    public ArrayList query(String pTileLocator, String pSRS, double pXMin, double pYMin, double pXMax, double pYMax)
+    {
+        ArrayList lRes = new ArrayList();
+        Layer lLayer = this.layer(pTileLocator, pSRS);
+        if (lLayer == null)
+            return lRes;
+        HashSet lSeen = new HashSet();
+        for (int iy = lLayer.cellY(pYMin - lLayer.mCellSize); iy <= lLayer.cellY(pYMax + lLayer.mCellSize); iy++) {
+            for (int ix = lLayer.cellX(pXMin - lLayer.mCellSize); ix <= lLayer.cellX(pXMax + lLayer.mCellSize); ix++) {
+                ArrayList lCell = lLayer.mCells[iy * lLayer.mNx + ix];
+                for (int k = 0; lCell != null && k < lCell.size(); k++) {
+                    Entry e = (Entry) lCell.get(k);
+                    double lTol = Math.max(e.mDeltaX, e.mDeltaY);
+                    if (e.intersects(pXMin, pYMin, pXMax, pYMax, lTol) && lSeen.add(e))
+                        lRes.add(e);
+                }
+            }
+        }
+        return lRes;
+    }
+
+    /**
+     * checks if the given tiles cover the given envelope without gaps.<br /><br />
+     * <i>German:</i> pr&uuml;ft, ob die angegebenen Kacheln das angegebene Rechteck l&uuml;ckenlos &uuml;berdecken.
+     * Die Ausdehnung der Kacheln wird dabei um eine Gitterweite erweitert.
+     * @param pEntries Liste von <tt>TileManifest.Entry</tt>-Objekten
+     * @param pXMin minimale x-Koordinate
+     * @param pYMin minimale y-Koordinate
+     * @param pXMax maximale x-Koordinate
+     * @param pYMax maximale y-Koordinate
+     * @return <i>true</i>, falls keine L&uuml;cken vorhanden
+     */
+    public static boolean covers(ArrayList pEntries, double pXMin, double pYMin, double pXMax, double pYMax)
+    {
+        // x-Streifen zwischen allen Kachelgrenzen bilden und darin die y-Intervalle vereinigen:
+        double[] lXs = new double[2 * pEntries.size() + 2];
+        int n = 0;
+        lXs[n++] = pXMin;
+        lXs[n++] = pXMax;
+        for (int k = 0; k < pEntries.size(); k++) {
+            Entry e = (Entry) pEntries.get(k);
+            double lTol = Math.max(e.mDeltaX, e.mDeltaY);
+            if (e.mXMin - lTol > pXMin && e.mXMin - lTol < pXMax) lXs[n++] = e.mXMin - lTol;
+            if (e.mXMax + lTol > pXMin && e.mXMax + lTol < pXMax) lXs[n++] = e.mXMax + lTol;
+        }
+        Arrays.sort(lXs, 0, n);
+
+        for (int s = 0; s + 1 < n; s++) {
+            if (lXs[s + 1] <= lXs[s])
+                continue;
+            double lMid = 0.5 * (lXs[s] + lXs[s + 1]);
+            ArrayList lIntervals = new ArrayList();
+            for (int k = 0; k < pEntries.size(); k++) {
+                Entry e = (Entry) pEntries.get(k);
+                double lTol = Math.max(e.mDeltaX, e.mDeltaY);
+                if (e.mXMin - lTol <= lMid && e.mXMax + lTol >= lMid)
+                    lIntervals.add(new double[] {e.mYMin - lTol, e.mYMax + lTol});
+            }
+            Collections.sort(lIntervals, new Comparator() {
+                public int compare(Object o1, Object o2) {
+                    return Double.compare(((double[]) o1)[0], ((double[]) o2)[0]);
+                }
+            });
+            double lCovered = pYMin;
+            for (Iterator it = lIntervals.iterator(); it.hasNext() && lCovered < pYMax; ) {
+                double[] lInt = (double[]) it.next();
+                if (lInt[0] > lCovered)
+                    return false;
+                lCovered = Math.max(lCovered, lInt[1]);
+            }
+            if (lCovered < pYMax)
+                return false;
+        }
+        return true;
+    }
+
+    private Layer layer(String pTileLocator, String pSRS) {
+        return (Layer) mLayers.get(pTileLocator + "|" + pSRS.toLowerCase().replaceAll(":", "_"));
+    }
+
+    private Layer scanLayer(File pDir)
+    {
+        Layer lLayer = new Layer();
+        HashMap lByName = new HashMap();
+        File[] lFiles = pDir.listFiles();
+        for (int i = 0; lFiles != null && i < lFiles.length; i++) {
+            String lName = lFiles[i].getName();
+            // nur Kacheln in voller Aufloesung ("dgmMMNN.bin" bzw. "dgmMMNN.asc"), keine Uebersichtsstufen:
+            if (!lName.startsWith("dgm") || lName.length() != 11 || !(lName.endsWith(".bin") || lName.endsWith(".asc")))
+                continue;
+            String lBase = lName.substring(0, 7);
+            if (lName.endsWith(".asc") && lByName.containsKey(lBase))
+                continue; // Binaerkachel bevorzugen
+            try {
+                Entry e = new Entry();
+                e.mHi = Integer.parseInt(lName.substring(3, 5));
+                e.mLo = Integer.parseInt(lName.substring(5, 7));
+                e.mFilename = lFiles[i].getPath();
+                e.mLastModified = lFiles[i].lastModified();
+                e.mLength = lFiles[i].length();
+                if (lName.endsWith(".bin"))
+                    this.readBinaryHeader(e);
+                else
+                    this.readAsciiHeader(e);
+                lByName.put(lBase, e);
+            }
+            catch (NumberFormatException ex) {
+                continue;
+            }
+            catch (T3dException ex) {
+                sLogger.warn("TileManifest: Skipping \"" + lFiles[i] + "\": " + ex.getMessage());
+            }
+        }
+        lLayer.mEntries.addAll(lByName.values());
+        return lLayer;
+    }
+
+    private void readBinaryHeader(Entry e)
+    {
+        FileInputStream lIn = null;
+        try {
+            lIn = new FileInputStream(e.mFilename);
+            ByteBuffer lBuf = ByteBuffer.allocate(BinaryElevationTile.sHeaderSize);
+            lBuf.order(ByteOrder.LITTLE_ENDIAN);
+            while (lBuf.hasRemaining() && lIn.getChannel().read(lBuf) > 0);
+            if (lBuf.hasRemaining())
+                throw new T3dException("Invalid binary tile (truncated header).");
+            lBuf.flip();
+            byte[] lMagic = new byte[4];
+            lBuf.get(lMagic);
+            if (!Arrays.equals(lMagic, BinaryElevationTile.sMagic))
+                throw new T3dException("Invalid binary tile (bad magic number).");
+            lBuf.getInt(); // Version
+            int lCols = lBuf.getInt(), lRows = lBuf.getInt();
+            e.mXMin = lBuf.getDouble();
+            e.mYMin = lBuf.getDouble();
+            e.mDeltaX = lBuf.getDouble();
+            e.mDeltaY = lBuf.getDouble();
+            e.mXMax = e.mXMin + (lCols - 1) * e.mDeltaX;
+            e.mYMax = e.mYMin + (lRows - 1) * e.mDeltaY;
+        }
+        catch (IOException ex) {
+            throw new T3dException(ex.getMessage());
+        }
+        finally {
+            if (lIn != null) {
+                try {
+                    lIn.close();
+                }
+                catch (IOException ex) {}
+            }
+        }
+    }
+
+    private void readAsciiHeader(Entry e)
+    {
+        BufferedReader lIn = null;
+        try {
+            lIn = new BufferedReader(new FileReader(e.mFilename));
+            int lCols = -1, lRows = -1;
+            double lX = Double.NaN, lY = Double.NaN, lDx = Double.NaN, lDy = Double.NaN;
+            for (int i = 0; i < 8; i++) {
+                String lLine = lIn.readLine();
+                if (lLine == null)
+                    break;
+                StringTokenizer st = new StringTokenizer(lLine);
+                if (st.countTokens() != 2)
+                    break; // Beginn des Datenteils
+                String lKey = st.nextToken().toLowerCase();
+                String lVal = st.nextToken();
+                if (lKey.equals("ncols")) lCols = Integer.parseInt(lVal);
+                if (lKey.equals("nrows")) lRows = Integer.parseInt(lVal);
+                if (lKey.startsWith("xll")) lX = Double.parseDouble(lVal);
+                if (lKey.startsWith("yll")) lY = Double.parseDouble(lVal);
+                if (lKey.equals("cellsize")) { lDx = Double.parseDouble(lVal); lDy = lDx; }
+                if (lKey.equals("dx")) lDx = Double.parseDouble(lVal);
+                if (lKey.equals("dy")) lDy = Double.parseDouble(lVal);
+            }
+            if (lCols <= 0 || lRows <= 0 || Double.isNaN(lX) || Double.isNaN(lY) || Double.isNaN(lDx) || Double.isNaN(lDy))
+                throw new T3dException("Incomplete ArcInfo ASCII grid header.");
+            e.mXMin = lX;
+            e.mYMin = lY;
+            e.mDeltaX = lDx;
+            e.mDeltaY = lDy;
+            e.mXMax = lX + (lCols - 1) * lDx;
+            e.mYMax = lY + (lRows - 1) * lDy;
+        }
+        catch (IOException ex) {
+            throw new T3dException(ex.getMessage());
+        }
+        catch (NumberFormatException ex) {
+            throw new T3dException("Invalid ArcInfo ASCII grid header: " + ex.getMessage());
+        }
+        finally {
+            if (lIn != null) {
+                try {
+                    lIn.close();
+                }
+                catch (IOException ex) {}
+            }
+        }
+    }
+}
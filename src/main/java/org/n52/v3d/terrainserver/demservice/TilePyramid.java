@@ -0,0 +1,218 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.StringTokenizer;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.gisimplm.GmEnvelope;
+
+/**
+ * Fixed tile pyramid derived from the tile schemes defined in <tt>tiledef.properties</tt>.<br /><br />
+ * <i>German:</i> Feste Kachelpyramide auf Grundlage der in <tt>tiledef.properties</tt> definierten
+ * Blattschnitte.<br />
+ * Die Parameter <tt>tile.&lt;id&gt;.parameters=a,b,c,d,e,f</tt> eines Blattschnitts bilden geographische
+ * Koordinaten auf die Blattnummer &lt;MM&gt;&lt;NN&gt; ab: MM = a*lon + b*lat + c, NN = d*lon + e*lat + f
+ * (ganzzahliger Anteil). Auf Stufe 0 entspricht eine Pyramidenkachel genau einem Blatt; auf Stufe L wird jedes
+ * Blatt in 2^L x 2^L gleich gro&szlig;e Kacheln unterteilt. Die Zeile (ROW) bezeichnet den Index entlang der
+ * Breitenachse, die Spalte (COL) den Index entlang der L&auml;ngenachse, jeweils in der Z&auml;hlrichtung des
+ * Blattschnitts (f&uuml;r TK 25 also von Nord nach S&uuml;d). Die Kachelgeometrie h&auml;ngt damit nur vom
+ * Adressierungstupel (Blattschnitt, Stufe, Zeile, Spalte) ab, so dass sich Antworten auf GetTile-Anfragen
+ * dauerhaft zwischenspeichern lassen.
+ */
+public class TilePyramid
+{
+    private static TilePyramid sInstance = null;
+
+    /** maximal zulaessige Pyramidenstufe */
+    public static final int sMaxLevel = 16;
+
+    private ArrayList mIds = new ArrayList();
+    private HashMap mSchemes = new HashMap(); // Blattschnitt-ID -> Scheme
+
+    /**
+     * returns the pyramid for the tile schemes given in the class path resource <tt>tiledef.properties</tt>.<br /><br />
+     * <i>German:</i> liefert die Kachelpyramide f&uuml;r die in der Ressource <tt>tiledef.properties</tt> definierten
+     * Blattschnitte. Die Definitionsdatei wird nur beim ersten Aufruf gelesen.
+     * @return Kachelpyramide
+     */
+    public static synchronized TilePyramid getInstance()
+    {
+        if (sInstance == null) {
+            InputStream lIn = TilePyramid.class.getResourceAsStream("/tiledef.properties");
+            if (lIn == null)
+                throw new T3dException("Could not find tile definition file \"tiledef.properties\".");
+            Properties lDef = new Properties();
+            try {
+                lDef.load(lIn);
+                lIn.close();
+            }
+            catch (IOException e) {
+                throw new T3dException("Could not read tile definition file: " + e.getMessage());
+            }
+            sInstance = new TilePyramid(lDef);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructor.<br /><br />
+     * <i>German:</i> Konstruktor.
+     * @param pDef Blattschnitt-Definitionen (Aufbau wie <tt>tiledef.properties</tt>)
+     */
+    public TilePyramid(Properties pDef)
+    {
+        String lIds = pDef.getProperty("tile-identifiers");
+        if (lIds == null)
+            throw new T3dException("Tile definitions lack \"tile-identifiers\" entry.");
+        StringTokenizer st = new StringTokenizer(lIds, ",");
+        while (st.hasMoreTokens()) {
+            String lId = st.nextToken().trim();
+            String lParams = pDef.getProperty("tile." + lId + ".parameters");
+            if (lParams == null)
+                throw new T3dException("Missing parameters for tile scheme \"" + lId + "\".");
+            mIds.add(lId);
+            mSchemes.put(lId.toLowerCase(), new Scheme(lId, lParams));
+        }
+    }
+
+    /**
+     * returns the identifiers of the available tile schemes.<br /><br />
+     * <i>German:</i> liefert die Bezeichner der verf&uuml;gbaren Blattschnitte.
+     * @return Liste der Blattschnitt-Bezeichner
+     */
+    public String[] schemes() {
+        return (String[]) mIds.toArray(new String[mIds.size()]);
+    }
+
+    /**
+     * checks if a tile scheme is defined (case-insensitive).<br /><br />
+     * <i>German:</i> pr&uuml;ft, ob ein Blattschnitt definiert ist (Gro&szlig;-/Kleinschreibung wird ignoriert).
+     * @param pScheme Blattschnitt-Bezeichner
+     * @return <i>true</i>, falls definiert
+     */
+    public boolean hasScheme(String pScheme) {
+        return pScheme != null && mSchemes.containsKey(pScheme.toLowerCase());
+    }
+
+    /**
+     * returns the tile scheme identifier in its defined spelling.<br /><br />
+     * <i>German:</i> liefert den Blattschnitt-Bezeichner in der definierten Schreibweise.
+     * @param pScheme Blattschnitt-Bezeichner (beliebige Gro&szlig;-/Kleinschreibung)
+     * @return Bezeichner gem&auml;&szlig; <tt>tiledef.properties</tt>
+     * @throws T3dException falls der Blattschnitt nicht definiert ist
+     */
+    public String schemeId(String pScheme) {
+        return this.scheme(pScheme).mId;
+    }
+
+    /**
+     * returns the geographic extent (EPSG:4326) of a pyramid tile.<br /><br />
+     * <i>German:</i> liefert die geographische Ausdehnung (EPSG:4326) einer Pyramidenkachel.
+     * @param pScheme Blattschnitt-Bezeichner
+     * @param pLevel Pyramidenstufe (0 = Blattschnitt-Kachel)
+     * @param pRow Zeilenindex (Breitenachse)
+     * @param pCol Spaltenindex (L&auml;ngenachse)
+     * @return Kachelausdehnung
+     * @throws T3dException falls die Kachel nicht existiert
+     */
+    public GmEnvelope tileEnvelope(String pScheme, int pLevel, int pRow, int pCol)
+    {
+        Scheme lScheme = this.scheme(pScheme);
+        if (pLevel < 0 || pLevel > sMaxLevel)
+            throw new T3dException("Tile level must be in the range 0 ... " + sMaxLevel + ".");
+        int lTiles = 100 << pLevel; // Blattnummern-Komponenten sind zweistellig
+        if (pRow < 0 || pRow >= lTiles || pCol < 0 || pCol >= lTiles)
+            throw new T3dException("Tile row and column must be in the range 0 ... " + (lTiles - 1) + " for level " + pLevel + ".");
+
+        double lSub = (double) (1 << pLevel);
+        double lon1 = lScheme.mLon.coord(pCol / lSub), lon2 = lScheme.mLon.coord((pCol + 1) / lSub);
+        double lat1 = lScheme.mLat.coord(pRow / lSub), lat2 = lScheme.mLat.coord((pRow + 1) / lSub);
+        GmEnvelope lEnv = new GmEnvelope(
+            Math.min(lon1, lon2), Math.max(lon1, lon2), Math.min(lat1, lat2), Math.max(lat1, lat2), 0., 0.);
+        if (lEnv.getXMin() < -180. || lEnv.getXMax() > 180. || lEnv.getYMin() < -90. || lEnv.getYMax() > 90.)
+            throw new T3dException("Tile " + pRow + "/" + pCol + " of scheme \"" + lScheme.mId + "\" lies outside the valid lat/lon range.");
+        lEnv.setSRS("EPSG:4326");
+        return lEnv;
+    }
+
+    private Scheme scheme(String pScheme) {
+        Scheme lScheme = pScheme == null ? null : (Scheme) mSchemes.get(pScheme.toLowerCase());
+        if (lScheme == null)
+            throw new T3dException("Unknown tile scheme \"" + pScheme + "\".");
+        return lScheme;
+    }
+
+    /**
+     * Blattschnitt; Blattnummern-Komponenten MM, NN haengen jeweils nur von einer Koordinate ab.
+     */
+    private static class Scheme
+    {
+        String mId;
+        Axis mLon, mLat;
+
+        Scheme(String pId, String pParams)
+        {
+            mId = pId;
+            StringTokenizer st = new StringTokenizer(pParams, ",");
+            double[] p = new double[6];
+            try {
+                for (int i = 0; i < 6; i++)
+                    p[i] = Double.parseDouble(st.nextToken().trim());
+            }
+            catch (RuntimeException e) {
+                throw new T3dException("Invalid parameters for tile scheme \"" + pId + "\": " + pParams);
+            }
+            // p[0..2]: MM = a*lon + b*lat + c, p[3..5]: NN = d*lon + e*lat + f
+            if (p[0] != 0. && p[1] == 0. && p[3] == 0. && p[4] != 0.) {
+                mLon = new Axis(p[0], p[2]);
+                mLat = new Axis(p[4], p[5]);
+            }
+            else if (p[0] == 0. && p[1] != 0. && p[3] != 0. && p[4] == 0.) {
+                mLat = new Axis(p[1], p[2]);
+                mLon = new Axis(p[3], p[5]);
+            }
+            else
+                throw new T3dException("Tile scheme \"" + pId + "\" is not axis-parallel.");
+        }
+    }
+
+    /**
+     * Abbildung index = mScale * coord + mOffset entlang einer Koordinatenachse.
+     */
+    private static class Axis
+    {
+        double mScale, mOffset;
+
+        Axis(double pScale, double pOffset) {
+            mScale = pScale;
+            mOffset = pOffset;
+        }
+
+        double coord(double pIndex) {
+            return (pIndex - mOffset) / mScale;
+        }
+    }
+}
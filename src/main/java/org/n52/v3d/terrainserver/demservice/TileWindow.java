@@ -0,0 +1,132 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+/**
+ * Rectangular section of an elevation tile.<br /><br />
+ * <i>German:</i> Rechteckiger Ausschnitt einer Kachel.<br />
+ * Der Ausschnitt verweist auf die Werte der zugrunde liegenden Kachel, ohne diese zu kopieren; f&uuml;r
+ * eingeblendete Bin&auml;rkacheln werden somit nur die Seiten der tats&auml;chlich ben&ouml;tigten Zeilen gelesen.
+ * Die Gitterpunkte des Ausschnitts liegen auf dem Raster der Ausgangskachel.
+ */
+public class TileWindow implements ElevationTile
+{
+    private ElevationTile mTile;
+    private int mRow0, mCol0, mRows, mCols;
+
+    /**
+     * Constructor.<br /><br />
+     * <i>German:</i> Konstruktor.
+     * @param pTile Ausgangskachel
+     * @param pRow0 erste Zeile des Ausschnitts
+     * @param pCol0 erste Spalte des Ausschnitts
+     * @param pRows Anzahl der Zeilen
+     * @param pCols Anzahl der Spalten
+     */
+    public TileWindow(ElevationTile pTile, int pRow0, int pCol0, int pRows, int pCols)
+    {
+        mTile = pTile;
+        mRow0 = pRow0;
+        mCol0 = pCol0;
+        mRows = pRows;
+        mCols = pCols;
+    }
+
+    /**
+     * returns the section of the given tile which intersects the given envelope extended by a halo. If the tile
+     * lies completely inside, the tile itself will be returned.<br /><br />
+     * <i>German:</i> liefert den Ausschnitt der angegebenen Kachel, der das um einen Randbereich erweiterte
+     * Rechteck schneidet. Liegt die Kachel vollst&auml;ndig innerhalb, wird die Kachel selbst zur&uuml;ckgegeben,
+     * liegt sie vollst&auml;ndig au&szlig;erhalb, wird <i>null</i> geliefert.
+     * @param pTile Kachel
+     * @param pXMin minimale x-Koordinate des Rechtecks
+     * @param pYMin minimale y-Koordinate des Rechtecks
+     * @param pXMax maximale x-Koordinate des Rechtecks
+     * @param pYMax maximale y-Koordinate des Rechtecks
+     * @param pHalo Breite des Randbereichs (z. B. Suchradius)
+     * @return Ausschnitt, Kachel oder <i>null</i>
+     */
+    public static ElevationTile clip(
+        ElevationTile pTile, double pXMin, double pYMin, double pXMax, double pYMax, double pHalo)
+    {
+        int[] w = indexRange(
+            pTile.numberOfColumns(), pTile.numberOfRows(), pTile.getXMin(), pTile.getYMin(),
+            pTile.getDeltaX(), pTile.getDeltaY(), pXMin, pYMin, pXMax, pYMax, pHalo);
+        if (w == null)
+            return null;
+        if (w[0] == 0 && w[1] == 0 && w[2] == pTile.numberOfRows() - 1 && w[3] == pTile.numberOfColumns() - 1)
+            return pTile;
+        return new TileWindow(pTile, w[0], w[1], w[2] - w[0] + 1, w[3] - w[1] + 1);
+    }
+
+    /**
+     * returns the row and column range of a grid of the given geometry which intersects the given envelope
+     * extended by a halo.<br /><br />
+     * <i>German:</i> liefert den Zeilen- und Spaltenbereich eines Gitters der angegebenen Geometrie, der das um
+     * einen Randbereich erweiterte Rechteck schneidet (vgl. <tt>clip()</tt>; wird auch f&uuml;r das
+     * ausschnittsweise Einlesen von ASCII-Grids verwendet).
+     * @return {erste Zeile, erste Spalte, letzte Zeile, letzte Spalte} oder <i>null</i>, falls das Gitter
+     * au&szlig;erhalb liegt
+     */
+    static int[] indexRange(
+        int pCols, int pRows, double pGridXMin, double pGridYMin, double pDeltaX, double pDeltaY,
+        double pXMin, double pYMin, double pXMax, double pYMax, double pHalo)
+    {
+        int c0 = Math.max(0, (int) Math.floor((pXMin - pHalo - pGridXMin) / pDeltaX));
+        int c1 = Math.min(pCols - 1, (int) Math.ceil((pXMax + pHalo - pGridXMin) / pDeltaX));
+        int r0 = Math.max(0, (int) Math.floor((pYMin - pHalo - pGridYMin) / pDeltaY));
+        int r1 = Math.min(pRows - 1, (int) Math.ceil((pYMax + pHalo - pGridYMin) / pDeltaY));
+        if (c1 < c0 || r1 < r0)
+            return null;
+        return new int[] {r0, c0, r1, c1};
+    }
+
+    public int numberOfRows() {
+        return mRows;
+    }
+
+    public int numberOfColumns() {
+        return mCols;
+    }
+
+    public double getXMin() {
+        return mTile.getXMin() + mCol0 * mTile.getDeltaX();
+    }
+
+    public double getYMin() {
+        return mTile.getYMin() + mRow0 * mTile.getDeltaY();
+    }
+
+    public double getDeltaX() {
+        return mTile.getDeltaX();
+    }
+
+    public double getDeltaY() {
+        return mTile.getDeltaY();
+    }
+
+    public boolean isSet(int pRow, int pCol) {
+        return mTile.isSet(mRow0 + pRow, mCol0 + pCol);
+    }
+
+    public double getValue(int pRow, int pCol) {
+        return mTile.getValue(mRow0 + pRow, mCol0 + pCol);
+    }
+}
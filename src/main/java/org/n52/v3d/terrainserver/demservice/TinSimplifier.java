@@ -0,0 +1,538 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.math.BigInteger;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.gisimplm.GmSimpleElevationGrid;
+
+/**
+ * Error-bounded simplification of elevation grids to triangulated irregular networks (TIN) by greedy
+ * insertion.<br /><br />
+ * <i>German:</i> Fehlerbegrenzte Vereinfachung von H&ouml;henmodellen zu Dreiecksnetzen (TIN) durch
+ * gierige Punkteinf&uuml;gung (&quot;Greedy Insertion&quot; nach Garland und Heckbert).<br />
+ * Ausgehend von den vier Eckpunkten des Gitters wird jeweils derjenige Gitterpunkt in eine
+ * Delaunay-Triangulation eingef&uuml;gt, dessen H&ouml;he am st&auml;rksten von der durch das Netz
+ * beschriebenen Oberfl&auml;che abweicht. Das Verfahren endet, sobald die maximale vertikale Abweichung den
+ * Wert <tt>setMaxError()</tt> nicht mehr &uuml;berschreitet oder die Dreiecksanzahl <tt>setMaxTriangles()</tt>
+ * erreicht ist. Die Netzgr&ouml;&szlig;e folgt damit der Gel&auml;ndeform und nicht der Ausdehnung des Gebiets.
+ * <br />
+ * Intern wird in Gitterindex-Koordinaten gerechnet, so dass die geometrischen Pr&auml;dikate ganzzahlig und
+ * exakt ausgewertet werden k&ouml;nnen. Die Kandidatenpunkte der Dreiecke werden in einem Heap verwaltet; nach
+ * einer Einf&uuml;gung werden nur die ver&auml;nderten Dreiecke neu abgetastet.
+ */
+public class TinSimplifier
+{
+    private static final int sMaxDimension = 30000; // Grenze fuer ganzzahlige Inkreis-Tests in long
+
+    private double mMaxError = 0.;
+    private int mMaxTriangles = Integer.MAX_VALUE;
+
+    // Gitter:
+    private int mCols, mRows;
+    private double[] mZ; // Hoehen, Index = Zeile * mCols + Spalte
+
+    // Dreiecke (gegen den Uhrzeigersinn); Kante k verlaeuft von Ecke k nach Ecke (k + 1) % 3:
+    private int mNumTri = 0;
+    private int[] mTv = new int[0]; // Eckpunkte (Gitterindizes)
+    private int[] mTn = new int[0]; // Nachbardreiecke jenseits der Kanten, -1 am Rand
+    private int[] mCand = new int[0]; // Kandidatenpunkt je Dreieck, -1 falls keiner
+    private double[] mErr = new double[0]; // Abweichung des Kandidatenpunkts
+
+    // Heap ueber die Dreiecke, geordnet nach absteigender Abweichung:
+    private int[] mHeap = new int[0];
+    private int[] mHeapPos = new int[0];
+    private int mHeapSize = 0;
+
+    // Waehrend einer Einfuegung veraenderte Dreiecke:
+    private int[] mDirty = new int[16];
+    private int mNumDirty = 0;
+    private int[] mDirtyMark = new int[0];
+    private int mInsertion = 0;
+    private int[] mStack = new int[32];
+
+    /**
+     * sets the maximum vertical deviation between the TIN and the grid.<br /><br />
+     * <i>German:</i> setzt die maximal zul&auml;ssige vertikale Abweichung zwischen TIN und Gitter.
+     * @param pMaxError Abweichung in H&ouml;heneinheiten (Voreinstellung 0, d. h. nur ebene Bereiche werden
+     * ausged&uuml;nnt)
+     */
+    public void setMaxError(double pMaxError) {
+        mMaxError = Math.max(0., pMaxError);
+    }
+
+    /**
+     * sets the maximum number of triangles.<br /><br />
+     * <i>German:</i> setzt die maximale Anzahl an Dreiecken.
+     * @param pMaxTriangles Dreiecksanzahl (mindestens 2); Werte &lt;= 0 stehen f&uuml;r &quot;unbegrenzt&quot;
+     */
+    public void setMaxTriangles(int pMaxTriangles) {
+        mMaxTriangles = pMaxTriangles <= 0 ? Integer.MAX_VALUE : Math.max(2, pMaxTriangles);
+    }
+
+    /**
+     * simplifies the given grid.<br /><br />
+     * <i>German:</i> vereinfacht das angegebene H&ouml;henmodell.
+     * @param pGrid vollst&auml;ndig belegtes H&ouml;henmodell (mindestens 2 x 2 Punkte)
+     * @return Dreiecksnetz
+     * @throws T3dException falls das Gitter zu klein oder zu gro&szlig; ist
+     */
+    public Tin simplify(GmSimpleElevationGrid pGrid)
+    {
+        mRows = pGrid.numberOfRows();
+        mCols = pGrid.numberOfColumns();
+        if (mRows < 2 || mCols < 2)
+            throw new T3dException("Grid is too small for TIN generation.");
+        if (mRows > sMaxDimension || mCols > sMaxDimension)
+            throw new T3dException("Grid is too large for TIN generation.");
+        mZ = new double[mRows * mCols];
+        for (int i = 0; i < mRows; i++) {
+            for (int j = 0; j < mCols; j++)
+                mZ[i * mCols + j] = pGrid.getValue(i, j);
+        }
+
+        // Startnetz aus den vier Eckpunkten:
+        this.reserve(2);
+        int a = 0, b = mCols - 1, c = mRows * mCols - 1, d = (mRows - 1) * mCols;
+        this.setTriangle(0, a, b, c, -1, -1, 1);
+        this.setTriangle(1, a, c, d, 0, -1, -1);
+        mNumTri = 2;
+        mDirtyMark = new int[mTv.length / 3];
+        for (int t = 0; t < mNumTri; t++) {
+            this.scan(t);
+            this.heapInsert(t);
+        }
+
+        // Punkte mit der groessten Abweichung einfuegen:
+        while (mHeapSize > 0) {
+            int t = mHeap[0];
+            if (mCand[t] < 0 || mErr[t] <= mMaxError || mNumTri + 2 > mMaxTriangles)
+                break;
+            this.insert(mCand[t], t);
+        }
+
+        return this.result(pGrid);
+    }
+
+    private void insert(int p, int t)
+    {
+        mInsertion++;
+        mNumDirty = 0;
+        this.reserve(mNumTri + 2);
+        int px = p % mCols, py = p / mCols;
+        int e = -1;
+        for (int k = 0; k < 3; k++) {
+            if (this.orient(mTv[3 * t + k], mTv[3 * t + (k + 1) % 3], px, py) == 0)
+                e = k;
+        }
+        if (e < 0)
+            this.splitTriangle(p, t);
+        else
+            this.splitEdge(p, t, e);
+
+        // Veraenderte Dreiecke neu abtasten:
+        for (int k = 0; k < mNumDirty; k++) {
+            int u = mDirty[k];
+            this.scan(u);
+            if (mHeapPos[u] < 0)
+                this.heapInsert(u);
+            else
+                this.heapUpdate(u);
+        }
+    }
+
+    private void splitTriangle(int p, int t)
+    {
+        int v0 = mTv[3 * t], v1 = mTv[3 * t + 1], v2 = mTv[3 * t + 2];
+        int n0 = mTn[3 * t], n1 = mTn[3 * t + 1], n2 = mTn[3 * t + 2];
+        int t1 = mNumTri++, t2 = mNumTri++;
+        this.setTriangle(t, v0, v1, p, n0, t1, t2);
+        this.setTriangle(t1, v1, v2, p, n1, t2, t);
+        this.setTriangle(t2, v2, v0, p, n2, t, t1);
+        this.replaceNeighbor(n1, t, t1);
+        this.replaceNeighbor(n2, t, t2);
+        this.legalize(t, 0);
+        this.legalize(t1, 0);
+        this.legalize(t2, 0);
+    }
+
+    private void splitEdge(int p, int t, int e)
+    {
+        // t = (a, b, c), p liegt auf der Kante (a, b); u = (b, a, d) ist das Nachbardreieck
+        int a = mTv[3 * t + e], b = mTv[3 * t + (e + 1) % 3], c = mTv[3 * t + (e + 2) % 3];
+        int nBC = mTn[3 * t + (e + 1) % 3], nCA = mTn[3 * t + (e + 2) % 3];
+        int u = mTn[3 * t + e];
+        int t2 = mNumTri++;
+        if (u < 0) {
+            this.setTriangle(t, a, p, c, -1, t2, nCA);
+            this.setTriangle(t2, p, b, c, -1, nBC, t);
+            this.replaceNeighbor(nBC, t, t2);
+            this.legalize(t, 2);
+            this.legalize(t2, 1);
+            return;
+        }
+        int m = this.edgeIndex(u, t);
+        int d = mTv[3 * u + (m + 2) % 3];
+        int nAD = mTn[3 * u + (m + 1) % 3], nDB = mTn[3 * u + (m + 2) % 3];
+        int u2 = mNumTri++;
+        this.setTriangle(t, a, p, c, u2, t2, nCA);
+        this.setTriangle(t2, p, b, c, u, nBC, t);
+        this.setTriangle(u, b, p, d, t2, u2, nDB);
+        this.setTriangle(u2, p, a, d, t, nAD, u);
+        this.replaceNeighbor(nBC, t, t2);
+        this.replaceNeighbor(nAD, u, u2);
+        this.legalize(t, 2);
+        this.legalize(t2, 1);
+        this.legalize(u, 2);
+        this.legalize(u2, 1);
+    }
+
+    private void legalize(int pTri, int pEdge)
+    {
+        // Kantentausch nach Lawson; Stapel enthaelt Paare (Dreieck, Kante), Punkt p liegt der Kante gegenueber
+        int lTop = 0;
+        mStack[lTop++] = pTri;
+        mStack[lTop++] = pEdge;
+        while (lTop > 0) {
+            int e = mStack[--lTop];
+            int t = mStack[--lTop];
+            int u = mTn[3 * t + e];
+            if (u < 0)
+                continue;
+            int a = mTv[3 * t + e], b = mTv[3 * t + (e + 1) % 3], p = mTv[3 * t + (e + 2) % 3];
+            int m = this.edgeIndex(u, t);
+            int d = mTv[3 * u + (m + 2) % 3];
+            if (!this.inCircle(a, b, p, d))
+                continue;
+            int nBP = mTn[3 * t + (e + 1) % 3], nPA = mTn[3 * t + (e + 2) % 3];
+            int nAD = mTn[3 * u + (m + 1) % 3], nDB = mTn[3 * u + (m + 2) % 3];
+            this.setTriangle(t, a, d, p, nAD, u, nPA);
+            this.setTriangle(u, d, b, p, nDB, nBP, t);
+            this.replaceNeighbor(nAD, u, t);
+            this.replaceNeighbor(nBP, t, u);
+            if (lTop + 4 > mStack.length) {
+                int[] lStack = new int[2 * mStack.length];
+                System.arraycopy(mStack, 0, lStack, 0, lTop);
+                mStack = lStack;
+            }
+            mStack[lTop++] = t;
+            mStack[lTop++] = 0;
+            mStack[lTop++] = u;
+            mStack[lTop++] = 0;
+        }
+    }
+
+    private void scan(int t)
+    {
+        // Kandidaten ermitteln: Gitterpunkt mit groesster Abweichung von der Dreiecksebene
+        int va = mTv[3 * t], vb = mTv[3 * t + 1], vc = mTv[3 * t + 2];
+        int ax = va % mCols, ay = va / mCols, bx = vb % mCols, by = vb / mCols, cx = vc % mCols, cy = vc / mCols;
+        double za = mZ[va], zb = mZ[vb], zc = mZ[vc];
+        double det = (double) (bx - ax) * (cy - ay) - (double) (by - ay) * (cx - ax);
+        double gx = ((zb - za) * (cy - ay) - (zc - za) * (by - ay)) / det;
+        double gy = ((zc - za) * (bx - ax) - (zb - za) * (cx - ax)) / det;
+
+        int lCand = -1;
+        double lErr = -1.;
+        int y0 = Math.min(ay, Math.min(by, cy)), y1 = Math.max(ay, Math.max(by, cy));
+        int x0 = Math.min(ax, Math.min(bx, cx)), x1 = Math.max(ax, Math.max(bx, cx));
+        int[] vx = {ax, bx, cx}, vy = {ay, by, cy};
+        for (int y = y0; y <= y1; y++) {
+            // Spaltenbereich innerhalb des Dreiecks exakt bestimmen:
+            int xl = x0, xr = x1;
+            for (int k = 0; k < 3 && xl <= xr; k++) {
+                int px = vx[k], py = vy[k], dx = vx[(k + 1) % 3] - px, dy = vy[(k + 1) % 3] - py;
+                // Bedingung dx * (y - py) - dy * (x - px) >= 0
+                long lNum = (long) dx * (y - py);
+                if (dy > 0)
+                    xr = Math.min(xr, px + (int) floorDiv(lNum, dy));
+                else if (dy < 0)
+                    xl = Math.max(xl, px + (int) -floorDiv(lNum, -dy));
+                else if (lNum < 0)
+                    xr = xl - 1;
+            }
+            int lRow = y * mCols;
+            double lPlane = za + gy * (y - ay) + gx * (xl - ax);
+            for (int x = xl; x <= xr; x++, lPlane += gx) {
+                int k = lRow + x;
+                double lDiff = Math.abs(mZ[k] - lPlane);
+                if (lDiff > lErr && k != va && k != vb && k != vc) {
+                    lErr = lDiff;
+                    lCand = k;
+                }
+            }
+        }
+        mCand[t] = lCand;
+        mErr[t] = lErr;
+    }
+
+    private static long floorDiv(long pNum, long pDen) {
+        // pDen > 0
+        return pNum >= 0 ? pNum / pDen : -((-pNum + pDen - 1) / pDen);
+    }
+
+    private long orient(int pA, int pB, int px, int py) {
+        long ax = pA % mCols, ay = pA / mCols, bx = pB % mCols, by = pB / mCols;
+        return (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+    }
+
+    private boolean inCircle(int pA, int pB, int pC, int pD) {
+        return inCircle(
+            pA % mCols, pA / mCols, pB % mCols, pB / mCols, pC % mCols, pC / mCols, pD % mCols, pD / mCols);
+    }
+
+    /**
+     * checks if the point d lies strictly inside the circumcircle of the counter-clockwise triangle (a, b, c). The
+     * test is exact for all integer grid coordinates.<br /><br />
+     * <i>German:</i> pr&uuml;ft, ob der Punkt d echt innerhalb des Umkreises des gegen den Uhrzeigersinn
+     * orientierten Dreiecks (a, b, c) liegt. Der Test ist f&uuml;r alle ganzzahligen Gitterkoordinaten exakt (die
+     * Determinante &uuml;bersteigt schon ab etwa 30000 Gitterzellen den <tt>long</tt>-Wertebereich).
+     * @return <i>true</i>, falls d innerhalb des Umkreises liegt
+     */
+    static boolean inCircle(long ax, long ay, long bx, long by, long cx, long cy, long dx, long dy)
+    {
+        long adx = ax - dx, ady = ay - dy;
+        long bdx = bx - dx, bdy = by - dy;
+        long cdx = cx - dx, cdy = cy - dy;
+        double lA = (double) (adx * adx + ady * ady) * (double) (bdx * cdy - cdx * bdy);
+        double lB = (double) (bdx * bdx + bdy * bdy) * (double) (cdx * ady - adx * cdy);
+        double lC = (double) (cdx * cdx + cdy * cdy) * (double) (adx * bdy - bdx * ady);
+        double lDet = lA + lB + lC;
+        // Gleitkomma-Ergebnis nur verwenden, wenn das Vorzeichen trotz Rundungsfehlern gesichert ist:
+        if (Math.abs(lDet) > 1.e-12 * (Math.abs(lA) + Math.abs(lB) + Math.abs(lC)))
+            return lDet > 0.;
+        BigInteger lExact = BigInteger.valueOf(adx * adx + ady * ady).multiply(BigInteger.valueOf(bdx * cdy - cdx * bdy))
+            .add(BigInteger.valueOf(bdx * bdx + bdy * bdy).multiply(BigInteger.valueOf(cdx * ady - adx * cdy)))
+            .add(BigInteger.valueOf(cdx * cdx + cdy * cdy).multiply(BigInteger.valueOf(adx * bdy - bdx * ady)));
+        return lExact.signum() > 0;
+    }
+
+    private int edgeIndex(int u, int t) {
+        for (int k = 0; k < 3; k++) {
+            if (mTn[3 * u + k] == t)
+                return k;
+        }
+        throw new T3dException("Inconsistent triangulation.");
+    }
+
+    private void replaceNeighbor(int u, int pOld, int pNew) {
+        if (u >= 0)
+            mTn[3 * u + this.edgeIndex(u, pOld)] = pNew;
+    }
+
+    private void setTriangle(int t, int v0, int v1, int v2, int n0, int n1, int n2)
+    {
+        mTv[3 * t] = v0; mTv[3 * t + 1] = v1; mTv[3 * t + 2] = v2;
+        mTn[3 * t] = n0; mTn[3 * t + 1] = n1; mTn[3 * t + 2] = n2;
+        if (mDirtyMark.length > t && mDirtyMark[t] != mInsertion) {
+            mDirtyMark[t] = mInsertion;
+            if (mNumDirty >= mDirty.length) {
+                int[] lDirty = new int[2 * mDirty.length];
+                System.arraycopy(mDirty, 0, lDirty, 0, mNumDirty);
+                mDirty = lDirty;
+            }
+            mDirty[mNumDirty++] = t;
+        }
+    }
+
+    private void reserve(int pNumTri)
+    {
+        int lCap = mTv.length / 3;
+        if (pNumTri <= lCap)
+            return;
+        lCap = Math.max(pNumTri, 2 * lCap);
+        mTv = grow(mTv, 3 * lCap);
+        mTn = grow(mTn, 3 * lCap);
+        mCand = grow(mCand, lCap);
+        double[] lErr = new double[lCap];
+        System.arraycopy(mErr, 0, lErr, 0, mErr.length);
+        mErr = lErr;
+        mHeap = grow(mHeap, lCap);
+        int lOld = mHeapPos.length;
+        mHeapPos = grow(mHeapPos, lCap);
+        for (int t = lOld; t < lCap; t++)
+            mHeapPos[t] = -1;
+        if (mDirtyMark.length > 0)
+            mDirtyMark = grow(mDirtyMark, lCap);
+    }
+
+    private static int[] grow(int[] pArr, int pLen) {
+        int[] lRes = new int[pLen];
+        System.arraycopy(pArr, 0, lRes, 0, pArr.length);
+        return lRes;
+    }
+
+    private void heapInsert(int t) {
+        mHeap[mHeapSize] = t;
+        mHeapPos[t] = mHeapSize++;
+        this.siftUp(mHeapPos[t]);
+    }
+
+    private void heapUpdate(int t) {
+        this.siftUp(mHeapPos[t]);
+        this.siftDown(mHeapPos[t]);
+    }
+
+    private void siftUp(int k)
+    {
+        int t = mHeap[k];
+        while (k > 0) {
+            int lParent = (k - 1) / 2;
+            if (mErr[mHeap[lParent]] >= mErr[t])
+                break;
+            mHeap[k] = mHeap[lParent];
+            mHeapPos[mHeap[k]] = k;
+            k = lParent;
+        }
+        mHeap[k] = t;
+        mHeapPos[t] = k;
+    }
+
+    private void siftDown(int k)
+    {
+        int t = mHeap[k];
+        while (2 * k + 1 < mHeapSize) {
+            int lChild = 2 * k + 1;
+            if (lChild + 1 < mHeapSize && mErr[mHeap[lChild + 1]] > mErr[mHeap[lChild]])
+                lChild++;
+            if (mErr[mHeap[lChild]] <= mErr[t])
+                break;
+            mHeap[k] = mHeap[lChild];
+            mHeapPos[mHeap[k]] = k;
+            k = lChild;
+        }
+        mHeap[k] = t;
+        mHeapPos[t] = k;
+    }
+
+    private Tin result(GmSimpleElevationGrid pGrid)
+    {
+        // Verwendete Gitterpunkte fortlaufend numerieren:
+        int[] lIndex = new int[mRows * mCols];
+        for (int k = 0; k < lIndex.length; k++)
+            lIndex[k] = -1;
+        int lNumPoints = 0;
+        for (int k = 0; k < 3 * mNumTri; k++) {
+            if (lIndex[mTv[k]] < 0)
+                lIndex[mTv[k]] = lNumPoints++;
+        }
+        int[] lPoints = new int[lNumPoints];
+        for (int k = 0; k < lIndex.length; k++) {
+            if (lIndex[k] >= 0)
+                lPoints[lIndex[k]] = k;
+        }
+        int[] lTriangles = new int[3 * mNumTri];
+        for (int k = 0; k < 3 * mNumTri; k++)
+            lTriangles[k] = lIndex[mTv[k]];
+        double lMaxErr = 0.;
+        for (int t = 0; t < mNumTri; t++)
+            lMaxErr = Math.max(lMaxErr, mErr[t]);
+        return new Tin(pGrid, lPoints, lTriangles, lMaxErr);
+    }
+
+    /**
+     * Triangulated irregular network made up of grid points.<br /><br />
+     * <i>German:</i> Dreiecksnetz aus Punkten eines H&ouml;henmodells.
+     */
+    public static class Tin
+    {
+        private GmSimpleElevationGrid mGrid;
+        private int[] mPoints;
+        private int[] mTriangles;
+        private double mMaxError;
+
+        Tin(GmSimpleElevationGrid pGrid, int[] pPoints, int[] pTriangles, double pMaxError) {
+            mGrid = pGrid;
+            mPoints = pPoints;
+            mTriangles = pTriangles;
+            mMaxError = pMaxError;
+        }
+
+        /**
+         * returns the underlying grid.<br /><br />
+         * <i>German:</i> liefert das zugrundeliegende H&ouml;henmodell.
+         * @return H&ouml;henmodell
+         */
+        public GmSimpleElevationGrid getGrid() {
+            return mGrid;
+        }
+
+        /**
+         * returns the number of TIN points.<br /><br />
+         * <i>German:</i> liefert die Anzahl der Netzpunkte.
+         * @return Punktanzahl
+         */
+        public int numberOfPoints() {
+            return mPoints.length;
+        }
+
+        /**
+         * returns the number of triangles.<br /><br />
+         * <i>German:</i> liefert die Anzahl der Dreiecke.
+         * @return Dreiecksanzahl
+         */
+        public int numberOfTriangles() {
+            return mTriangles.length / 3;
+        }
+
+        /**
+         * returns the grid row of a TIN point.<br /><br />
+         * <i>German:</i> liefert die Gitterzeile eines Netzpunkts.
+         * @param pPoint Punktindex
+         * @return Zeilenindex
+         */
+        public int getRow(int pPoint) {
+            return mPoints[pPoint] / mGrid.numberOfColumns();
+        }
+
+        /**
+         * returns the grid column of a TIN point.<br /><br />
+         * <i>German:</i> liefert die Gitterspalte eines Netzpunkts.
+         * @param pPoint Punktindex
+         * @return Spaltenindex
+         */
+        public int getColumn(int pPoint) {
+            return mPoints[pPoint] % mGrid.numberOfColumns();
+        }
+
+        /**
+         * returns a corner point index of a triangle. The corners are ordered counter-clockwise (seen from
+         * above).<br /><br />
+         * <i>German:</i> liefert den Punktindex einer Dreiecksecke. Die Ecken sind (von oben gesehen) gegen den
+         * Uhrzeigersinn angeordnet.
+         * @param pTriangle Dreiecksindex
+         * @param pCorner Ecke (0, 1 oder 2)
+         * @return Punktindex
+         */
+        public int getCorner(int pTriangle, int pCorner) {
+            return mTriangles[3 * pTriangle + pCorner];
+        }
+
+        /**
+         * returns the maximum vertical deviation between the TIN and the grid.<br /><br />
+         * <i>German:</i> liefert die maximale vertikale Abweichung zwischen TIN und Gitter.
+         * @return Abweichung in H&ouml;heneinheiten
+         */
+        public double getMaxError() {
+            return mMaxError;
+        }
+    }
+}
@@ -47,6 +47,11 @@ import javax.servlet.http.HttpSession;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.n52.v3d.terrainserver.demservice.DEMServiceHelpers;
+import org.n52.v3d.terrainserver.demservice.GridResampler;
+import org.n52.v3d.terrainserver.demservice.TileCache;
+import org.n52.v3d.terrainserver.demservice.TileManifest;
+import org.n52.v3d.terrainserver.web.AsyncRequestExecutor;
+import org.n52.v3d.terrainserver.web.CompressionFilter;
 import org.n52.v3d.triturus.core.T3dException;
 import org.n52.v3d.triturus.core.T3dExceptionMessage;
 import org.n52.v3d.triturus.gisimplm.GmEnvelope;
@@ -83,6 +88,9 @@ public class WebTerrainServlet extends HttpServlet
     private Log sLogger = LogFactory.getLog(WebTerrainServlet.class);
 
     private static int mCounter = 0;
+
+    private AsyncRequestExecutor mExecutor = null; // Bearbeitung der Anfragen im eigenen Thread-Pool
+    private static final int sWorkerHeadroom = 2; // Worker-Threads zusaetzlich zu MaxRendererInstances
     private static short mRendererInstances = 0;
     private static TimeSliceAssigner mTimeSliceAssigner = null;
    
@@ -102,6 +110,10 @@ public class WebTerrainServlet extends HttpServlet
     private double mMinCellSize = 50.;
     private double mMinCellSizeLatLon = 4.629627e-4;
     private double mSearchRadiusMin = 49.99;
+    private boolean mBuildBinaryTiles = false;
+    private int mGriddingParallelism = 1;
+    private boolean mUseTileManifest = false;
+    private String mInterpolation = GridResampler.sInverseDistance;
     private boolean mWebConnectProxySet;
     private String mWebConnectProxyHost;
     private int mWebConnectProxyPort;
@@ -149,6 +161,15 @@ public class WebTerrainServlet extends HttpServlet
         mMinCellSize = Double.parseDouble(this.getInitParameter("MinCellSize"));
         mMinCellSizeLatLon = Double.parseDouble(this.getInitParameter("MinCellSizeLatLon"));
         mSearchRadiusMin = Double.parseDouble(this.getInitParameter("SearchRadiusMin"));
+        mBuildBinaryTiles = Boolean.valueOf(this.getInitParameter("BuildBinaryTiles")).booleanValue();
+        if (this.getInitParameter("GriddingParallelism") != null)
+            mGriddingParallelism = Integer.parseInt(this.getInitParameter("GriddingParallelism").trim());
+        mUseTileManifest = Boolean.valueOf(this.getInitParameter("UseTileManifest")).booleanValue();
+        if (mUseTileManifest)
+            TileManifest.getInstance(mSourceGridPath); // Quellkacheln einmalig erfassen
+        if (this.getInitParameter("Interpolation") != null)
+            mInterpolation = new org.n52.v3d.terrainserver.demservice.ParameterPreparer().prepareINTERPOLATION(
+                this.getInitParameter("Interpolation"));
         mWebConnectProxySet = Boolean.valueOf(this.getInitParameter("WebConnectProxySet")).booleanValue();
         mWebConnectProxyHost = this.getInitParameter("WebConnectProxyHost");
         mWebConnectProxyPort = Integer.parseInt(this.getInitParameter("WebConnectProxyPort"));
@@ -192,6 +213,19 @@ public class WebTerrainServlet extends HttpServlet
             mTimeSliceAssigner = new TimeSliceAssigner(mMaxWaitTime, mTimeSliceDuration);
 
         T3dExceptionMessage.getInstance().readConfiguration(mErrMsgFile);
+
+        // Rendering-Anfragen warten ggf. auf ihre Zeitscheibe oder auf POV-Ray; dies belegt nur Threads dieses
+        // Pools. Voreinstellung daher: ein Thread je Renderer-Instanz zuzueglich Reserve fuer wartende Anfragen.
+        mExecutor = AsyncRequestExecutor.fromConfig(pConf, mMaxRendererInstances + sWorkerHeadroom, 20);
+    }
+
+    /**
+     * beendet das Servlet.<p>
+     */
+    public void destroy() {
+        if (mExecutor != null)
+            mExecutor.shutdown();
+        super.destroy();
     }
 
     private HttpRequestParams fetchRequestParameters(HttpServletRequest pReq)
@@ -246,7 +280,10 @@ public class WebTerrainServlet extends HttpServlet
     }
 
     /**
-     * bearbeitet HTTP-Get-Anfragen an das Servlet.<p>
+     * bearbeitet HTTP-Get-Anfragen an das Servlet. Die Bearbeitung erfolgt asynchron im Thread-Pool des Dienstes
+     * (vgl. <tt>AsyncRequestExecutor</tt>), so dass wartende Anfragen keine Container-Threads belegen.
+     * <tt>GetCapabilities</tt>-Anfragen werden sofort im Container-Thread beantwortet, damit sie nicht hinter
+     * Rendering-Anfragen warten oder bei voller Warteschlange abgewiesen werden.<p>
      * @param pRequest HTTP-Anfrage-Objekt
      * @param pResponse HTTP-Antwort-Objekt
      * @throws ServletException
@@ -254,6 +291,33 @@ public class WebTerrainServlet extends HttpServlet
      */
     public void doGet(HttpServletRequest pRequest, HttpServletResponse pResponse)
         throws ServletException, IOException
+    {
+        if (isCapabilitiesRequest(pRequest)) {
+            this.processRequest(pRequest, pResponse);
+            return;
+        }
+        mExecutor.execute(pRequest, pResponse, new AsyncRequestExecutor.Handler() {
+            public void handle(HttpServletRequest pReq, HttpServletResponse pResp) throws ServletException, IOException {
+                processRequest(pReq, pResp);
+            }
+        });
+    }
+
+    // prueft, ob eine GetCapabilities-Anfrage vorliegt (Voreinstellung bei fehlendem REQUEST-Parameter)
+    private static boolean isCapabilitiesRequest(HttpServletRequest pRequest)
+    {
+        java.util.Iterator it = pRequest.getParameterMap().keySet().iterator();
+        while (it.hasNext()) {
+            String lName = (String) it.next();
+            if (lName.equalsIgnoreCase("REQUEST"))
+                return "GetCapabilities".equalsIgnoreCase(pRequest.getParameter(lName));
+        }
+        return true;
+    }
+
+    // bearbeitet eine Anfrage im Worker-Thread
+    private void processRequest(HttpServletRequest pRequest, HttpServletResponse pResponse)
+        throws ServletException, IOException
     {
         T3dTimeList lTimeProt = new T3dTimeList(); // zur Protokollierung der Rechenzeiten
         lTimeProt.addTimeStamp("init");
@@ -321,8 +385,10 @@ System.out.println("header: " + header + ",  value=" +  (String) headers.nextEle
             String lMonProtPasswd = (String) lReqParams.getParameterValue("MONPROTPASSWD");
 
             if (lRequest.equalsIgnoreCase("GetCapabilities")) {
-                HttpStandardResponse response = new HttpStandardResponse();
-                response.sendXMLFile(mCapabilitiesFile, pResponse);
+                if (!CompressionFilter.sendPrecompressed(mCapabilitiesFile, "text/xml", pRequest, pResponse)) {
+                    HttpStandardResponse response = new HttpStandardResponse();
+                    response.sendXMLFile(mCapabilitiesFile, pResponse);
+                }
                 this.logGetCapabilitiesInfo(lTmpName, pRequest);
                 return;
             }
@@ -663,6 +729,11 @@ System.out.println("header: " + header + ",  value=" +  (String) headers.nextEle
         if (lTerrain == null) { // CACHESCENE nicht gesetzt oder kein g�ltiges Terrain in Session
             DEMServiceHelpers lHlp = new DEMServiceHelpers(mMaxArea);
             lHlp.setLocalDebug(mLocalDebug);
+            lHlp.setBuildBinaryTiles(mBuildBinaryTiles);
+            lHlp.setParallelism(mGriddingParallelism);
+            if (mUseTileManifest)
+                lHlp.setTileManifest(TileManifest.getInstance(mSourceGridPath));
+            lHlp.setInterpolation(mInterpolation);
             double lCellSize = Math.min(pBBox.getExtentX()/pHeight, pBBox.getExtentY()/pWidth);
             if (pBBox.hasGeographicSRS())
                 lCellSize = Math.max(lCellSize, mMinCellSizeLatLon);
@@ -1290,6 +1361,13 @@ System.out.println("header: " + header + ",  value=" +  (String) headers.nextEle
         res = res + "\n";
         res = res + "Session lifetime:         " + mSessionMaxInactiveInterval + " sec\n";
 
+        res = res + "\n";
+        res = res + "Tile cache:               ";
+        if (!TileCache.getInstance().isEnabled())
+            res = res + "not present" + "\n";
+        else
+            res = res + TileCache.getInstance().statistics() + "\n";
+
         res = res + "\n";
         res = res + "Max. renderer instances:  " + mMaxRendererInstances + "\n";
 
@@ -51,7 +51,7 @@ public class ParameterPreparer
     /**
      * Aufbereitung/Pr�fung der FORMAT-Angabe.<p>
      * @param pVal getypter Request-Parameter aus <tt>HttpRequestParams</tt>
-     * @param pRequest Anfragetyp f�r Profildienst ("GetGraph" oder "GetElevation")
+     * @param pRequest Anfragetyp f�r Profildienst ("GetGraph", "GetElevation", "GetElevations" oder "GetProfileData")
      * @return aufbereiteter Wert
      */
     public String prepareFORMAT(String pVal, String pRequest) {
@@ -66,9 +66,29 @@ public class ParameterPreparer
             if (! (str.equals("text/plain") || str.equals("text/html") || str.equals("text/xml") || str.equals("text/comma-separated-values")))
                 throw new T3dException("The specified FORMAT \"" + str + "\" is not supported by GetElevation-requests.");
         }
+        if (pRequest.equalsIgnoreCase("GetElevations")) {
+            if (! (str.equals("text/comma-separated-values") || str.equals("text/csv") || str.equals("application/json")))
+                throw new T3dException("The specified FORMAT \"" + str + "\" is not supported by GetElevations-requests.");
+        }
+        if (pRequest.equalsIgnoreCase("GetProfileData")) {
+            if (! (str.equals("text/comma-separated-values") || str.equals("text/csv") || str.equals("application/json")
+                || str.equals("application/octet-stream")))
+                throw new T3dException("The specified FORMAT \"" + str + "\" is not supported by GetProfileData-requests.");
+        }
         return str;
     }
 
+    /**
+     * Aufbereitung/Pr&uuml;fung der MAXPOINTS-Angabe (0: keine Ausd&uuml;nnung).<p>
+     * @param pVal getypter Request-Parameter aus <tt>HttpRequestParams</tt>
+     * @return aufbereiteter Wert
+     */
+    public int prepareMAXPOINTS(int pVal) {
+        if (pVal < 0 || pVal == 1 || pVal == 2)
+            throw new T3dException("Invalid MAXPOINTS value. Please specify 0 (no decimation) or at least 3 points...");
+        return pVal;
+    }
+
     /**
      * Aufbereitung/Pr�fung der WIDTH-Angabe.<p>
      * @param pVal getypter Request-Parameter aus <tt>HttpRequestParams</tt>
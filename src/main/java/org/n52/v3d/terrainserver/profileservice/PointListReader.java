@@ -0,0 +1,242 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.profileservice;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.StringTokenizer;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Helper class to read the point lists of batch elevation requests.<br /><br />
+ * <i>German:</i> Hilfsklasse zum Einlesen der Punktlisten von Sammelanfragen (GetElevations). Unterst&uuml;tzt
+ * werden:
+ * <ul>
+ * <li>der Anfrage-Parameter POINTS in der Form <tt>x1,y1,z1,x2,y2,z2,...</tt> (wie DEFLINE; z-Werte werden
+ * ignoriert),</li>
+ * <li>CSV-Daten mit einer Position <tt>x,y[,...]</tt> je Zeile (Trennzeichen Komma, Semikolon, Leerzeichen oder
+ * Tabulator; eine Kopfzeile wird &uuml;berlesen),</li>
+ * <li>JSON-Daten, die Positionen als Koordinaten-Arrays <tt>[x,y(,z)]</tt> enthalten, z. B. <tt>[[x1,y1],[x2,y2]]</tt>
+ * oder ein GeoJSON-Objekt mit <tt>"coordinates"</tt>.</li>
+ * </ul>
+ * Wird die zul&auml;ssige Punktanzahl &uuml;berschritten, wird eine <tt>T3dException</tt> geworfen.
+ */
+public class PointListReader
+{
+    private int mMaxPoints;
+    private double[] mX = new double[256], mY = new double[256];
+    private int mCount = 0;
+
+    /**
+     * Constructor.<br /><br />
+     * <i>German:</i> Konstruktor.
+     * @param pMaxPoints maximal zul&auml;ssige Anzahl von Positionen
+     */
+    public PointListReader(int pMaxPoints) {
+        mMaxPoints = pMaxPoints;
+    }
+
+    /**
+     * parses the given coordinate list (POINTS parameter).<br /><br />
+     * <i>German:</i> liest die angegebene Koordinatenliste (Anfrage-Parameter POINTS) in der Form
+     * <tt>x1,y1,z1,x2,y2,z2,...</tt> ein.
+     * @param pVal Koordinatenliste
+     */
+    public void parseCoordinateList(String pVal)
+    {
+        StringTokenizer lTok = new StringTokenizer(pVal, ",");
+        if (lTok.countTokens() % 3 != 0)
+            throw new T3dException("Invalid POINTS value. Please specify x,y,z-triples...");
+        while (lTok.hasMoreTokens()) {
+            double x = this.parse(lTok.nextToken(), "POINTS");
+            double y = this.parse(lTok.nextToken(), "POINTS");
+            lTok.nextToken();
+            this.add(x, y);
+        }
+    }
+
+    /**
+     * reads CSV data containing one position per line.<br /><br />
+     * <i>German:</i> liest CSV-Daten mit einer Position je Zeile ein. Leerzeilen und eine Kopfzeile werden
+     * &uuml;berlesen.
+     * @param pIn Eingabe
+     * @throws IOException bei Lesefehlern
+     */
+    public void readCSV(Reader pIn) throws IOException
+    {
+        BufferedReader lIn = new BufferedReader(pIn);
+        String lLine;
+        int lLineNo = 0;
+        while ((lLine = lIn.readLine()) != null) {
+            lLineNo++;
+            StringTokenizer lTok = new StringTokenizer(lLine, ",; \t");
+            if (lTok.countTokens() == 0)
+                continue;
+            if (lTok.countTokens() < 2)
+                throw new T3dException("Invalid point list (line " + lLineNo + ").");
+            String lX = lTok.nextToken(), lY = lTok.nextToken();
+            if (mCount == 0 && !this.isNumber(lX))
+                continue; // Kopfzeile
+            this.add(this.parse(lX, "line " + lLineNo), this.parse(lY, "line " + lLineNo));
+        }
+    }
+
+    /**
+     * reads JSON data containing positions given as coordinate arrays.<br /><br />
+     * <i>German:</i> liest JSON-Daten ein. Als Position wird jedes Array interpretiert, das mindestens zwei Zahlen
+     * und keine weiteren Arrays enth&auml;lt; die ersten beiden Zahlen werden als x- und y-Koordinate verwendet.
+     * @param pIn Eingabe
+     * @throws IOException bei Lesefehlern
+     */
+    public void readJSON(Reader pIn) throws IOException
+    {
+        BufferedReader lIn = new BufferedReader(pIn);
+        StringBuffer lStack = new StringBuffer(); // offene Klammern '[' bzw. '{'
+        StringBuffer lNum = new StringBuffer();
+        double[] lVal = new double[2];
+        int lNumVals = 0;
+        boolean lInString = false, lEscaped = false;
+        int c;
+        while ((c = lIn.read()) >= 0) {
+            if (lInString) {
+                if (lEscaped)
+                    lEscaped = false;
+                else if (c == '\\')
+                    lEscaped = true;
+                else if (c == '"')
+                    lInString = false;
+                continue;
+            }
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.'
+                || ((c == 'e' || c == 'E') && lNum.length() > 0))
+            {
+                lNum.append((char) c);
+                continue;
+            }
+            if (lNum.length() > 0) {
+                // Zahl abschliessen; nur Zahlen innerhalb von Arrays sind Koordinaten
+                if (lStack.length() > 0 && lStack.charAt(lStack.length() - 1) == '[') {
+                    if (lNumVals < 2)
+                        lVal[lNumVals] = this.parse(lNum.toString(), "JSON");
+                    lNumVals++;
+                }
+                lNum.setLength(0);
+            }
+            switch (c) {
+                case '"':
+                    lInString = true;
+                    break;
+                case '[':
+                case '{':
+                    lStack.append((char) c);
+                    lNumVals = 0;
+                    break;
+                case ']':
+                case '}':
+                    if (lStack.length() <= 0)
+                        throw new T3dException("Invalid point list (unbalanced JSON brackets).");
+                    lStack.setLength(lStack.length() - 1);
+                    if (c == ']' && lNumVals >= 2)
+                        this.add(lVal[0], lVal[1]);
+                    lNumVals = 0;
+                    break;
+            }
+        }
+        if (lStack.length() > 0)
+            throw new T3dException("Invalid point list (unbalanced JSON brackets).");
+    }
+
+    /**
+     * returns the number of positions read so far.<br /><br />
+     * <i>German:</i> liefert die Anzahl der bislang eingelesenen Positionen.
+     * @return Anzahl der Positionen
+     */
+    public int numberOfPoints() {
+        return mCount;
+    }
+
+    /**
+     * returns the x-coordinates of the positions read so far.<br /><br />
+     * <i>German:</i> liefert die x-Koordinaten der bislang eingelesenen Positionen.
+     * @return Feld der L&auml;nge <tt>this.numberOfPoints()</tt>
+     */
+    public double[] getX() {
+        return this.trim(mX);
+    }
+
+    /**
+     * returns the y-coordinates of the positions read so far.<br /><br />
+     * <i>German:</i> liefert die y-Koordinaten der bislang eingelesenen Positionen.
+     * @return Feld der L&auml;nge <tt>this.numberOfPoints()</tt>
+     */
+    public double[] getY() {
+        return this.trim(mY);
+    }
+
+    private void add(double x, double y)
+    {
+        if (mCount >= mMaxPoints)
+            throw new T3dException("Too many points. Please split your request (max. " + mMaxPoints + " points).");
+        if (mCount >= mX.length) {
+            mX = this.grow(mX);
+            mY = this.grow(mY);
+        }
+        mX[mCount] = x;
+        mY[mCount] = y;
+        mCount++;
+    }
+
+    private double[] grow(double[] pArr)
+    {
+        double[] lRes = new double[2 * pArr.length];
+        System.arraycopy(pArr, 0, lRes, 0, pArr.length);
+        return lRes;
+    }
+
+    private double[] trim(double[] pArr)
+    {
+        double[] lRes = new double[mCount];
+        System.arraycopy(pArr, 0, lRes, 0, mCount);
+        return lRes;
+    }
+
+    private boolean isNumber(String pVal)
+    {
+        try {
+            Double.parseDouble(pVal.trim());
+            return true;
+        }
+        catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private double parse(String pVal, String pWhere)
+    {
+        try {
+            return Double.parseDouble(pVal.trim());
+        }
+        catch (NumberFormatException e) {
+            throw new T3dException("Invalid point list (" + pWhere + ": \"" + pVal.trim() + "\").");
+        }
+    }
+}
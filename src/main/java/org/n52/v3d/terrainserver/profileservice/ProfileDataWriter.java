@@ -0,0 +1,169 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.profileservice;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.vgis.VgLineString;
+import org.n52.v3d.triturus.vgis.VgPoint;
+
+/**
+ * Writes profile stations as compact chart data (GetProfileData response).<br /><br />
+ * <i>German:</i> schreibt Profilstationen als kompakte Diagrammdaten (Antwort auf GetProfileData-Anfragen). Die
+ * Stationen werden unmittelbar bei ihrer &Uuml;bergabe ausgegeben. Unterst&uuml;tzte Formate:
+ * <ul>
+ * <li><tt>text/comma-separated-values</tt> bzw. <tt>text/csv</tt>: eine Zeile <tt>t,x,y,z</tt> je Station,</li>
+ * <li><tt>application/json</tt>: Objekt mit den Eintr&auml;gen <tt>srs</tt>, <tt>vertices</tt> (St&uuml;tzpunkte der
+ * Profillinie als <tt>[t,x,y]</tt>) und <tt>stations</tt> (<tt>[t,x,y,z]</tt>),</li>
+ * <li><tt>application/octet-stream</tt>: je Station vier 32-Bit-Gleitkommazahlen (little-endian) <tt>t, z, dx,
+ * dy</tt>, wobei sich <tt>dx</tt> und <tt>dy</tt> auf den ersten St&uuml;tzpunkt der Profillinie beziehen (sonst
+ * reicht die Genauigkeit f&uuml;r Gau&szlig;-Kr&uuml;ger- oder UTM-Koordinaten nicht aus).</li>
+ * </ul>
+ * Stationen ohne H&ouml;heninformation (Datenl&uuml;cken) werden mit leerem <tt>z</tt>-Feld (CSV), <tt>null</tt>
+ * (JSON) bzw. <tt>NaN</tt> (bin&auml;r) ausgegeben.
+ */
+public class ProfileDataWriter implements ProfileSampler.StationHandler
+{
+    private static final int sCsv = 1, sJson = 2, sBinary = 3;
+
+    private int mFormat;
+    private OutputStream mOut;
+    private Writer mWriter = null;
+    private byte[] mRecord = new byte[16];
+    private double mX0, mY0;
+    private int mCount = 0;
+
+    /**
+     * Constructor.<br /><br />
+     * <i>German:</i> Konstruktor.
+     * @param pFormat MIME-Typ der Ausgabe
+     * @param pOut Ausgabestrom
+     */
+    public ProfileDataWriter(String pFormat, OutputStream pOut)
+    {
+        if (pFormat.equalsIgnoreCase("text/comma-separated-values") || pFormat.equalsIgnoreCase("text/csv"))
+            mFormat = sCsv;
+        else if (pFormat.equalsIgnoreCase("application/json"))
+            mFormat = sJson;
+        else if (pFormat.equalsIgnoreCase("application/octet-stream"))
+            mFormat = sBinary;
+        else
+            throw new T3dException("Unsupported profile data format \"" + pFormat + "\".");
+        mOut = new BufferedOutputStream(pOut);
+        if (mFormat != sBinary)
+            mWriter = new OutputStreamWriter(mOut);
+    }
+
+    /**
+     * writes the document head. This method has to be called before the first station is passed.<br /><br />
+     * <i>German:</i> schreibt den Dokumentkopf. Die Methode ist vor der &Uuml;bergabe der ersten Station
+     * aufzurufen.
+     * @param pDefLine Profillinie
+     * @param pSRS r&auml;umliches Bezugssystem
+     * @throws IOException bei Schreibfehlern
+     */
+    public void begin(VgLineString pDefLine, String pSRS) throws IOException
+    {
+        mX0 = pDefLine.getVertex(0).getX();
+        mY0 = pDefLine.getVertex(0).getY();
+        if (mFormat != sJson)
+            return;
+        mWriter.write("{\"srs\":\"" + pSRS + "\",\"vertices\":[");
+        double t = 0.;
+        for (int i = 0; i < pDefLine.numberOfVertices(); i++) {
+            VgPoint p = pDefLine.getVertex(i);
+            if (i > 0) {
+                VgPoint q = pDefLine.getVertex(i - 1);
+                t += Math.sqrt((p.getX() - q.getX()) * (p.getX() - q.getX()) + (p.getY() - q.getY()) * (p.getY() - q.getY()));
+                mWriter.write(",");
+            }
+            mWriter.write("[" + t + "," + p.getX() + "," + p.getY() + "]");
+        }
+        mWriter.write("],\"stations\":[");
+    }
+
+    /**
+     * writes a profile station.<br /><br />
+     * <i>German:</i> schreibt eine Profilstation.
+     * @param t Stationierung
+     * @param x x-Koordinate
+     * @param y y-Koordinate
+     * @param z H&ouml;henwert oder <tt>Double.NaN</tt> f&uuml;r Datenl&uuml;cken
+     * @throws IOException bei Schreibfehlern
+     */
+    public void station(double t, double x, double y, double z) throws IOException
+    {
+        boolean lGap = Double.isNaN(z);
+        switch (mFormat) {
+            case sCsv:
+                mWriter.write(t + "," + x + "," + y + "," + (lGap ? "" : String.valueOf(z)) + "\n");
+                break;
+            case sJson:
+                mWriter.write((mCount > 0 ? "," : "") + "[" + t + "," + x + "," + y + ","
+                    + (lGap ? "null" : String.valueOf(z)) + "]");
+                break;
+            case sBinary:
+                this.putFloat(0, t);
+                this.putFloat(4, z);
+                this.putFloat(8, x - mX0);
+                this.putFloat(12, y - mY0);
+                mOut.write(mRecord);
+                break;
+        }
+        mCount++;
+    }
+
+    /**
+     * completes the document and flushes the output stream. The stream will not be closed.<br /><br />
+     * <i>German:</i> schlie&szlig;t das Dokument ab und leert den Ausgabepuffer. Der Strom wird nicht geschlossen.
+     * @throws IOException bei Schreibfehlern
+     */
+    public void end() throws IOException
+    {
+        if (mFormat == sJson)
+            mWriter.write("]}\n");
+        if (mWriter != null)
+            mWriter.flush();
+        mOut.flush();
+    }
+
+    /**
+     * returns the number of stations written.<br /><br />
+     * <i>German:</i> liefert die Anzahl der geschriebenen Stationen.
+     * @return Anzahl der Stationen
+     */
+    public int numberOfStations() {
+        return mCount;
+    }
+
+    private void putFloat(int pOffset, double pVal)
+    {
+        int lBits = Float.floatToIntBits((float) pVal);
+        mRecord[pOffset] = (byte) lBits;
+        mRecord[pOffset + 1] = (byte) (lBits >>> 8);
+        mRecord[pOffset + 2] = (byte) (lBits >>> 16);
+        mRecord[pOffset + 3] = (byte) (lBits >>> 24);
+    }
+}
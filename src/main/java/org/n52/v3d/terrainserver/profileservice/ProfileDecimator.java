@@ -0,0 +1,136 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.profileservice;
+
+/**
+ * Decimation of profile stations for charting purposes ("Largest-Triangle-Three-Buckets" algorithm).<br /><br />
+ * <i>German:</i> Ausd&uuml;nnung von Profilstationen f&uuml;r die Diagrammdarstellung nach dem
+ * "Largest-Triangle-Three-Buckets"-Verfahren (LTTB, S. Steinarsson 2013). Die inneren Stationen werden in gleich
+ * gro&szlig;e Eimer aufgeteilt; aus jedem Eimer wird die Station gew&auml;hlt, die mit der zuvor gew&auml;hlten
+ * Station und dem Mittelpunkt des folgenden Eimers das gr&ouml;&szlig;te Dreieck bildet. Anfangs- und Endstation
+ * bleiben stets erhalten; Gipfel und Senken des Profils bleiben so weitgehend sichtbar.<br />
+ * Enth&auml;lt das Profil Datenl&uuml;cken (H&ouml;henwert <tt>Double.NaN</tt>), wird jeder zusammenh&auml;ngende
+ * Abschnitt getrennt ausged&uuml;nnt (Anteil an der Zielanzahl gem&auml;&szlig; seiner L&auml;nge, Anfangs- und
+ * Endstation bleiben erhalten); von jeder L&uuml;cke bleibt die erste Station als Markierung erhalten. Bei sehr
+ * vielen L&uuml;cken kann die Zielanzahl daher &uuml;berschritten werden.
+ */
+public class ProfileDecimator
+{
+    /**
+     * selects the stations to be kept.<br /><br />
+     * <i>German:</i> ermittelt die beizubehaltenden Stationen.
+     * @param t Stationierungen (aufsteigend sortiert)
+     * @param z H&ouml;henwerte
+     * @param n Anzahl der belegten Feldelemente
+     * @param pMaxPoints maximale Anzahl der Ergebnisstationen (mindestens 3)
+     * @return aufsteigend sortierte Indizes der beizubehaltenden Stationen
+     */
+    public static int[] select(double[] t, double[] z, int n, int pMaxPoints)
+    {
+        if (pMaxPoints < 3 || pMaxPoints >= n) {
+            int[] lAll = new int[n];
+            for (int i = 0; i < n; i++)
+                lAll[i] = i;
+            return lAll;
+        }
+
+        // Datenluecken ermitteln (Luecken-Markierungen zaehlen zur Zielanzahl):
+        int lGaps = 0, lValid = 0;
+        for (int i = 0; i < n; i++) {
+            if (Double.isNaN(z[i])) {
+                if (i == 0 || !Double.isNaN(z[i - 1]))
+                    lGaps++;
+            }
+            else
+                lValid++;
+        }
+        if (lGaps == 0)
+            return selectRun(t, z, 0, n, pMaxPoints);
+
+        int[] lRes = new int[n];
+        int lCount = 0;
+        int lBudget = Math.max(0, pMaxPoints - lGaps);
+        int i = 0;
+        while (i < n) {
+            if (Double.isNaN(z[i])) {
+                lRes[lCount++] = i; // Markierung
+                while (i < n && Double.isNaN(z[i]))
+                    i++;
+                continue;
+            }
+            int lFrom = i;
+            while (i < n && !Double.isNaN(z[i]))
+                i++;
+            int lMax = Math.max(3, (int) Math.round((double) lBudget * (i - lFrom) / lValid));
+            int[] lSel = selectRun(t, z, lFrom, i, lMax);
+            System.arraycopy(lSel, 0, lRes, lCount, lSel.length);
+            lCount += lSel.length;
+        }
+        int[] lShrunk = new int[lCount];
+        System.arraycopy(lRes, 0, lShrunk, 0, lCount);
+        return lShrunk;
+    }
+
+    // LTTB fuer die Stationen pFrom (einschl.) bis pTo (ausschl.) ohne Datenluecken
+    private static int[] selectRun(double[] t, double[] z, int pFrom, int pTo, int pMaxPoints)
+    {
+        int n = pTo - pFrom;
+        if (pMaxPoints < 3 || pMaxPoints >= n) {
+            int[] lAll = new int[n];
+            for (int i = 0; i < n; i++)
+                lAll[i] = pFrom + i;
+            return lAll;
+        }
+
+        int[] lRes = new int[pMaxPoints];
+        double lBucket = (double) (n - 2) / (pMaxPoints - 2); // Eimergroesse ohne Anfangs- und Endstation
+        int a = pFrom; // zuletzt gewaehlte Station
+        lRes[0] = pFrom;
+        for (int i = 0; i < pMaxPoints - 2; i++) {
+            // Mittelpunkt des folgenden Eimers (fuer den letzten Eimer: Endstation):
+            int lAvgFrom = pFrom + (int) Math.floor((i + 1) * lBucket) + 1;
+            int lAvgTo = pFrom + Math.min((int) Math.floor((i + 2) * lBucket) + 1, n);
+            double lAvgT = 0., lAvgZ = 0.;
+            for (int j = lAvgFrom; j < lAvgTo; j++) {
+                lAvgT += t[j];
+                lAvgZ += z[j];
+            }
+            lAvgT /= (lAvgTo - lAvgFrom);
+            lAvgZ /= (lAvgTo - lAvgFrom);
+
+            // Station des aktuellen Eimers mit groesster Dreiecksflaeche waehlen:
+            int lFrom = pFrom + (int) Math.floor(i * lBucket) + 1;
+            int lTo = pFrom + (int) Math.floor((i + 1) * lBucket) + 1;
+            double lMaxArea = -1.;
+            int lSel = lFrom;
+            for (int j = lFrom; j < lTo; j++) {
+                double lArea = Math.abs((t[a] - lAvgT) * (z[j] - z[a]) - (t[a] - t[j]) * (lAvgZ - z[a]));
+                if (lArea > lMaxArea) {
+                    lMaxArea = lArea;
+                    lSel = j;
+                }
+            }
+            lRes[i + 1] = lSel;
+            a = lSel;
+        }
+        lRes[pMaxPoints - 1] = pTo - 1;
+        return lRes;
+    }
+}
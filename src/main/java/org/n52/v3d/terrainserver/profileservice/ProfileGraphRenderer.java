@@ -0,0 +1,383 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.profileservice;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.vgis.VgProfile;
+
+/**
+ * Renders profile graphs in memory, either as SVG document or as PNG image.<br /><br />
+ * <i>German:</i> Darstellung von Profilgraphen im Speicher, wahlweise als SVG-Dokument oder als PNG-Bild. Beide
+ * Ausgaben verwenden dasselbe Layout (Achsen mit Gitternetz und Beschriftung, Gel&auml;ndefl&auml;che unter der
+ * Profilkurve); die PNG-Ausgabe wird mittels Java2D gezeichnet und genau einmal kodiert. Tempor&auml;re Dateien
+ * werden nicht angelegt. Das SVG-Layout entspricht nicht dem des triturus-<tt>IoProfileWriter</tt>.<br />
+ * Die vertikale &Uuml;berh&ouml;hung (vgl. <tt>setExaggeration()</tt>) bezieht sich auf den horizontalen
+ * Ma&szlig;stab; passt das Profil mit der vorgegebenen &Uuml;berh&ouml;hung nicht in das Bild, wird der
+ * H&ouml;henbereich stattdessen an die Bildh&ouml;he angepasst. An Stationen ohne H&ouml;heninformation (H&ouml;henwert <tt>Double.NaN</tt>) werden
+ * Profilkurve und Gel&auml;ndefl&auml;che unterbrochen.
+ */
+public class ProfileGraphRenderer
+{
+    private static final int sMarginLeft = 56, sMarginRight = 16, sMarginTop = 16, sMarginBottom = 36;
+
+    private static final Color sBackgroundColor = Color.white;
+    private static final Color sGridColor = new Color(0xdd, 0xdd, 0xdd);
+    private static final Color sAxisColor = Color.black;
+    private static final Color sTerrainColor = new Color(0xd9, 0xc8, 0xa0);
+    private static final Color sProfileColor = new Color(0x8b, 0x45, 0x13);
+
+    private int mWidth, mHeight;
+    private String mFontName = "SansSerif";
+    private int mFontSize = 11;
+    private double mExaggeration = 0.;
+
+    // Abbildung auf Bildkoordinaten:
+    private double mTMin, mTMax, mZMin, mZMax;
+
+    /**
+     * Constructor.<br /><br />
+     * <i>German:</i> Konstruktor.
+     * @param pWidth Bildbreite in Pixeln
+     * @param pHeight Bildh&ouml;he in Pixeln
+     */
+    public ProfileGraphRenderer(int pWidth, int pHeight)
+    {
+        if (pWidth <= sMarginLeft + sMarginRight || pHeight <= sMarginTop + sMarginBottom)
+            throw new T3dException("Image size " + pWidth + "x" + pHeight + " is too small for a profile graph.");
+        mWidth = pWidth;
+        mHeight = pHeight;
+    }
+
+    /**
+     * sets the vertical exaggeration relative to the horizontal scale. For values &lt;= 0 (default), the elevation
+     * range will be fitted to the image height.<br /><br />
+     * <i>German:</i> setzt die vertikale &Uuml;berh&ouml;hung bezogen auf den horizontalen Ma&szlig;stab. F&uuml;r
+     * Werte &lt;= 0 (Voreinstellung) wird der H&ouml;henbereich an die Bildh&ouml;he angepasst.
+     * @param pExaggeration &Uuml;berh&ouml;hungsfaktor
+     */
+    public void setExaggeration(double pExaggeration) {
+        mExaggeration = pExaggeration;
+    }
+
+    /**
+     * writes the profile graph as SVG document to the given writer.<br /><br />
+     * <i>German:</i> schreibt den Profilgraphen als SVG-Dokument. Der Writer wird nicht geschlossen.
+     * @param pProfile Profil
+     * @param pOut Ausgabe
+     * @throws IOException bei Schreibfehlern
+     */
+    public void writeSVG(VgProfile pProfile, Writer pOut) throws IOException
+    {
+        SvgCanvas lCanvas = new SvgCanvas(pOut);
+        pOut.write("<?xml version=\"1.0\" encoding=\"ISO-8859-1\" standalone=\"no\"?>\n");
+        pOut.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + mWidth + "\" height=\"" + mHeight
+            + "\" viewBox=\"0 0 " + mWidth + " " + mHeight + "\" font-family=\"" + mFontName
+            + "\" font-size=\"" + mFontSize + "\">\n");
+        this.draw(pProfile, lCanvas);
+        pOut.write("</svg>\n");
+        pOut.flush();
+    }
+
+    /**
+     * writes the profile graph as PNG image to the given stream.<br /><br />
+     * <i>German:</i> schreibt den Profilgraphen als PNG-Bild. Der Strom wird nicht geschlossen.
+     * @param pProfile Profil
+     * @param pOut Ausgabestrom
+     * @throws IOException bei Schreibfehlern
+     */
+    public void writePNG(VgProfile pProfile, OutputStream pOut) throws IOException
+    {
+        BufferedImage lImage = this.renderImage(pProfile);
+        ImageIO.setUseCache(false); // keine temporaeren Dateien
+        if (!ImageIO.write(lImage, "png", pOut))
+            throw new T3dException("No PNG image writer available.");
+        pOut.flush();
+    }
+
+    /**
+     * renders the profile graph into an image.<br /><br />
+     * <i>German:</i> zeichnet den Profilgraphen in ein Bild.
+     * @param pProfile Profil
+     * @return Bild
+     */
+    public BufferedImage renderImage(VgProfile pProfile)
+    {
+        BufferedImage lImage = new BufferedImage(mWidth, mHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = lImage.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setFont(new Font(mFontName, Font.PLAIN, mFontSize));
+            this.draw(pProfile, new Java2dCanvas(g));
+        }
+        catch (IOException e) {
+            throw new T3dException(e.getMessage()); // kann nicht auftreten
+        }
+        finally {
+            g.dispose();
+        }
+        return lImage;
+    }
+
+    private void draw(VgProfile pProfile, Canvas pCanvas) throws IOException
+    {
+        int n = pProfile.numberOfTZPairs();
+        double[] t = new double[n], z = new double[n];
+        for (int i = 0; i < n; i++) {
+            double[] tz = pProfile.getTZPair(i);
+            t[i] = tz[0];
+            z[i] = tz[1];
+        }
+        this.setUpScale(t, z);
+
+        double lX0 = sMarginLeft, lX1 = mWidth - sMarginRight;
+        double lY0 = mHeight - sMarginBottom, lY1 = sMarginTop;
+        pCanvas.fill(new double[] {0., mWidth, mWidth, 0.}, new double[] {0., 0., mHeight, mHeight}, 4, sBackgroundColor);
+
+        // Gitternetz und Achsenbeschriftung:
+        double lStep = this.tickStep(mTMax - mTMin, (lX1 - lX0) / 80.);
+        for (double v = Math.ceil(mTMin / lStep) * lStep; v <= mTMax + 1.e-9 * lStep; v += lStep) {
+            double x = this.px(v);
+            pCanvas.line(x, lY0, x, lY1, sGridColor);
+            pCanvas.text(this.format(v, lStep), x, lY0 + mFontSize + 4, 0, sAxisColor);
+        }
+        lStep = this.tickStep(mZMax - mZMin, (lY0 - lY1) / 40.);
+        for (double v = Math.ceil(mZMin / lStep) * lStep; v <= mZMax + 1.e-9 * lStep; v += lStep) {
+            double y = this.py(v);
+            pCanvas.line(lX0, y, lX1, y, sGridColor);
+            pCanvas.text(this.format(v, lStep), lX0 - 4, y + mFontSize / 3, 1, sAxisColor);
+        }
+
+        // Gelaendeflaeche und Profilkurve, jeweils abschnittsweise zwischen den Datenluecken:
+        double[] px = new double[n + 2], py = new double[n + 2];
+        int i = 0;
+        while (i < n) {
+            if (Double.isNaN(z[i])) {
+                i++;
+                continue;
+            }
+            int m = 0;
+            for (; i < n && !Double.isNaN(z[i]); i++, m++) {
+                px[m] = this.px(t[i]);
+                py[m] = this.py(z[i]);
+            }
+            if (m < 2)
+                continue; // einzelne Station zwischen zwei Luecken
+            px[m] = px[m - 1];
+            py[m] = lY0;
+            px[m + 1] = px[0];
+            py[m + 1] = lY0;
+            pCanvas.fill(px, py, m + 2, sTerrainColor);
+            pCanvas.polyline(px, py, m, sProfileColor);
+        }
+
+        // Achsen:
+        pCanvas.polyline(new double[] {lX0, lX0, lX1}, new double[] {lY1, lY0, lY0}, 3, sAxisColor);
+        pCanvas.text("Distance", (lX0 + lX1) / 2., mHeight - 4, 0, sAxisColor);
+        pCanvas.text("Elevation", 4, sMarginTop - 4, -1, sAxisColor);
+    }
+
+    private void setUpScale(double[] t, double[] z)
+    {
+        mTMin = Double.MAX_VALUE; mTMax = -Double.MAX_VALUE;
+        mZMin = Double.MAX_VALUE; mZMax = -Double.MAX_VALUE;
+        for (int i = 0; i < t.length; i++) {
+            mTMin = Math.min(mTMin, t[i]); mTMax = Math.max(mTMax, t[i]);
+            if (!Double.isNaN(z[i])) {
+                mZMin = Math.min(mZMin, z[i]); mZMax = Math.max(mZMax, z[i]);
+            }
+        }
+        if (t.length <= 0) {
+            mTMin = 0.; mTMax = 1.;
+        }
+        if (mZMin > mZMax) {
+            mZMin = 0.; mZMax = 1.;
+        }
+        if (mTMax - mTMin <= 0.) {
+            mTMin -= 1.; mTMax += 1.;
+        }
+        // Hoehenbereich um 5 % erweitern, damit die Kurve nicht am Rahmen liegt:
+        double lPad = Math.max(0.05 * (mZMax - mZMin), 1.);
+        mZMin -= lPad;
+        mZMax += lPad;
+
+        // Ueberhoehung: Hoehenbereich nach oben so erweitern, dass der vertikale Massstab dem Vielfachen des
+        // horizontalen entspricht (nur, falls das Profil dann noch in das Bild passt):
+        if (mExaggeration > 0.) {
+            double lPxPerT = (mWidth - sMarginLeft - sMarginRight) / (mTMax - mTMin);
+            double lRange = (mHeight - sMarginTop - sMarginBottom) / (mExaggeration * lPxPerT);
+            if (lRange > mZMax - mZMin)
+                mZMax = mZMin + lRange;
+        }
+    }
+
+    private double px(double t) {
+        return sMarginLeft + (t - mTMin) / (mTMax - mTMin) * (mWidth - sMarginLeft - sMarginRight);
+    }
+
+    private double py(double z) {
+        return mHeight - sMarginBottom - (z - mZMin) / (mZMax - mZMin) * (mHeight - sMarginTop - sMarginBottom);
+    }
+
+    // liefert einen "runden" Teilstrichabstand (1, 2 oder 5 mal Zehnerpotenz) fuer hoechstens pMaxTicks Teilstriche
+    private double tickStep(double pRange, double pMaxTicks)
+    {
+        double lRaw = pRange / Math.max(1., pMaxTicks);
+        double lPow = Math.pow(10., Math.floor(Math.log(lRaw) / Math.log(10.)));
+        if (lRaw <= lPow)
+            return lPow;
+        if (lRaw <= 2. * lPow)
+            return 2. * lPow;
+        if (lRaw <= 5. * lPow)
+            return 5. * lPow;
+        return 10. * lPow;
+    }
+
+    private String format(double pVal, double pStep)
+    {
+        int lDigits = (pStep >= 1.) ? 0 : (int) Math.ceil(-Math.log(pStep) / Math.log(10.) - 1.e-9);
+        StringBuffer lPattern = new StringBuffer("0");
+        if (lDigits > 0) {
+            lPattern.append('.');
+            for (int i = 0; i < lDigits; i++)
+                lPattern.append('0');
+        }
+        DecimalFormat lFmt = new DecimalFormat(lPattern.toString(), new DecimalFormatSymbols(Locale.US));
+        String lRes = lFmt.format(pVal);
+        return (lRes.startsWith("-") && Double.parseDouble(lRes) == 0.) ? lRes.substring(1) : lRes;
+    }
+
+    // Zeichenflaeche, auf die das Layout abgebildet wird
+    private interface Canvas
+    {
+        public void fill(double[] px, double[] py, int n, Color pColor) throws IOException;
+        public void polyline(double[] px, double[] py, int n, Color pColor) throws IOException;
+        public void line(double x0, double y0, double x1, double y1, Color pColor) throws IOException;
+        /** pAlign: -1 linksbuendig, 0 zentriert, 1 rechtsbuendig */
+        public void text(String pText, double x, double y, int pAlign, Color pColor) throws IOException;
+    }
+
+    private static class Java2dCanvas implements Canvas
+    {
+        private Graphics2D mG;
+
+        public Java2dCanvas(Graphics2D g) {
+            mG = g;
+        }
+
+        public void fill(double[] px, double[] py, int n, Color pColor) {
+            mG.setColor(pColor);
+            mG.fill(this.path(px, py, n, true));
+        }
+
+        public void polyline(double[] px, double[] py, int n, Color pColor) {
+            mG.setColor(pColor);
+            mG.setStroke(new BasicStroke(1.5f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            mG.draw(this.path(px, py, n, false));
+        }
+
+        public void line(double x0, double y0, double x1, double y1, Color pColor) {
+            mG.setColor(pColor);
+            mG.setStroke(new BasicStroke(1.f));
+            mG.draw(new Line2D.Double(x0, y0, x1, y1));
+        }
+
+        public void text(String pText, double x, double y, int pAlign, Color pColor) {
+            FontMetrics lMetrics = mG.getFontMetrics();
+            double lWidth = lMetrics.stringWidth(pText);
+            mG.setColor(pColor);
+            mG.drawString(pText, (float) (x - 0.5 * (pAlign + 1) * lWidth), (float) y);
+        }
+
+        private GeneralPath path(double[] px, double[] py, int n, boolean pClose)
+        {
+            GeneralPath lPath = new GeneralPath();
+            lPath.moveTo((float) px[0], (float) py[0]);
+            for (int i = 1; i < n; i++)
+                lPath.lineTo((float) px[i], (float) py[i]);
+            if (pClose)
+                lPath.closePath();
+            return lPath;
+        }
+    }
+
+    private static class SvgCanvas implements Canvas
+    {
+        private Writer mOut;
+        private DecimalFormat mFmt = new DecimalFormat("0.#", new DecimalFormatSymbols(Locale.US));
+
+        public SvgCanvas(Writer pOut) {
+            mOut = pOut;
+        }
+
+        public void fill(double[] px, double[] py, int n, Color pColor) throws IOException {
+            mOut.write("<polygon points=\"" + this.points(px, py, n) + "\" fill=\"" + this.color(pColor) + "\"/>\n");
+        }
+
+        public void polyline(double[] px, double[] py, int n, Color pColor) throws IOException {
+            mOut.write("<polyline points=\"" + this.points(px, py, n) + "\" fill=\"none\" stroke=\""
+                + this.color(pColor) + "\" stroke-width=\"1.5\" stroke-linejoin=\"round\"/>\n");
+        }
+
+        public void line(double x0, double y0, double x1, double y1, Color pColor) throws IOException {
+            mOut.write("<line x1=\"" + mFmt.format(x0) + "\" y1=\"" + mFmt.format(y0) + "\" x2=\"" + mFmt.format(x1)
+                + "\" y2=\"" + mFmt.format(y1) + "\" stroke=\"" + this.color(pColor) + "\"/>\n");
+        }
+
+        public void text(String pText, double x, double y, int pAlign, Color pColor) throws IOException {
+            String lAnchor = (pAlign < 0) ? "start" : ((pAlign == 0) ? "middle" : "end");
+            mOut.write("<text x=\"" + mFmt.format(x) + "\" y=\"" + mFmt.format(y) + "\" text-anchor=\"" + lAnchor
+                + "\" fill=\"" + this.color(pColor) + "\">" + pText + "</text>\n");
+        }
+
+        private String points(double[] px, double[] py, int n)
+        {
+            StringBuffer lRes = new StringBuffer();
+            for (int i = 0; i < n; i++) {
+                if (i > 0)
+                    lRes.append(' ');
+                lRes.append(mFmt.format(px[i])).append(',').append(mFmt.format(py[i]));
+            }
+            return lRes.toString();
+        }
+
+        private String color(Color pColor) {
+            return "#" + Integer.toHexString(0x1000000 | (pColor.getRGB() & 0xffffff)).substring(1);
+        }
+    }
+}
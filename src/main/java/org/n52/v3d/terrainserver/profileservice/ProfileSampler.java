@@ -0,0 +1,218 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.profileservice;
+
+import java.io.IOException;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.gisimplm.GmProfile;
+import org.n52.v3d.triturus.vgis.VgLineString;
+import org.n52.v3d.triturus.vgis.VgPoint;
+import org.n52.v3d.triturus.vgis.VgProfile;
+import org.n52.v3d.terrainserver.demservice.DEMServiceHelpers;
+
+/**
+ * Profile generation by sampling the source tiles directly along the definition line.<br /><br />
+ * <i>German:</i> Profilgenerierung durch direkte Abtastung der Quellkacheln entlang der Profillinie. Anders als bei
+ * <tt>FltElevationGrid2Profile</tt> wird kein Zwischengitter f&uuml;r das umgebende Rechteck der Linie aufgebaut; die
+ * Linie wird in festem Abstand (sowie an jedem St&uuml;tzpunkt) abgetastet, und die H&ouml;henwerte werden abschnittsweise
+ * mittels <tt>DEMServiceHelpers.elevationsAt()</tt> ermittelt. Der Aufwand w&auml;chst daher mit der L&auml;nge der
+ * Linie und nicht mit der Fl&auml;che ihres umgebenden Rechtecks.<br />
+ * Die Stationierung <i>t</i> bezieht sich auf die Einheiten des r&auml;umlichen Bezugssystems der Linie. Stationen
+ * ohne H&ouml;heninformation werden mit dem H&ouml;henwert <tt>Double.NaN</tt> &uuml;bergeben, so dass
+ * Datenl&uuml;cken in der Darstellung erkennbar bleiben.
+ */
+public class ProfileSampler
+{
+    private static final int sChunkSize = 4096; // Stationen je Aufruf von elevationsAt()
+
+    private DEMServiceHelpers mHelpers;
+    private String mTileLocator;
+    private String mSrcGrdPath;
+    private double mStep;
+    private int mMaxStations = 10000;
+
+    /**
+     * Receiver for the computed profile stations.<br /><br />
+     * <i>German:</i> Empf&auml;nger der berechneten Profilstationen. Die Stationen werden in der Reihenfolge
+     * aufsteigender Stationierung &uuml;bergeben.
+     */
+    public interface StationHandler
+    {
+        /**
+         * processes a profile station.<br /><br />
+         * <i>German:</i> verarbeitet eine Profilstation.
+         * @param t Stationierung
+         * @param x x-Koordinate
+         * @param y y-Koordinate
+         * @param z H&ouml;henwert oder <tt>Double.NaN</tt>, falls keine H&ouml;heninformation vorliegt
+         * @throws IOException bei Schreibfehlern
+         */
+        public void station(double t, double x, double y, double z) throws IOException;
+    }
+
+    /**
+     * Constructor.<br /><br />
+     * <i>German:</i> Konstruktor.
+     * @param pHelpers f&uuml;r den Zugriff auf die Quellkacheln zu verwendendes Hilfsobjekt
+     * @param pTileLocator Bezeichner f&uuml;r verwendete Kachelung
+     * @param pSrcGrdPath Verzeichnis der Quelldateien
+     * @param pStep Abtastabstand
+     */
+    public ProfileSampler(DEMServiceHelpers pHelpers, String pTileLocator, String pSrcGrdPath, double pStep)
+    {
+        if (pStep <= 0.)
+            throw new T3dException("Illegal profile step " + pStep + ".");
+        mHelpers = pHelpers;
+        mTileLocator = pTileLocator;
+        mSrcGrdPath = pSrcGrdPath;
+        mStep = pStep;
+    }
+
+    /**
+     * sets the maximum number of stations. For longer lines, the step width will be enlarged accordingly.<br /><br />
+     * <i>German:</i> setzt die maximale Anzahl von Stationen (ohne St&uuml;tzpunkte). F&uuml;r l&auml;ngere Linien
+     * wird der Abtastabstand entsprechend vergr&ouml;&szlig;ert.
+     * @param pMaxStations maximale Anzahl
+     */
+    public void setMaxStations(int pMaxStations) {
+        mMaxStations = pMaxStations;
+    }
+
+    /**
+     * calculates the profile for the given definition line.<br /><br />
+     * <i>German:</i> berechnet das Profil f&uuml;r die angegebene Profillinie. Datenl&uuml;cken sind als
+     * H&ouml;henwert <tt>Double.NaN</tt> enthalten.
+     * @param pDefLine Profillinie
+     * @param pSRS r&auml;umliches Bezugssystem
+     * @return Profil
+     * @throws T3dException falls entlang der Linie keine H&ouml;heninformation vorliegt
+     */
+    public VgProfile transform(VgLineString pDefLine, String pSRS)
+    {
+        final GmProfile lProfile = new GmProfile(pDefLine);
+        int lCount;
+        try {
+            lCount = this.sample(pDefLine, pSRS, new StationHandler() {
+                public void station(double t, double x, double y, double z) {
+                    lProfile.addTZPair(t, z);
+                }
+            });
+        }
+        catch (IOException e) {
+            throw new T3dException(e.getMessage()); // kann nicht auftreten
+        }
+        if (lCount <= 0)
+            throw new T3dException("No elevation information available.");
+        return lProfile;
+    }
+
+    /**
+     * samples the given definition line and passes the stations to the given handler. The source tiles are accessed
+     * chunk-wise, so that the stations can be processed before the complete profile has been computed.<br /><br />
+     * <i>German:</i> tastet die angegebene Profillinie ab und &uuml;bergibt die Stationen an den angegebenen
+     * Empf&auml;nger. Der Zugriff auf die Quellkacheln erfolgt abschnittsweise, so dass die Stationen bereits vor
+     * Abschluss der gesamten Berechnung weiterverarbeitet (z. B. ausgegeben) werden k&ouml;nnen.
+     * @param pDefLine Profillinie
+     * @param pSRS r&auml;umliches Bezugssystem
+     * @param pHandler Empf&auml;nger der Stationen
+     * @return Anzahl der &uuml;bergebenen Stationen mit H&ouml;heninformation
+     * @throws IOException bei Schreibfehlern des Empf&auml;ngers
+     */
+    public int sample(VgLineString pDefLine, String pSRS, StationHandler pHandler) throws IOException
+    {
+        int n = pDefLine.numberOfVertices();
+        if (n < 2)
+            throw new T3dException("Profile definition line needs at least two vertices.");
+        double lLength = 0.;
+        for (int i = 1; i < n; i++)
+            lLength += this.dist(pDefLine.getVertex(i - 1), pDefLine.getVertex(i));
+        double lStep = Math.max(mStep, lLength / mMaxStations);
+
+        double[] t = new double[sChunkSize], x = new double[sChunkSize], y = new double[sChunkSize];
+        int lCount = 0, lFill = 0;
+        double lT0 = 0.; // Stationierung am Anfang des aktuellen Segments
+        double lNext = 0.; // naechste regulaere Station
+        for (int i = 1; i < n; i++) {
+            VgPoint p0 = pDefLine.getVertex(i - 1), p1 = pDefLine.getVertex(i);
+            double lSegLen = this.dist(p0, p1);
+            if (lSegLen <= 0.)
+                continue; // doppelter Stuetzpunkt
+            // Segmentanfang stets, danach regulaere Stationen innerhalb des Segments:
+            double s = 0.;
+            while (true) {
+                if (lFill >= sChunkSize) {
+                    lCount += this.flush(t, x, y, lFill, pSRS, pHandler);
+                    lFill = 0;
+                }
+                double f = s / lSegLen;
+                t[lFill] = lT0 + s;
+                x[lFill] = p0.getX() + f * (p1.getX() - p0.getX());
+                y[lFill] = p0.getY() + f * (p1.getY() - p0.getY());
+                lFill++;
+                while (lNext <= lT0 + s + 1.e-9 * lStep)
+                    lNext += lStep;
+                s = lNext - lT0;
+                if (s >= lSegLen - 1.e-9 * lStep)
+                    break;
+            }
+            lT0 += lSegLen;
+        }
+        // Endpunkt der Linie:
+        if (lFill >= sChunkSize) {
+            lCount += this.flush(t, x, y, lFill, pSRS, pHandler);
+            lFill = 0;
+        }
+        t[lFill] = lT0;
+        x[lFill] = pDefLine.getVertex(n - 1).getX();
+        y[lFill] = pDefLine.getVertex(n - 1).getY();
+        lFill++;
+        lCount += this.flush(t, x, y, lFill, pSRS, pHandler);
+        return lCount;
+    }
+
+    // ermittelt die Hoehenwerte der ersten pFill Stationen, uebergibt sie (Luecken als NaN) an den Empfaenger und
+    // liefert die Anzahl der belegten Stationen
+    private int flush(double[] t, double[] x, double[] y, int pFill, String pSRS, StationHandler pHandler)
+        throws IOException
+    {
+        double[] lX = x, lY = y;
+        if (pFill < x.length) {
+            lX = new double[pFill];
+            lY = new double[pFill];
+            System.arraycopy(x, 0, lX, 0, pFill);
+            System.arraycopy(y, 0, lY, 0, pFill);
+        }
+        double[] z = mHelpers.elevationsAt(lX, lY, pSRS, mTileLocator, mSrcGrdPath);
+        int lCount = 0;
+        for (int i = 0; i < pFill; i++) {
+            pHandler.station(t[i], x[i], y[i], z[i]);
+            if (!Double.isNaN(z[i]))
+                lCount++;
+        }
+        return lCount;
+    }
+
+    private double dist(VgPoint p0, VgPoint p1)
+    {
+        double dx = p1.getX() - p0.getX(), dy = p1.getY() - p0.getY();
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
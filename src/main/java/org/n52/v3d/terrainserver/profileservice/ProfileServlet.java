@@ -21,13 +21,9 @@ package org.n52.v3d.terrainserver.profileservice;
 
 import java.io.*;
 import java.lang.String;
-import java.awt.image.BufferedImage;
-import java.util.Iterator;
 import javax.servlet.http.*;
 import javax.servlet.ServletException;
 import javax.servlet.ServletConfig;
-import javax.imageio.*;
-import javax.imageio.stream.ImageInputStream;
 
 import org.n52.v3d.triturus.core.T3dException;
 import org.n52.v3d.triturus.vgis.*;
@@ -35,11 +31,12 @@ import org.n52.v3d.triturus.web.*;
 import org.n52.v3d.triturus.gisimplm.*;
 import org.n52.v3d.triturus.t3dutil.T3dTimeList;
 import org.n52.v3d.terrainserver.demservice.DEMServiceHelpers;
+import org.n52.v3d.terrainserver.demservice.GridResampler;
+import org.n52.v3d.terrainserver.demservice.TileManifest;
+import org.n52.v3d.terrainserver.web.AsyncRequestExecutor;
+import org.n52.v3d.terrainserver.web.CompressionFilter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.batik.transcoder.image.PNGTranscoder;
-import org.apache.batik.transcoder.TranscoderInput;
-import org.apache.batik.transcoder.TranscoderOutput;
 
 /**
  * Implementation of a cross-section generation service.<br /><br />
@@ -48,6 +45,10 @@ import org.apache.batik.transcoder.TranscoderOutput;
  * Beispielaufrufe:
  * <tt>http://<hostname>/ProfileServlet?REQUEST=GetGraph&SRS=EPSG:31468&DEFLINE=4440675,5271075,0,4449475,5275000,0</tt>
  * <tt>http://<hostname>/ProfileServlet?REQUEST=GetElevation&SRS=EPSG:31466&POINT=2592761.3,5741340.4,0.0</tt>
+ * <tt>http://<hostname>/ProfileServlet?REQUEST=GetElevations&SRS=EPSG:31466&FORMAT=application/json&POINTS=2592761.3,5741340.4,0.0,2592800.0,5741400.0,0.0</tt><br />
+ * <tt>http://<hostname>/ProfileServlet?REQUEST=GetProfileData&SRS=EPSG:31468&DEFLINE=4440675,5271075,0,4449475,5275000,0&FORMAT=application/json&MAXPOINTS=500</tt><br />
+ * F&uuml;r GetElevations-Anfragen lassen sich die Positionen alternativ als CSV- oder JSON-Daten im Rumpf einer
+ * POST-Anfrage &uuml;bergeben (vgl. <tt>PointListReader</tt>).
  * @author Benno Schmidt
  */
 public class ProfileServlet extends HttpServlet
@@ -56,6 +57,8 @@ public class ProfileServlet extends HttpServlet
 
     private static int mCounter = 0;
 
+    private AsyncRequestExecutor mExecutor = null; // Bearbeitung der Anfragen im eigenen Thread-Pool
+
     // Einstellungen aus Deployment-Deskriptor:
     private String mCapabilitiesFile;
     private String mSourceGridPath;
@@ -64,6 +67,15 @@ public class ProfileServlet extends HttpServlet
     private double mMaxArea = 1000000000.; // 1000 km^2
     private double mMinCellSize = 50.;
     private double mMinCellSizeLatLon = 4.629627e-4;
+    private boolean mBuildBinaryTiles = false;
+    private int mGriddingParallelism = 1;
+    private boolean mUseTileManifest = false;
+    private String mInterpolation = GridResampler.sInverseDistance;
+    private int mMaxPoints = 100000; // Punktanzahl je GetElevations-Anfrage
+    private String mProfileEngine = "Sampling"; // "Sampling" (direkte Abtastung) oder "Gridding"
+    private double mProfileStep = 0.; // Abtastabstand; 0: MinCellSize
+    private double mProfileStepLatLon = 0.; // Abtastabstand fuer geographische Koordinaten; 0: MinCellSizeLatLon
+    private int mProfileMaxStations = 10000;
 
     /**
      * liest die Ablaufparameter aus dem Deployment-Deskriptor und �bertr�gt die Werte in entsprechende
@@ -78,6 +90,27 @@ public class ProfileServlet extends HttpServlet
         mMaxArea = Double.parseDouble(this.getInitParameter("MaxArea"));
         mMinCellSize = Double.parseDouble(this.getInitParameter("MinCellSize"));
         mMinCellSizeLatLon = Double.parseDouble(this.getInitParameter("MinCellSizeLatLon"));
+        mBuildBinaryTiles = Boolean.valueOf(this.getInitParameter("BuildBinaryTiles")).booleanValue();
+        if (this.getInitParameter("GriddingParallelism") != null)
+            mGriddingParallelism = Integer.parseInt(this.getInitParameter("GriddingParallelism").trim());
+        mUseTileManifest = Boolean.valueOf(this.getInitParameter("UseTileManifest")).booleanValue();
+        if (mUseTileManifest)
+            TileManifest.getInstance(mSourceGridPath); // Quellkacheln einmalig erfassen
+        if (this.getInitParameter("Interpolation") != null)
+            mInterpolation = new org.n52.v3d.terrainserver.demservice.ParameterPreparer().prepareINTERPOLATION(
+                this.getInitParameter("Interpolation"));
+        if (this.getInitParameter("ProfileEngine") != null)
+            mProfileEngine = this.getInitParameter("ProfileEngine").trim();
+        if (!(mProfileEngine.equalsIgnoreCase("Sampling") || mProfileEngine.equalsIgnoreCase("Gridding")))
+            throw new T3dException("Illegal ProfileEngine \"" + mProfileEngine + "\".");
+        if (this.getInitParameter("ProfileStep") != null)
+            mProfileStep = Double.parseDouble(this.getInitParameter("ProfileStep").trim());
+        if (this.getInitParameter("ProfileStepLatLon") != null)
+            mProfileStepLatLon = Double.parseDouble(this.getInitParameter("ProfileStepLatLon").trim());
+        if (this.getInitParameter("ProfileMaxStations") != null)
+            mProfileMaxStations = Integer.parseInt(this.getInitParameter("ProfileMaxStations").trim());
+        if (this.getInitParameter("MaxPoints") != null)
+            mMaxPoints = Integer.parseInt(this.getInitParameter("MaxPoints").trim());
     }
 
     /**
@@ -88,6 +121,17 @@ public class ProfileServlet extends HttpServlet
 
         // Initialisierungsparameter aus "web.xml" lesen:
         this.fetchInitParameters();
+
+        mExecutor = AsyncRequestExecutor.fromConfig(pConf, 4, 100);
+    }
+
+    /**
+     * beendet das Servlet.<p>
+     */
+    public void destroy() {
+        if (mExecutor != null)
+            mExecutor.shutdown();
+        super.destroy();
     }
     
     private HttpRequestParams fetchRequestParameters(HttpServletRequest pReq)
@@ -105,6 +149,8 @@ public class ProfileServlet extends HttpServlet
         lReqParams.addParameter("EXAGGERATION", "Double", "5.0");
         lReqParams.addParameter("VISADDS", "Integer", "4");
         lReqParams.addParameter("POINT", "VgPoint", "0.0, 0.0, 0.0"); // nur f�r GetElevation-Anfrage
+        lReqParams.addParameter("POINTS", "String", ""); // nur fuer GetElevations-Anfrage
+        lReqParams.addParameter("MAXPOINTS", "Integer", "0"); // nur fuer GetProfileData-Anfrage; 0: keine Ausduennung
 
         lReqParams.fetchRequestParameters(pReq);
 
@@ -126,7 +172,8 @@ public class ProfileServlet extends HttpServlet
     }
 
     /**
-     * bearbeitet HTTP-Get-Anfragen an das Servlet.<p>
+     * bearbeitet HTTP-Get-Anfragen an das Servlet. Die Bearbeitung erfolgt asynchron im Thread-Pool des Dienstes
+     * (vgl. <tt>AsyncRequestExecutor</tt>), so dass wartende Anfragen keine Container-Threads belegen.<p>
      * @param pRequest HTTP-Anfrage-Objekt
      * @param pResponse HTTP-Antwort-Objekt
      * @throws ServletException
@@ -134,6 +181,17 @@ public class ProfileServlet extends HttpServlet
      */
     public void doGet(HttpServletRequest pRequest, HttpServletResponse pResponse)
         throws ServletException, IOException
+    {
+        mExecutor.execute(pRequest, pResponse, new AsyncRequestExecutor.Handler() {
+            public void handle(HttpServletRequest pReq, HttpServletResponse pResp) throws ServletException, IOException {
+                processRequest(pReq, pResp);
+            }
+        });
+    }
+
+    // bearbeitet eine Anfrage im Worker-Thread
+    private void processRequest(HttpServletRequest pRequest, HttpServletResponse pResponse)
+        throws ServletException, IOException
     {
         T3dTimeList lTimeProt = new T3dTimeList(); // zur Protokollierung der Rechenzeiten
         lTimeProt.addTimeStamp("init");
@@ -150,18 +208,21 @@ public class ProfileServlet extends HttpServlet
             String lFormat = (String) lReqParams.getParameterValue("FORMAT");
             int lWidth = ((Integer) lReqParams.getParameterValue("WIDTH")).intValue();
             int lHeight = ((Integer) lReqParams.getParameterValue("HEIGHT")).intValue();
-            double lExaggeration = ((Double) lReqParams.getParameterValue("EXAGGERATION")).doubleValue(); // todo sinnvoll?
+            double lExaggeration = ((Double) lReqParams.getParameterValue("EXAGGERATION")).doubleValue();
             //int lVisAdds = ((Integer) lReqParams.getParameterValue("VISADDS")).intValue();
             VgPoint lPoint = (VgPoint) lReqParams.getParameterValue("POINT");
 
             if (lRequest.equalsIgnoreCase("GetCapabilities")) {
-                HttpStandardResponse response = new HttpStandardResponse();
-                response.sendXMLFile(mCapabilitiesFile, pResponse);           // todo: serverrun/Capabilities.xml einrichten und web.xml-Additions
+                if (!CompressionFilter.sendPrecompressed(mCapabilitiesFile, "text/xml", pRequest, pResponse)) {
+                    HttpStandardResponse response = new HttpStandardResponse();
+                    response.sendXMLFile(mCapabilitiesFile, pResponse);           // todo: serverrun/Capabilities.xml einrichten und web.xml-Additions
+                }
                 this.logGetCapabilitiesInfo(lTmpName, pRequest);
                 return;
             }
 
-            if (! (lRequest.equalsIgnoreCase("GetGraph") || lRequest.equalsIgnoreCase("GetElevation")))
+            if (! (lRequest.equalsIgnoreCase("GetGraph") || lRequest.equalsIgnoreCase("GetElevation")
+                || lRequest.equalsIgnoreCase("GetElevations") || lRequest.equalsIgnoreCase("GetProfileData")))
                 throw new T3dException("Illegal request type " + lRequest + "...");
 
             // Request-Parameter aufbereiten und Wertebereiche pr�fen:
@@ -172,136 +233,100 @@ public class ProfileServlet extends HttpServlet
                 lWidth = pp.prepareWIDTH(lWidth);
                 lHeight = pp.prepareHEIGHT(lHeight);
             }
-            if (lRequest.equalsIgnoreCase("GetElevation")) {
-                String str = ""
-                    + lPoint.getX() + "," + lPoint.getY() + ",0.0," /* erster Eckpunkt = Interpolationspunkt */
-                    + lPoint.getX() + "," + lPoint.getY() + ",0.0"; /* zweiter Eckpunkt als Hilfspunkt */
-                lDefLine = new GmLineString(str);
-                if(lPoint instanceof VgPoint)
-                {
-                    lPoint.setSRS(lSRS);
-                }
-            }
+            if (lRequest.equalsIgnoreCase("GetElevation"))
+                lPoint.setSRS(lSRS);
 
             sLogger.debug("ProfileServlet (" + lTmpName + "): Received " + lRequest + " request.");
             lTimeProt.setFinished("init");
 
-            // H�henmodell berechnen (Gridding):
-            lTimeProt.addTimeStamp("dem_access");
-            final boolean lDebug = false; // todo: auf 'false' setzen
-            if (lDebug)
-                System.out.println("lDefLine = " + lDefLine);
-            VgEnvelope lBBox = lDefLine.envelope();
-            lBBox.setSRS(lSRS);
-            lBBox = this.assureBBoxExtent(lBBox);
-            if (lDebug)
-                System.out.println("lBBox = " + lBBox);
-            GmSimpleElevationGrid lTerrain = this.setUpTerrain(lBBox);
-            if (lDebug) {
-                System.out.println("lTerrain = " + lTerrain);
-                System.out.println("lTerrain.envelope = " + lTerrain.getGeometry().envelope());
+            if (lRequest.equalsIgnoreCase("GetElevations")) {
+                int lCount = this.processGetElevations(
+                    (String) lReqParams.getParameterValue("POINTS"), lSRS, lFormat, lTimeProt, pRequest, pResponse);
+                this.logGetElevationsInfo(lTmpName, lCount, lTimeProt, pRequest, lFormat);
+                sLogger.debug("ProfileServlet (" + lTmpName + "): Duly finished execution.");
+                return;
+            }
+            if (lRequest.equalsIgnoreCase("GetProfileData")) {
+                int lMaxPoints = pp.prepareMAXPOINTS(((Integer) lReqParams.getParameterValue("MAXPOINTS")).intValue());
+                this.processGetProfileData(lDefLine, lSRS, lFormat, lMaxPoints, lTimeProt, pResponse);
+                this.logGetGraphInfo(lTmpName, null, lDefLine, lTimeProt, pRequest, lFormat);
+                sLogger.debug("ProfileServlet (" + lTmpName + "): Duly finished execution.");
+                return;
             }
-            lTimeProt.setFinished("dem_access");
 
-            // Profil generieren:
-            lTimeProt.addTimeStamp("profile_generation");
-            FltElevationGrid2Profile lProc = new FltElevationGrid2Profile();
-            VgProfile lProfile = lProc.transform(lTerrain, lDefLine);
-            lTimeProt.setFinished("profile_generation");
+            // Hoehenmodell berechnen (Gridding) und Profil generieren; fuer GetElevation wird der Hoehenwert
+            // stattdessen direkt aus den Quellkacheln interpoliert:
+            GmSimpleElevationGrid lTerrain = null;
+            VgProfile lProfile = null;
+            double lElevation = 0.;
+            if (lRequest.equalsIgnoreCase("GetElevation")) {
+                lTimeProt.addTimeStamp("dem_access");
+                lElevation = this.elevationAt(lPoint);
+                lTimeProt.setFinished("dem_access");
+            }
+            else if (mProfileEngine.equalsIgnoreCase("Sampling")) {
+                // Profil durch direkte Abtastung der Quellkacheln entlang der Profillinie generieren:
+                lTimeProt.addTimeStamp("profile_generation");
+                lProfile = this.sampleProfile(lDefLine, lSRS);
+                lTimeProt.setFinished("profile_generation");
+            }
+            else {
+                // Hoehenmodell fuer das umgebende Rechteck berechnen (Gridding) und darauf das Profil generieren:
+                lTimeProt.addTimeStamp("dem_access");
+                final boolean lDebug = false; // todo: auf 'false' setzen
+                if (lDebug)
+                    System.out.println("lDefLine = " + lDefLine);
+                VgEnvelope lBBox = lDefLine.envelope();
+                lBBox.setSRS(lSRS);
+                lBBox = this.assureBBoxExtent(lBBox);
+                if (lDebug)
+                    System.out.println("lBBox = " + lBBox);
+                lTerrain = this.setUpTerrain(lBBox);
+                if (lDebug) {
+                    System.out.println("lTerrain = " + lTerrain);
+                    System.out.println("lTerrain.envelope = " + lTerrain.getGeometry().envelope());
+                }
+                lTimeProt.setFinished("dem_access");
+
+                // Profil generieren:
+                lTimeProt.addTimeStamp("profile_generation");
+                FltElevationGrid2Profile lProc = new FltElevationGrid2Profile();
+                lProfile = lProc.transform(lTerrain, lDefLine);
+                lTimeProt.setFinished("profile_generation");
+            }
 
             if (lRequest.equalsIgnoreCase("GetGraph"))
             {
-                // Ergebnisbild generieren:
+                // Ergebnisbild im Speicher generieren und direkt als Antwort senden (keine Temporaerdateien):
                 lTimeProt.addTimeStamp("rendering");
-                IoProfileWriter lWriter = new IoProfileWriter("SVG"); // stets SVG generieren
-                String lResFile = mWorkingDirectory + "/" + lTmpName + ".svg";
-                lWriter.writeToFile(lProfile, lResFile);
-                boolean lSendAsPngImage = false;
-                String lResFilePng = "";
-                if (lFormat.equalsIgnoreCase("image/png"))
-                    lSendAsPngImage = true;
-                if (lSendAsPngImage) {
-                    PNGTranscoder lTranscoder = new PNGTranscoder();
-                    String lSvgURI = new File(lResFile).toURL().toString();
-                    TranscoderInput lInput = new TranscoderInput(lSvgURI);
-                    lResFilePng = mWorkingDirectory + "/" + lTmpName + ".png"; 
-                    OutputStream lOStream = new FileOutputStream(lResFilePng);
-                    TranscoderOutput lOutput = new TranscoderOutput(lOStream);
-                    lTranscoder.transcode(lInput, lOutput);
-                    lOStream.flush();
-                    lOStream.close();
-                }
-                lTimeProt.setFinished("rendering");
-
-                // Ergebnisbild als Antwort senden:
-                lTimeProt.addTimeStamp("send_response");
-                if (! lSendAsPngImage) {
-                    pResponse.setContentType("image/svg+xml"); // MIME-Typ f�r Antwort setzen
-                    BufferedReader lDatRead;
+                ProfileGraphRenderer lRenderer = new ProfileGraphRenderer(lWidth, lHeight);
+                lDefLine.setSRS(lSRS);
+                if (!lDefLine.hasGeographicSRS()) // Ueberhoehung nur bei metrischer Stationierung sinnvoll
+                    lRenderer.setExaggeration(lExaggeration);
+                if (lFormat.equalsIgnoreCase("image/png")) {
+                    pResponse.setContentType(lFormat); // MIME-Typ fuer Antwort setzen
                     try {
-                        lDatRead = new BufferedReader(new FileReader(lResFile));
-                    }
-                    catch (FileNotFoundException e) {
-                        throw new T3dException("Internal error while reading \"" + lResFile + "\".");
-                    }
-                    PrintWriter out = pResponse.getWriter(); // PrintWriter auf die Antwort aufsetzen
-                    String line = lDatRead.readLine();
-                    while (line != null) { // generierte Tempor�rdatei zeilenweise senden
-                        out.println(line);
-                        line = lDatRead.readLine();
-                    }
-                    lDatRead.close();
-                    out.flush();
-                    out.close();
-                }
-                else {
-                    // Bild senden (vgl. Code aus WebTerrainServlet:
-                    try {
-                        File f = new File(lResFilePng);
-                        ImageInputStream is = ImageIO.createImageInputStream(f);
-                        Iterator iter = ImageIO.getImageReaders(is); // liefert PNG-ImageReader
-                        ImageReader reader = (ImageReader) iter.next();
-                        reader.setInput(is, true); // seek forward only?
-                        BufferedImage lImage = reader.read(0);
-
                         OutputStream out = pResponse.getOutputStream();
-                        ImageIO.setUseCache(false); // wichtig!
-                        pResponse.setContentType(lFormat); // MIME-Typ f�r Antwort setzen
-                        String resExt = MimeTypeHelper.getFileExtension(lFormat);
-                        try {
-                            ImageIO.write(lImage, resExt, out); // resExt ist informaler Formatname...
-                        }
-                        catch (Exception e) {
-                            throw new T3dException("Did not finish PNG image send process. " + e.getMessage(), 103); // todo fehler-nr. pr�fen und in doku
-                        }
-                        is.close();
+                        lRenderer.writePNG(lProfile, out);
                         out.close();
                     }
                     catch (IOException e) {
-                        throw new T3dException("An I/O exception occured. The servlet could not send an image reponse.", 106); // todo fehler-nr. pr�fen und in doku
+                        throw new T3dException("An I/O exception occured. The servlet could not send an image reponse.", 106); // todo fehler-nr. pruefen und in doku
                     }
                 }
-                File fSvg = new File(lResFile);
-                fSvg.delete();
-                if (lSendAsPngImage) {
-                    File fPng = new File(lResFilePng);
-                    fPng.delete();
+                else {
+                    pResponse.setContentType("image/svg+xml"); // MIME-Typ fuer Antwort setzen
+                    PrintWriter out = pResponse.getWriter(); // PrintWriter auf die Antwort aufsetzen
+                    lRenderer.writeSVG(lProfile, out);
+                    out.close();
                 }
-                lTimeProt.setFinished("send_response");
+                lTimeProt.setFinished("rendering");
             }
             else {
                 if (lRequest.equalsIgnoreCase("GetElevation"))
                 {
                     lTimeProt.addTimeStamp("send_response");
-                    double x, y, z;
-                    try {
-                        x = ((VgLineString)(lProfile.getGeometry())).getVertex(0).getX(); // = lPoint.getX()
-                        y = ((VgLineString)(lProfile.getGeometry())).getVertex(0).getY(); // = lPoint.getY()
-                        z = (lProfile.getTZPair(0))[1];
-                    }
-                    catch (Throwable e) {
-                        throw new T3dException("No elevation information available.");
-                    }
+                    double x = lPoint.getX(), y = lPoint.getY(), z = lElevation;
 
                     // Antwort senden:
                     short lCase = 0;
@@ -365,7 +390,7 @@ public class ProfileServlet extends HttpServlet
                 this.logGetGraphInfo(lTmpName, lTerrain, lDefLine, lTimeProt, pRequest, lFormat /*lOutputFormatInfo*/);
             else {
                 if (lRequest.equalsIgnoreCase("GetElevation"))
-                    this.logGetElevationInfo(lTmpName, lTerrain, lPoint, lTimeProt, pRequest, lFormat);
+                    this.logGetElevationInfo(lTmpName, lPoint, lTimeProt, pRequest, lFormat);
             }
 
             sLogger.debug("ProfileServlet (" + lTmpName + "): Duly finished execution.");
@@ -432,7 +457,7 @@ public class ProfileServlet extends HttpServlet
         VgPoint pt2 = new GmPoint(xMax, yMax, 0.);
         pt2.setSRS(pBBox.getSRS());
 
-        DEMServiceHelpers lHlp = new DEMServiceHelpers(mMaxArea);
+        DEMServiceHelpers lHlp = this.createHelpers();
         try {
             lTerrain = (GmSimpleElevationGrid) lHlp.setUpDEM(pt1, pt2, lCellSize, lSearchRadius, mTileLocator, mSourceGridPath);
         }
@@ -451,6 +476,104 @@ public class ProfileServlet extends HttpServlet
         return lTerrain;
     }
 
+    // bearbeitet eine GetElevations-Anfrage und liefert die Anzahl der Positionen
+    private int processGetElevations(
+        String pPoints, String pSRS, String pFormat, T3dTimeList pTimeProt,
+        HttpServletRequest pRequest, HttpServletResponse pResponse) throws IOException
+    {
+        // Positionen aus Anfrage-Parameter oder POST-Rumpf lesen:
+        PointListReader lPoints = new PointListReader(mMaxPoints);
+        String lContentType = pRequest.getContentType();
+        if (pPoints != null && pPoints.length() > 0)
+            lPoints.parseCoordinateList(pPoints);
+        else if ("POST".equalsIgnoreCase(pRequest.getMethod()) && lContentType != null
+            && !lContentType.toLowerCase().startsWith("application/x-www-form-urlencoded"))
+        {
+            if (lContentType.toLowerCase().indexOf("json") >= 0)
+                lPoints.readJSON(pRequest.getReader());
+            else
+                lPoints.readCSV(pRequest.getReader());
+        }
+        if (lPoints.numberOfPoints() <= 0)
+            throw new T3dException("Please specify the POINTS to be processed...");
+        double[] x = lPoints.getX(), y = lPoints.getY();
+
+        // Hoehenwerte kachelweise ermitteln:
+        pTimeProt.addTimeStamp("dem_access");
+        double[] z = this.createHelpers().elevationsAt(x, y, pSRS, mTileLocator, mSourceGridPath);
+        pTimeProt.setFinished("dem_access");
+
+        // Antwort senden (nicht belegte Werte als leeres Feld bzw. null):
+        pTimeProt.addTimeStamp("send_response");
+        boolean lJson = pFormat.equalsIgnoreCase("application/json");
+        pResponse.setContentType(pFormat); // MIME-Typ fuer Antwort setzen
+        PrintWriter out = pResponse.getWriter();
+        if (lJson)
+            out.print("{\"srs\":\"" + pSRS + "\",\"points\":[");
+        for (int i = 0; i < x.length; i++) {
+            String lZ = Double.isNaN(z[i]) ? (lJson ? "null" : "") : String.valueOf(z[i]);
+            if (lJson)
+                out.print((i > 0 ? "," : "") + "[" + x[i] + "," + y[i] + "," + lZ + "]");
+            else
+                out.println(x[i] + "," + y[i] + "," + lZ);
+        }
+        if (lJson)
+            out.println("]}");
+        out.flush();
+        out.close();
+        pTimeProt.setFinished("send_response");
+        return x.length;
+    }
+
+    // bearbeitet eine GetProfileData-Anfrage; ohne Ausduennung werden die Stationen direkt bei ihrer Berechnung
+    // ausgegeben, sonst erst nach Berechnung des gesamten Profils
+    private void processGetProfileData(
+        VgLineString pDefLine, String pSRS, String pFormat, int pMaxPoints, T3dTimeList pTimeProt,
+        HttpServletResponse pResponse) throws IOException
+    {
+        ProfileSampler lSampler = this.createSampler(pDefLine, pSRS);
+        pTimeProt.addTimeStamp("profile_generation");
+        ProfileDataOutput lOutput = new ProfileDataOutput(pDefLine, pSRS, pFormat, pResponse, pMaxPoints <= 0);
+        if (lSampler.sample(pDefLine, pSRS, lOutput) <= 0)
+            throw new T3dException("No elevation information available."); // Antwort ist noch nicht geoeffnet
+        lOutput.finish(pMaxPoints);
+        pTimeProt.setFinished("profile_generation");
+    }
+
+    // generiert das Profil durch direkte Abtastung der Quellkacheln entlang der Profillinie
+    private VgProfile sampleProfile(VgLineString pDefLine, String pSRS)
+    {
+        return this.createSampler(pDefLine, pSRS).transform(pDefLine, pSRS);
+    }
+
+    private ProfileSampler createSampler(VgLineString pDefLine, String pSRS)
+    {
+        pDefLine.setSRS(pSRS);
+        double lStep = (mProfileStep > 0.) ? mProfileStep : mMinCellSize;
+        if (pDefLine.hasGeographicSRS())
+            lStep = (mProfileStepLatLon > 0.) ? mProfileStepLatLon : mMinCellSizeLatLon;
+        ProfileSampler lSampler = new ProfileSampler(this.createHelpers(), mTileLocator, mSourceGridPath, lStep);
+        lSampler.setMaxStations(mProfileMaxStations);
+        return lSampler;
+    }
+
+    // interpoliert den Hoehenwert am angegebenen Punkt direkt aus den (ggf. im Kachel-Cache gehaltenen) Quellkacheln
+    private double elevationAt(VgPoint pPoint)
+    {
+        return this.createHelpers().elevationAt(pPoint, mTileLocator, mSourceGridPath);
+    }
+
+    private DEMServiceHelpers createHelpers()
+    {
+        DEMServiceHelpers lHlp = new DEMServiceHelpers(mMaxArea);
+        lHlp.setBuildBinaryTiles(mBuildBinaryTiles);
+        lHlp.setParallelism(mGriddingParallelism);
+        if (mUseTileManifest)
+            lHlp.setTileManifest(TileManifest.getInstance(mSourceGridPath));
+        lHlp.setInterpolation(mInterpolation);
+        return lHlp;
+    }
+
     private void logGetCapabilitiesInfo(String pTmpName, HttpServletRequest pRequest)
     {
         try {
@@ -483,9 +606,11 @@ public class ProfileServlet extends HttpServlet
             lDat.println("QUERY STRING: " + pRequest.getQueryString());
             lDat.println("SESSION-ID: " + pRequest.getRequestedSessionId());
             lDat.println("DEFLINE: " + pDefLine);
-            lDat.println("BBOX: " + pTerrain.getGeometry().envelope());
-            lDat.println("BBOX-SIZE: " + pTerrain.getGeometry().envelope().areaXY());
-            lDat.println("CELLSIZE: " + ((GmSimple2dGridGeometry) pTerrain.getGeometry()).getDeltaX()); // �quidist.
+            if (pTerrain != null) { // nur bei ProfileEngine "Gridding"
+                lDat.println("BBOX: " + pTerrain.getGeometry().envelope());
+                lDat.println("BBOX-SIZE: " + pTerrain.getGeometry().envelope().areaXY());
+                lDat.println("CELLSIZE: " + ((GmSimple2dGridGeometry) pTerrain.getGeometry()).getDeltaX()); // �quidist.
+            }
             lDat.println("OUTPUT FORMAT: " + pOutputInfo);
             lDat.println("PROCESSING_TIMES [msec]: ");
             String[] lTimeProtStr = pTimeProt.protocol();
@@ -501,7 +626,7 @@ public class ProfileServlet extends HttpServlet
 
     private void logGetElevationInfo(
         String pTmpName,
-        VgElevationGrid pTerrain, VgPoint pPoint, T3dTimeList pTimeProt, HttpServletRequest pRequest, String pOutputInfo)
+        VgPoint pPoint, T3dTimeList pTimeProt, HttpServletRequest pRequest, String pOutputInfo)
     {
         try {
             PrintWriter lDat = new PrintWriter(new FileWriter(mWorkingDirectory + "/" + pTmpName + ".log"));
@@ -513,9 +638,29 @@ public class ProfileServlet extends HttpServlet
             lDat.println("QUERY STRING: " + pRequest.getQueryString());
             lDat.println("SESSION-ID: " + pRequest.getRequestedSessionId());
             lDat.println("POINT: " + pPoint);
-            lDat.println("BBOX: " + pTerrain.getGeometry().envelope());
-            lDat.println("BBOX-SIZE: " + pTerrain.getGeometry().envelope().areaXY());
-            lDat.println("CELLSIZE: " + ((GmSimple2dGridGeometry) pTerrain.getGeometry()).getDeltaX()); // �quidist.
+            lDat.println("OUTPUT FORMAT: " + pOutputInfo);
+            lDat.println("PROCESSING_TIMES [msec]: ");
+            String[] lTimeProtStr = pTimeProt.protocol();
+            for (int i = 0; i < lTimeProtStr.length; i++)
+                lDat.println(lTimeProtStr[i]);
+
+            lDat.close();
+        }
+        catch (IOException e) {
+            throw new T3dException(e.getMessage());
+        }
+    }
+
+    private void logGetElevationsInfo(
+        String pTmpName, int pCount, T3dTimeList pTimeProt, HttpServletRequest pRequest, String pOutputInfo)
+    {
+        try {
+            PrintWriter lDat = new PrintWriter(new FileWriter(mWorkingDirectory + "/" + pTmpName + ".log"));
+
+            lDat.println("REMOTE HOST: " + pRequest.getRemoteHost());
+            lDat.println("REMOTE ADDRESS: " + pRequest.getRemoteAddr());
+            lDat.println("SESSION-ID: " + pRequest.getRequestedSessionId());
+            lDat.println("POINTS: " + pCount); // Punktliste nicht protokollieren (ggf. sehr umfangreich)
             lDat.println("OUTPUT FORMAT: " + pOutputInfo);
             lDat.println("PROCESSING_TIMES [msec]: ");
             String[] lTimeProtStr = pTimeProt.protocol();
@@ -554,4 +699,76 @@ public class ProfileServlet extends HttpServlet
             throw new T3dException(e.getMessage());
         }
     }
+
+    // Ausgabe der GetProfileData-Antwort. Die Antwort wird erst geoeffnet, wenn eine Station mit Hoeheninformation
+    // vorliegt (bzw. bei Ausduennung erst nach vollstaendiger Abtastung), so dass Profile ohne Hoeheninformation
+    // noch mit einer Fehlermeldung beantwortet werden koennen.
+    private static class ProfileDataOutput implements ProfileSampler.StationHandler
+    {
+        private VgLineString mDefLine;
+        private String mSRS, mFormat;
+        private HttpServletResponse mResponse;
+        private boolean mStreaming;
+        private double[][] mBuf = new double[4][1024]; // t, x, y, z
+        private int mCount = 0;
+        private OutputStream mOut = null;
+        private ProfileDataWriter mWriter = null;
+
+        public ProfileDataOutput(
+            VgLineString pDefLine, String pSRS, String pFormat, HttpServletResponse pResponse, boolean pStreaming)
+        {
+            mDefLine = pDefLine;
+            mSRS = pSRS;
+            mFormat = pFormat;
+            mResponse = pResponse;
+            mStreaming = pStreaming;
+        }
+
+        public void station(double t, double x, double y, double z) throws IOException
+        {
+            if (mWriter != null) {
+                mWriter.station(t, x, y, z);
+                return;
+            }
+            if (mCount >= mBuf[0].length) {
+                for (int k = 0; k < 4; k++) {
+                    double[] lNew = new double[2 * mBuf[k].length];
+                    System.arraycopy(mBuf[k], 0, lNew, 0, mCount);
+                    mBuf[k] = lNew;
+                }
+            }
+            mBuf[0][mCount] = t;
+            mBuf[1][mCount] = x;
+            mBuf[2][mCount] = y;
+            mBuf[3][mCount] = z;
+            mCount++;
+            if (mStreaming && !Double.isNaN(z)) {
+                // erste Station mit Hoeheninformation: Antwort oeffnen und vorangehende Luecke nachliefern
+                this.open();
+                for (int i = 0; i < mCount; i++)
+                    mWriter.station(mBuf[0][i], mBuf[1][i], mBuf[2][i], mBuf[3][i]);
+                mCount = 0;
+            }
+        }
+
+        public void finish(int pMaxPoints) throws IOException
+        {
+            if (mWriter == null) {
+                this.open();
+                int[] lSel = ProfileDecimator.select(mBuf[0], mBuf[3], mCount, pMaxPoints);
+                for (int i = 0; i < lSel.length; i++)
+                    mWriter.station(mBuf[0][lSel[i]], mBuf[1][lSel[i]], mBuf[2][lSel[i]], mBuf[3][lSel[i]]);
+            }
+            mWriter.end();
+            mOut.close();
+        }
+
+        private void open() throws IOException
+        {
+            mResponse.setContentType(mFormat); // MIME-Typ fuer Antwort setzen
+            mOut = mResponse.getOutputStream();
+            mWriter = new ProfileDataWriter(mFormat, mOut);
+            mWriter.begin(mDefLine, mSRS);
+        }
+    }
 }
@@ -24,6 +24,7 @@ import java.lang.String;
 import javax.servlet.http.*;
 import javax.servlet.*;
 
+import org.n52.v3d.terrainserver.web.CompressionFilter;
 import org.n52.v3d.triturus.core.T3dException;
 import org.n52.v3d.triturus.vgis.VgPoint;
 import org.n52.v3d.triturus.gisimplm.GmPoint;
@@ -100,8 +101,10 @@ public class TKBlattnummerServlet extends HttpServlet
             lLocation.setSRS(lSRS); // Wert darf auch im 2er- oder 4er-Streifen liegen
 
             if (lRequest.equalsIgnoreCase("GetCapabilities")) {
-                HttpStandardResponse response = new HttpStandardResponse();
-                response.sendXMLFile(mCapabilitiesFile, pResponse);
+                if (!CompressionFilter.sendPrecompressed(mCapabilitiesFile, "text/xml", pRequest, pResponse)) {
+                    HttpStandardResponse response = new HttpStandardResponse();
+                    response.sendXMLFile(mCapabilitiesFile, pResponse);
+                }
                 return;
             }
             else {
@@ -0,0 +1,225 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.web;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.n52.v3d.triturus.web.HttpStandardResponse;
+
+/**
+ * Bounded worker pool processing the requests of a Web-service asynchronously (Servlet 3.0).<br /><br />
+ * <i>German:</i> Begrenzter Thread-Pool, der die Anfragen eines Web-Dienstes asynchron (Servlet 3.0) bearbeitet.<br />
+ * Die Anfrage wird in den asynchronen Modus versetzt und an einen Worker-Thread des Dienstes &uuml;bergeben, so dass
+ * der Container-Thread sofort wieder f&uuml;r andere Anfragen zur Verf&uuml;gung steht. Jeder Dienst verf&uuml;gt
+ * &uuml;ber einen eigenen Pool mit fester Thread-Anzahl und begrenzter Warteschlange; langsame Anfragen eines Dienstes
+ * (z. B. Rendering) k&ouml;nnen daher die Anfragen anderer Dienste nicht blockieren. Ist die Warteschlange voll,
+ * wird die Anfrage sofort mit dem HTTP-Status 503 abgewiesen.<br />
+ * Initialisierungsparameter des Servlets (vgl. <tt>fromConfig()</tt>):
+ * <ul>
+ * <li><tt>AsyncThreads</tt>: Anzahl der Worker-Threads</li>
+ * <li><tt>AsyncQueueSize</tt>: maximale Anzahl wartender Anfragen</li>
+ * </ul>
+ * Unterst&uuml;tzt der Container bzw. ein vorgeschalteter Filter keine asynchrone Bearbeitung, wird die Anfrage
+ * wie bisher im Container-Thread bearbeitet.
+ */
+public class AsyncRequestExecutor
+{
+    private static Log sLogger = LogFactory.getLog(AsyncRequestExecutor.class);
+
+    private String mName;
+    private ThreadPoolExecutor mPool;
+
+    /**
+     * Request processing performed by a worker thread.<br /><br />
+     * <i>German:</i> Von einem Worker-Thread ausgef&uuml;hrte Bearbeitung einer Anfrage.
+     */
+    public interface Handler
+    {
+        /**
+         * processes the given request.<br /><br />
+         * <i>German:</i> bearbeitet die angegebene Anfrage.
+         * @param pRequest HTTP-Anfrage-Objekt
+         * @param pResponse HTTP-Antwort-Objekt
+         * @throws ServletException
+         * @throws IOException
+         */
+        public void handle(HttpServletRequest pRequest, HttpServletResponse pResponse)
+            throws ServletException, IOException;
+    }
+
+    /**
+     * Constructor.<br /><br />
+     * <i>German:</i> Konstruktor.
+     * @param pName Name des Dienstes (f&uuml;r Thread-Namen und Protokollierung)
+     * @param pThreads Anzahl der Worker-Threads
+     * @param pQueueSize maximale Anzahl wartender Anfragen
+     */
+    public AsyncRequestExecutor(final String pName, int pThreads, int pQueueSize)
+    {
+        mName = pName;
+        int lThreads = Math.max(1, pThreads);
+        mPool = new ThreadPoolExecutor(
+            lThreads, lThreads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue(Math.max(1, pQueueSize)),
+            new ThreadFactory() {
+                private int mCount = 0;
+                public synchronized Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, pName + "-Worker-" + (mCount++));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+    }
+
+    /**
+     * creates an executor configured by the servlet's init-parameters <tt>AsyncThreads</tt> and
+     * <tt>AsyncQueueSize</tt>.<br /><br />
+     * <i>German:</i> erzeugt einen &uuml;ber die Initialisierungsparameter <tt>AsyncThreads</tt> und
+     * <tt>AsyncQueueSize</tt> des Servlets konfigurierten Pool.
+     * @param pConf Servlet-Konfiguration
+     * @param pDefThreads Voreinstellung f&uuml;r die Anzahl der Worker-Threads
+     * @param pDefQueueSize Voreinstellung f&uuml;r die maximale Anzahl wartender Anfragen
+     * @return Pool
+     */
+    public static AsyncRequestExecutor fromConfig(ServletConfig pConf, int pDefThreads, int pDefQueueSize)
+    {
+        int lThreads = pDefThreads, lQueueSize = pDefQueueSize;
+        if (pConf.getInitParameter("AsyncThreads") != null)
+            lThreads = Integer.parseInt(pConf.getInitParameter("AsyncThreads").trim());
+        if (pConf.getInitParameter("AsyncQueueSize") != null)
+            lQueueSize = Integer.parseInt(pConf.getInitParameter("AsyncQueueSize").trim());
+        return new AsyncRequestExecutor(pConf.getServletName(), lThreads, lQueueSize);
+    }
+
+    /**
+     * hands the given request over to a worker thread.<br /><br />
+     * <i>German:</i> &uuml;bergibt die angegebene Anfrage an einen Worker-Thread. Die Methode kehrt sofort
+     * zur&uuml;ck; die Antwort wird nach Ausf&uuml;hrung des Handlers abgeschlossen.
+     * @param pRequest HTTP-Anfrage-Objekt
+     * @param pResponse HTTP-Antwort-Objekt
+     * @param pHandler Bearbeitung der Anfrage
+     * @throws ServletException
+     * @throws IOException
+     */
+    public void execute(HttpServletRequest pRequest, HttpServletResponse pResponse, final Handler pHandler)
+        throws ServletException, IOException
+    {
+        if (!pRequest.isAsyncSupported()) {
+            pHandler.handle(pRequest, pResponse);
+            return;
+        }
+        AsyncContext lCtx = pRequest.startAsync(pRequest, pResponse);
+        lCtx.setTimeout(0); // keine Container-Zeitbegrenzung, die Dienste begrenzen ihre Laufzeit selbst
+        try {
+            mPool.execute(new Task(lCtx, pHandler));
+        }
+        catch (RejectedExecutionException e) {
+            sLogger.debug(mName + ": Request rejected, queue is full.");
+            reject(lCtx, "The server is too busy at the moment. Please try again later.");
+        }
+    }
+
+    /**
+     * stops the worker threads. Queued requests are not processed any more, but answered with HTTP status 503.
+     * <br /><br />
+     * <i>German:</i> beendet die Worker-Threads. Wartende Anfragen werden nicht mehr bearbeitet, sondern mit dem
+     * HTTP-Status 503 beantwortet und abgeschlossen.
+     */
+    public void shutdown()
+    {
+        List lDrained = mPool.shutdownNow();
+        for (int i = 0; i < lDrained.size(); i++) {
+            if (lDrained.get(i) instanceof Task) {
+                try {
+                    reject(((Task) lDrained.get(i)).mCtx, "The service is shutting down. Please try again later.");
+                }
+                catch (Throwable e) {
+                    sLogger.debug(mName + ": Could not reject queued request: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // von einem Worker-Thread auszufuehrende Bearbeitung einer Anfrage
+    private class Task implements Runnable
+    {
+        private AsyncContext mCtx;
+        private Handler mHandler;
+
+        public Task(AsyncContext pCtx, Handler pHandler) {
+            mCtx = pCtx;
+            mHandler = pHandler;
+        }
+
+        public void run()
+        {
+            try {
+                mHandler.handle((HttpServletRequest) mCtx.getRequest(), (HttpServletResponse) mCtx.getResponse());
+            }
+            catch (Throwable e) {
+                sLogger.error(mName + ": Unhandled error during asynchronous processing.", e);
+            }
+            finally {
+                complete(mCtx);
+            }
+        }
+    }
+
+    // beantwortet eine nicht bearbeitete Anfrage mit dem HTTP-Status 503 und schliesst sie ab
+    private static void reject(AsyncContext pCtx, String pMessage) throws IOException
+    {
+        try {
+            HttpServletResponse lResp = (HttpServletResponse) pCtx.getResponse();
+            lResp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            lResp.setHeader("Retry-After", "10");
+            new HttpStandardResponse().sendException(pMessage, lResp);
+        }
+        finally {
+            complete(pCtx);
+        }
+    }
+
+    private static void complete(AsyncContext pCtx)
+    {
+        // Komprimierte Antwort abschliessen, solange diese noch gueltig ist (vgl. CompressionFilter):
+        if (pCtx.getResponse() instanceof CompressionResponseWrapper) {
+            try {
+                ((CompressionResponseWrapper) pCtx.getResponse()).finish();
+            }
+            catch (IOException e) {
+                sLogger.debug("Could not finish compressed response: " + e.getMessage());
+            }
+        }
+        pCtx.complete();
+    }
+}
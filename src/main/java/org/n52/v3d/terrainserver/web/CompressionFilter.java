@@ -0,0 +1,236 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.web;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.StringTokenizer;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet filter compressing service responses according to the client's <tt>Accept-Encoding</tt> header.
+ * <br /><br />
+ * <i>German:</i> Servlet-Filter, der die Antworten der Dienste gem&auml;&szlig; dem <tt>Accept-Encoding</tt>-Kopf der
+ * Anfrage komprimiert.<br />
+ * Unterst&uuml;tzt werden die Kodierungen "gzip" und "deflate" (bei gleicher Gewichtung wird "gzip" bevorzugt). Die
+ * Kompression erfolgt beim Schreiben der Antwort, d. h. ohne die vollst&auml;ndige Antwort zwischenzuspeichern.
+ * Komprimiert werden nur Antworten, deren MIME-Typ mit einem der konfigurierten Pr&auml;fixe beginnt und deren
+ * Gr&ouml;&szlig;e den eingestellten Schwellwert erreicht; kleinere Antworten werden unver&auml;ndert (mit
+ * <tt>Content-Length</tt>) gesendet. Antworten, f&uuml;r die das Servlet selbst ein <tt>Content-Encoding</tt> setzt
+ * (z. B. vorkomprimierte Capabilities-Dokumente, vgl. <tt>sendPrecompressed()</tt>) oder die per
+ * <tt>Accept-Ranges</tt> Byte-Bereiche anbieten (z. B. GetJobResult), werden durchgereicht.<br />
+ * Initialisierungsparameter im Deployment-Deskriptor:
+ * <ul>
+ * <li><tt>MinSize</tt>: Schwellwert in Bytes (Voreinstellung 1024)</li>
+ * <li><tt>Level</tt>: Kompressionsstufe 1 (schnell) bis 9 (hoch), Voreinstellung 6</li>
+ * <li><tt>MimeTypes</tt>: kommaseparierte Liste der MIME-Typ-Pr&auml;fixe (Voreinstellung
+ * "text/,model/,image/svg+xml,application/xml,application/vnd.ogc")</li>
+ * </ul>
+ */
+public class CompressionFilter implements Filter
+{
+    private int mMinSize = 1024;
+    private int mLevel = 6;
+    private String[] mMimeTypes = {"text/", "model/", "image/svg+xml", "application/xml", "application/vnd.ogc"};
+
+    public void init(FilterConfig pConf) throws ServletException
+    {
+        if (pConf.getInitParameter("MinSize") != null)
+            mMinSize = Math.max(0, Integer.parseInt(pConf.getInitParameter("MinSize").trim()));
+        if (pConf.getInitParameter("Level") != null)
+            mLevel = Math.max(1, Math.min(9, Integer.parseInt(pConf.getInitParameter("Level").trim())));
+        if (pConf.getInitParameter("MimeTypes") != null) {
+            StringTokenizer st = new StringTokenizer(pConf.getInitParameter("MimeTypes"), ", \t\r\n");
+            mMimeTypes = new String[st.countTokens()];
+            for (int i = 0; i < mMimeTypes.length; i++)
+                mMimeTypes[i] = st.nextToken().toLowerCase();
+        }
+    }
+
+    public void doFilter(ServletRequest pReq, ServletResponse pResp, FilterChain pChain)
+        throws IOException, ServletException
+    {
+        String lEncoding = null;
+        if (pReq instanceof HttpServletRequest && pResp instanceof HttpServletResponse)
+            lEncoding = acceptedEncoding((HttpServletRequest) pReq);
+        if (lEncoding == null) {
+            pChain.doFilter(pReq, pResp);
+            return;
+        }
+
+        CompressionResponseWrapper lResp = new CompressionResponseWrapper(
+            (HttpServletResponse) pResp, lEncoding, mLevel, mMinSize, mMimeTypes);
+        try {
+            pChain.doFilter(pReq, lResp);
+        }
+        finally {
+            // Bei asynchroner Bearbeitung schliesst AsyncRequestExecutor die Antwort ab
+            if (!pReq.isAsyncStarted())
+                lResp.finish();
+        }
+    }
+
+    public void destroy() {
+    }
+
+    /**
+     * determines the content encoding to be used for the response to the given request.<br /><br />
+     * <i>German:</i> ermittelt die f&uuml;r die Antwort auf die angegebene Anfrage zu verwendende Kodierung. Dabei
+     * werden die Gewichtungen ("q"-Werte) des <tt>Accept-Encoding</tt>-Kopfes ber&uuml;cksichtigt.
+     * @param pReq HTTP-Anfrage
+     * @return "gzip", "deflate" oder <i>null</i>, falls der Client keine dieser Kodierungen akzeptiert
+     */
+    public static String acceptedEncoding(HttpServletRequest pReq)
+    {
+        String lHeader = pReq.getHeader("Accept-Encoding");
+        if (lHeader == null)
+            return null;
+        double lGzip = 0., lDeflate = 0., lAny = 0.;
+        boolean lGzipListed = false, lDeflateListed = false;
+        StringTokenizer st = new StringTokenizer(lHeader, ",");
+        while (st.hasMoreTokens()) {
+            String lTok = st.nextToken().trim().toLowerCase();
+            double q = 1.;
+            int k = lTok.indexOf(';');
+            if (k >= 0) {
+                String lParam = lTok.substring(k + 1).trim();
+                lTok = lTok.substring(0, k).trim();
+                if (lParam.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(lParam.substring(2).trim());
+                    }
+                    catch (NumberFormatException e) {
+                        q = 0.; // unverstaendliche Gewichtung nicht beruecksichtigen
+                    }
+                }
+            }
+            if (lTok.equals("gzip") || lTok.equals("x-gzip")) { lGzip = q; lGzipListed = true; }
+            if (lTok.equals("deflate")) { lDeflate = q; lDeflateListed = true; }
+            if (lTok.equals("*")) lAny = q;
+        }
+        if (!lGzipListed) lGzip = lAny;
+        if (!lDeflateListed) lDeflate = lAny;
+        if (lGzip > 0. && lGzip >= lDeflate)
+            return "gzip";
+        if (lDeflate > 0.)
+            return "deflate";
+        return null;
+    }
+
+    /**
+     * sends a static file (e.g. a capabilities document) gzip-compressed, if the client accepts this encoding. The
+     * compressed variant <tt>&lt;file&gt;.gz</tt> is generated once and renewed if the original file changes.
+     * <br /><br />
+     * <i>German:</i> sendet eine statische Datei (z. B. ein Capabilities-Dokument) gzip-komprimiert, sofern der
+     * Client diese Kodierung akzeptiert. Die komprimierte Variante <tt>&lt;Datei&gt;.gz</tt> wird einmalig erzeugt
+     * und bei &Auml;nderung der Originaldatei erneuert. Kann die Variante nicht erzeugt werden (z. B. fehlende
+     * Schreibrechte), wird <i>false</i> zur&uuml;ckgegeben; die Datei ist dann wie bisher unkomprimiert zu senden.
+     * @param pFilename Dateiname (inkl. Pfad)
+     * @param pMimeType MIME-Typ der Antwort
+     * @param pReq HTTP-Anfrage
+     * @param pResp HTTP-Antwort
+     * @return <i>true</i>, falls die komprimierte Variante gesendet wurde
+     * @throws IOException bei Fehlern w&auml;hrend des Sendens
+     */
+    public static boolean sendPrecompressed(
+        String pFilename, String pMimeType, HttpServletRequest pReq, HttpServletResponse pResp)
+        throws IOException
+    {
+        if (!"gzip".equals(acceptedEncoding(pReq)))
+            return false;
+        File lGz = precompressed(pFilename);
+        if (lGz == null)
+            return false;
+
+        pResp.setContentType(pMimeType);
+        pResp.setHeader("Content-Encoding", "gzip");
+        pResp.addHeader("Vary", "Accept-Encoding");
+        pResp.setContentLength((int) lGz.length());
+        InputStream lIn = new FileInputStream(lGz);
+        try {
+            copy(lIn, pResp.getOutputStream());
+        }
+        finally {
+            lIn.close();
+        }
+        return true;
+    }
+
+    private static synchronized File precompressed(String pFilename)
+    {
+        File lSrc = new File(pFilename);
+        File lGz = new File(pFilename + ".gz");
+        if (!lSrc.exists())
+            return null;
+        if (lGz.exists() && lGz.lastModified() >= lSrc.lastModified())
+            return lGz;
+
+        // Unter temporaerem Namen schreiben, damit nie eine unvollstaendige Datei gesendet wird:
+        File lTmp = new File(pFilename + ".gz.tmp");
+        try {
+            InputStream lIn = new FileInputStream(lSrc);
+            try {
+                GZIPOutputStream lOut = new GZIPOutputStream(new FileOutputStream(lTmp)) {
+                    {
+                        def.setLevel(9);
+                    }
+                };
+                try {
+                    copy(lIn, lOut);
+                }
+                finally {
+                    lOut.close();
+                }
+            }
+            finally {
+                lIn.close();
+            }
+            lGz.delete();
+            if (!lTmp.renameTo(lGz))
+                return null;
+            return lGz;
+        }
+        catch (IOException e) {
+            lTmp.delete();
+            return null;
+        }
+    }
+
+    private static void copy(InputStream pIn, OutputStream pOut) throws IOException
+    {
+        byte[] lBuf = new byte[8192];
+        int n;
+        while ((n = pIn.read(lBuf)) > 0)
+            pOut.write(lBuf, 0, n);
+    }
+}
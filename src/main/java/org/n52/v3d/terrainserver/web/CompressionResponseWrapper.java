@@ -0,0 +1,264 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Response wrapper used by <tt>CompressionFilter</tt>.<br /><br />
+ * <i>German:</i> Von <tt>CompressionFilter</tt> verwendete H&uuml;lle f&uuml;r die HTTP-Antwort.<br />
+ * Die ersten Bytes der Antwort (bis zum Schwellwert) werden gepuffert. Erst wenn der Schwellwert
+ * &uuml;berschritten wird, wird anhand des dann gesetzten MIME-Typs entschieden, ob komprimiert wird; die
+ * &uuml;brigen Daten werden ohne weitere Pufferung durch den Kompressor in die eigentliche Antwort geschrieben.
+ */
+public class CompressionResponseWrapper extends HttpServletResponseWrapper
+{
+    private String mEncoding;
+    private int mLevel;
+    private int mMinSize;
+    private String[] mMimeTypes;
+
+    private CompressionStream mStream = null;
+    private PrintWriter mWriter = null;
+    private boolean mPassThrough = false;
+    private int mContentLength = -1;
+
+    /**
+     * Constructor.<br /><br />
+     * <i>German:</i> Konstruktor.
+     * @param pResp urspr&uuml;ngliche HTTP-Antwort
+     * @param pEncoding Kodierung ("gzip" oder "deflate")
+     * @param pLevel Kompressionsstufe (1 bis 9)
+     * @param pMinSize Schwellwert in Bytes
+     * @param pMimeTypes zu komprimierende MIME-Typ-Pr&auml;fixe (in Kleinbuchstaben)
+     */
+    public CompressionResponseWrapper(
+        HttpServletResponse pResp, String pEncoding, int pLevel, int pMinSize, String[] pMimeTypes)
+    {
+        super(pResp);
+        mEncoding = pEncoding;
+        mLevel = pLevel;
+        mMinSize = pMinSize;
+        mMimeTypes = pMimeTypes;
+    }
+
+    public ServletOutputStream getOutputStream() throws IOException
+    {
+        if (mWriter != null)
+            throw new IllegalStateException("getWriter() has already been called.");
+        if (mStream == null)
+            mStream = new CompressionStream();
+        return mStream;
+    }
+
+    public PrintWriter getWriter() throws IOException
+    {
+        if (mWriter != null)
+            return mWriter;
+        if (mStream != null)
+            throw new IllegalStateException("getOutputStream() has already been called.");
+        mStream = new CompressionStream();
+        String lCharset = this.getCharacterEncoding();
+        mWriter = new PrintWriter(new OutputStreamWriter(mStream, (lCharset != null) ? lCharset : "ISO-8859-1"));
+        return mWriter;
+    }
+
+    public void setContentLength(int pLen) {
+        mContentLength = pLen; // wird erst nach der Kompressionsentscheidung weitergegeben
+    }
+
+    public void setHeader(String pName, String pValue)
+    {
+        if (pName.equalsIgnoreCase("Content-Length") && !mPassThrough) {
+            this.setContentLength(Integer.parseInt(pValue.trim()));
+            return;
+        }
+        if (pName.equalsIgnoreCase("Content-Encoding"))
+            mPassThrough = true; // Servlet kodiert selbst
+        if (pName.equalsIgnoreCase("Accept-Ranges"))
+            mPassThrough = true; // Byte-Bereiche beziehen sich auf die unkomprimierte Antwort
+        super.setHeader(pName, pValue);
+    }
+
+    public void addHeader(String pName, String pValue)
+    {
+        if (pName.equalsIgnoreCase("Content-Length") && !mPassThrough) {
+            this.setContentLength(Integer.parseInt(pValue.trim()));
+            return;
+        }
+        if (pName.equalsIgnoreCase("Content-Encoding") || pName.equalsIgnoreCase("Accept-Ranges"))
+            mPassThrough = true;
+        super.addHeader(pName, pValue);
+    }
+
+    public void setIntHeader(String pName, int pValue)
+    {
+        if (pName.equalsIgnoreCase("Content-Length")) {
+            this.setContentLength(pValue);
+            return;
+        }
+        super.setIntHeader(pName, pValue);
+    }
+
+    public void flushBuffer() throws IOException
+    {
+        if (mWriter != null)
+            mWriter.flush();
+        if (mStream != null)
+            mStream.flush();
+        // Solange nicht ueber die Kompression entschieden ist, bleibt die Antwort ungesendet.
+        if (mStream == null || mStream.mOut != null)
+            super.flushBuffer();
+    }
+
+    public void resetBuffer()
+    {
+        if (mStream != null && mStream.mOut == null)
+            mStream.mCount = 0;
+        super.resetBuffer();
+    }
+
+    public void reset()
+    {
+        if (mStream != null && mStream.mOut == null)
+            mStream.mCount = 0;
+        mPassThrough = false;
+        mContentLength = -1;
+        super.reset();
+    }
+
+    /**
+     * completes the response. Called by <tt>CompressionFilter</tt> after the servlet has been executed.<br /><br />
+     * <i>German:</i> schlie&szlig;t die Antwort ab. Wird von <tt>CompressionFilter</tt> nach Ausf&uuml;hrung des
+     * Servlets aufgerufen.
+     * @throws IOException bei Schreibfehlern
+     */
+    public void finish() throws IOException
+    {
+        if (mWriter != null)
+            mWriter.close();
+        else if (mStream != null)
+            mStream.close();
+        else if (mContentLength >= 0)
+            super.setContentLength(mContentLength);
+    }
+
+    private boolean isCompressible()
+    {
+        if (mPassThrough || this.isCommitted())
+            return false;
+        String lType = this.getContentType();
+        if (lType == null)
+            return false;
+        lType = lType.toLowerCase();
+        for (int i = 0; i < mMimeTypes.length; i++) {
+            if (lType.startsWith(mMimeTypes[i]))
+                return true;
+        }
+        return false;
+    }
+
+    private class CompressionStream extends ServletOutputStream
+    {
+        byte[] mBuf = new byte[mMinSize];
+        int mCount = 0;
+        OutputStream mOut = null; // null, solange nicht entschieden ist
+        Deflater mDeflater = null;
+        boolean mClosed = false;
+
+        public void write(int b) throws IOException {
+            this.write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        public void write(byte[] b, int pOff, int pLen) throws IOException
+        {
+            if (mClosed)
+                throw new IOException("Stream closed.");
+            if (mOut == null) {
+                if (mCount + pLen <= mBuf.length) {
+                    System.arraycopy(b, pOff, mBuf, mCount, pLen);
+                    mCount += pLen;
+                    return;
+                }
+                this.decide(true);
+            }
+            mOut.write(b, pOff, pLen);
+        }
+
+        public void flush() throws IOException {
+            if (mOut != null)
+                mOut.flush();
+        }
+
+        public void close() throws IOException
+        {
+            if (mClosed)
+                return;
+            if (mOut == null)
+                this.decide(false);
+            mOut.close();
+            if (mDeflater != null)
+                mDeflater.end();
+            mClosed = true;
+        }
+
+        private void decide(boolean pLarge) throws IOException
+        {
+            boolean lCompressible = isCompressible();
+            HttpServletResponse lResp = (HttpServletResponse) getResponse();
+            if (lCompressible)
+                lResp.addHeader("Vary", "Accept-Encoding");
+            if (pLarge && lCompressible) {
+                lResp.setHeader("Content-Encoding", mEncoding);
+                OutputStream lRaw = lResp.getOutputStream();
+                if (mEncoding.equals("gzip")) {
+                    mOut = new GZIPOutputStream(lRaw, 8192) {
+                        {
+                            def.setLevel(mLevel);
+                        }
+                    };
+                }
+                else {
+                    mDeflater = new Deflater(mLevel);
+                    mOut = new DeflaterOutputStream(lRaw, mDeflater, 8192);
+                }
+            }
+            else {
+                if (!pLarge)
+                    lResp.setContentLength(mCount);
+                else if (mContentLength >= 0)
+                    lResp.setContentLength(mContentLength);
+                mOut = lResp.getOutputStream();
+            }
+            mOut.write(mBuf, 0, mCount);
+            mBuf = null;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.web;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import org.n52.v3d.terrainserver.demservice.ParallelTileLoader;
+import org.n52.v3d.terrainserver.demservice.TileCache;
+
+/**
+ * Context listener configuring the tile cache and tile loader shared by all servlets of the web application.
+ * <br /><br />
+ * <i>German:</i> Context-Listener zur Konfiguration des Kachel-Caches und des Kachel-Loaders, die sich alle Servlets
+ * der Web-Anwendung teilen.<br />
+ * Kontextparameter im Deployment-Deskriptor:
+ * <ul>
+ * <li><tt>TileCacheMaxBytes</tt>: Speicherbudget des Kachel-Caches in Bytes (0 = kein Cache)</li>
+ * <li><tt>TileLoaderThreads</tt>: Anzahl der Threads zum parallelen Einlesen der Quellkacheln</li>
+ * </ul>
+ */
+public class TileCacheConfigListener implements ServletContextListener
+{
+    public void contextInitialized(ServletContextEvent pEvent)
+    {
+        ServletContext lCtx = pEvent.getServletContext();
+        String lTileCacheMaxBytes = lCtx.getInitParameter("TileCacheMaxBytes");
+        if (lTileCacheMaxBytes != null)
+            TileCache.getInstance().setMaxBytes(Long.parseLong(lTileCacheMaxBytes.trim()));
+        String lTileLoaderThreads = lCtx.getInitParameter("TileLoaderThreads");
+        if (lTileLoaderThreads != null)
+            ParallelTileLoader.setPoolSize(Integer.parseInt(lTileLoaderThreads.trim()));
+    }
+
+    public void contextDestroyed(ServletContextEvent pEvent) {
+        TileCache.getInstance().clear();
+    }
+}
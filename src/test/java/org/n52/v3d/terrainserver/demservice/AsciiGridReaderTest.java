@@ -0,0 +1,187 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Test;
+import org.n52.v3d.triturus.core.T3dException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for <tt>AsciiGridReader</tt>.
+ */
+public class AsciiGridReaderTest
+{
+    private File mFile;
+
+    @After
+    public void tearDown() {
+        if (mFile != null)
+            mFile.delete();
+    }
+
+    private String write(String pContent) throws IOException
+    {
+        mFile = File.createTempFile("asciigrid", ".asc");
+        FileWriter lWriter = new FileWriter(mFile);
+        lWriter.write(pContent);
+        lWriter.close();
+        return mFile.getPath();
+    }
+
+    @Test
+    public void testHeaderAndValues() throws IOException
+    {
+        String lFile = this.write(
+            "ncols 3\r\n" +
+            "nrows 2\r\n" +
+            "xllcorner 3400000.5\r\n" +
+            "yllcorner 5700000\r\n" +
+            "cellsize 25\r\n" +
+            "NODATA_value -9999\r\n" +
+            "1 2.5 -3\r\n" +
+            "4e2 -9999 0.125\r\n");
+        ArrayElevationTile lTile = new AsciiGridReader().readFromFile(lFile);
+
+        assertEquals(2, lTile.numberOfRows());
+        assertEquals(3, lTile.numberOfColumns());
+        assertEquals(3400000.5, lTile.getXMin(), 0.);
+        assertEquals(5700000., lTile.getYMin(), 0.);
+        assertEquals(25., lTile.getDeltaX(), 0.);
+        assertEquals(25., lTile.getDeltaY(), 0.);
+
+        // Dateizeile 0 ist die noerdlichste Gitterzeile:
+        assertEquals(1., lTile.getValue(1, 0), 0.);
+        assertEquals(2.5, lTile.getValue(1, 1), 0.);
+        assertEquals(-3., lTile.getValue(1, 2), 0.);
+        assertEquals(400., lTile.getValue(0, 0), 0.);
+        assertFalse(lTile.isSet(0, 1));
+        assertEquals(0.125, lTile.getValue(0, 2), 0.);
+    }
+
+    @Test
+    public void testSeparateCellSizes() throws IOException
+    {
+        String lFile = this.write(
+            "ncols 2\nnrows 1\nxllcenter 10\nyllcenter 20\ndx 2\ndy 3\n7 8\n");
+        ArrayElevationTile lTile = new AsciiGridReader().readFromFile(lFile);
+
+        assertEquals(2., lTile.getDeltaX(), 0.);
+        assertEquals(3., lTile.getDeltaY(), 0.);
+        assertTrue(lTile.isSet(0, 0));
+        assertEquals(8., lTile.getValue(0, 1), 0.);
+    }
+
+    @Test
+    public void testParallelReadMatchesSequentialRead() throws IOException
+    {
+        int lCols = 500, lRows = 1000;
+        StringBuffer lBuf = new StringBuffer();
+        lBuf.append("ncols " + lCols + "\nnrows " + lRows + "\nxllcorner 0\nyllcorner 0\ncellsize 1\n");
+        for (int i = 0; i < lRows; i++) {
+            for (int j = 0; j < lCols; j++)
+                lBuf.append((i * lCols + j) % 9973).append(".25 ");
+            lBuf.append('\n');
+        }
+        String lFile = this.write(lBuf.toString());
+
+        AsciiGridReader lSeq = new AsciiGridReader();
+        lSeq.setParallelism(1);
+        AsciiGridReader lPar = new AsciiGridReader();
+        lPar.setParallelism(4);
+        ArrayElevationTile lTile1 = lSeq.readFromFile(lFile);
+        ArrayElevationTile lTile2 = lPar.readFromFile(lFile);
+
+        for (int i = 0; i < lRows; i++) {
+            for (int j = 0; j < lCols; j++) {
+                double z = ((lRows - 1 - i) * lCols + j) % 9973 + 0.25;
+                assertEquals(z, lTile1.getValue(i, j), 0.);
+                assertEquals(z, lTile2.getValue(i, j), 0.);
+            }
+        }
+    }
+
+    @Test
+    public void testWindow() throws IOException
+    {
+        int lCols = 500, lRows = 1000;
+        StringBuffer lBuf = new StringBuffer();
+        lBuf.append("ncols " + lCols + "\nnrows " + lRows + "\nxllcorner 100\nyllcorner 200\ncellsize 2\n");
+        for (int i = 0; i < lRows; i++) {
+            for (int j = 0; j < lCols; j++)
+                lBuf.append((i * lCols + j) % 9973).append(".25 ");
+            lBuf.append('\n');
+        }
+        String lFile = this.write(lBuf.toString());
+
+        // Ausschnitt wie bei TileWindow.clip(), Randbereich 3 + 2 Gitterpunkte zu je 2:
+        for (int lParallelism = 1; lParallelism <= 4; lParallelism += 3) {
+            AsciiGridReader lReader = new AsciiGridReader();
+            lReader.setParallelism(lParallelism);
+            lReader.setWindow(301., 1001., 399., 1201., 3., 2);
+            ArrayElevationTile lTile = lReader.readFromFile(lFile);
+
+            assertEquals(57, lTile.numberOfColumns());
+            assertEquals(108, lTile.numberOfRows());
+            assertEquals(294., lTile.getXMin(), 0.);
+            assertEquals(994., lTile.getYMin(), 0.);
+            assertEquals(2., lTile.getDeltaX(), 0.);
+            for (int i = 0; i < lTile.numberOfRows(); i++) {
+                for (int j = 0; j < lTile.numberOfColumns(); j++) {
+                    int lFileRow = lRows - 1 - (i + 397), lFileCol = j + 97;
+                    assertEquals((lFileRow * lCols + lFileCol) % 9973 + 0.25, lTile.getValue(i, j), 0.);
+                }
+            }
+        }
+
+        AsciiGridReader lReader = new AsciiGridReader();
+        lReader.setWindow(5000., 200., 6000., 300., 3., 2);
+        assertNull(lReader.readFromFile(lFile));
+    }
+
+    @Test(expected = T3dException.class)
+    public void testMissingValues() throws IOException
+    {
+        String lFile = this.write("ncols 2\nnrows 2\nxllcorner 0\nyllcorner 0\ncellsize 1\n1 2\n3\n");
+        new AsciiGridReader().readFromFile(lFile);
+    }
+
+    @Test(expected = T3dException.class)
+    public void testInvalidValue() throws IOException
+    {
+        String lFile = this.write("ncols 2\nnrows 1\nxllcorner 0\nyllcorner 0\ncellsize 1\n1 2x\n");
+        new AsciiGridReader().readFromFile(lFile);
+    }
+
+    @Test(expected = T3dException.class)
+    public void testIncompleteHeader() throws IOException
+    {
+        String lFile = this.write("ncols 2\nnrows 1\nxllcorner 0\n1 2\n");
+        new AsciiGridReader().readFromFile(lFile);
+    }
+}
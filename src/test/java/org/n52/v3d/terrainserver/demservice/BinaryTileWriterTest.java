@@ -0,0 +1,194 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.v3d.triturus.core.T3dException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for <tt>BinaryTileWriter</tt> and <tt>BinaryElevationTile</tt>.
+ */
+public class BinaryTileWriterTest
+{
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        mDir = File.createTempFile("bintiles", "");
+        mDir.delete();
+        mDir.mkdirs();
+    }
+
+    @After
+    public void tearDown()
+    {
+        File[] lFiles = mDir.listFiles();
+        for (int i = 0; lFiles != null && i < lFiles.length; i++)
+            lFiles[i].delete();
+        mDir.delete();
+    }
+
+    // Kachel mit 7 Spalten und 5 Zeilen, Wertebereich etwa -120 bis 2900, ein nicht belegter Gitterpunkt
+    private static ArrayElevationTile tile()
+    {
+        float[] lValues = new float[35];
+        for (int k = 0; k < 35; k++)
+            lValues[k] = -120.25f + 88.7f * k;
+        lValues[12] = Float.NaN;
+        return new ArrayElevationTile(7, 5, 3400000.5, 5700000., 12.5, 25., lValues);
+    }
+
+    private String path(String pName) {
+        return new File(mDir, pName).getPath();
+    }
+
+    private static void assertGeometry(ElevationTile pExpected, ElevationTile pTile)
+    {
+        assertEquals(pExpected.numberOfColumns(), pTile.numberOfColumns());
+        assertEquals(pExpected.numberOfRows(), pTile.numberOfRows());
+        assertEquals(pExpected.getXMin(), pTile.getXMin(), 0.);
+        assertEquals(pExpected.getYMin(), pTile.getYMin(), 0.);
+        assertEquals(pExpected.getDeltaX(), pTile.getDeltaX(), 0.);
+        assertEquals(pExpected.getDeltaY(), pTile.getDeltaY(), 0.);
+    }
+
+    @Test
+    public void testFloat32RoundTrip()
+    {
+        ArrayElevationTile lTile = tile();
+        BinaryTileWriter lWriter = new BinaryTileWriter();
+        lWriter.writeToFile(lTile, this.path("dgm0101.bin"));
+        BinaryElevationTile lRes = BinaryElevationTile.map(this.path("dgm0101.bin"));
+
+        assertEquals(BinaryElevationTile.sFloat32, lRes.getDataType());
+        assertEquals(lWriter.requiredBytes(lTile), new File(this.path("dgm0101.bin")).length());
+        assertGeometry(lTile, lRes);
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < 7; j++) {
+                assertEquals(lTile.isSet(i, j), lRes.isSet(i, j));
+                if (lTile.isSet(i, j))
+                    assertEquals(lTile.getValue(i, j), lRes.getValue(i, j), 0.);
+            }
+        }
+        assertFalse(lRes.isSet(1, 5));
+        // keine temporaeren Dateien zuruecklassen:
+        assertEquals(1, mDir.list().length);
+    }
+
+    @Test
+    public void testInt16RoundTrip()
+    {
+        ArrayElevationTile lTile = tile();
+        BinaryTileWriter lWriter = new BinaryTileWriter();
+        lWriter.setDataType(BinaryElevationTile.sInt16);
+        lWriter.writeToFile(lTile, this.path("dgm0101.bin"));
+        BinaryElevationTile lRes = BinaryElevationTile.map(this.path("dgm0101.bin"));
+
+        assertEquals(BinaryElevationTile.sInt16, lRes.getDataType());
+        assertEquals(64 + 35 * 2, new File(this.path("dgm0101.bin")).length());
+        assertGeometry(lTile, lRes);
+        // Skalierung: Wertebereich / 64000, Abweichung hoechstens eine halbe Stufe
+        double lTol = 0.5 * (lTile.getValue(4, 6) - lTile.getValue(0, 0)) / 64000. + 1.e-6;
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < 7; j++) {
+                assertEquals(lTile.isSet(i, j), lRes.isSet(i, j));
+                if (lTile.isSet(i, j))
+                    assertEquals(lTile.getValue(i, j), lRes.getValue(i, j), lTol);
+            }
+        }
+        assertFalse(lRes.isSet(1, 5));
+    }
+
+    @Test
+    public void testInt16ConstantTile()
+    {
+        float[] lValues = {42.f, 42.f, 42.f, Float.NaN};
+        BinaryTileWriter lWriter = new BinaryTileWriter();
+        lWriter.setDataType(BinaryElevationTile.sInt16);
+        lWriter.writeToFile(new ArrayElevationTile(2, 2, 0., 0., 1., 1., lValues), this.path("c.bin"));
+        BinaryElevationTile lRes = BinaryElevationTile.map(this.path("c.bin"));
+
+        assertEquals(42., lRes.getValue(0, 0), 0.);
+        assertFalse(lRes.isSet(1, 1));
+    }
+
+    @Test
+    public void testOverviews()
+    {
+        ArrayElevationTile lTile = tile();
+        BinaryTileWriter lWriter = new BinaryTileWriter();
+        lWriter.writeToFile(lTile, this.path("dgm0101.bin"));
+        // 7 x 5 -> 4 x 3 -> 2 x 2, danach Abbruch (weniger als 3 Gitterpunkte)
+        assertEquals(2, lWriter.writeOverviews(lTile, this.path("dgm0101.bin")));
+        assertFalse(new File(BinaryElevationTile.overviewFilename(this.path("dgm0101.bin"), 8)).exists());
+
+        BinaryElevationTile lOvr =
+            BinaryElevationTile.map(BinaryElevationTile.overviewFilename(this.path("dgm0101.bin"), 2));
+        assertEquals(4, lOvr.numberOfColumns());
+        assertEquals(3, lOvr.numberOfRows());
+        assertEquals(lTile.getXMin(), lOvr.getXMin(), 0.);
+        assertEquals(25., lOvr.getDeltaX(), 0.);
+        assertEquals(50., lOvr.getDeltaY(), 0.);
+    }
+
+    @Test
+    public void testIsUpToDate() throws IOException
+    {
+        String lAsc = this.path("dgm0101.asc"), lBin = this.path("dgm0101.bin");
+        assertFalse(BinaryTileWriter.isUpToDate(lBin, lAsc));
+
+        new BinaryTileWriter().writeToFile(tile(), lBin);
+        // ohne ASCII-Grid ist die binaere Kachel massgeblich:
+        assertTrue(BinaryTileWriter.isUpToDate(lBin, lAsc));
+
+        new FileOutputStream(lAsc).close();
+        long lNow = System.currentTimeMillis();
+        new File(lAsc).setLastModified(lNow - 60000);
+        new File(lBin).setLastModified(lNow);
+        assertTrue(BinaryTileWriter.isUpToDate(lBin, lAsc));
+        new File(lAsc).setLastModified(lNow + 60000);
+        assertFalse(BinaryTileWriter.isUpToDate(lBin, lAsc));
+    }
+
+    @Test(expected = T3dException.class)
+    public void testInvalidFile() throws IOException
+    {
+        FileOutputStream lOut = new FileOutputStream(this.path("bad.bin"));
+        lOut.write(new byte[100]);
+        lOut.close();
+        BinaryElevationTile.map(this.path("bad.bin"));
+    }
+
+    @Test(expected = T3dException.class)
+    public void testUnsupportedDataType() {
+        new BinaryTileWriter().setDataType((short) 7);
+    }
+}
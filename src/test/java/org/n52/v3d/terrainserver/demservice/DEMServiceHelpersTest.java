@@ -0,0 +1,184 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.v3d.triturus.gisimplm.GmPoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for <tt>DEMServiceHelpers</tt>.
+ */
+public class DEMServiceHelpersTest
+{
+    private File mRoot, mDir;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        mRoot = File.createTempFile("helpers", "");
+        mRoot.delete();
+        mDir = new File(mRoot, "dgm" + File.separator + "epsg_31467");
+        mDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        this.delete(mRoot);
+    }
+
+    private void delete(File pFile)
+    {
+        File[] lFiles = pFile.listFiles();
+        for (int i = 0; lFiles != null && i < lFiles.length; i++)
+            this.delete(lFiles[i]);
+        pFile.delete();
+    }
+
+    // schreibt eine Kachel mit 17 x 17 Gitterpunkten und Gitterweite 10 als ASCII-Grid, optional zusaetzlich als
+    // binaere Kachel mit Uebersichtsstufen 2, 4 und 8
+    private void writeTile(String pName, double pXMin, boolean pBinary) throws IOException
+    {
+        File lAsc = new File(mDir, pName + ".asc");
+        FileWriter lWriter = new FileWriter(lAsc);
+        lWriter.write("ncols 17\nnrows 17\nxllcorner " + pXMin + "\nyllcorner 0\ncellsize 10\n");
+        for (int i = 0; i < 17; i++) {
+            for (int j = 0; j < 17; j++)
+                lWriter.write((i + j) + " ");
+            lWriter.write("\n");
+        }
+        lWriter.close();
+        lAsc.setLastModified(System.currentTimeMillis() - 60000);
+
+        if (pBinary) {
+            ElevationTile lTile = new AsciiGridReader().readFromFile(lAsc.getPath());
+            String lBin = new File(mDir, pName + ".bin").getPath();
+            BinaryTileWriter lBinWriter = new BinaryTileWriter();
+            lBinWriter.writeToFile(lTile, lBin);
+            assertEquals(3, lBinWriter.writeOverviews(lTile, lBin));
+        }
+    }
+
+    private static ArrayList tileNumbers(int[][] pTiles)
+    {
+        ArrayList lRes = new ArrayList();
+        for (int i = 0; i < pTiles.length; i++)
+            lRes.add(pTiles[i]);
+        return lRes;
+    }
+
+    @Test
+    public void testOverviewLevel() throws IOException
+    {
+        this.writeTile("dgm0101", 0., true);
+        DEMServiceHelpers lHelpers = new DEMServiceHelpers(1.e12);
+
+        ArrayList lTiles = tileNumbers(new int[][] {{1, 1}});
+        // Gitterweite 10, Stufe 8 entspricht Gitterweite 80:
+        assertEquals(8, lHelpers.overviewLevel(lTiles, 100., 100., mRoot.getPath(), "EPSG:31467", "dgm"));
+        assertEquals(2, lHelpers.overviewLevel(lTiles, 100., 25., mRoot.getPath(), "EPSG:31467", "dgm"));
+        assertEquals(1, lHelpers.overviewLevel(lTiles, 15., 100., mRoot.getPath(), "EPSG:31467", "dgm"));
+    }
+
+    @Test
+    public void testOverviewLevelMissingForNeighbour() throws IOException
+    {
+        this.writeTile("dgm0101", 0., true);
+        this.writeTile("dgm0102", 170., false);
+        DEMServiceHelpers lHelpers = new DEMServiceHelpers(1.e12);
+
+        // Nachbarkachel ohne Uebersichten: volle Aufloesung fuer alle Kacheln, keine gemischten Stufen
+        ArrayList lTiles = tileNumbers(new int[][] {{1, 1}, {1, 2}});
+        assertEquals(1, lHelpers.overviewLevel(lTiles, 100., 100., mRoot.getPath(), "EPSG:31467", "dgm"));
+        lTiles = tileNumbers(new int[][] {{1, 2}, {1, 1}});
+        assertEquals(1, lHelpers.overviewLevel(lTiles, 100., 100., mRoot.getPath(), "EPSG:31467", "dgm"));
+
+        this.writeTile("dgm0102", 170., true);
+        assertEquals(8, lHelpers.overviewLevel(lTiles, 100., 100., mRoot.getPath(), "EPSG:31467", "dgm"));
+    }
+
+    @Test
+    public void testClipTiles() throws IOException
+    {
+        // 100 x 100 Gitterpunkte mit Gitterweite 10:
+        ElevationTile lTile = new ArrayElevationTile(100, 100, 0., 0., 10., 10., new float[10000]);
+        ElevationTile lFar = new ArrayElevationTile(10, 10, 5000., 5000., 10., 10., new float[100]);
+        ArrayList lTiles = new ArrayList();
+        lTiles.add(lTile);
+        lTiles.add(null); // ausserhalb liegendes, ausschnittsweise gelesenes ASCII-Grid
+        lTiles.add(lFar);
+
+        DEMServiceHelpers lHelpers = new DEMServiceHelpers(1.e12);
+        assertEquals(25., lHelpers.clipHalo(20., 25.), 0.); // Inverse Distance: Suchradius
+        lHelpers.setInterpolation(GridResampler.sBilinear);
+        assertEquals(10., lHelpers.clipHalo(20., 25.), 0.); // Interpolation: halbe Zielgitterweite
+
+        // Randbereich 25 zzgl. zwei Gitterpunkten, nach aussen gerundet: Spalten 25 bis 55, Zeilen 35 bis 65
+        ArrayList lRes = lHelpers.clipTiles(lTiles, new GmPoint(500., 600., 0.), new GmPoint(300., 400., 0.), 25.);
+        assertEquals(1, lRes.size());
+        ElevationTile lWindow = (ElevationTile) lRes.get(0);
+        assertEquals(31, lWindow.numberOfColumns());
+        assertEquals(31, lWindow.numberOfRows());
+        assertEquals(250., lWindow.getXMin(), 0.);
+        assertEquals(350., lWindow.getYMin(), 0.);
+
+        // ausschnittsweise gelesenes ASCII-Grid deckt denselben Bereich ab und wird nicht weiter beschnitten:
+        this.writeTile("dgm0101", 0., false);
+        String lAsc = new File(mDir, "dgm0101.asc").getPath();
+        lTiles = new ArrayList();
+        lTiles.add(new AsciiGridReader().readFromFile(lAsc));
+        GmPoint lPnt1 = new GmPoint(45., 52., 0.), lPnt2 = new GmPoint(75., 81., 0.);
+        lWindow = (ElevationTile) lHelpers.clipTiles(lTiles, lPnt1, lPnt2, 10.).get(0);
+        assertEquals(11, lWindow.numberOfColumns()); // Spalten 1 bis 11
+        AsciiGridReader lReader = new AsciiGridReader();
+        lReader.setWindow(45., 52., 75., 81., 10., 2);
+        ElevationTile lRead = lReader.readFromFile(lAsc);
+        assertEquals(lWindow.numberOfColumns(), lRead.numberOfColumns());
+        assertEquals(lWindow.numberOfRows(), lRead.numberOfRows());
+        assertEquals(lWindow.getXMin(), lRead.getXMin(), 0.);
+        assertEquals(lWindow.getYMin(), lRead.getYMin(), 0.);
+        assertEquals(lWindow.getValue(3, 4), lRead.getValue(3, 4), 0.);
+        lTiles = new ArrayList();
+        lTiles.add(lRead);
+        assertSame(lRead, lHelpers.clipTiles(lTiles, lPnt1, lPnt2, 10.).get(0));
+    }
+
+    @Test
+    public void testOverviewLevelStale() throws IOException
+    {
+        this.writeTile("dgm0101", 0., true);
+        this.writeTile("dgm0102", 170., true);
+        // ASCII-Grid der Nachbarkachel ist neuer als deren Uebersichten:
+        new File(mDir, "dgm0102.asc").setLastModified(System.currentTimeMillis() + 60000);
+        DEMServiceHelpers lHelpers = new DEMServiceHelpers(1.e12);
+
+        ArrayList lTiles = tileNumbers(new int[][] {{1, 1}, {1, 2}});
+        assertEquals(1, lHelpers.overviewLevel(lTiles, 100., 100., mRoot.getPath(), "EPSG:31467", "dgm"));
+    }
+}
@@ -0,0 +1,67 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for <tt>DEMServlet</tt>.
+ */
+public class DEMServletTest
+{
+    @Test
+    public void testByteRange()
+    {
+        assertArrayEquals(new long[] {0, 99}, DEMServlet.byteRange("bytes=0-99", 1000));
+        assertArrayEquals(new long[] {500, 999}, DEMServlet.byteRange("bytes=500-", 1000));
+        assertArrayEquals(new long[] {900, 999}, DEMServlet.byteRange("bytes=-100", 1000));
+        assertArrayEquals(new long[] {10, 20}, DEMServlet.byteRange(" Bytes=10-20 ", 1000));
+    }
+
+    @Test
+    public void testByteRangeClippedToSize()
+    {
+        assertArrayEquals(new long[] {990, 999}, DEMServlet.byteRange("bytes=990-5000", 1000));
+        assertArrayEquals(new long[] {0, 999}, DEMServlet.byteRange("bytes=-5000", 1000));
+    }
+
+    @Test
+    public void testUnsatisfiableByteRange()
+    {
+        assertEquals(0, DEMServlet.byteRange("bytes=1000-", 1000).length);
+        assertEquals(0, DEMServlet.byteRange("bytes=2000-3000", 1000).length);
+        assertEquals(0, DEMServlet.byteRange("bytes=-0", 1000).length);
+        assertEquals(0, DEMServlet.byteRange("bytes=0-", 0).length);
+    }
+
+    @Test
+    public void testIgnoredByteRange()
+    {
+        assertNull(DEMServlet.byteRange("items=0-99", 1000));
+        assertNull(DEMServlet.byteRange("bytes=0-9,20-29", 1000));
+        assertNull(DEMServlet.byteRange("bytes=99-0", 1000));
+        assertNull(DEMServlet.byteRange("bytes=10", 1000));
+        assertNull(DEMServlet.byteRange("bytes=a-b", 1000));
+    }
+}
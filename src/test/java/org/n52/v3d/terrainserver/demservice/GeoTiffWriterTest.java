@@ -0,0 +1,223 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for <tt>GeoTiffWriter</tt>.
+ */
+public class GeoTiffWriterTest
+{
+    // Kachel mit den Werten 10 * Zeile + Spalte, Gitterpunkt (0, 1) nicht belegt
+    private static ArrayElevationTile tile(int pCols, int pRows, int pRow0)
+    {
+        float[] lValues = new float[pCols * pRows];
+        for (int i = 0; i < pRows; i++) {
+            for (int j = 0; j < pCols; j++)
+                lValues[i * pCols + j] = (pRow0 + i == 0 && j == 1) ? Float.NaN : 10.f * (pRow0 + i) + j;
+        }
+        return new ArrayElevationTile(pCols, pRows, 3400000., 5700000. + pRow0 * 25., 12.5, 25., lValues);
+    }
+
+    private static ByteBuffer write(ElevationTile pTile, String pSRS, boolean pGeographic) throws IOException
+    {
+        ByteArrayOutputStream lOut = new ByteArrayOutputStream();
+        new GeoTiffWriter().write(pTile, pSRS, pGeographic, lOut);
+        ByteBuffer lBuf = ByteBuffer.wrap(lOut.toByteArray());
+        lBuf.order(ByteOrder.LITTLE_ENDIAN);
+        return lBuf;
+    }
+
+    // liest das IFD ein: Tag-Nummer -> {Typ, Anzahl, Wert bzw. Offset}
+    private static HashMap tags(ByteBuffer pBuf)
+    {
+        assertEquals('I', pBuf.get(0));
+        assertEquals('I', pBuf.get(1));
+        assertEquals(42, pBuf.getShort(2));
+        int lIfd = pBuf.getInt(4);
+        int nTags = pBuf.getShort(lIfd);
+        HashMap lTags = new HashMap();
+        int lPrev = 0;
+        for (int k = 0; k < nTags; k++) {
+            int lEntry = lIfd + 2 + 12 * k;
+            int lTag = pBuf.getShort(lEntry) & 0xffff;
+            assertTrue("tags not sorted", lTag > lPrev);
+            lPrev = lTag;
+            int lType = pBuf.getShort(lEntry + 2);
+            int lCount = pBuf.getInt(lEntry + 4);
+            int lValue = (lType == 3 && lCount == 1) ? pBuf.getShort(lEntry + 8) : pBuf.getInt(lEntry + 8);
+            lTags.put(new Integer(lTag), new int[] {lType, lCount, lValue});
+        }
+        assertEquals(0, pBuf.getInt(lIfd + 2 + 12 * nTags)); // kein weiteres IFD
+        return lTags;
+    }
+
+    private static int[] tag(HashMap pTags, int pTag)
+    {
+        int[] lTag = (int[]) pTags.get(new Integer(pTag));
+        assertNotNull("missing tag " + pTag, lTag);
+        return lTag;
+    }
+
+    private static int value(HashMap pTags, int pTag) {
+        return tag(pTags, pTag)[2];
+    }
+
+    // liefert die Werte eines Tags vom Typ LONG (bei einem Wert direkt aus dem Eintrag)
+    private static int[] longs(ByteBuffer pBuf, HashMap pTags, int pTag)
+    {
+        int[] lTag = tag(pTags, pTag);
+        int[] lRes = new int[lTag[1]];
+        if (lTag[1] == 1)
+            lRes[0] = lTag[2];
+        else {
+            for (int k = 0; k < lTag[1]; k++)
+                lRes[k] = pBuf.getInt(lTag[2] + 4 * k);
+        }
+        return lRes;
+    }
+
+    private static short[] geoKeys(String pSRS, boolean pGeographic) throws IOException
+    {
+        ByteBuffer lBuf = write(tile(3, 2, 0), pSRS, pGeographic);
+        int[] lTag = tag(tags(lBuf), 34735);
+        short[] lRes = new short[lTag[1]];
+        for (int k = 0; k < lRes.length; k++)
+            lRes[k] = lBuf.getShort(lTag[2] + 2 * k);
+        return lRes;
+    }
+
+    @Test
+    public void testSingleStrip() throws IOException
+    {
+        ByteBuffer lBuf = write(tile(3, 2, 0), "EPSG:31467", false);
+        HashMap lTags = tags(lBuf);
+
+        assertEquals(3, value(lTags, 256));
+        assertEquals(2, value(lTags, 257));
+        assertEquals(32, value(lTags, 258));
+        assertEquals(1, value(lTags, 259));
+        assertEquals(3, value(lTags, 339));
+        int[] lOffsets = longs(lBuf, lTags, 273);
+        int[] lCounts = longs(lBuf, lTags, 279);
+        assertEquals(1, lOffsets.length);
+        assertEquals(24, lCounts[0]);
+        assertEquals(0, lOffsets[0] % 2);
+        assertEquals(lBuf.capacity(), lOffsets[0] + lCounts[0]);
+
+        // Bilddaten von Nord nach Sued, nicht belegter Gitterpunkt mit -9999:
+        int d = lOffsets[0];
+        assertEquals(10.f, lBuf.getFloat(d), 0.f);
+        assertEquals(12.f, lBuf.getFloat(d + 8), 0.f);
+        assertEquals(0.f, lBuf.getFloat(d + 12), 0.f);
+        assertEquals(-9999.f, lBuf.getFloat(d + 16), 0.f);
+
+        int[] lNoData = tag(lTags, 42113);
+        byte[] lText = new byte[lNoData[1]];
+        for (int k = 0; k < lText.length; k++)
+            lText[k] = lBuf.get(lNoData[2] + k);
+        assertEquals("-9999\0", new String(lText, "US-ASCII"));
+
+        // Verknuepfungspunkt am nordwestlichen Gitterpunkt:
+        int[] lScale = tag(lTags, 33550), lTie = tag(lTags, 33922);
+        assertEquals(12.5, lBuf.getDouble(lScale[2]), 0.);
+        assertEquals(25., lBuf.getDouble(lScale[2] + 8), 0.);
+        assertEquals(3400000., lBuf.getDouble(lTie[2] + 24), 0.);
+        assertEquals(5700025., lBuf.getDouble(lTie[2] + 32), 0.);
+    }
+
+    @Test
+    public void testStripLayout() throws IOException
+    {
+        // 1000 Spalten zu je 4 Bytes: 2 Zeilen je Streifen, also 3 Streifen fuer 5 Zeilen
+        ByteBuffer lBuf = write(tile(1000, 5, 0), "EPSG:31467", false);
+        HashMap lTags = tags(lBuf);
+        assertEquals(2, value(lTags, 278));
+        int[] lOffsets = longs(lBuf, lTags, 273);
+        int[] lCounts = longs(lBuf, lTags, 279);
+        assertEquals(3, lOffsets.length);
+        assertEquals(3, lCounts.length);
+        assertEquals(8000, lCounts[0]);
+        assertEquals(8000, lCounts[1]);
+        assertEquals(4000, lCounts[2]);
+        assertEquals(lOffsets[0] + 8000, lOffsets[1]);
+        assertEquals(lOffsets[1] + 8000, lOffsets[2]);
+        assertEquals(lBuf.capacity(), lOffsets[2] + lCounts[2]);
+        assertEquals(40.f, lBuf.getFloat(lOffsets[0]), 0.f);
+        assertEquals(0.f, lBuf.getFloat(lOffsets[2]), 0.f);
+    }
+
+    @Test
+    public void testGeoKeys() throws IOException
+    {
+        // projiziertes System mit EPSG-Code im Bereich 4000 bis 4999:
+        short[] lKeys = geoKeys("EPSG:4647", false);
+        assertEquals(16, lKeys.length);
+        assertEquals(3, lKeys[3]);
+        assertEquals(1024, lKeys[4]);
+        assertEquals(1, lKeys[7]);
+        assertEquals(1025, lKeys[8]);
+        assertEquals(2, lKeys[11]);
+        assertEquals(3072, lKeys[12]);
+        assertEquals(4647, lKeys[15]);
+
+        lKeys = geoKeys("EPSG:4326", true);
+        assertEquals(2, lKeys[7]);
+        assertEquals(2048, lKeys[12]);
+        assertEquals(4326, lKeys[15]);
+
+        // EPSG-Codes oberhalb von 32767 werden vorzeichenlos abgelegt:
+        lKeys = geoKeys("EPSG:32632", false);
+        assertEquals(32632, lKeys[15] & 0xffff);
+
+        // ohne Koordinatenreferenzsystem nur der Rastertyp:
+        lKeys = geoKeys(null, false);
+        assertEquals(8, lKeys.length);
+        assertEquals(1, lKeys[3]);
+        assertEquals(1025, lKeys[4]);
+        lKeys = geoKeys("CRS:84", true);
+        assertEquals(8, lKeys.length);
+    }
+
+    @Test
+    public void testBands() throws IOException
+    {
+        ElevationTile lTile = tile(1000, 5, 0);
+        ByteArrayOutputStream lOut = new ByteArrayOutputStream();
+        GeoTiffWriter lWriter = new GeoTiffWriter();
+        lWriter.writeHeader(1000, 5, 3400000., 5700000., 12.5, 25., "EPSG:31467", false, lOut);
+        lWriter.writeRows(tile(1000, 3, 2), lOut); // noerdliches Band zuerst
+        lWriter.writeRows(tile(1000, 2, 0), lOut);
+
+        assertTrue(Arrays.equals(write(lTile, "EPSG:31467", false).array(), lOut.toByteArray()));
+    }
+}
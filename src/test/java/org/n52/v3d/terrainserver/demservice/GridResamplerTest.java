@@ -0,0 +1,150 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.gisimplm.GmPoint;
+import org.n52.v3d.triturus.gisimplm.GmSimple2dGridGeometry;
+import org.n52.v3d.triturus.gisimplm.GmSimpleElevationGrid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for <tt>GridResampler</tt>.
+ */
+public class GridResamplerTest
+{
+    private static double plane(double x, double y) {
+        return 2. * x + 3. * y + 100.;
+    }
+
+    // Kachel mit den Werten der Ebene plane(x, y)
+    private static ArrayElevationTile tile(int pCols, int pRows, double pXMin, double pYMin, double pDelta)
+    {
+        float[] lValues = new float[pCols * pRows];
+        for (int i = 0; i < pRows; i++)
+            for (int j = 0; j < pCols; j++)
+                lValues[i * pCols + j] = (float) plane(pXMin + j * pDelta, pYMin + i * pDelta);
+        return new ArrayElevationTile(pCols, pRows, pXMin, pYMin, pDelta, pDelta, lValues);
+    }
+
+    // zwei aneinandergrenzende Kacheln, gemeinsames Raster mit Gitterweite 1 ueber [0, 19] x [0, 9]
+    private static ArrayList twoTiles()
+    {
+        ArrayList lTiles = new ArrayList();
+        lTiles.add(tile(10, 10, 0., 0., 1.));
+        lTiles.add(tile(10, 10, 10., 0., 1.));
+        return lTiles;
+    }
+
+    @Test
+    public void testDirectMethods()
+    {
+        assertTrue(GridResampler.isDirectMethod(GridResampler.sNearest));
+        assertTrue(GridResampler.isDirectMethod(GridResampler.sBilinear));
+        assertTrue(GridResampler.isDirectMethod(GridResampler.sBicubic));
+        assertTrue(GridResampler.isDirectMethod(GridResampler.sAreaAverage));
+        assertFalse(GridResampler.isDirectMethod(GridResampler.sInverseDistance));
+        assertFalse(GridResampler.isDirectMethod(null));
+    }
+
+    @Test(expected = T3dException.class)
+    public void testUnsupportedMethod() {
+        new GridResampler(GridResampler.sInverseDistance);
+    }
+
+    @Test
+    public void testApplicability()
+    {
+        GridResampler lResampler = new GridResampler(GridResampler.sBilinear);
+        assertTrue(lResampler.isApplicable(twoTiles()));
+        assertFalse(lResampler.isApplicable(new ArrayList()));
+
+        ArrayList lShifted = twoTiles();
+        lShifted.add(tile(5, 5, 20.5, 0., 1.));
+        assertFalse(lResampler.isApplicable(lShifted));
+
+        ArrayList lOtherSpacing = twoTiles();
+        lOtherSpacing.add(tile(5, 5, 20., 0., 2.));
+        assertFalse(lResampler.isApplicable(lOtherSpacing));
+    }
+
+    @Test
+    public void testSampleAcrossTileBorder()
+    {
+        ArrayList lTiles = twoTiles();
+        double x = 9.25, y = 4.5;
+
+        assertEquals(plane(x, y), new GridResampler(GridResampler.sBilinear).sample(lTiles, x, y), 1.e-9);
+        assertEquals(plane(x, y), new GridResampler(GridResampler.sBicubic).sample(lTiles, x, y), 1.e-9);
+        assertEquals(plane(9., 5.), new GridResampler(GridResampler.sNearest).sample(lTiles, x, y), 0.);
+        assertEquals(plane(12., 3.), new GridResampler(GridResampler.sNearest).sample(lTiles, 12., 3.), 0.);
+    }
+
+    @Test
+    public void testSampleOutsideTiles()
+    {
+        GridResampler lResampler = new GridResampler(GridResampler.sBilinear);
+        assertTrue(Double.isNaN(lResampler.sample(twoTiles(), -5., 4.)));
+        assertTrue(Double.isNaN(lResampler.sample(twoTiles(), 5., 12.)));
+    }
+
+    @Test
+    public void testMissingNeighbourIsReweighted()
+    {
+        float[] lValues = {10.f, 20.f, 30.f, Float.NaN};
+        ArrayList lTiles = new ArrayList();
+        lTiles.add(new ArrayElevationTile(2, 2, 0., 0., 1., 1., lValues));
+
+        // verbleibende Gewichte 0.25 (10), 0.25 (20), 0.25 (30):
+        double z = new GridResampler(GridResampler.sBilinear).sample(lTiles, 0.5, 0.5);
+        assertEquals(20., z, 1.e-9);
+    }
+
+    @Test
+    public void testResample()
+    {
+        GmSimple2dGridGeometry lGeom = new GmSimple2dGridGeometry(7, 4, new GmPoint(2.5, 1.5, 0.), 2.5, 2.);
+        GmSimpleElevationGrid lGrid = new GridResampler(GridResampler.sBilinear).resample(twoTiles(), lGeom);
+
+        for (int i = 0; i < 4; i++)
+            for (int j = 0; j < 7; j++)
+                assertEquals(plane(2.5 + j * 2.5, 1.5 + i * 2.), lGrid.getValue(i, j), 1.e-9);
+    }
+
+    @Test
+    public void testAreaAverage()
+    {
+        // Gitterweite 3, Mittelung jeweils ueber 3 x 3 Quellgitterpunkte
+        GmSimple2dGridGeometry lGeom = new GmSimple2dGridGeometry(6, 3, new GmPoint(1., 1., 0.), 3., 3.);
+        GridResampler lResampler = new GridResampler(GridResampler.sAreaAverage);
+        lResampler.setParallelism(2);
+        GmSimpleElevationGrid lGrid = lResampler.resample(twoTiles(), lGeom);
+
+        for (int i = 0; i < 3; i++)
+            for (int j = 0; j < 6; j++)
+                assertEquals(plane(1. + j * 3., 1. + i * 3.), lGrid.getValue(i, j), 1.e-4);
+    }
+}
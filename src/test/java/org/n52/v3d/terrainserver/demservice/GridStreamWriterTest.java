@@ -0,0 +1,332 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.n52.v3d.triturus.gisimplm.GmPoint;
+import org.n52.v3d.triturus.gisimplm.GmSimple2dGridGeometry;
+import org.n52.v3d.triturus.gisimplm.GmSimpleElevationGrid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for <tt>GridStreamWriter</tt>.
+ */
+public class GridStreamWriterTest
+{
+    // Gitter mit 4 Spalten und 3 Zeilen, Gitterpunkt (1, 2) nicht belegt
+    private static GmSimpleElevationGrid grid(String pSRS)
+    {
+        GmSimpleElevationGrid lGrid = new GmSimpleElevationGrid(4, 3, new GmPoint(3400000., 5700000., 0.), 10., 20.);
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 4; j++) {
+                if (i != 1 || j != 2)
+                    lGrid.setValue(i, j, 100.25 + 10. * i - 3.5 * j);
+            }
+        }
+        lGrid.getGeometry().setSRS(pSRS);
+        return lGrid;
+    }
+
+    private static byte[] write(String pFormat, GmSimpleElevationGrid pGrid) throws IOException
+    {
+        ByteArrayOutputStream lOut = new ByteArrayOutputStream();
+        new GridStreamWriter(pFormat).write(pGrid, lOut);
+        return lOut.toByteArray();
+    }
+
+    private static void assertTile(GmSimpleElevationGrid pGrid, BinaryElevationTile pTile, double pTolerance)
+    {
+        assertEquals(4, pTile.numberOfColumns());
+        assertEquals(3, pTile.numberOfRows());
+        assertEquals(3400000., pTile.getXMin(), 0.);
+        assertEquals(5700000., pTile.getYMin(), 0.);
+        assertEquals(10., pTile.getDeltaX(), 0.);
+        assertEquals(20., pTile.getDeltaY(), 0.);
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 4; j++) {
+                assertEquals(pGrid.isSet(i, j), pTile.isSet(i, j));
+                if (pGrid.isSet(i, j))
+                    assertEquals(pGrid.getValue(i, j), pTile.getValue(i, j), pTolerance);
+            }
+        }
+    }
+
+    // Gitter mit 3 Spalten und 2 Zeilen, Gitterpunkt (1, 1) nicht belegt; metrisch bzw. geographisch
+    private static GmSimpleElevationGrid smallGrid(boolean pLatLon)
+    {
+        GmSimpleElevationGrid lGrid = pLatLon ?
+            new GmSimpleElevationGrid(3, 2, new GmPoint(7.5, 51.25, 0.), 0.00025, 0.00025) :
+            new GmSimpleElevationGrid(3, 2, new GmPoint(3400000., 5700000., 0.), 25., 25.);
+        lGrid.setValue(0, 0, 100.25);
+        lGrid.setValue(0, 1, 101.);
+        lGrid.setValue(0, 2, -0.04);
+        lGrid.setValue(1, 0, 110.5);
+        lGrid.setValue(1, 2, 112.04);
+        lGrid.getGeometry().setSRS(pLatLon ? "EPSG:4326" : "EPSG:31467");
+        return lGrid;
+    }
+
+    // schreibt das Gitter mit den Genauigkeiten von DEMServiceHelpers#writeDEM()
+    private static String text(String pFormat, GmSimpleElevationGrid pGrid) throws IOException
+    {
+        GridStreamWriter lWriter = new GridStreamWriter(pFormat);
+        lWriter.setPrecisionXY(0);
+        lWriter.setPrecisionZ(1);
+        ByteArrayOutputStream lOut = new ByteArrayOutputStream();
+        lWriter.write(pGrid, lOut);
+        return lOut.toString("US-ASCII");
+    }
+
+    private static String lines(String[] pLines)
+    {
+        StringBuffer lRes = new StringBuffer();
+        for (int k = 0; k < pLines.length; k++)
+            lRes.append(pLines[k]).append('\n');
+        return lRes.toString();
+    }
+
+    @Test
+    public void testArcIGrd() throws IOException
+    {
+        assertEquals(lines(new String[] {
+            "ncols 3",
+            "nrows 2",
+            "xllcorner 3400000",
+            "yllcorner 5700000",
+            "cellsize 25",
+            "NODATA_value -9999",
+            "110.5 -9999 112.0",
+            "100.3 101.0 0.0"}),
+            text("ArcIGrd", smallGrid(false)));
+        // Nachkommastellen so, dass die Gitterweite in Grad exakt ist:
+        assertEquals(lines(new String[] {
+            "ncols 3",
+            "nrows 2",
+            "xllcorner 7.50000",
+            "yllcorner 51.25000",
+            "cellsize 0.00025",
+            "NODATA_value -9999",
+            "110.5 -9999 112.0",
+            "100.3 101.0 0.0"}),
+            text("ArcIGrd", smallGrid(true)));
+    }
+
+    @Test
+    public void testAcGeo() throws IOException
+    {
+        assertEquals(lines(new String[] {
+            "ACADGEO-GRID",
+            "3 2",
+            "3400000 5700000",
+            "25 25",
+            "-9999",
+            "100.3 101.0 0.0",
+            "110.5 -9999 112.0"}),
+            text("AcGeo", smallGrid(false)));
+        assertEquals(lines(new String[] {
+            "ACADGEO-GRID",
+            "3 2",
+            "7.50000 51.25000",
+            "0.00025 0.00025",
+            "-9999",
+            "100.3 101.0 0.0",
+            "110.5 -9999 112.0"}),
+            text("AcGeo", smallGrid(true)));
+    }
+
+    private static String vrml1(String[] pPoints)
+    {
+        return lines(new String[] {
+            "#VRML V1.0 ascii",
+            "",
+            "Separator {",
+            "  ShapeHints {",
+            "    vertexOrdering COUNTERCLOCKWISE",
+            "    creaseAngle 1.57",
+            "  }",
+            "  Coordinate3 {",
+            "    point ["}) + lines(pPoints) + lines(new String[] {
+            "    ]",
+            "  }",
+            "  IndexedFaceSet {",
+            "    coordIndex [",
+            "      0, 3, 4, 1, -1,",
+            "      1, 4, 5, 2, -1,",
+            "    ]",
+            "  }",
+            "}"});
+    }
+
+    @Test
+    public void testVrml1() throws IOException
+    {
+        assertEquals(vrml1(new String[] {
+            "      3400000 110.5 -5700025,",
+            "      3400025 -9999.0 -5700025,",
+            "      3400050 112.0 -5700025,",
+            "      3400000 100.3 -5700000,",
+            "      3400025 101.0 -5700000,",
+            "      3400050 0.0 -5700000,"}),
+            text("Vrml1", smallGrid(false)));
+        assertEquals(vrml1(new String[] {
+            "      7.50000 110.5 -51.25025,",
+            "      7.50025 -9999.0 -51.25025,",
+            "      7.50050 112.0 -51.25025,",
+            "      7.50000 100.3 -51.25000,",
+            "      7.50025 101.0 -51.25000,",
+            "      7.50050 0.0 -51.25000,"}),
+            text("Vrml1", smallGrid(true)));
+    }
+
+    private static String vrml2(String pTranslation, String pSpacing)
+    {
+        return lines(new String[] {
+            "#VRML V2.0 utf8",
+            "",
+            "Transform {",
+            "  translation " + pTranslation,
+            "  children Shape {",
+            "    appearance Appearance { material Material { diffuseColor 0.8 0.8 0.8 } }",
+            "    geometry ElevationGrid {",
+            "      xDimension 3",
+            "      zDimension 2",
+            "      xSpacing " + pSpacing,
+            "      zSpacing " + pSpacing,
+            "      solid FALSE",
+            "      creaseAngle 1.57",
+            "      height [",
+            "        110.5 -9999.0 112.0,",
+            "        100.3 101.0 0.0,",
+            "      ]",
+            "    }",
+            "  }",
+            "}"});
+    }
+
+    @Test
+    public void testVrml2() throws IOException
+    {
+        assertEquals(vrml2("3400000 0 -5700025", "25"), text("Vrml2", smallGrid(false)));
+        assertEquals(vrml2("7.50000 0 -51.25025", "0.00025"), text("Vrml2", smallGrid(true)));
+    }
+
+    private static String x3d(String pTranslation, String pSpacing)
+    {
+        return lines(new String[] {
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+            "<!DOCTYPE X3D PUBLIC \"ISO//Web3D//DTD X3D 3.0//EN\" \"http://www.web3d.org/specifications/x3d-3.0.dtd\">",
+            "<X3D profile=\"Interchange\" version=\"3.0\">",
+            "  <Scene>",
+            "    <Transform translation=\"" + pTranslation + "\">",
+            "      <Shape>",
+            "        <Appearance><Material diffuseColor=\"0.8 0.8 0.8\"/></Appearance>",
+            "        <ElevationGrid xDimension=\"3\" zDimension=\"2\" xSpacing=\"" + pSpacing + "\" zSpacing=\""
+                + pSpacing + "\" solid=\"false\" creaseAngle=\"1.57\"",
+            "          height=\"",
+            "            110.5 -9999.0 112.0",
+            "            100.3 101.0 0.0",
+            "          \">",
+            "        </ElevationGrid>",
+            "      </Shape>",
+            "    </Transform>",
+            "  </Scene>",
+            "</X3D>"});
+    }
+
+    @Test
+    public void testX3d() throws IOException
+    {
+        assertEquals(x3d("3400000 0 -5700025", "25"), text("X3d", smallGrid(false)));
+        assertEquals(x3d("7.50000 0 -51.25025", "0.00025"), text("X3d", smallGrid(true)));
+    }
+
+    @Test
+    public void testBinFloat32() throws IOException
+    {
+        GmSimpleElevationGrid lGrid = grid("EPSG:31467");
+        byte[] lData = write("BinFloat32", lGrid);
+        assertEquals(BinaryElevationTile.sHeaderSize + 4 * 12, lData.length);
+        BinaryElevationTile lTile = new BinaryElevationTile(ByteBuffer.wrap(lData));
+        assertEquals(BinaryElevationTile.sFloat32, lTile.getDataType());
+        assertTile(lGrid, lTile, 0.);
+    }
+
+    @Test
+    public void testBinInt16() throws IOException
+    {
+        GmSimpleElevationGrid lGrid = grid("EPSG:31467");
+        byte[] lData = write("BinInt16", lGrid);
+        assertEquals(BinaryElevationTile.sHeaderSize + 2 * 12, lData.length);
+        BinaryElevationTile lTile = new BinaryElevationTile(ByteBuffer.wrap(lData));
+        assertEquals(BinaryElevationTile.sInt16, lTile.getDataType());
+        // Wertebereich ca. 90 bis 121 auf 65535 Stufen verteilt:
+        assertTile(lGrid, lTile, 31. / 65534.);
+    }
+
+    @Test
+    public void testBinFloat32Bands() throws IOException
+    {
+        GmSimpleElevationGrid lGrid = grid("EPSG:31467");
+        GridStreamWriter lWriter = new GridStreamWriter("BinFloat32");
+        assertFalse(lWriter.isNorthFirst());
+        ByteArrayOutputStream lOut = new ByteArrayOutputStream();
+        lWriter.beginBands(
+            new GmSimple2dGridGeometry(4, 3, new GmPoint(3400000., 5700000., 0.), 10., 20.), lOut);
+        lWriter.writeBand(band(lGrid, 0, 2));
+        lWriter.writeBand(band(lGrid, 2, 1));
+        lWriter.endBands();
+        assertTrue(Arrays.equals(write("BinFloat32", lGrid), lOut.toByteArray()));
+    }
+
+    @Test
+    public void testGeoTiffModelType() throws IOException
+    {
+        // Der Modelltyp folgt dem Koordinatenreferenzsystem des Gitters, nicht dem Bereich des EPSG-Codes:
+        String[] lSRS = {"EPSG:4326", "EPSG:4647", "EPSG:31467"};
+        for (int k = 0; k < lSRS.length; k++) {
+            GmSimpleElevationGrid lGrid = grid(lSRS[k]);
+            ByteArrayOutputStream lOut = new ByteArrayOutputStream();
+            new GeoTiffWriter().write(new GridElevationTile(lGrid), lSRS[k], k == 0, lOut);
+            assertTrue(lSRS[k], Arrays.equals(lOut.toByteArray(), write("GeoTIFF", lGrid)));
+        }
+    }
+
+    // liefert die Zeilen pRow0 bis pRow0 + pRows - 1 des angegebenen Gitters als eigenes Gitter
+    private static GmSimpleElevationGrid band(GmSimpleElevationGrid pGrid, int pRow0, int pRows)
+    {
+        GmSimpleElevationGrid lBand = new GmSimpleElevationGrid(
+            4, pRows, new GmPoint(3400000., 5700000. + 20. * pRow0, 0.), 10., 20.);
+        for (int i = 0; i < pRows; i++) {
+            for (int j = 0; j < 4; j++) {
+                if (pGrid.isSet(pRow0 + i, j))
+                    lBand.setValue(i, j, pGrid.getValue(pRow0 + i, j));
+            }
+        }
+        return lBand;
+    }
+}
@@ -0,0 +1,101 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import org.junit.Test;
+import org.n52.v3d.triturus.gisimplm.GmPoint;
+import org.n52.v3d.triturus.gisimplm.GmSimple2dGridGeometry;
+import org.n52.v3d.triturus.gisimplm.GmSimpleElevationGrid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for <tt>InverseDistanceGridder</tt>.
+ */
+public class InverseDistanceGridderTest
+{
+    private static GmSimple2dGridGeometry grid(int pCols, int pRows, double pDelta) {
+        return new GmSimple2dGridGeometry(pCols, pRows, new GmPoint(0., 0., 0.), pDelta, pDelta);
+    }
+
+    @Test
+    public void testWeightedMean()
+    {
+        PointStore lPoints = new PointStore(0);
+        lPoints.add(0., 0., 10.);  // Abstand 1 zum Gitterpunkt (1, 0)
+        lPoints.add(3., 0., 40.);  // Abstand 2
+        lPoints.add(1., 9., 99.);  // ausserhalb des Suchradius
+
+        GmSimpleElevationGrid lGrid = new InverseDistanceGridder(grid(2, 1, 1.), 5.).transform(lPoints);
+
+        // Gewichte 1/d^2: (10 * 1 + 40 * 0.25) / 1.25
+        assertEquals(16., lGrid.getValue(0, 1), 1.e-9);
+    }
+
+    @Test
+    public void testPointOnGridVertex()
+    {
+        PointStore lPoints = new PointStore(0);
+        lPoints.add(2., 2., 5.);
+        lPoints.add(2.5, 2., 100.);
+
+        GmSimpleElevationGrid lGrid = new InverseDistanceGridder(grid(3, 3, 1.), 1.).transform(lPoints);
+
+        assertEquals(5., lGrid.getValue(2, 2), 0.);
+    }
+
+    @Test
+    public void testUnsetOutsideSearchRadius()
+    {
+        PointStore lPoints = new PointStore(0);
+        lPoints.add(0., 0., 1.);
+
+        GmSimpleElevationGrid lGrid = new InverseDistanceGridder(grid(10, 10, 1.), 1.5).transform(lPoints);
+
+        assertTrue(lGrid.isSet(1, 1));
+        assertFalse(lGrid.isSet(2, 0));
+        assertFalse(lGrid.isSet(9, 9));
+    }
+
+    @Test
+    public void testParallelResultMatchesSequentialResult()
+    {
+        PointStore lPoints = new PointStore(0);
+        for (int i = 0; i < 5000; i++)
+            lPoints.add((i * 7919) % 1000 / 10., (i * 104729) % 997 / 10., i % 113);
+        GmSimple2dGridGeometry lGeom = grid(101, 101, 1.);
+
+        InverseDistanceGridder lSeq = new InverseDistanceGridder(lGeom, 2.5);
+        GmSimpleElevationGrid lGrid1 = lSeq.transform(lPoints);
+        InverseDistanceGridder lPar = new InverseDistanceGridder(lGeom, 2.5);
+        lPar.setParallelism(4);
+        GmSimpleElevationGrid lGrid2 = lPar.transform(lPoints);
+
+        for (int i = 0; i < 101; i++) {
+            for (int j = 0; j < 101; j++) {
+                assertEquals(lGrid1.isSet(i, j), lGrid2.isSet(i, j));
+                if (lGrid1.isSet(i, j))
+                    assertEquals(lGrid1.getValue(i, j), lGrid2.getValue(i, j), 0.);
+            }
+        }
+    }
+}
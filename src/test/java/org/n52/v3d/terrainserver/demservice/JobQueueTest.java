@@ -0,0 +1,293 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.v3d.triturus.core.T3dException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for <tt>JobQueue</tt>.
+ */
+public class JobQueueTest
+{
+    private File mDir;
+    private JobQueue mQueue;
+
+    /**
+     * Processor, der die Reihenfolge der bearbeiteten Auftraege protokolliert und jeden Auftrag bis zur Freigabe
+     * blockiert.
+     */
+    private static class BlockingProcessor implements JobQueue.Processor
+    {
+        private List mProcessed = new ArrayList();
+        private int mPermits = 0;
+
+        public void process(JobQueue.Job pJob, File pResult) throws Exception
+        {
+            synchronized (this) {
+                mProcessed.add(pJob.getId());
+                this.notifyAll();
+                while (mPermits == 0)
+                    this.wait();
+                mPermits--;
+            }
+            OutputStream lOut = new FileOutputStream(pResult);
+            lOut.write(new byte[] {1, 2, 3});
+            lOut.close();
+        }
+
+        synchronized void release(int pCount) {
+            mPermits += pCount;
+            this.notifyAll();
+        }
+
+        synchronized List processed() {
+            return new ArrayList(mProcessed);
+        }
+
+        synchronized void awaitProcessed(int pCount) throws InterruptedException
+        {
+            long lDeadline = System.currentTimeMillis() + 10000;
+            while (mProcessed.size() < pCount) {
+                long lRemaining = lDeadline - System.currentTimeMillis();
+                if (lRemaining <= 0)
+                    fail("timeout, processed " + mProcessed);
+                this.wait(lRemaining);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException
+    {
+        mDir = File.createTempFile("jobqueue", "");
+        mDir.delete();
+        mDir.mkdirs();
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (mQueue != null)
+            mQueue.shutdown();
+        File[] lFiles = mDir.listFiles();
+        for (int i = 0; lFiles != null && i < lFiles.length; i++)
+            lFiles[i].delete();
+        mDir.delete();
+    }
+
+    // legt eine Auftragsdatei so an, wie sie ein frueherer Lauf hinterlassen haette
+    private void writeJob(String pId, String pStatus, long pSubmitted, long pFinished) throws IOException
+    {
+        Properties lProps = new Properties();
+        lProps.setProperty("id", pId);
+        lProps.setProperty("mime", "application/octet-stream");
+        lProps.setProperty("ext", "bin");
+        lProps.setProperty("status", pStatus);
+        lProps.setProperty("submitted", "" + pSubmitted);
+        lProps.setProperty("finished", "" + pFinished);
+        lProps.setProperty("param.FORMAT", "ArcIGrd");
+        OutputStream lOut = new FileOutputStream(new File(mDir, pId + ".job"));
+        lProps.store(lOut, null);
+        lOut.close();
+    }
+
+    private void writeResult(String pId, int pSize) throws IOException
+    {
+        OutputStream lOut = new FileOutputStream(new File(mDir, pId + ".bin"));
+        lOut.write(new byte[pSize]);
+        lOut.close();
+    }
+
+    private String savedStatus(String pId) throws IOException
+    {
+        Properties lProps = new Properties();
+        InputStream lIn = new FileInputStream(new File(mDir, pId + ".job"));
+        lProps.load(lIn);
+        lIn.close();
+        return lProps.getProperty("status");
+    }
+
+    private static void awaitStatus(JobQueue.Job pJob, String pStatus) throws InterruptedException
+    {
+        long lDeadline = System.currentTimeMillis() + 10000;
+        while (!pJob.getStatus().equals(pStatus)) {
+            if (System.currentTimeMillis() > lDeadline)
+                fail("timeout, status " + pJob.getStatus());
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void testRestartRecovery() throws Exception
+    {
+        long lNow = System.currentTimeMillis();
+        writeJob("c", JobQueue.sQueued, lNow - 1000, 0);
+        writeJob("a", JobQueue.sRunning, lNow - 3000, 0);
+        writeJob("b", JobQueue.sQueued, lNow - 2000, 0);
+        writeResult("f", 10);
+        writeJob("f", JobQueue.sFinished, lNow - 4000, lNow - 500);
+        writeJob("g", JobQueue.sFinished, lNow - 4000, lNow - 500); // Ergebnis fehlt
+        new FileOutputStream(new File(mDir, "a.tmp")).close();
+        new FileOutputStream(new File(mDir, "b.job.new")).close();
+
+        BlockingProcessor lProc = new BlockingProcessor();
+        mQueue = new JobQueue(mDir.getPath(), 1, 3600, lProc);
+        lProc.awaitProcessed(1);
+
+        // unterbrochener Auftrag zuerst, dann nach Eingangszeit:
+        assertEquals("a", lProc.processed().get(0));
+        assertEquals(0, mQueue.position(mQueue.lookup("b")));
+        assertEquals(1, mQueue.position(mQueue.lookup("c")));
+        assertEquals(JobQueue.sQueued, mQueue.lookup("c").getStatus());
+        assertEquals("ArcIGrd", mQueue.lookup("c").getParameter("FORMAT"));
+        assertEquals(JobQueue.sFinished, mQueue.lookup("f").getStatus());
+        assertNull(mQueue.lookup("g"));
+        assertFalse(new File(mDir, "g.job").exists());
+        assertFalse(new File(mDir, "a.tmp").exists());
+        assertFalse(new File(mDir, "b.job.new").exists());
+
+        lProc.release(3);
+        lProc.awaitProcessed(3);
+        awaitStatus(mQueue.lookup("c"), JobQueue.sFinished);
+        assertEquals("b", lProc.processed().get(1));
+        assertEquals("c", lProc.processed().get(2));
+        assertEquals(3, mQueue.lookup("a").getResult().length());
+        assertEquals(JobQueue.sFinished, savedStatus("a"));
+    }
+
+    @Test
+    public void testPurge() throws Exception
+    {
+        long lNow = System.currentTimeMillis();
+        writeResult("old", 10);
+        writeJob("old", JobQueue.sFinished, lNow - 20000, lNow - 11000);
+        writeResult("new", 10);
+        writeJob("new", JobQueue.sFinished, lNow - 20000, lNow - 1000);
+        writeJob("failed", JobQueue.sFailed, lNow - 20000, lNow - 11000);
+
+        mQueue = new JobQueue(mDir.getPath(), 1, 10, new BlockingProcessor());
+        assertNull(mQueue.lookup("old"));
+        assertFalse(new File(mDir, "old.job").exists());
+        assertFalse(new File(mDir, "old.bin").exists());
+        assertNull(mQueue.lookup("failed"));
+        assertFalse(new File(mDir, "failed.job").exists());
+
+        JobQueue.Job lJob = mQueue.lookup("new");
+        assertNotNull(lJob);
+        assertEquals(lNow - 1000 + 10000, mQueue.expires(lJob));
+        assertTrue(new File(mDir, "new.bin").exists());
+    }
+
+    @Test
+    public void testMaxQueuedJobs() throws Exception
+    {
+        BlockingProcessor lProc = new BlockingProcessor();
+        mQueue = new JobQueue(mDir.getPath(), 1, 3600, lProc);
+        mQueue.setMaxQueuedJobs(1);
+        JobQueue.Job lRunning = mQueue.submit(new Properties(), "application/octet-stream", "bin");
+        lProc.awaitProcessed(1);
+        JobQueue.Job lQueued = mQueue.submit(new Properties(), "application/octet-stream", "bin");
+        assertEquals(0, mQueue.position(lQueued));
+        try {
+            mQueue.submit(new Properties(), "application/octet-stream", "bin");
+            fail("queue limit ignored");
+        }
+        catch (T3dException e) {
+        }
+
+        lProc.release(1);
+        awaitStatus(lRunning, JobQueue.sFinished);
+        lProc.awaitProcessed(2);
+        assertNotNull(mQueue.submit(new Properties(), "application/octet-stream", "bin"));
+        lProc.release(2);
+    }
+
+    @Test
+    public void testMaxResultBytes() throws Exception
+    {
+        long lNow = System.currentTimeMillis();
+        writeResult("f", 10);
+        writeJob("f", JobQueue.sFinished, lNow - 2000, lNow - 1000);
+
+        mQueue = new JobQueue(mDir.getPath(), 1, 3600, new BlockingProcessor());
+        mQueue.setMaxResultBytes(10);
+        try {
+            mQueue.submit(new Properties(), "application/octet-stream", "bin");
+            fail("result budget ignored");
+        }
+        catch (T3dException e) {
+        }
+        mQueue.setMaxResultBytes(11);
+        assertNotNull(mQueue.submit(new Properties(), "application/octet-stream", "bin"));
+    }
+
+    @Test
+    public void testShutdownRequeues() throws Exception
+    {
+        BlockingProcessor lProc = new BlockingProcessor();
+        mQueue = new JobQueue(mDir.getPath(), 1, 3600, lProc);
+        Properties lParams = new Properties();
+        lParams.setProperty("FORMAT", "GeoTIFF");
+        JobQueue.Job lRunning = mQueue.submit(lParams, "image/tiff", "tif");
+        lProc.awaitProcessed(1);
+        JobQueue.Job lQueued = mQueue.submit(new Properties(), "image/tiff", "tif");
+
+        // der blockierte Processor wird unterbrochen; der Auftrag darf nicht als gescheitert gespeichert werden:
+        mQueue.shutdown();
+        assertEquals(JobQueue.sRunning, savedStatus(lRunning.getId()));
+        assertEquals(JobQueue.sQueued, savedStatus(lQueued.getId()));
+        try {
+            mQueue.submit(new Properties(), "image/tiff", "tif");
+            fail("submit after shutdown");
+        }
+        catch (T3dException e) {
+        }
+
+        BlockingProcessor lNext = new BlockingProcessor();
+        lNext.release(2);
+        mQueue = new JobQueue(mDir.getPath(), 1, 3600, lNext);
+        JobQueue.Job lRestarted = mQueue.lookup(lRunning.getId());
+        assertEquals("GeoTIFF", lRestarted.getParameter("FORMAT"));
+        awaitStatus(mQueue.lookup(lQueued.getId()), JobQueue.sFinished);
+        assertEquals(JobQueue.sFinished, lRestarted.getStatus());
+        assertEquals(lRunning.getId(), lNext.processed().get(0));
+        assertEquals(lQueued.getId(), lNext.processed().get(1));
+    }
+}
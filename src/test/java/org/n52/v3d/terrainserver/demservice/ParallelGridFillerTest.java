@@ -0,0 +1,153 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import org.junit.Test;
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.gisimplm.GmPoint;
+import org.n52.v3d.triturus.gisimplm.GmSimpleElevationGrid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for <tt>ParallelGridFiller</tt>.
+ */
+public class ParallelGridFillerTest
+{
+    private static final int sRows = 37, sCols = 23;
+
+    // Zeilenfunktion mit nicht belegbaren Gitterpunkten; zaehlt die Berechnungen je Zeile
+    private static class Rows implements ParallelGridFiller.RowFunction
+    {
+        int[] mCount = new int[sRows];
+        int mCalls = 0;
+        Thread mLastThread = null;
+
+        static double value(int i, int j) {
+            return ((i + j) % 7 == 0) ? Double.NaN : i * 1000. + j + Math.sqrt(i * j + 0.5);
+        }
+
+        public void computeRows(int pRowFrom, int pRowTo, double[] pValues)
+        {
+            assertEquals((pRowTo - pRowFrom) * sCols, pValues.length);
+            int k = 0;
+            for (int i = pRowFrom; i < pRowTo; i++) {
+                for (int j = 0; j < sCols; j++, k++)
+                    pValues[k] = value(i, j);
+            }
+            synchronized (this) {
+                for (int i = pRowFrom; i < pRowTo; i++)
+                    mCount[i]++;
+                mCalls++;
+                mLastThread = Thread.currentThread();
+            }
+        }
+    }
+
+    private static GmSimpleElevationGrid grid() {
+        return new GmSimpleElevationGrid(sCols, sRows, new GmPoint(0., 0., 0.), 1., 1.);
+    }
+
+    @Test
+    public void testSequential()
+    {
+        GmSimpleElevationGrid lGrid = grid();
+        Rows lFunc = new Rows();
+        ParallelGridFiller.fill(lGrid, lFunc, 1);
+
+        // ein einziger Aufruf im aufrufenden Thread:
+        assertEquals(1, lFunc.mCalls);
+        assertSame(Thread.currentThread(), lFunc.mLastThread);
+        for (int i = 0; i < sRows; i++) {
+            for (int j = 0; j < sCols; j++) {
+                if (Double.isNaN(Rows.value(i, j)))
+                    assertFalse(lGrid.isSet(i, j));
+                else
+                    assertEquals(Rows.value(i, j), lGrid.getValue(i, j), 0.);
+            }
+        }
+    }
+
+    @Test
+    public void testBandsMatchSequentialResult()
+    {
+        GmSimpleElevationGrid lSeq = grid();
+        ParallelGridFiller.fill(lSeq, new Rows(), 1);
+
+        // auch mehr Streifen als Zeilen und Parallelitaetsgrad "Anzahl Prozessoren":
+        int[] lParallelism = {2, 3, 4, 7, 36, 37, 50, 0};
+        for (int p = 0; p < lParallelism.length; p++) {
+            GmSimpleElevationGrid lPar = grid();
+            Rows lFunc = new Rows();
+            ParallelGridFiller.fill(lPar, lFunc, lParallelism[p]);
+
+            int nBands = Math.min(ParallelGridFiller.effectiveParallelism(lParallelism[p]), sRows);
+            assertEquals(nBands, lFunc.mCalls);
+            for (int i = 0; i < sRows; i++) {
+                assertEquals(1, lFunc.mCount[i]);
+                for (int j = 0; j < sCols; j++) {
+                    assertEquals(lSeq.isSet(i, j), lPar.isSet(i, j));
+                    if (lSeq.isSet(i, j))
+                        assertEquals(lSeq.getValue(i, j), lPar.getValue(i, j), 0.);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEffectiveParallelism()
+    {
+        int nProc = Runtime.getRuntime().availableProcessors();
+        assertEquals(nProc, ParallelGridFiller.effectiveParallelism(0));
+        assertEquals(nProc, ParallelGridFiller.effectiveParallelism(-1));
+        assertEquals(1, ParallelGridFiller.effectiveParallelism(1));
+        assertEquals(5, ParallelGridFiller.effectiveParallelism(5));
+    }
+
+    @Test
+    public void testErrorInBand()
+    {
+        GmSimpleElevationGrid lGrid = grid();
+        try {
+            // Fehler im letzten, im Pool berechneten Streifen:
+            ParallelGridFiller.fill(lGrid, new Rows() {
+                public void computeRows(int pRowFrom, int pRowTo, double[] pValues) {
+                    if (pRowTo == sRows)
+                        throw new T3dException("band failed");
+                    super.computeRows(pRowFrom, pRowTo, pValues);
+                }
+            }, 4);
+            fail();
+        }
+        catch (T3dException e) {
+            assertEquals("band failed", e.getMessage());
+        }
+
+        // das Gitter bleibt unveraendert:
+        for (int i = 0; i < sRows; i++) {
+            for (int j = 0; j < sCols; j++)
+                assertTrue(!lGrid.isSet(i, j));
+        }
+    }
+}
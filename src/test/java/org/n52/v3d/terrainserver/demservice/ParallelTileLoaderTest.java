@@ -0,0 +1,157 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.n52.v3d.triturus.core.T3dException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for <tt>ParallelTileLoader</tt>.
+ */
+public class ParallelTileLoaderTest
+{
+    // zaehlt die begonnenen Ladevorgaenge
+    private static class Counter
+    {
+        private int mStarted = 0;
+
+        synchronized void start() {
+            mStarted++;
+        }
+
+        synchronized int started() {
+            return mStarted;
+        }
+    }
+
+    // Loader, der nach der angegebenen Wartezeit seinen Index liefert
+    private static Callable loader(final int pIdx, final long pSleep, final Counter pCounter)
+    {
+        return new Callable() {
+            public Object call() throws Exception {
+                pCounter.start();
+                Thread.sleep(pSleep);
+                return new Integer(pIdx);
+            }
+        };
+    }
+
+    // Loader, der bis zur Freigabe blockiert
+    private static Callable blocking(final CountDownLatch pRelease, final Counter pCounter)
+    {
+        return new Callable() {
+            public Object call() throws Exception {
+                pCounter.start();
+                pRelease.await(10, TimeUnit.SECONDS);
+                return "late";
+            }
+        };
+    }
+
+    @Test
+    public void testResultOrder()
+    {
+        Counter lCounter = new Counter();
+        Callable[] lLoaders = new Callable[6];
+        for (int i = 0; i < lLoaders.length; i++)
+            lLoaders[i] = loader(i, 5 * (lLoaders.length - i), lCounter); // spaetere Loader werden frueher fertig
+
+        Object[] lRes = ParallelTileLoader.loadAll(lLoaders);
+
+        assertEquals(lLoaders.length, lRes.length);
+        for (int i = 0; i < lLoaders.length; i++)
+            assertEquals(new Integer(i), lRes[i]);
+        assertEquals(lLoaders.length, lCounter.started());
+    }
+
+    @Test
+    public void testSingleLoader()
+    {
+        final Thread lCaller = Thread.currentThread();
+        Object[] lRes = ParallelTileLoader.loadAll(new Callable[] {new Callable() {
+            public Object call() {
+                return Thread.currentThread();
+            }
+        }});
+        assertSame(lCaller, lRes[0]);
+
+        try {
+            ParallelTileLoader.loadAll(new Callable[] {new Callable() {
+                public Object call() throws Exception {
+                    throw new IOException("disk error");
+                }
+            }});
+            fail();
+        }
+        catch (T3dException e) {
+            assertEquals("Could not load tile: disk error", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testFailFast() throws Exception
+    {
+        final T3dException lMissing = new T3dException("Tile not found.", 201);
+        CountDownLatch lRelease = new CountDownLatch(1);
+        Counter lCounter = new Counter();
+
+        // Kachel 0 fehlt, die uebrigen Ladevorgaenge blockieren bzw. warten im Pool:
+        Callable[] lLoaders = new Callable[20];
+        lLoaders[0] = new Callable() {
+            public Object call() {
+                throw lMissing;
+            }
+        };
+        for (int i = 1; i < lLoaders.length; i++)
+            lLoaders[i] = blocking(lRelease, lCounter);
+
+        long t0 = System.currentTimeMillis();
+        try {
+            ParallelTileLoader.loadAll(lLoaders);
+            fail();
+        }
+        catch (T3dException e) {
+            assertSame(lMissing, e);
+        }
+        // der Fehler wird weitergereicht, ohne auf die blockierten Ladevorgaenge zu warten:
+        assertTrue(System.currentTimeMillis() - t0 < 5000);
+        assertEquals(1, lRelease.getCount());
+        lRelease.countDown();
+
+        // Pool leeren; die zuvor eingereihten Aufgaben sind dann abgearbeitet oder verworfen:
+        Counter lAfter = new Counter();
+        ParallelTileLoader.loadAll(new Callable[] {loader(0, 0, lAfter), loader(1, 0, lAfter)});
+
+        // noch nicht begonnene Ladevorgaenge wurden abgebrochen, d. h. hoechstens ein blockierender Loader je
+        // Pool-Thread (Voreinstellung 4) wurde begonnen; der Thread der fehlenden Kachel uebernimmt hoechstens einen:
+        assertTrue(lCounter.started() <= 4);
+        assertEquals(2, lAfter.started());
+    }
+}
@@ -0,0 +1,127 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.util.HashSet;
+
+import org.junit.Test;
+import org.n52.v3d.triturus.core.T3dException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for <tt>PointStore</tt>.
+ */
+public class PointStoreTest
+{
+    @Test
+    public void testAddBeyondCapacity()
+    {
+        PointStore lPoints = new PointStore(2);
+        for (int i = 0; i < 100; i++)
+            lPoints.add(i, -i, 0.5 * i);
+
+        assertEquals(100, lPoints.size());
+        assertEquals(42., lPoints.getX(42), 0.);
+        assertEquals(-42., lPoints.getY(42), 0.);
+        assertEquals(21., lPoints.getZ(42), 0.);
+        assertFalse(lPoints.hasIndex());
+    }
+
+    @Test
+    public void testAddAllSkipsUnsetValues()
+    {
+        float[] lValues = {1.f, Float.NaN, 3.f, 4.f};
+        PointStore lPoints = new PointStore(0);
+        lPoints.addAll(new ArrayElevationTile(2, 2, 100., 200., 10., 20., lValues));
+
+        assertEquals(3, lPoints.size());
+        assertEquals(100., lPoints.getX(0), 0.);
+        assertEquals(200., lPoints.getY(0), 0.);
+        assertEquals(110., lPoints.getX(2), 0.);
+        assertEquals(220., lPoints.getY(2), 0.);
+        assertEquals(4., lPoints.getZ(2), 0.);
+    }
+
+    @Test
+    public void testIndexPartitionsPoints()
+    {
+        PointStore lPoints = new PointStore(0);
+        for (int i = 0; i < 1000; i++) {
+            double x = (i * 7919) % 1000, y = (i * 104729) % 700;
+            lPoints.add(x, y, x + 1000. * y);
+        }
+        lPoints.buildIndex(50.);
+
+        assertTrue(lPoints.hasIndex());
+        assertEquals(50., lPoints.getBucketSize(), 0.);
+        assertEquals(20, lPoints.numberOfBucketsX());
+        assertEquals(14, lPoints.numberOfBucketsY());
+
+        HashSet lSeen = new HashSet();
+        int lExpectedBegin = 0;
+        for (int by = 0; by < lPoints.numberOfBucketsY(); by++) {
+            for (int bx = 0; bx < lPoints.numberOfBucketsX(); bx++) {
+                assertEquals(lExpectedBegin, lPoints.bucketBegin(bx, by));
+                for (int k = lPoints.bucketBegin(bx, by); k < lPoints.bucketEnd(bx, by); k++) {
+                    assertEquals(bx, lPoints.bucketX(lPoints.getX(k)));
+                    assertEquals(by, lPoints.bucketY(lPoints.getY(k)));
+                    // Umsortierung darf die Zuordnung der Hoehenwerte nicht aendern:
+                    assertEquals(lPoints.getX(k) + 1000. * lPoints.getY(k), lPoints.getZ(k), 0.);
+                    lSeen.add(new Integer(k));
+                }
+                lExpectedBegin = lPoints.bucketEnd(bx, by);
+            }
+        }
+        assertEquals(1000, lSeen.size());
+    }
+
+    @Test
+    public void testIndexLimitsBucketCount()
+    {
+        PointStore lPoints = new PointStore(0);
+        lPoints.add(0., 0., 0.);
+        lPoints.add(1.e6, 1.e6, 0.);
+        lPoints.buildIndex(1.);
+
+        assertTrue(lPoints.getBucketSize() > 1.);
+        assertTrue(lPoints.numberOfBucketsX() * lPoints.numberOfBucketsY() <= 2 + 1024);
+        assertEquals(0, lPoints.bucketBegin(0, 0));
+        assertEquals(2, lPoints.bucketEnd(lPoints.numberOfBucketsX() - 1, lPoints.numberOfBucketsY() - 1));
+    }
+
+    @Test
+    public void testEmptyIndex()
+    {
+        PointStore lPoints = new PointStore(0);
+        lPoints.buildIndex(10.);
+
+        assertEquals(1, lPoints.numberOfBucketsX());
+        assertEquals(1, lPoints.numberOfBucketsY());
+        assertEquals(0, lPoints.bucketEnd(0, 0));
+    }
+
+    @Test(expected = T3dException.class)
+    public void testIllegalBucketSize() {
+        new PointStore(1).buildIndex(0.);
+    }
+}
@@ -0,0 +1,205 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.v3d.triturus.gisimplm.GmEnvelope;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for <tt>ResponseCache</tt>.
+ */
+public class ResponseCacheTest
+{
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        mDir = File.createTempFile("responsecache", "");
+        mDir.delete();
+    }
+
+    @After
+    public void tearDown()
+    {
+        File[] lFiles = mDir.listFiles();
+        for (int i = 0; lFiles != null && i < lFiles.length; i++)
+            lFiles[i].delete();
+        mDir.delete();
+    }
+
+    // legt eine temporaere Antwortdatei mit pSize Bytes an
+    private static File body(ResponseCache pCache, int pSize) throws IOException
+    {
+        File f = pCache.createTempFile();
+        FileOutputStream lOut = new FileOutputStream(f);
+        for (int i = 0; i < pSize; i++)
+            lOut.write('a' + i % 26);
+        lOut.close();
+        return f;
+    }
+
+    private static String key(double pXMin, double pCellSize) {
+        return ResponseCache.key(
+            "EPSG:31467", new GmEnvelope(pXMin, pXMin + 1000., 5700000., 5701000., 0., 0.), pCellSize, "ArcIGrd",
+            0., "Bilinear");
+    }
+
+    @Test
+    public void testKey()
+    {
+        // Abweichungen unterhalb eines Tausendstels der Gitterweite werden ignoriert:
+        assertEquals(key(3500000., 10.), key(3500000.004, 10.));
+        assertFalse(key(3500000., 10.).equals(key(3500000.02, 10.)));
+        assertFalse(key(3500000., 10.).equals(key(3500000., 20.)));
+        GmEnvelope lBBox = new GmEnvelope(0., 10., 0., 10., 0., 0.);
+        assertEquals(
+            ResponseCache.key("epsg:31467", lBBox, 1., "arcigrd", 0., "Bilinear"),
+            ResponseCache.key("EPSG:31467", lBBox, 1., "ArcIGrd", 0., "Bilinear"));
+        assertFalse(
+            ResponseCache.key("EPSG:31467", lBBox, 1., "ArcIGrd", 0., "Nearest").equals(
+            ResponseCache.key("EPSG:31467", lBBox, 1., "ArcIGrd", 0., "Bilinear")));
+    }
+
+    @Test
+    public void testPutAndLookup() throws IOException
+    {
+        ResponseCache lCache = new ResponseCache(mDir.getPath(), 1000);
+        assertNull(lCache.lookup("k"));
+        lCache.put("k", body(lCache, 30), "text/plain", new ArrayList());
+
+        ResponseCache.Entry e = lCache.lookup("k");
+        assertNotNull(e);
+        assertEquals(30, e.getSize());
+        assertEquals("text/plain", e.getMimeType());
+        ByteArrayOutputStream lOut = new ByteArrayOutputStream();
+        assertTrue(lCache.send(e, lOut));
+        assertEquals("abcdefghijklmnopqrstuvwxyzabcd", lOut.toString("US-ASCII"));
+        assertEquals(30, lCache.currentBytes());
+        // keine temporaeren Dateien zuruecklassen:
+        assertEquals(1, mDir.list().length);
+    }
+
+    @Test
+    public void testOverwrite() throws IOException
+    {
+        ResponseCache lCache = new ResponseCache(mDir.getPath(), 1000);
+        lCache.put("k", body(lCache, 30), "text/plain", new ArrayList());
+        lCache.put("k", body(lCache, 50), "text/plain", new ArrayList());
+
+        assertEquals(50, lCache.currentBytes());
+        assertEquals(50, lCache.lookup("k").getSize());
+        assertTrue(lCache.lookup("k").getBody().exists());
+        assertEquals(1, mDir.list().length);
+    }
+
+    @Test
+    public void testEviction() throws IOException
+    {
+        ResponseCache lCache = new ResponseCache(mDir.getPath(), 100);
+        lCache.put("a", body(lCache, 40), "text/plain", new ArrayList());
+        lCache.put("b", body(lCache, 40), "text/plain", new ArrayList());
+        File lBodyA = lCache.lookup("a").getBody(); // b ist nun am laengsten nicht abgerufen
+        File lBodyB = lCache.lookup("b").getBody();
+        lCache.lookup("a");
+        lCache.put("c", body(lCache, 40), "text/plain", new ArrayList());
+
+        assertEquals(80, lCache.currentBytes());
+        assertNull(lCache.lookup("b"));
+        assertFalse(lBodyB.exists());
+        assertTrue(lBodyA.exists());
+        assertNotNull(lCache.lookup("c"));
+
+        // neue Antwort, die das Budget allein ausschoepft, verdraengt alle anderen, nicht aber sich selbst:
+        lCache.put("d", body(lCache, 100), "text/plain", new ArrayList());
+        assertEquals(100, lCache.currentBytes());
+        assertNotNull(lCache.lookup("d"));
+        assertNull(lCache.lookup("a"));
+        assertEquals(1, mDir.list().length);
+    }
+
+    @Test
+    public void testOversizedResponse() throws IOException
+    {
+        ResponseCache lCache = new ResponseCache(mDir.getPath(), 100);
+        lCache.put("a", body(lCache, 40), "text/plain", new ArrayList());
+        File lBody = body(lCache, 101);
+        lCache.put("b", lBody, "text/plain", new ArrayList());
+
+        assertFalse(lBody.exists());
+        assertNull(lCache.lookup("b"));
+        assertNotNull(lCache.lookup("a"));
+        assertEquals(40, lCache.currentBytes());
+    }
+
+    @Test
+    public void testInvalidation() throws IOException
+    {
+        File lSource = new File(mDir.getParentFile(), mDir.getName() + ".asc");
+        try {
+            new FileOutputStream(lSource).close();
+            lSource.setLastModified(System.currentTimeMillis() - 60000);
+            ResponseCache lCache = new ResponseCache(mDir.getPath(), 1000);
+            ArrayList lSources = new ArrayList();
+            lSources.add(lSource.getPath());
+            lCache.put("k", body(lCache, 30), "text/plain", lSources);
+            File lBody = lCache.lookup("k").getBody();
+
+            // geaenderte Quelldatei:
+            FileOutputStream lOut = new FileOutputStream(lSource);
+            lOut.write(1);
+            lOut.close();
+            assertNull(lCache.lookup("k"));
+            assertFalse(lBody.exists());
+            assertEquals(0, lCache.currentBytes());
+            assertTrue(lCache.statistics().indexOf("1 invalidations") >= 0);
+        }
+        finally {
+            lSource.delete();
+        }
+    }
+
+    @Test
+    public void testLeftoversRemoved() throws IOException
+    {
+        ResponseCache lCache = new ResponseCache(mDir.getPath(), 1000);
+        lCache.put("k", body(lCache, 30), "text/plain", new ArrayList());
+        body(lCache, 10);
+        assertEquals(2, mDir.list().length);
+
+        lCache = new ResponseCache(mDir.getPath(), 1000);
+        assertEquals(0, mDir.list().length);
+        assertNull(lCache.lookup("k"));
+    }
+}
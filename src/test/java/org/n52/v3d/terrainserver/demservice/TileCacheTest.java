@@ -0,0 +1,256 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.n52.v3d.triturus.core.T3dException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for <tt>TileCache</tt>.
+ */
+public class TileCacheTest
+{
+    // Loader fuer eine Kachel mit pSize x pSize Gitterpunkten (Speicherbedarf 64 + 4 * pSize^2 Bytes)
+    private static class CountingLoader implements Callable
+    {
+        AtomicInteger mCalls = new AtomicInteger(0);
+        int mSize;
+        long mDelay;
+
+        CountingLoader(int pSize, long pDelay) {
+            mSize = pSize;
+            mDelay = pDelay;
+        }
+
+        public Object call() throws Exception
+        {
+            mCalls.incrementAndGet();
+            if (mDelay > 0)
+                Thread.sleep(mDelay);
+            float[] lValues = new float[mSize * mSize];
+            for (int k = 0; k < lValues.length; k++)
+                lValues[k] = k;
+            return new ArrayElevationTile(mSize, mSize, 0., 0., 1., 1., lValues);
+        }
+    }
+
+    private static TileCache.Key key(int pLo) {
+        return new TileCache.Key("dgm", "EPSG:31467", 1, pLo);
+    }
+
+    private static TileCache cache(long pMaxBytes)
+    {
+        TileCache lCache = new TileCache();
+        lCache.setMaxBytes(pMaxBytes);
+        return lCache;
+    }
+
+    @Test
+    public void testOffHeapCopy()
+    {
+        TileCache lCache = cache(1000);
+        CountingLoader lLoader = new CountingLoader(2, 0);
+        ElevationTile lTile = lCache.get(key(1), lLoader);
+
+        assertTrue(lTile instanceof BinaryElevationTile);
+        assertEquals(3., lTile.getValue(1, 1), 0.);
+        assertEquals(80, lCache.currentBytes());
+        assertSame(lTile, lCache.get(key(1), lLoader));
+        assertEquals(1, lLoader.mCalls.get());
+        assertEquals(1, lCache.getHitCount());
+        assertEquals(1, lCache.getMissCount());
+    }
+
+    @Test
+    public void testLRUEviction()
+    {
+        TileCache lCache = cache(200); // Platz fuer zwei Kacheln zu je 80 Bytes
+        CountingLoader a = new CountingLoader(2, 0), b = new CountingLoader(2, 0), c = new CountingLoader(2, 0);
+        lCache.get(key(1), a);
+        lCache.get(key(2), b);
+        lCache.get(key(1), a); // a zuletzt genutzt
+        lCache.get(key(3), c); // verdraengt b
+
+        assertEquals(160, lCache.currentBytes());
+        lCache.get(key(1), a);
+        lCache.get(key(3), c);
+        assertEquals(1, a.mCalls.get());
+        assertEquals(1, c.mCalls.get());
+        lCache.get(key(2), b);
+        assertEquals(2, b.mCalls.get());
+        assertTrue(lCache.statistics().indexOf("evictions=2") >= 0);
+    }
+
+    @Test
+    public void testShrinkBudget()
+    {
+        TileCache lCache = cache(1000);
+        CountingLoader a = new CountingLoader(2, 0);
+        for (int k = 1; k <= 5; k++)
+            lCache.get(key(k), a);
+        assertEquals(400, lCache.currentBytes());
+
+        lCache.setMaxBytes(100);
+        assertEquals(80, lCache.currentBytes());
+        lCache.get(key(5), a);
+        assertEquals(5, a.mCalls.get());
+    }
+
+    @Test
+    public void testOversizedTile()
+    {
+        TileCache lCache = cache(100);
+        CountingLoader lSmall = new CountingLoader(3, 0); // 100 Bytes
+        CountingLoader lLarge = new CountingLoader(4, 0); // 128 Bytes
+
+        lCache.get(key(1), lSmall);
+        lCache.get(key(1), lSmall);
+        assertEquals(1, lSmall.mCalls.get());
+
+        // zu grosse Kacheln werden weder kopiert noch gecacht, und sie verdraengen keine anderen Kacheln:
+        ElevationTile lTile = lCache.get(key(2), lLarge);
+        assertTrue(lTile instanceof ArrayElevationTile);
+        lCache.get(key(2), lLarge);
+        assertEquals(2, lLarge.mCalls.get());
+        assertEquals(100, lCache.currentBytes());
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        TileCache lCache = cache(0);
+        CountingLoader lLoader = new CountingLoader(2, 0);
+        lCache.get(key(1), lLoader);
+        lCache.get(key(1), lLoader);
+
+        assertEquals(2, lLoader.mCalls.get());
+        assertEquals(0, lCache.currentBytes());
+    }
+
+    @Test
+    public void testSingleFlight() throws InterruptedException
+    {
+        final TileCache lCache = cache(1000);
+        final CountingLoader lLoader = new CountingLoader(2, 200);
+        final CountDownLatch lStart = new CountDownLatch(1);
+        final ElevationTile[] lRes = new ElevationTile[8];
+        Thread[] lThreads = new Thread[lRes.length];
+        for (int i = 0; i < lThreads.length; i++) {
+            final int k = i;
+            lThreads[i] = new Thread() {
+                public void run() {
+                    try {
+                        lStart.await();
+                        lRes[k] = lCache.get(key(1), lLoader);
+                    }
+                    catch (InterruptedException e) {}
+                }
+            };
+            lThreads[i].start();
+        }
+        lStart.countDown();
+        for (int i = 0; i < lThreads.length; i++)
+            lThreads[i].join();
+
+        assertEquals(1, lLoader.mCalls.get());
+        for (int i = 0; i < lRes.length; i++)
+            assertSame(lRes[0], lRes[i]);
+        assertEquals(80, lCache.currentBytes());
+    }
+
+    @Test
+    public void testLoaderFailure()
+    {
+        TileCache lCache = cache(1000);
+        final AtomicInteger lCalls = new AtomicInteger(0);
+        Callable lLoader = new Callable() {
+            public Object call() {
+                lCalls.incrementAndGet();
+                throw new T3dException("Missing elevation information.", 201);
+            }
+        };
+        for (int i = 0; i < 2; i++) {
+            try {
+                lCache.get(key(1), lLoader);
+                fail("T3dException expected");
+            }
+            catch (T3dException e) {
+                assertEquals("Missing elevation information.", e.getMessage());
+            }
+        }
+        // Fehlschlaege werden nicht gecacht:
+        assertEquals(2, lCalls.get());
+        assertEquals(0, lCache.currentBytes());
+    }
+
+    @Test
+    public void testStaleSourceFile() throws IOException
+    {
+        File lFile = File.createTempFile("dgm", ".asc");
+        try {
+            TileCache lCache = cache(1000);
+            CountingLoader lLoader = new CountingLoader(2, 0);
+            long lNow = System.currentTimeMillis();
+            lFile.setLastModified(lNow - 60000);
+            TileCache.Key lOld = new TileCache.Key("dgm", "EPSG:31467", 1, 1, 1, lFile.getPath());
+            lCache.get(lOld, lLoader);
+            lCache.get(new TileCache.Key("dgm", "EPSG:31467", 1, 1, 1, lFile.getPath()), lLoader);
+            assertEquals(1, lLoader.mCalls.get());
+
+            // geaenderte Quelldatei: neu laden und den alten Stand ersetzen
+            FileWriter lWriter = new FileWriter(lFile);
+            lWriter.write("changed");
+            lWriter.close();
+            lFile.setLastModified(lNow);
+            TileCache.Key lNew = new TileCache.Key("dgm", "EPSG:31467", 1, 1, 1, lFile.getPath());
+            assertFalse(lNew.equals(lOld));
+            assertTrue(lNew.sameTile(lOld));
+            lCache.get(lNew, lLoader);
+            assertEquals(2, lLoader.mCalls.get());
+            assertEquals(80, lCache.currentBytes());
+        }
+        finally {
+            lFile.delete();
+        }
+    }
+
+    @Test
+    public void testKey()
+    {
+        assertEquals(key(1), new TileCache.Key("dgm", "epsg:31467", 1, 1));
+        assertEquals(key(1).hashCode(), new TileCache.Key("dgm", "epsg:31467", 1, 1).hashCode());
+        assertFalse(key(1).equals(new TileCache.Key("dgm", "EPSG:31467", 1, 1, 2)));
+        assertFalse(key(1).equals(key(2)));
+        assertSame(TileCache.getInstance(), TileCache.getInstance());
+    }
+}
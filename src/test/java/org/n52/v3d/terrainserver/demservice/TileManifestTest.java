@@ -0,0 +1,125 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for <tt>TileManifest</tt>.
+ */
+public class TileManifestTest
+{
+    private File mRoot;
+    private TileManifest mManifest;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        mRoot = File.createTempFile("manifest", "");
+        mRoot.delete();
+        File lDir = new File(mRoot, "dgm" + File.separator + "epsg_31467");
+        lDir.mkdirs();
+
+        // Kacheln mit 10 x 10 Gitterpunkten und Gitterweite 10; Kachel dgm0202 fehlt
+        this.writeTile(lDir, "dgm0101.asc", 0., 0.);
+        this.writeTile(lDir, "dgm0102.asc", 100., 0.);
+        this.writeTile(lDir, "dgm0201.asc", 0., 100.);
+        this.writeTile(lDir, "dgm0101_2.asc", 0., 0.); // Uebersichtsstufe
+        new File(lDir, "readme.txt").createNewFile();
+
+        mManifest = TileManifest.getInstance(mRoot.getPath());
+    }
+
+    @After
+    public void tearDown() {
+        this.delete(mRoot);
+    }
+
+    private void writeTile(File pDir, String pName, double pXMin, double pYMin) throws IOException
+    {
+        FileWriter lWriter = new FileWriter(new File(pDir, pName));
+        lWriter.write("ncols 10\nnrows 10\nxllcorner " + pXMin + "\nyllcorner " + pYMin + "\ncellsize 10\n");
+        for (int i = 0; i < 10; i++)
+            lWriter.write("1 1 1 1 1 1 1 1 1 1\n");
+        lWriter.close();
+    }
+
+    private void delete(File pFile)
+    {
+        File[] lFiles = pFile.listFiles();
+        for (int i = 0; lFiles != null && i < lFiles.length; i++)
+            this.delete(lFiles[i]);
+        pFile.delete();
+    }
+
+    @Test
+    public void testScan()
+    {
+        assertEquals(3, mManifest.numberOfTiles());
+        assertTrue(mManifest.hasTiles("dgm", "EPSG:31467"));
+        assertFalse(mManifest.hasTiles("dgm", "EPSG:4326"));
+        assertFalse(mManifest.hasTiles("other", "EPSG:31467"));
+    }
+
+    @Test
+    public void testQuery()
+    {
+        ArrayList lRes = mManifest.query("dgm", "EPSG:31467", 50., 50., 60., 60.);
+        assertEquals(1, lRes.size());
+        TileManifest.Entry e = (TileManifest.Entry) lRes.get(0);
+        assertEquals(1, e.getHi());
+        assertEquals(1, e.getLo());
+        assertEquals(0., e.getXMin(), 0.);
+        assertEquals(90., e.getXMax(), 0.);
+        assertEquals(90., e.getYMax(), 0.);
+        assertEquals(10., e.getDeltaX(), 0.);
+
+        assertEquals(3, mManifest.query("dgm", "EPSG:31467", 50., 50., 150., 150.).size());
+        assertEquals(0, mManifest.query("dgm", "EPSG:31467", 500., 500., 600., 600.).size());
+        assertEquals(0, mManifest.query("dgm", "EPSG:4326", 50., 50., 60., 60.).size());
+    }
+
+    @Test
+    public void testCovers()
+    {
+        ArrayList lAll = mManifest.query("dgm", "EPSG:31467", -1000., -1000., 1000., 1000.);
+
+        // Luecke zwischen xmax = 90 und xmin = 100 wird durch die Toleranz von einer Gitterweite geschlossen:
+        assertTrue(TileManifest.covers(lAll, 10., 10., 190., 90.));
+        assertTrue(TileManifest.covers(lAll, 10., 10., 90., 190.));
+        assertTrue(TileManifest.covers(lAll, -10., -10., 100., 100.));
+        // Kachel dgm0202 fehlt:
+        assertFalse(TileManifest.covers(lAll, 10., 10., 190., 190.));
+        // ausserhalb der Kacheln:
+        assertFalse(TileManifest.covers(lAll, -30., 10., 50., 50.));
+        assertFalse(TileManifest.covers(new ArrayList(), 10., 10., 20., 20.));
+    }
+}
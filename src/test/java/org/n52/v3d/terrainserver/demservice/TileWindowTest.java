@@ -0,0 +1,98 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for <tt>TileWindow</tt>.
+ */
+public class TileWindowTest
+{
+    // Kachel mit 10 Spalten und 8 Zeilen, Gitterweiten 10 und 20, Wert 100 * Zeile + Spalte
+    private static ArrayElevationTile tile()
+    {
+        float[] lValues = new float[80];
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 10; j++)
+                lValues[i * 10 + j] = 100.f * i + j;
+        }
+        lValues[3 * 10 + 4] = Float.NaN;
+        return new ArrayElevationTile(10, 8, 1000., 2000., 10., 20., lValues);
+    }
+
+    @Test
+    public void testIndexRange()
+    {
+        // Rechteck auf Gitterpunkten:
+        int[] w = TileWindow.indexRange(10, 8, 1000., 2000., 10., 20., 1020., 2040., 1050., 2100., 0.);
+        assertEquals(2, w[0]);
+        assertEquals(2, w[1]);
+        assertEquals(5, w[2]);
+        assertEquals(5, w[3]);
+
+        // zwischen den Gitterpunkten wird nach aussen gerundet, der Randbereich kommt hinzu:
+        w = TileWindow.indexRange(10, 8, 1000., 2000., 10., 20., 1025., 2045., 1051., 2101., 5.);
+        assertEquals(2, w[0]);
+        assertEquals(2, w[1]);
+        assertEquals(6, w[2]);
+        assertEquals(6, w[3]);
+
+        // Begrenzung auf das Gitter:
+        w = TileWindow.indexRange(10, 8, 1000., 2000., 10., 20., 900., 1900., 2000., 3000., 0.);
+        assertEquals(0, w[0]);
+        assertEquals(0, w[1]);
+        assertEquals(7, w[2]);
+        assertEquals(9, w[3]);
+
+        // ausserhalb; durch das Runden nach aussen genuegt ein Randbereich, der in die letzte Zelle reicht:
+        assertNull(TileWindow.indexRange(10, 8, 1000., 2000., 10., 20., 1200., 2000., 1300., 2100., 0.));
+        assertNull(TileWindow.indexRange(10, 8, 1000., 2000., 10., 20., 1100., 2000., 1300., 2100., 0.));
+        w = TileWindow.indexRange(10, 8, 1000., 2000., 10., 20., 1100., 2000., 1300., 2100., 9.);
+        assertEquals(9, w[1]);
+        assertEquals(9, w[3]);
+    }
+
+    @Test
+    public void testClip()
+    {
+        ArrayElevationTile lTile = tile();
+        ElevationTile lWindow = TileWindow.clip(lTile, 1025., 2045., 1051., 2101., 5.);
+
+        assertEquals(5, lWindow.numberOfColumns());
+        assertEquals(5, lWindow.numberOfRows());
+        assertEquals(1020., lWindow.getXMin(), 0.);
+        assertEquals(2040., lWindow.getYMin(), 0.);
+        assertEquals(10., lWindow.getDeltaX(), 0.);
+        assertEquals(20., lWindow.getDeltaY(), 0.);
+        assertEquals(202., lWindow.getValue(0, 0), 0.);
+        assertEquals(606., lWindow.getValue(4, 4), 0.);
+        assertEquals(lTile.isSet(3, 4), lWindow.isSet(1, 2));
+        assertTrue(!lWindow.isSet(1, 2));
+
+        assertSame(lTile, TileWindow.clip(lTile, 1000., 2000., 1090., 2140., 0.));
+        assertNull(TileWindow.clip(lTile, 0., 0., 500., 500., 100.));
+    }
+}
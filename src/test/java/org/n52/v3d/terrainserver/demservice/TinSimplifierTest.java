@@ -0,0 +1,152 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.demservice;
+
+import org.junit.Test;
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.gisimplm.GmPoint;
+import org.n52.v3d.triturus.gisimplm.GmSimpleElevationGrid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for <tt>TinSimplifier</tt>.
+ */
+public class TinSimplifierTest
+{
+    private static GmSimpleElevationGrid grid(int pCols, int pRows)
+    {
+        GmSimpleElevationGrid lGrid = new GmSimpleElevationGrid(pCols, pRows, new GmPoint(0., 0., 0.), 1., 1.);
+        for (int i = 0; i < pRows; i++) {
+            for (int j = 0; j < pCols; j++)
+                lGrid.setValue(i, j, 10. * Math.sin(0.3 * j) * Math.cos(0.2 * i) + 0.5 * j);
+        }
+        return lGrid;
+    }
+
+    // prueft Orientierung und lueckenlose Ueberdeckung des Gitters sowie die maximale Abweichung
+    private static void checkTin(TinSimplifier.Tin pTin, double pMaxError)
+    {
+        GmSimpleElevationGrid lGrid = pTin.getGrid();
+        int nCols = lGrid.numberOfColumns(), nRows = lGrid.numberOfRows();
+        long lArea2 = 0;
+        double lMaxErr = 0.;
+        for (int t = 0; t < pTin.numberOfTriangles(); t++) {
+            int[] c = new int[3], r = new int[3];
+            for (int k = 0; k < 3; k++) {
+                c[k] = pTin.getColumn(pTin.getCorner(t, k));
+                r[k] = pTin.getRow(pTin.getCorner(t, k));
+            }
+            long lDet = ((long) c[1] - c[0]) * (r[2] - r[0]) - ((long) c[2] - c[0]) * (r[1] - r[0]);
+            assertTrue("triangle " + t + " is not counter-clockwise", lDet > 0);
+            lArea2 += lDet;
+
+            // Abweichung an allen Gitterpunkten innerhalb des Dreiecks:
+            for (int i = Math.min(r[0], Math.min(r[1], r[2])); i <= Math.max(r[0], Math.max(r[1], r[2])); i++) {
+                for (int j = Math.min(c[0], Math.min(c[1], c[2])); j <= Math.max(c[0], Math.max(c[1], c[2])); j++) {
+                    long w0 = ((long) c[1] - j) * (r[2] - i) - ((long) c[2] - j) * (r[1] - i);
+                    long w1 = ((long) c[2] - j) * (r[0] - i) - ((long) c[0] - j) * (r[2] - i);
+                    long w2 = ((long) c[0] - j) * (r[1] - i) - ((long) c[1] - j) * (r[0] - i);
+                    if (w0 < 0 || w1 < 0 || w2 < 0)
+                        continue;
+                    double z = (w0 * lGrid.getValue(r[0], c[0]) + w1 * lGrid.getValue(r[1], c[1])
+                        + w2 * lGrid.getValue(r[2], c[2])) / lDet;
+                    lMaxErr = Math.max(lMaxErr, Math.abs(z - lGrid.getValue(i, j)));
+                }
+            }
+        }
+        assertEquals(2L * (nCols - 1) * (nRows - 1), lArea2);
+        assertTrue("deviation " + lMaxErr + " exceeds " + pMaxError, lMaxErr <= pMaxError + 1.e-9);
+        assertTrue(pTin.getMaxError() <= pMaxError);
+    }
+
+    @Test
+    public void testInCircle()
+    {
+        assertTrue(TinSimplifier.inCircle(0, 0, 2, 0, 0, 2, 1, 1));
+        assertFalse(TinSimplifier.inCircle(0, 0, 2, 0, 0, 2, 3, 3));
+        // auf dem Umkreis liegende Punkte gelten nicht als innerhalb:
+        assertFalse(TinSimplifier.inCircle(0, 0, 2, 0, 0, 2, 2, 2));
+    }
+
+    @Test
+    public void testInCircleLargeCoordinates()
+    {
+        // Die Determinante uebersteigt hier den long-Wertebereich:
+        long n = 30000;
+        assertTrue(TinSimplifier.inCircle(0, 0, n, 0, 0, n, n - 1, n - 1));
+        assertFalse(TinSimplifier.inCircle(0, 0, n, 0, 0, n, n, n));
+        assertFalse(TinSimplifier.inCircle(0, 0, n, 0, 0, n, n + 1, n));
+        assertTrue(TinSimplifier.inCircle(0, 0, n, 0, 0, n, 1, 1));
+    }
+
+    @Test
+    public void testPlane()
+    {
+        GmSimpleElevationGrid lGrid = new GmSimpleElevationGrid(50, 40, new GmPoint(0., 0., 0.), 1., 1.);
+        for (int i = 0; i < 40; i++)
+            for (int j = 0; j < 50; j++)
+                lGrid.setValue(i, j, 3. * j - 2. * i + 7.);
+
+        TinSimplifier.Tin lTin = new TinSimplifier().simplify(lGrid);
+
+        assertEquals(4, lTin.numberOfPoints());
+        assertEquals(2, lTin.numberOfTriangles());
+        checkTin(lTin, 1.e-9);
+    }
+
+    @Test
+    public void testMaxError()
+    {
+        GmSimpleElevationGrid lGrid = grid(60, 45);
+        TinSimplifier lSimplifier = new TinSimplifier();
+        lSimplifier.setMaxError(0.5);
+        TinSimplifier.Tin lTin = lSimplifier.simplify(lGrid);
+
+        assertTrue(lTin.numberOfPoints() < 60 * 45);
+        checkTin(lTin, 0.5);
+    }
+
+    @Test
+    public void testLossless()
+    {
+        TinSimplifier.Tin lTin = new TinSimplifier().simplify(grid(20, 15));
+        checkTin(lTin, 0.);
+    }
+
+    @Test
+    public void testMaxTriangles()
+    {
+        TinSimplifier lSimplifier = new TinSimplifier();
+        lSimplifier.setMaxTriangles(50);
+        TinSimplifier.Tin lTin = lSimplifier.simplify(grid(60, 45));
+
+        assertTrue(lTin.numberOfTriangles() <= 50);
+        assertTrue(lTin.getMaxError() > 0.);
+        checkTin(lTin, lTin.getMaxError());
+    }
+
+    @Test(expected = T3dException.class)
+    public void testGridTooSmall() {
+        new TinSimplifier().simplify(new GmSimpleElevationGrid(1, 5, new GmPoint(0., 0., 0.), 1., 1.));
+    }
+}
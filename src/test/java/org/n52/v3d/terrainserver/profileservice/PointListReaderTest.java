@@ -0,0 +1,131 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.profileservice;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+import org.n52.v3d.triturus.core.T3dException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for <tt>PointListReader</tt>.
+ */
+public class PointListReaderTest
+{
+    private static void assertPoints(double[] pExpected, PointListReader pReader)
+    {
+        assertEquals(pExpected.length / 2, pReader.numberOfPoints());
+        double[] x = pReader.getX(), y = pReader.getY();
+        assertEquals(pReader.numberOfPoints(), x.length);
+        assertEquals(pReader.numberOfPoints(), y.length);
+        for (int i = 0; i < x.length; i++) {
+            assertEquals(pExpected[2 * i], x[i], 0.);
+            assertEquals(pExpected[2 * i + 1], y[i], 0.);
+        }
+    }
+
+    @Test
+    public void testCoordinateList()
+    {
+        PointListReader lReader = new PointListReader(10);
+        lReader.parseCoordinateList("3500000.5,5700000,0, 3500100,5700100.25,12");
+        assertPoints(new double[] {3500000.5, 5700000., 3500100., 5700100.25}, lReader);
+    }
+
+    @Test(expected = T3dException.class)
+    public void testIncompleteCoordinateList() {
+        new PointListReader(10).parseCoordinateList("1,2,3,4,5");
+    }
+
+    @Test(expected = T3dException.class)
+    public void testInvalidCoordinate() {
+        new PointListReader(10).parseCoordinateList("1,x,3");
+    }
+
+    @Test
+    public void testCSV() throws IOException
+    {
+        PointListReader lReader = new PointListReader(10);
+        lReader.readCSV(new StringReader(
+            "x;y;name\r\n" +
+            "1.5;2.5;a\r\n" +
+            "\r\n" +
+            "3,4\n" +
+            "5 6\n" +
+            "\t7\t8\t9\n"));
+        assertPoints(new double[] {1.5, 2.5, 3., 4., 5., 6., 7., 8.}, lReader);
+    }
+
+    @Test(expected = T3dException.class)
+    public void testInvalidCSVLine() throws IOException {
+        new PointListReader(10).readCSV(new StringReader("1,2\n3\n"));
+    }
+
+    @Test(expected = T3dException.class)
+    public void testInvalidCSVValue() throws IOException {
+        new PointListReader(10).readCSV(new StringReader("1,2\n3,y\n"));
+    }
+
+    @Test
+    public void testJSONArray() throws IOException
+    {
+        PointListReader lReader = new PointListReader(10);
+        lReader.readJSON(new StringReader("[[1, 2], [3.5,-4e2, 100], [ 5 , 6 ]]"));
+        assertPoints(new double[] {1., 2., 3.5, -400., 5., 6.}, lReader);
+    }
+
+    @Test
+    public void testGeoJSON() throws IOException
+    {
+        PointListReader lReader = new PointListReader(10);
+        lReader.readJSON(new StringReader(
+            "{\"type\": \"Feature\", \"id\": 17,\n" +
+            " \"properties\": {\"name\": \"[9,9] \\\"quoted\\\" ]\"},\n" +
+            " \"geometry\": {\"type\": \"LineString\", \"coordinates\": [[7.1, 51.2], [7.3, 51.4]]}}"));
+        assertPoints(new double[] {7.1, 51.2, 7.3, 51.4}, lReader);
+    }
+
+    @Test(expected = T3dException.class)
+    public void testUnbalancedJSON() throws IOException {
+        new PointListReader(10).readJSON(new StringReader("[[1, 2], [3, 4]"));
+    }
+
+    @Test
+    public void testManyPoints()
+    {
+        StringBuffer lBuf = new StringBuffer();
+        for (int i = 0; i < 1000; i++)
+            lBuf.append(i > 0 ? "," : "").append(i).append(',').append(-i).append(",0");
+        PointListReader lReader = new PointListReader(1000);
+        lReader.parseCoordinateList(lBuf.toString());
+
+        assertEquals(1000, lReader.numberOfPoints());
+        assertEquals(999., lReader.getX()[999], 0.);
+        assertEquals(-999., lReader.getY()[999], 0.);
+    }
+
+    @Test(expected = T3dException.class)
+    public void testTooManyPoints() throws IOException {
+        new PointListReader(2).readJSON(new StringReader("[[1, 2], [3, 4], [5, 6]]"));
+    }
+}
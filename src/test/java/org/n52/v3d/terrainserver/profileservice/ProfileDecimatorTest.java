@@ -0,0 +1,148 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.profileservice;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for <tt>ProfileDecimator</tt>.
+ */
+public class ProfileDecimatorTest
+{
+    private static double[] stations(int n)
+    {
+        double[] t = new double[n];
+        for (int i = 0; i < n; i++)
+            t[i] = 2.5 * i;
+        return t;
+    }
+
+    private static double[] profile(int n)
+    {
+        double[] z = new double[n];
+        for (int i = 0; i < n; i++)
+            z[i] = 100. + 20. * Math.sin(0.05 * i);
+        return z;
+    }
+
+    private static boolean contains(int[] pSel, int pIdx)
+    {
+        for (int i = 0; i < pSel.length; i++) {
+            if (pSel[i] == pIdx)
+                return true;
+        }
+        return false;
+    }
+
+    private static void assertAscending(int[] pSel, int n)
+    {
+        for (int i = 0; i < pSel.length; i++) {
+            assertTrue(pSel[i] >= 0 && pSel[i] < n);
+            if (i > 0)
+                assertTrue(pSel[i] > pSel[i - 1]);
+        }
+    }
+
+    @Test
+    public void testNoDecimation()
+    {
+        assertEquals(50, ProfileDecimator.select(stations(50), profile(50), 50, 50).length);
+        assertEquals(50, ProfileDecimator.select(stations(50), profile(50), 50, 100).length);
+        assertEquals(50, ProfileDecimator.select(stations(50), profile(50), 50, 2).length);
+        assertEquals(7, ProfileDecimator.select(stations(50), profile(50), 7, 10).length);
+    }
+
+    @Test
+    public void testTargetCount()
+    {
+        int[] lSel = ProfileDecimator.select(stations(1000), profile(1000), 1000, 37);
+
+        assertEquals(37, lSel.length);
+        assertAscending(lSel, 1000);
+        assertEquals(0, lSel[0]);
+        assertEquals(999, lSel[36]);
+    }
+
+    @Test
+    public void testUsedLength()
+    {
+        // nur die ersten n Feldelemente sind belegt:
+        int[] lSel = ProfileDecimator.select(stations(500), profile(500), 300, 20);
+
+        assertEquals(20, lSel.length);
+        assertAscending(lSel, 300);
+        assertEquals(299, lSel[19]);
+    }
+
+    @Test
+    public void testExtremaKept()
+    {
+        double[] z = new double[1000];
+        for (int i = 0; i < 1000; i++)
+            z[i] = 100. + 0.01 * (i % 7);
+        z[537] = 180.;
+        z[812] = 20.;
+        int[] lSel = ProfileDecimator.select(stations(1000), z, 1000, 20);
+
+        assertTrue(contains(lSel, 537));
+        assertTrue(contains(lSel, 812));
+    }
+
+    @Test
+    public void testGaps()
+    {
+        double[] z = profile(100);
+        for (int i = 40; i < 50; i++)
+            z[i] = Double.NaN;
+        z[99] = Double.NaN;
+        int[] lSel = ProfileDecimator.select(stations(100), z, 100, 20);
+
+        assertEquals(20, lSel.length);
+        assertAscending(lSel, 100);
+        // Anfang und Ende jedes Abschnitts sowie die erste Station jeder Luecke bleiben erhalten:
+        assertTrue(contains(lSel, 0));
+        assertTrue(contains(lSel, 39));
+        assertTrue(contains(lSel, 40));
+        assertTrue(contains(lSel, 50));
+        assertTrue(contains(lSel, 98));
+        assertTrue(contains(lSel, 99));
+        for (int i = 41; i < 50; i++)
+            assertFalse(contains(lSel, i));
+    }
+
+    @Test
+    public void testLeadingGap()
+    {
+        double[] z = profile(200);
+        for (int i = 0; i < 10; i++)
+            z[i] = Double.NaN;
+        int[] lSel = ProfileDecimator.select(stations(200), z, 200, 30);
+
+        assertAscending(lSel, 200);
+        assertEquals(0, lSel[0]);
+        assertEquals(10, lSel[1]);
+        assertEquals(199, lSel[lSel.length - 1]);
+        assertTrue(lSel.length <= 30);
+    }
+}
@@ -0,0 +1,152 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.profileservice;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import javax.imageio.ImageIO;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.gisimplm.GmLineString;
+import org.n52.v3d.triturus.gisimplm.GmPoint;
+import org.n52.v3d.triturus.gisimplm.GmProfile;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for <tt>ProfileGraphRenderer</tt>.
+ */
+public class ProfileGraphRendererTest
+{
+    private static final int sWidth = 400, sHeight = 250;
+
+    // Profil ueber 1000 m mit 51 Stationen und einer Datenluecke zwischen den Stationen 20 und 24
+    private static GmProfile profile()
+    {
+        GmLineString lLine = new GmLineString();
+        lLine.addVertex(new GmPoint(3400000., 5700000., 0.));
+        lLine.addVertex(new GmPoint(3401000., 5700000., 0.));
+        GmProfile lProfile = new GmProfile(lLine);
+        for (int i = 0; i <= 50; i++)
+            lProfile.addTZPair(20. * i, (i >= 21 && i <= 23) ? Double.NaN : 100. + 30. * Math.sin(i / 5.));
+        return lProfile;
+    }
+
+    private static byte[] png(ProfileGraphRenderer pRenderer, GmProfile pProfile) throws Exception
+    {
+        ByteArrayOutputStream lOut = new ByteArrayOutputStream();
+        pRenderer.writePNG(pProfile, lOut);
+        return lOut.toByteArray();
+    }
+
+    private static Document svg(ProfileGraphRenderer pRenderer, GmProfile pProfile) throws Exception
+    {
+        ByteArrayOutputStream lOut = new ByteArrayOutputStream();
+        Writer lWriter = new OutputStreamWriter(lOut, "ISO-8859-1");
+        pRenderer.writeSVG(pProfile, lWriter);
+        DocumentBuilderFactory lFactory = DocumentBuilderFactory.newInstance();
+        lFactory.setNamespaceAware(true);
+        return lFactory.newDocumentBuilder().parse(new ByteArrayInputStream(lOut.toByteArray()));
+    }
+
+    @Test
+    public void testPNG() throws Exception
+    {
+        byte[] lBytes = png(new ProfileGraphRenderer(sWidth, sHeight), profile());
+
+        BufferedImage lImage = ImageIO.read(new ByteArrayInputStream(lBytes));
+        assertEquals(sWidth, lImage.getWidth());
+        assertEquals(sHeight, lImage.getHeight());
+
+        // Hintergrund in der Ecke, Gelaendeflaeche unter der Kurve, Luecke ueber der Grundlinie:
+        assertEquals(Color.white.getRGB(), lImage.getRGB(sWidth - 2, 2));
+        int lTerrain = new Color(0xd9, 0xc8, 0xa0).getRGB();
+        int x0 = 56, x1 = sWidth - 16, y0 = sHeight - 36; // Plotbereich gemaess Raendern
+        assertEquals(lTerrain, lImage.getRGB(x0 + 10, y0 - 3));
+        assertTrue(lImage.getRGB(x0 + (x1 - x0) * 22 / 50, y0 - 3) != lTerrain);
+    }
+
+    @Test
+    public void testSVG() throws Exception
+    {
+        Document lDoc = svg(new ProfileGraphRenderer(sWidth, sHeight), profile());
+
+        Element lRoot = lDoc.getDocumentElement();
+        assertEquals("svg", lRoot.getLocalName());
+        assertEquals("http://www.w3.org/2000/svg", lRoot.getNamespaceURI());
+        assertEquals("" + sWidth, lRoot.getAttribute("width"));
+        assertEquals("" + sHeight, lRoot.getAttribute("height"));
+        assertEquals("0 0 " + sWidth + " " + sHeight, lRoot.getAttribute("viewBox"));
+
+        // Hintergrund und zwei Gelaendeabschnitte, zwei Profilkurven und die Achsen:
+        assertEquals(3, lDoc.getElementsByTagName("polygon").getLength());
+        assertEquals(3, lDoc.getElementsByTagName("polyline").getLength());
+        assertTrue(lDoc.getElementsByTagName("line").getLength() > 4);
+        assertTrue(lDoc.getElementsByTagName("text").getLength() > 4);
+    }
+
+    @Test
+    public void testDegenerateProfiles() throws Exception
+    {
+        ProfileGraphRenderer lRenderer = new ProfileGraphRenderer(sWidth, sHeight);
+        lRenderer.setExaggeration(10.);
+
+        // leeres Profil und Profil ohne Hoeheninformation:
+        GmProfile lEmpty = new GmProfile(new GmLineString());
+        GmProfile lNoData = new GmProfile(new GmLineString());
+        lNoData.addTZPair(0., Double.NaN);
+        lNoData.addTZPair(10., Double.NaN);
+        GmProfile[] lProfiles = {lEmpty, lNoData, profile()};
+        for (int i = 0; i < lProfiles.length; i++) {
+            BufferedImage lImage = ImageIO.read(new ByteArrayInputStream(png(lRenderer, lProfiles[i])));
+            assertEquals(sWidth, lImage.getWidth());
+            assertEquals(sHeight, lImage.getHeight());
+            assertEquals("svg", svg(lRenderer, lProfiles[i]).getDocumentElement().getLocalName());
+        }
+    }
+
+    @Test
+    public void testTooSmall()
+    {
+        try {
+            new ProfileGraphRenderer(72, 200);
+            fail();
+        }
+        catch (T3dException e) {
+        }
+        try {
+            new ProfileGraphRenderer(200, 52);
+            fail();
+        }
+        catch (T3dException e) {
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.profileservice;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.Test;
+import org.n52.v3d.terrainserver.demservice.DEMServiceHelpers;
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.gisimplm.GmLineString;
+import org.n52.v3d.triturus.gisimplm.GmPoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for <tt>ProfileSampler</tt>.
+ */
+public class ProfileSamplerTest
+{
+    // liefert z = x + 2 y, fuer x < 0 keine Hoeheninformation
+    private static class PlaneHelpers extends DEMServiceHelpers
+    {
+        ArrayList mCalls = new ArrayList();
+
+        PlaneHelpers() {
+            super(0.);
+        }
+
+        public double[] elevationsAt(double[] pX, double[] pY, String pSRS, String pTileLocator, String pSrcGrdPath)
+        {
+            mCalls.add(new Integer(pX.length));
+            double[] z = new double[pX.length];
+            for (int i = 0; i < pX.length; i++)
+                z[i] = (pX[i] < 0.) ? Double.NaN : pX[i] + 2. * pY[i];
+            return z;
+        }
+    }
+
+    // sammelt die uebergebenen Stationen
+    private static class Stations implements ProfileSampler.StationHandler
+    {
+        ArrayList mT = new ArrayList(), mX = new ArrayList(), mY = new ArrayList(), mZ = new ArrayList();
+
+        public void station(double t, double x, double y, double z) {
+            mT.add(new Double(t));
+            mX.add(new Double(x));
+            mY.add(new Double(y));
+            mZ.add(new Double(z));
+        }
+
+        int size() {
+            return mT.size();
+        }
+
+        double t(int i) {
+            return ((Double) mT.get(i)).doubleValue();
+        }
+
+        double x(int i) {
+            return ((Double) mX.get(i)).doubleValue();
+        }
+
+        double y(int i) {
+            return ((Double) mY.get(i)).doubleValue();
+        }
+
+        double z(int i) {
+            return ((Double) mZ.get(i)).doubleValue();
+        }
+    }
+
+    private static GmLineString line(double[] pCoords)
+    {
+        GmLineString lLine = new GmLineString();
+        for (int i = 0; i < pCoords.length; i += 2)
+            lLine.addVertex(new GmPoint(pCoords[i], pCoords[i + 1], 0.));
+        return lLine;
+    }
+
+    private static void assertStations(double[] pExpected, Stations pStations)
+    {
+        assertEquals(pExpected.length, pStations.size());
+        for (int i = 0; i < pExpected.length; i++)
+            assertEquals(pExpected[i], pStations.t(i), 1.e-9);
+    }
+
+    @Test
+    public void testStepping() throws IOException
+    {
+        Stations lStations = new Stations();
+        int lCount = new ProfileSampler(new PlaneHelpers(), "dgm", "", 2.)
+            .sample(line(new double[] {0., 0., 10., 0., 10., 5.}), "EPSG:31467", lStations);
+
+        // regelmaessige Stationen, Stuetzpunkt bei t = 10 und Endpunkt bei t = 15:
+        assertStations(new double[] {0., 2., 4., 6., 8., 10., 12., 14., 15.}, lStations);
+        assertEquals(9, lCount);
+        assertEquals(10., lStations.x(6), 1.e-9);
+        assertEquals(2., lStations.y(6), 1.e-9);
+        assertEquals(14., lStations.z(6), 1.e-9);
+    }
+
+    @Test
+    public void testVerticesBetweenStations() throws IOException
+    {
+        Stations lStations = new Stations();
+        new ProfileSampler(new PlaneHelpers(), "dgm", "", 2.)
+            .sample(line(new double[] {0., 0., 3., 0., 3., 0., 3., 4.}), "EPSG:31467", lStations);
+
+        // doppelter Stuetzpunkt wird uebergangen, das Stationsraster laeuft ueber Stuetzpunkte hinweg:
+        assertStations(new double[] {0., 2., 3., 4., 6., 7.}, lStations);
+        assertEquals(3., lStations.x(3), 1.e-9);
+        assertEquals(1., lStations.y(3), 1.e-9);
+    }
+
+    @Test
+    public void testMaxStations() throws IOException
+    {
+        ProfileSampler lSampler = new ProfileSampler(new PlaneHelpers(), "dgm", "", 1.);
+        lSampler.setMaxStations(10);
+        Stations lStations = new Stations();
+        lSampler.sample(line(new double[] {0., 0., 0., 100.}), "EPSG:31467", lStations);
+
+        assertStations(new double[] {0., 10., 20., 30., 40., 50., 60., 70., 80., 90., 100.}, lStations);
+    }
+
+    @Test
+    public void testGaps() throws IOException
+    {
+        Stations lStations = new Stations();
+        int lCount = new ProfileSampler(new PlaneHelpers(), "dgm", "", 1.)
+            .sample(line(new double[] {-4.5, 0., 5., 0.}), "EPSG:31467", lStations);
+
+        assertEquals(11, lStations.size());
+        assertEquals(6, lCount);
+        for (int i = 0; i < lStations.size(); i++)
+            assertEquals(lStations.x(i) < 0., Double.isNaN(lStations.z(i)));
+    }
+
+    @Test
+    public void testChunks() throws IOException
+    {
+        PlaneHelpers lHelpers = new PlaneHelpers();
+        ProfileSampler lSampler = new ProfileSampler(lHelpers, "dgm", "", 1.);
+        lSampler.setMaxStations(20000);
+        Stations lStations = new Stations();
+        int lCount = lSampler.sample(line(new double[] {0., 0., 6000., 8000.}), "EPSG:31467", lStations);
+
+        assertEquals(10001, lCount);
+        assertEquals(3, lHelpers.mCalls.size());
+        assertEquals(new Integer(4096), lHelpers.mCalls.get(0));
+        assertEquals(new Integer(10001 - 2 * 4096), lHelpers.mCalls.get(2));
+        for (int i = 1; i < lStations.size(); i++)
+            assertTrue(lStations.t(i) > lStations.t(i - 1));
+        assertEquals(10000., lStations.t(10000), 1.e-6);
+    }
+
+    @Test(expected = T3dException.class)
+    public void testSingleVertex() throws IOException {
+        new ProfileSampler(new PlaneHelpers(), "dgm", "", 1.)
+            .sample(line(new double[] {0., 0.}), "EPSG:31467", new Stations());
+    }
+
+    @Test(expected = T3dException.class)
+    public void testIllegalStep() {
+        new ProfileSampler(new PlaneHelpers(), "dgm", "", 0.);
+    }
+}
@@ -0,0 +1,226 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.web;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for <tt>AsyncRequestExecutor</tt>.
+ */
+public class AsyncRequestExecutorTest
+{
+    // Anfrage samt Antwort und AsyncContext; protokolliert Status, Header und Abschluss
+    private static class Exchange
+    {
+        HttpServletRequest mRequest;
+        HttpServletResponse mResponse;
+        AsyncContext mCtx;
+        HashMap mHeaders = new HashMap();
+        int mStatus = 0;
+        int mCompleted = 0;
+        CountDownLatch mDone = new CountDownLatch(1);
+
+        Exchange(final boolean pAsyncSupported)
+        {
+            mResponse = (HttpServletResponse) proxy(HttpServletResponse.class, new InvocationHandler() {
+                public Object invoke(Object pProxy, Method pMethod, Object[] pArgs) {
+                    if (pMethod.getName().equals("setStatus"))
+                        mStatus = ((Integer) pArgs[0]).intValue();
+                    if (pMethod.getName().equals("setHeader"))
+                        mHeaders.put(pArgs[0], pArgs[1]);
+                    return null;
+                }
+            });
+            mCtx = (AsyncContext) proxy(AsyncContext.class, new InvocationHandler() {
+                public Object invoke(Object pProxy, Method pMethod, Object[] pArgs) {
+                    if (pMethod.getName().equals("getRequest"))
+                        return mRequest;
+                    if (pMethod.getName().equals("getResponse"))
+                        return mResponse;
+                    if (pMethod.getName().equals("complete")) {
+                        synchronized (Exchange.this) {
+                            mCompleted++;
+                        }
+                        mDone.countDown();
+                    }
+                    return null;
+                }
+            });
+            mRequest = (HttpServletRequest) proxy(HttpServletRequest.class, new InvocationHandler() {
+                public Object invoke(Object pProxy, Method pMethod, Object[] pArgs) {
+                    if (pMethod.getName().equals("isAsyncSupported"))
+                        return Boolean.valueOf(pAsyncSupported);
+                    if (pMethod.getName().equals("startAsync"))
+                        return mCtx;
+                    return null;
+                }
+            });
+        }
+
+        synchronized int completed() {
+            return mCompleted;
+        }
+
+        void awaitDone() throws InterruptedException {
+            assertTrue(mDone.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private static Object proxy(Class pInterface, InvocationHandler pHandler)
+    {
+        return Proxy.newProxyInstance(
+            AsyncRequestExecutorTest.class.getClassLoader(), new Class[] {pInterface}, pHandler);
+    }
+
+    // Handler, der bis zur Freigabe blockiert und die bearbeiteten Anfragen zaehlt
+    private static class BlockingHandler implements AsyncRequestExecutor.Handler
+    {
+        Semaphore mPermits = new Semaphore(0);
+        Semaphore mStarted = new Semaphore(0);
+        int mHandled = 0;
+        boolean mInterrupted = false;
+
+        public void handle(HttpServletRequest pRequest, HttpServletResponse pResponse)
+            throws ServletException, IOException
+        {
+            mStarted.release();
+            try {
+                mPermits.acquire();
+            }
+            catch (InterruptedException e) {
+                synchronized (this) {
+                    mInterrupted = true;
+                }
+                return;
+            }
+            synchronized (this) {
+                mHandled++;
+            }
+            pResponse.setStatus(HttpServletResponse.SC_OK);
+        }
+
+        synchronized int handled() {
+            return mHandled;
+        }
+
+        synchronized boolean interrupted() {
+            return mInterrupted;
+        }
+    }
+
+    @Test
+    public void testSynchronousFallback() throws Exception
+    {
+        AsyncRequestExecutor lExec = new AsyncRequestExecutor("Test", 1, 1);
+        BlockingHandler lHandler = new BlockingHandler();
+        lHandler.mPermits.release();
+        Exchange lEx = new Exchange(false);
+
+        lExec.execute(lEx.mRequest, lEx.mResponse, lHandler);
+
+        // im aufrufenden Thread bearbeitet, kein AsyncContext:
+        assertEquals(1, lHandler.handled());
+        assertEquals(HttpServletResponse.SC_OK, lEx.mStatus);
+        assertEquals(0, lEx.completed());
+        lExec.shutdown();
+    }
+
+    @Test
+    public void testRejectWhenQueueIsFull() throws Exception
+    {
+        AsyncRequestExecutor lExec = new AsyncRequestExecutor("Test", 1, 1);
+        BlockingHandler lHandler = new BlockingHandler();
+        Exchange lRunning = new Exchange(true), lQueued = new Exchange(true), lRejected = new Exchange(true);
+
+        lExec.execute(lRunning.mRequest, lRunning.mResponse, lHandler);
+        assertTrue(lHandler.mStarted.tryAcquire(10, TimeUnit.SECONDS));
+        lExec.execute(lQueued.mRequest, lQueued.mResponse, lHandler);
+        lExec.execute(lRejected.mRequest, lRejected.mResponse, lHandler);
+
+        // die dritte Anfrage wird sofort mit 503 abgewiesen und abgeschlossen:
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, lRejected.mStatus);
+        assertEquals("10", lRejected.mHeaders.get("Retry-After"));
+        assertEquals(1, lRejected.completed());
+        assertEquals(0, lRunning.completed());
+        assertEquals(0, lQueued.completed());
+
+        lHandler.mPermits.release(2);
+        lRunning.awaitDone();
+        lQueued.awaitDone();
+        assertEquals(2, lHandler.handled());
+        assertEquals(HttpServletResponse.SC_OK, lRunning.mStatus);
+        assertEquals(HttpServletResponse.SC_OK, lQueued.mStatus);
+        assertEquals(1, lRunning.completed());
+        assertEquals(1, lQueued.completed());
+        assertNull(lQueued.mHeaders.get("Retry-After"));
+        lExec.shutdown();
+    }
+
+    @Test
+    public void testShutdownDrainsQueue() throws Exception
+    {
+        AsyncRequestExecutor lExec = new AsyncRequestExecutor("Test", 1, 2);
+        BlockingHandler lHandler = new BlockingHandler();
+        Exchange lRunning = new Exchange(true), lQueued1 = new Exchange(true), lQueued2 = new Exchange(true);
+
+        lExec.execute(lRunning.mRequest, lRunning.mResponse, lHandler);
+        assertTrue(lHandler.mStarted.tryAcquire(10, TimeUnit.SECONDS));
+        lExec.execute(lQueued1.mRequest, lQueued1.mResponse, lHandler);
+        lExec.execute(lQueued2.mRequest, lQueued2.mResponse, lHandler);
+
+        lExec.shutdown();
+
+        // wartende Anfragen werden nicht mehr bearbeitet, sondern mit 503 beantwortet:
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, lQueued1.mStatus);
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, lQueued2.mStatus);
+        assertEquals(1, lQueued1.completed());
+        assertEquals(1, lQueued2.completed());
+
+        // die laufende Anfrage wird unterbrochen und trotzdem abgeschlossen:
+        lRunning.awaitDone();
+        assertTrue(lHandler.interrupted());
+        assertEquals(1, lRunning.completed());
+        assertEquals(0, lHandler.handled());
+
+        // neue Anfragen werden nach dem Beenden ebenfalls abgewiesen:
+        Exchange lLate = new Exchange(true);
+        lExec.execute(lLate.mRequest, lLate.mResponse, lHandler);
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, lLate.mStatus);
+        assertEquals(1, lLate.completed());
+    }
+}
@@ -0,0 +1,89 @@
+/***************************************************************************************
+ * Copyright (C) 2011 by 52 North Initiative for Geospatial Open Source Software GmbH  *
+ *                                                                                     *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source *
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org *
+ *                                                                                     *
+ * This program is free software; you can redistribute and/or modify it under the      *
+ * terms of the GNU General Public License version 2 as published by the Free Software *
+ * Foundation.                                                                         *
+ *                                                                                     *
+ * This program is distributed WITHOUT ANY WARRANTY; even without the implied WARRANTY *
+ * OF MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public  *
+ * License for more details.                                                           *
+ *                                                                                     *
+ * You should have received a copy of the GNU General Public License along with this   *
+ * program (see gnu-gpl v2.txt). If not, write to the Free Software Foundation, Inc.,  *
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA, or visit the Free Software *
+ * Foundation web page, http://www.fsf.org.                                            *
+ **************************************************************************************/
+package org.n52.v3d.terrainserver.web;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for <tt>CompressionFilter</tt>.
+ */
+public class CompressionFilterTest
+{
+    // Anfrage, die nur den angegebenen "Accept-Encoding"-Header liefert
+    private static HttpServletRequest request(final String pAcceptEncoding)
+    {
+        return (HttpServletRequest) Proxy.newProxyInstance(
+            CompressionFilterTest.class.getClassLoader(),
+            new Class[] {HttpServletRequest.class},
+            new InvocationHandler() {
+                public Object invoke(Object pProxy, Method pMethod, Object[] pArgs) {
+                    if (pMethod.getName().equals("getHeader") && "Accept-Encoding".equalsIgnoreCase((String) pArgs[0]))
+                        return pAcceptEncoding;
+                    return null;
+                }
+            });
+    }
+
+    @Test
+    public void testNoHeader()
+    {
+        assertNull(CompressionFilter.acceptedEncoding(request(null)));
+        assertNull(CompressionFilter.acceptedEncoding(request("")));
+        assertNull(CompressionFilter.acceptedEncoding(request("identity")));
+    }
+
+    @Test
+    public void testPlainEncodings()
+    {
+        assertEquals("gzip", CompressionFilter.acceptedEncoding(request("gzip")));
+        assertEquals("gzip", CompressionFilter.acceptedEncoding(request("x-gzip")));
+        assertEquals("deflate", CompressionFilter.acceptedEncoding(request("deflate")));
+        assertEquals("gzip", CompressionFilter.acceptedEncoding(request("deflate, GZIP")));
+        assertEquals("gzip", CompressionFilter.acceptedEncoding(request("gzip, deflate, br")));
+    }
+
+    @Test
+    public void testQualityValues()
+    {
+        assertEquals("deflate", CompressionFilter.acceptedEncoding(request("gzip;q=0.5, deflate")));
+        assertEquals("gzip", CompressionFilter.acceptedEncoding(request("gzip; q=0.8, deflate;q=0.8")));
+        assertEquals("deflate", CompressionFilter.acceptedEncoding(request("gzip;q=0, deflate;q=0.1")));
+        assertNull(CompressionFilter.acceptedEncoding(request("gzip;q=0, deflate;q=0")));
+        assertNull(CompressionFilter.acceptedEncoding(request("gzip;q=abc")));
+    }
+
+    @Test
+    public void testWildcard()
+    {
+        assertEquals("gzip", CompressionFilter.acceptedEncoding(request("*")));
+        assertEquals("deflate", CompressionFilter.acceptedEncoding(request("gzip;q=0, *")));
+        assertNull(CompressionFilter.acceptedEncoding(request("*;q=0")));
+        assertEquals("deflate", CompressionFilter.acceptedEncoding(request("deflate, *;q=0")));
+    }
+}